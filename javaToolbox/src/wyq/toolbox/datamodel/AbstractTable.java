@@ -27,22 +27,168 @@ public abstract class AbstractTable<T> {
 	protected abstract void loadData(T dataSource) throws Exception;
 
 	public Object getValue(String columnName) {
-		if (isOutOfRange(current, 0, resultList.size()))
-			return null;
-		int col = columnNames.indexOf(columnName);
-		List<Object> currentRow = resultList.get(current);
-		if (isOutOfRange(col, 0, currentRow.size()))
-			return null;
-		return currentRow.get(col);
+		return getValue(columnNames.indexOf(columnName));
 	}
 
 	public Object getValue(int i) {
-		if (isOutOfRange(current, 0, resultList.size()))
+		if (isOutOfRange(current, 0, size()))
 			return null;
-		List<Object> currentRow = resultList.get(current);
-		if (isOutOfRange(i, 0, currentRow.size()))
+		return getValueAt(current, i);
+	}
+
+	/**
+	 * Returns the value at the specified row and column without moving the
+	 * cursor. Override this method together with {@link #size()} to provide
+	 * another storage than <code>resultList</code>.
+	 * 
+	 * @param row
+	 * @param column
+	 * @return the value or null if the row or column is out of range.
+	 */
+	public Object getValueAt(int row, int column) {
+		if (isOutOfRange(row, 0, resultList.size()))
 			return null;
-		return currentRow.get(i);
+		List<Object> dataRow = resultList.get(row);
+		if (isOutOfRange(column, 0, dataRow.size()))
+			return null;
+		return dataRow.get(column);
+	}
+
+	/**
+	 * Read the values of the column at the specified rows into the array
+	 * without moving the cursor. This method is used by the batch operators
+	 * such as {@linkplain wyq.toolbox.datamodel.TableQuery TableQuery}.
+	 *
+	 * @param rows
+	 *            the row positions.
+	 * @param count
+	 *            the number of the rows to read.
+	 * @param column
+	 * @param values
+	 *            the array to receive the values.
+	 */
+	public void getValuesAt(int[] rows, int count, int column, Object[] values) {
+		for (int i = 0; i < count; i++) {
+			values[i] = getValueAt(rows[i], column);
+		}
+	}
+
+	/**
+	 * Returns true if the value of the current row is null.
+	 * 
+	 * @param i
+	 * @return
+	 */
+	public boolean isNull(int i) {
+		return getValue(i) == null;
+	}
+
+	public boolean isNull(String columnName) {
+		return isNull(columnNames.indexOf(columnName));
+	}
+
+	/**
+	 * Returns the value of the current row as a String, or null if the value
+	 * is null.
+	 * 
+	 * @param i
+	 * @return
+	 */
+	public String getString(int i) {
+		Object value = getValue(i);
+		return value == null ? null : value.toString();
+	}
+
+	public String getString(String columnName) {
+		return getString(columnNames.indexOf(columnName));
+	}
+
+	/**
+	 * Returns the value of the current row as an int, or 0 if the value is
+	 * null. Strings are parsed as numbers.
+	 * 
+	 * @param i
+	 * @return
+	 */
+	public int getInt(int i) {
+		return (int) getLong(i);
+	}
+
+	public int getInt(String columnName) {
+		return getInt(columnNames.indexOf(columnName));
+	}
+
+	/**
+	 * Returns the value of the current row as a long, or 0 if the value is
+	 * null. Strings are parsed as numbers and dates are returned as
+	 * milliseconds.
+	 * 
+	 * @param i
+	 * @return
+	 */
+	public long getLong(int i) {
+		Object value = getValue(i);
+		if (value == null) {
+			return 0;
+		} else if (value instanceof Number) {
+			return ((Number) value).longValue();
+		} else if (value instanceof java.util.Date) {
+			return ((java.util.Date) value).getTime();
+		} else if (value instanceof Boolean) {
+			return (Boolean) value ? 1 : 0;
+		} else {
+			return Long.parseLong(value.toString().trim());
+		}
+	}
+
+	public long getLong(String columnName) {
+		return getLong(columnNames.indexOf(columnName));
+	}
+
+	/**
+	 * Returns the value of the current row as a double, or 0 if the value is
+	 * null. Strings are parsed as numbers.
+	 * 
+	 * @param i
+	 * @return
+	 */
+	public double getDouble(int i) {
+		Object value = getValue(i);
+		if (value == null) {
+			return 0;
+		} else if (value instanceof Number) {
+			return ((Number) value).doubleValue();
+		} else {
+			return Double.parseDouble(value.toString().trim());
+		}
+	}
+
+	public double getDouble(String columnName) {
+		return getDouble(columnNames.indexOf(columnName));
+	}
+
+	/**
+	 * Returns the value of the current row as a boolean, or false if the
+	 * value is null. Non-zero numbers and the string "true" are true.
+	 * 
+	 * @param i
+	 * @return
+	 */
+	public boolean getBoolean(int i) {
+		Object value = getValue(i);
+		if (value == null) {
+			return false;
+		} else if (value instanceof Boolean) {
+			return (Boolean) value;
+		} else if (value instanceof Number) {
+			return ((Number) value).doubleValue() != 0;
+		} else {
+			return Boolean.parseBoolean(value.toString().trim());
+		}
+	}
+
+	public boolean getBoolean(String columnName) {
+		return getBoolean(columnNames.indexOf(columnName));
 	}
 
 	public String getColumnName(int i) {
@@ -74,26 +220,36 @@ public abstract class AbstractTable<T> {
 
 	public boolean next() {
 		current++;
-		if (current > resultList.size())
-			current = resultList.size();
-		return !isOutOfRange(current, 0, resultList.size());
+		if (current > size())
+			current = size();
+		return !isOutOfRange(current, 0, size());
 	}
 
 	public int size() {
 		return resultList.size();
 	}
 
+	/**
+	 * Returns the index of the current row, starts from 0. -1 means before the
+	 * first row.
+	 * 
+	 * @return
+	 */
+	public int getRow() {
+		return current;
+	}
+
 	public boolean absolute(int row) {
 		current = row;
-		if (current > resultList.size())
-			current = resultList.size();
+		if (current > size())
+			current = size();
 		if (current < 0)
 			current = -1;
-		return !isOutOfRange(current, 0, resultList.size());
+		return !isOutOfRange(current, 0, size());
 	}
 
 	public void afterLast() {
-		current = resultList.size();
+		current = size();
 	}
 
 	public void beforeFirst() {
@@ -102,11 +258,11 @@ public abstract class AbstractTable<T> {
 
 	public boolean first() {
 		current = 0;
-		return !isOutOfRange(current, 0, resultList.size());
+		return !isOutOfRange(current, 0, size());
 	}
 
 	public boolean isAfterLast() {
-		return current == resultList.size();
+		return current == size();
 	}
 
 	public boolean isBeforeFirst() {
@@ -118,28 +274,28 @@ public abstract class AbstractTable<T> {
 	}
 
 	public boolean isLast() {
-		return current == resultList.size() - 1;
+		return current == size() - 1;
 	}
 
 	public boolean last() {
-		current = resultList.size() - 1;
-		return !isOutOfRange(current, 0, resultList.size());
+		current = size() - 1;
+		return !isOutOfRange(current, 0, size());
 	}
 
 	public boolean previous() {
 		current--;
 		if (current < 0)
 			current = -1;
-		return !isOutOfRange(current, 0, resultList.size());
+		return !isOutOfRange(current, 0, size());
 	}
 
 	public boolean relative(int rows) {
 		current += rows;
-		if (current > resultList.size())
-			current = resultList.size();
+		if (current > size())
+			current = size();
 		if (current < 0)
 			current = -1;
-		return !isOutOfRange(current, 0, resultList.size());
+		return !isOutOfRange(current, 0, size());
 	}
 
 }
@@ -0,0 +1,494 @@
+package wyq.toolbox.datamodel;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * This class represents an aggregate function computed by
+ * {@linkplain wyq.toolbox.datamodel.TableQuery TableQuery}, such as count, sum,
+ * min, max, avg and the count of the distinct values. The null values are
+ * ignored except by {@link #count()}. The string values are parsed as numbers
+ * by sum and avg.
+ * <p>
+ * The aggregates keep the state of each group in arrays indexed by the group
+ * number and are updated a batch of rows at a time.
+ * </p>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public abstract class Aggregate {
+
+	private final String column;
+	private String name;
+
+	Aggregate(String function, String column) {
+		this.column = column;
+		this.name = column == null ? function : function + "(" + column + ")";
+	}
+
+	/**
+	 * Returns the column aggregated by this function, or null for
+	 * {@link #count()}.
+	 *
+	 * @return
+	 */
+	public String getColumn() {
+		return column;
+	}
+
+	/**
+	 * Returns the name of the result column, the default name is like
+	 * <code>sum(column)</code>.
+	 *
+	 * @return
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Set the name of the result column.
+	 *
+	 * @param name
+	 * @return this
+	 */
+	public Aggregate as(String name) {
+		this.name = name;
+		return this;
+	}
+
+	abstract Accumulator newAccumulator();
+
+	/**
+	 * The count of the rows.
+	 */
+	public static Aggregate count() {
+		return new Aggregate("count", null) {
+
+			@Override
+			Accumulator newAccumulator() {
+				return new Count();
+			}
+		};
+	}
+
+	/**
+	 * The count of the non-null values.
+	 */
+	public static Aggregate count(String column) {
+		return new Aggregate("count", column) {
+
+			@Override
+			Accumulator newAccumulator() {
+				return new Count();
+			}
+		};
+	}
+
+	/**
+	 * The count of the distinct non-null values.
+	 */
+	public static Aggregate countDistinct(String column) {
+		return new Aggregate("countDistinct", column) {
+
+			@Override
+			Accumulator newAccumulator() {
+				return new CountDistinct();
+			}
+		};
+	}
+
+	/**
+	 * The sum of the values, a Long if all the values are integral or a Double
+	 * otherwise.
+	 */
+	public static Aggregate sum(String column) {
+		return new Aggregate("sum", column) {
+
+			@Override
+			Accumulator newAccumulator() {
+				return new Sum();
+			}
+		};
+	}
+
+	/**
+	 * The average of the values as a Double.
+	 */
+	public static Aggregate avg(String column) {
+		return new Aggregate("avg", column) {
+
+			@Override
+			Accumulator newAccumulator() {
+				return new Avg();
+			}
+		};
+	}
+
+	public static Aggregate min(String column) {
+		return new Aggregate("min", column) {
+
+			@Override
+			Accumulator newAccumulator() {
+				return new MinMax(-1);
+			}
+		};
+	}
+
+	public static Aggregate max(String column) {
+		return new Aggregate("max", column) {
+
+			@Override
+			Accumulator newAccumulator() {
+				return new MinMax(1);
+			}
+		};
+	}
+
+	/**
+	 * The state of an aggregate function for all the groups.
+	 */
+	abstract static class Accumulator {
+
+		int capacity;
+
+		/**
+		 * Add the values of a batch.
+		 *
+		 * @param groups
+		 *            the group of each value.
+		 * @param values
+		 *            the values, or null if the function has no column.
+		 * @param count
+		 *            the number of the values.
+		 * @param groupCount
+		 *            the total number of the groups so far.
+		 */
+		abstract void add(int[] groups, Object[] values, int count,
+				int groupCount);
+
+		/**
+		 * Merge the state of another accumulator of the same function.
+		 *
+		 * @param groupMap
+		 *            the group in this accumulator of each group of the other
+		 *            accumulator.
+		 */
+		abstract void merge(Accumulator other, int[] groupMap, int groupCount);
+
+		abstract Object get(int group);
+
+		abstract Class<?> getType(Class<?> columnType);
+
+		void ensureCapacity(int groupCount) {
+			if (groupCount > capacity) {
+				int newCapacity = Math.max(groupCount, capacity * 2);
+				grow(Math.max(newCapacity, 16));
+			}
+		}
+
+		void grow(int newCapacity) {
+			capacity = newCapacity;
+		}
+	}
+
+	static class Count extends Accumulator {
+
+		private long[] counts = new long[0];
+
+		@Override
+		void add(int[] groups, Object[] values, int count, int groupCount) {
+			ensureCapacity(groupCount);
+			for (int i = 0; i < count; i++) {
+				if (values == null || values[i] != null) {
+					counts[groups[i]]++;
+				}
+			}
+		}
+
+		@Override
+		void merge(Accumulator other, int[] groupMap, int groupCount) {
+			ensureCapacity(groupCount);
+			long[] otherCounts = ((Count) other).counts;
+			for (int g = 0; g < groupMap.length; g++) {
+				counts[groupMap[g]] += otherCounts[g];
+			}
+		}
+
+		@Override
+		Object get(int group) {
+			return group < counts.length ? counts[group] : 0L;
+		}
+
+		@Override
+		Class<?> getType(Class<?> columnType) {
+			return Long.class;
+		}
+
+		@Override
+		void grow(int newCapacity) {
+			super.grow(newCapacity);
+			counts = Arrays.copyOf(counts, newCapacity);
+		}
+	}
+
+	static class Sum extends Accumulator {
+
+		private static final byte NONE = 0;
+		private static final byte LONG = 1;
+		private static final byte DOUBLE = 2;
+
+		private long[] longs = new long[0];
+		private double[] doubles = new double[0];
+		private byte[] states = new byte[0];
+		private boolean floating;
+
+		@Override
+		void add(int[] groups, Object[] values, int count, int groupCount) {
+			ensureCapacity(groupCount);
+			for (int i = 0; i < count; i++) {
+				if (values[i] != null) {
+					Number n = Values.toNumber(values[i]);
+					if (Values.isIntegral(n)) {
+						addLong(groups[i], n.longValue());
+					} else {
+						addDouble(groups[i], n.doubleValue());
+					}
+				}
+			}
+		}
+
+		private void addLong(int g, long value) {
+			if (states[g] != DOUBLE) {
+				long sum = longs[g] + value;
+				// switch to double on overflow
+				if (((longs[g] ^ sum) & (value ^ sum)) >= 0) {
+					longs[g] = sum;
+					states[g] = LONG;
+					return;
+				}
+			}
+			addDouble(g, value);
+		}
+
+		private void addDouble(int g, double value) {
+			if (states[g] != DOUBLE) {
+				doubles[g] = longs[g];
+				states[g] = DOUBLE;
+				floating = true;
+			}
+			doubles[g] += value;
+		}
+
+		@Override
+		void merge(Accumulator other, int[] groupMap, int groupCount) {
+			ensureCapacity(groupCount);
+			Sum sum = (Sum) other;
+			for (int g = 0; g < groupMap.length; g++) {
+				if (sum.states[g] == LONG) {
+					addLong(groupMap[g], sum.longs[g]);
+				} else if (sum.states[g] == DOUBLE) {
+					addDouble(groupMap[g], sum.doubles[g]);
+				}
+			}
+		}
+
+		@Override
+		Object get(int group) {
+			if (group >= states.length || states[group] == NONE) {
+				return null;
+			} else if (floating) {
+				return states[group] == DOUBLE ? doubles[group]
+						: (double) longs[group];
+			}
+			return longs[group];
+		}
+
+		@Override
+		Class<?> getType(Class<?> columnType) {
+			return floating ? Double.class : Long.class;
+		}
+
+		@Override
+		void grow(int newCapacity) {
+			super.grow(newCapacity);
+			longs = Arrays.copyOf(longs, newCapacity);
+			doubles = Arrays.copyOf(doubles, newCapacity);
+			states = Arrays.copyOf(states, newCapacity);
+		}
+	}
+
+	static class Avg extends Accumulator {
+
+		private double[] sums = new double[0];
+		private long[] counts = new long[0];
+
+		@Override
+		void add(int[] groups, Object[] values, int count, int groupCount) {
+			ensureCapacity(groupCount);
+			for (int i = 0; i < count; i++) {
+				if (values[i] != null) {
+					sums[groups[i]] += Values.toNumber(values[i]).doubleValue();
+					counts[groups[i]]++;
+				}
+			}
+		}
+
+		@Override
+		void merge(Accumulator other, int[] groupMap, int groupCount) {
+			ensureCapacity(groupCount);
+			Avg avg = (Avg) other;
+			for (int g = 0; g < groupMap.length; g++) {
+				sums[groupMap[g]] += avg.sums[g];
+				counts[groupMap[g]] += avg.counts[g];
+			}
+		}
+
+		@Override
+		Object get(int group) {
+			if (group >= counts.length || counts[group] == 0) {
+				return null;
+			}
+			return sums[group] / counts[group];
+		}
+
+		@Override
+		Class<?> getType(Class<?> columnType) {
+			return Double.class;
+		}
+
+		@Override
+		void grow(int newCapacity) {
+			super.grow(newCapacity);
+			sums = Arrays.copyOf(sums, newCapacity);
+			counts = Arrays.copyOf(counts, newCapacity);
+		}
+	}
+
+	/**
+	 * The strings which can be parsed as numbers are compared by their values
+	 * like Sum, so the max of "9" and "10" is "10". The values are returned
+	 * as they are.
+	 */
+	static class MinMax extends Accumulator {
+
+		// -1 for min and 1 for max
+		private final int sign;
+		private Object[] values = new Object[0];
+		// the values to compare, the numeric strings are parsed
+		private Object[] keys = new Object[0];
+
+		MinMax(int sign) {
+			this.sign = sign;
+		}
+
+		@Override
+		void add(int[] groups, Object[] values, int count, int groupCount) {
+			ensureCapacity(groupCount);
+			for (int i = 0; i < count; i++) {
+				update(groups[i], values[i]);
+			}
+		}
+
+		private void update(int g, Object value) {
+			if (value == null) {
+				return;
+			}
+			Object key = Values.coerce(value, 0L);
+			update(g, value, key == null ? value : key);
+		}
+
+		private void update(int g, Object value, Object key) {
+			if (value != null
+					&& (values[g] == null || Values.compare(key, keys[g])
+							* sign > 0)) {
+				values[g] = value;
+				keys[g] = key;
+			}
+		}
+
+		@Override
+		void merge(Accumulator other, int[] groupMap, int groupCount) {
+			ensureCapacity(groupCount);
+			MinMax minMax = (MinMax) other;
+			for (int g = 0; g < groupMap.length; g++) {
+				update(groupMap[g], minMax.values[g], minMax.keys[g]);
+			}
+		}
+
+		@Override
+		Object get(int group) {
+			return group < values.length ? values[group] : null;
+		}
+
+		@Override
+		Class<?> getType(Class<?> columnType) {
+			return columnType;
+		}
+
+		@Override
+		void grow(int newCapacity) {
+			super.grow(newCapacity);
+			values = Arrays.copyOf(values, newCapacity);
+			keys = Arrays.copyOf(keys, newCapacity);
+		}
+	}
+
+	static class CountDistinct extends Accumulator {
+
+		private Object[] sets = new Object[0];
+
+		@SuppressWarnings("unchecked")
+		private Set<Object> set(int g) {
+			if (sets[g] == null) {
+				sets[g] = new HashSet<Object>();
+			}
+			return (Set<Object>) sets[g];
+		}
+
+		@Override
+		void add(int[] groups, Object[] values, int count, int groupCount) {
+			ensureCapacity(groupCount);
+			for (int i = 0; i < count; i++) {
+				if (values[i] != null) {
+					set(groups[i]).add(Values.normalize(values[i]));
+				}
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		void merge(Accumulator other, int[] groupMap, int groupCount) {
+			ensureCapacity(groupCount);
+			Object[] otherSets = ((CountDistinct) other).sets;
+			for (int g = 0; g < groupMap.length; g++) {
+				if (otherSets[g] != null) {
+					set(groupMap[g]).addAll((Set<Object>) otherSets[g]);
+				}
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		Object get(int group) {
+			if (group >= sets.length || sets[group] == null) {
+				return 0L;
+			}
+			return (long) ((Set<Object>) sets[group]).size();
+		}
+
+		@Override
+		Class<?> getType(Class<?> columnType) {
+			return Long.class;
+		}
+
+		@Override
+		void grow(int newCapacity) {
+			super.grow(newCapacity);
+			sets = Arrays.copyOf(sets, newCapacity);
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+package wyq.toolbox.datamodel;
+
+import java.util.Arrays;
+
+/**
+ * This class reads the rows of a
+ * {@linkplain wyq.toolbox.datamodel.TableDataSource TableDataSource} a value
+ * at a time and fills the batches of a
+ * {@linkplain wyq.toolbox.datamodel.BatchTableDataSource
+ * BatchTableDataSource}, so the sources which do not read batches can be
+ * loaded the same way.
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class BatchDataSourceAdapter implements BatchTableDataSource {
+
+	private final TableDataSource dataSource;
+	private Object[] values = new Object[16];
+	private boolean end = false;
+
+	/**
+	 * Returns the data source itself if it reads batches, or an adapter of it
+	 * otherwise.
+	 *
+	 * @param dataSource
+	 * @return
+	 */
+	public static BatchTableDataSource of(TableDataSource dataSource) {
+		if (dataSource instanceof BatchTableDataSource) {
+			return (BatchTableDataSource) dataSource;
+		}
+		return new BatchDataSourceAdapter(dataSource);
+	}
+
+	public BatchDataSourceAdapter(TableDataSource dataSource) {
+		this.dataSource = dataSource;
+	}
+
+	@Override
+	public int nextBatch(RowBatch batch) throws Exception {
+		batch.clear();
+		while (!end && !batch.isFull()) {
+			if (!dataSource.nextRow()) {
+				// do not call nextRow again after the last row
+				end = true;
+				break;
+			}
+			int length = 0;
+			while (dataSource.nextRowValue()) {
+				if (length == values.length) {
+					values = Arrays.copyOf(values, length * 2);
+				}
+				values[length++] = dataSource.getRowValue();
+			}
+			batch.addRow(values, length);
+		}
+		Arrays.fill(values, null);
+		return batch.size();
+	}
+
+	@Override
+	public boolean nextColumn() throws Exception {
+		return dataSource.nextColumn();
+	}
+
+	@Override
+	public String getColumnName() throws Exception {
+		return dataSource.getColumnName();
+	}
+
+	@Override
+	public boolean nextRow() throws Exception {
+		return dataSource.nextRow();
+	}
+
+	@Override
+	public Class<?> getColumnType() throws Exception {
+		return dataSource.getColumnType();
+	}
+
+	@Override
+	public boolean nextRowValue() throws Exception {
+		return dataSource.nextRowValue();
+	}
+
+	@Override
+	public Object getRowValue() throws Exception {
+		return dataSource.getRowValue();
+	}
+
+}
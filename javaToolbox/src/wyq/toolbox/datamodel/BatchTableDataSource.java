@@ -0,0 +1,25 @@
+package wyq.toolbox.datamodel;
+
+/**
+ * Implement this interface to provide the rows for the Table class a batch at
+ * a time instead of a value at a time. The column definitions are still read
+ * through the methods of
+ * {@linkplain wyq.toolbox.datamodel.TableDataSource TableDataSource}. Wrap the
+ * other sources with {@link BatchDataSourceAdapter#of(TableDataSource)}.
+ *
+ * @author dewafer
+ * @version 1
+ */
+public interface BatchTableDataSource extends TableDataSource {
+
+	/**
+	 * Clear the batch and fill it with the next rows, at most
+	 * {@linkplain RowBatch#getCapacity() the capacity} of the batch.
+	 *
+	 * @param batch
+	 * @return the count of the rows read, 0 if there are no more rows.
+	 * @throws Exception
+	 */
+	int nextBatch(RowBatch batch) throws Exception;
+
+}
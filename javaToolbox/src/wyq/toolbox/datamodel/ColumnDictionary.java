@@ -0,0 +1,173 @@
+package wyq.toolbox.datamodel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is the dictionary of a string column of a Table. Each distinct
+ * string gets an int code in the order of its first row, all the cells with
+ * the same string share one String instance, and the code of each row is kept
+ * in an int array. The filters and the group-by of
+ * {@linkplain wyq.toolbox.datamodel.TableQuery TableQuery} compare the codes
+ * instead of the strings.
+ * <p>
+ * The dictionaries are built by
+ * {@linkplain wyq.toolbox.datamodel.Table#loadData(TableDataSource)
+ * Table.loadData}, see
+ * {@linkplain wyq.toolbox.datamodel.Table#setDictionaryLimit(int)
+ * setDictionaryLimit}.
+ * </p>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class ColumnDictionary {
+
+	private final Map<String, Integer> codes = new HashMap<String, Integer>();
+	private final List<String> values = new ArrayList<String>();
+	private int[] rowCodes = new int[16];
+	private int rows = 0;
+
+	/**
+	 * Returns the count of the distinct strings.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return values.size();
+	}
+
+	/**
+	 * Returns the string of the code.
+	 *
+	 * @param code
+	 * @return
+	 */
+	public String getValue(int code) {
+		return values.get(code);
+	}
+
+	/**
+	 * Returns the code of the string, or -1 if the string is not in the
+	 * column.
+	 *
+	 * @param value
+	 * @return
+	 */
+	public int getCode(Object value) {
+		Integer code = codes.get(value);
+		return code == null ? -1 : code;
+	}
+
+	/**
+	 * Returns the code of the value at the row, or -1 if the value is null.
+	 *
+	 * @param row
+	 * @return
+	 */
+	public int getCodeAt(int row) {
+		return rowCodes[row];
+	}
+
+	/**
+	 * Read the codes of the rows into the array.
+	 *
+	 * @param rows
+	 * @param count
+	 * @param codes
+	 */
+	public void getCodesAt(int[] rows, int count, int[] codes) {
+		for (int i = 0; i < count; i++) {
+			codes[i] = rowCodes[rows[i]];
+		}
+	}
+
+	int getRowCount() {
+		return rows;
+	}
+
+	boolean contains(String value) {
+		return codes.containsKey(value);
+	}
+
+	/**
+	 * Append the value of the next row.
+	 *
+	 * @return the shared instance of the string.
+	 */
+	String add(String value) {
+		if (rows == rowCodes.length) {
+			rowCodes = Arrays.copyOf(rowCodes, rows * 2);
+		}
+		if (value == null) {
+			rowCodes[rows++] = -1;
+			return null;
+		}
+		Integer code = codes.get(value);
+		if (code == null) {
+			code = values.size();
+			codes.put(value, code);
+			values.add(value);
+		}
+		rowCodes[rows++] = code;
+		return values.get(code);
+	}
+
+	/**
+	 * Append the rows of another dictionary, the codes of its strings are
+	 * translated into the codes of this dictionary.
+	 */
+	void append(ColumnDictionary other) {
+		int[] mapping = new int[other.size()];
+		for (int code = 0; code < mapping.length; code++) {
+			String value = other.values.get(code);
+			Integer mapped = codes.get(value);
+			if (mapped == null) {
+				mapped = values.size();
+				codes.put(value, mapped);
+				values.add(value);
+			}
+			mapping[code] = mapped;
+		}
+		if (rows + other.rows > rowCodes.length) {
+			rowCodes = Arrays.copyOf(rowCodes,
+					Math.max(rows + other.rows, rows * 2));
+		}
+		for (int i = 0; i < other.rows; i++) {
+			int code = other.rowCodes[i];
+			rowCodes[rows++] = code < 0 ? -1 : mapping[code];
+		}
+	}
+
+	/**
+	 * Keep the rows of the codes in the sorted order of the table.
+	 */
+	void reorder(int[] permutation) {
+		int[] sorted = new int[Math.max(permutation.length, 16)];
+		for (int i = 0; i < permutation.length; i++) {
+			sorted[i] = rowCodes[permutation[i]];
+		}
+		rowCodes = sorted;
+	}
+
+	/**
+	 * Keep the rows whose code equals (or not equals) the code, in their
+	 * original order. The nulls never match.
+	 *
+	 * @return the number of the kept rows.
+	 */
+	int filter(int[] rows, int count, int code, boolean equal) {
+		int accepted = 0;
+		for (int i = 0; i < count; i++) {
+			int rowCode = rowCodes[rows[i]];
+			if (rowCode >= 0 && (rowCode == code) == equal) {
+				rows[accepted++] = rows[i];
+			}
+		}
+		return accepted;
+	}
+
+}
@@ -0,0 +1,288 @@
+package wyq.toolbox.datamodel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * This enum tells how the values of a column are laid out in a
+ * <code>ByteBuffer</code>. The fixed-width encodings write the values at
+ * <code>index * width</code>, the variable-width encodings (STRING and OBJECT)
+ * are stored as offsets and bytes by their users.
+ *
+ * @author dewafer
+ * @version 1
+ */
+enum ColumnEncoding {
+
+	BOOLEAN(1), BYTE(1), SHORT(2), INT(4), LONG(8), FLOAT(4), DOUBLE(8), SQL_DATE(
+			8), SQL_TIME(8), SQL_TIMESTAMP(12), DATE(8), STRING(0), OBJECT(0);
+
+	final int width;
+
+	private ColumnEncoding(int width) {
+		this.width = width;
+	}
+
+	boolean isFixedWidth() {
+		return width > 0;
+	}
+
+	/**
+	 * Returns the encoding of the declared column type, null if the type is
+	 * unknown.
+	 */
+	static ColumnEncoding of(Class<?> type) {
+		if (type == null || Object.class.equals(type)) {
+			return null;
+		} else if (Boolean.class.equals(type) || Boolean.TYPE.equals(type)) {
+			return BOOLEAN;
+		} else if (Byte.class.equals(type) || Byte.TYPE.equals(type)) {
+			return BYTE;
+		} else if (Short.class.equals(type) || Short.TYPE.equals(type)) {
+			return SHORT;
+		} else if (Integer.class.equals(type) || Integer.TYPE.equals(type)) {
+			return INT;
+		} else if (Long.class.equals(type) || Long.TYPE.equals(type)) {
+			return LONG;
+		} else if (Float.class.equals(type) || Float.TYPE.equals(type)) {
+			return FLOAT;
+		} else if (Double.class.equals(type) || Double.TYPE.equals(type)) {
+			return DOUBLE;
+		} else if (java.sql.Date.class.equals(type)) {
+			return SQL_DATE;
+		} else if (java.sql.Time.class.equals(type)) {
+			return SQL_TIME;
+		} else if (java.sql.Timestamp.class.equals(type)) {
+			return SQL_TIMESTAMP;
+		} else if (java.util.Date.class.equals(type)) {
+			return DATE;
+		} else if (String.class.equals(type)) {
+			return STRING;
+		} else {
+			return OBJECT;
+		}
+	}
+
+	/**
+	 * Returns true if the value can be stored with this encoding without
+	 * losing anything.
+	 */
+	boolean accepts(Object value) {
+		if (value == null) {
+			return true;
+		}
+		switch (this) {
+		case BOOLEAN:
+			return value instanceof Boolean;
+		case BYTE:
+			return value instanceof Byte;
+		case SHORT:
+			return value instanceof Short || value instanceof Byte;
+		case INT:
+			return value instanceof Integer || value instanceof Short
+					|| value instanceof Byte;
+		case LONG:
+			return value instanceof Long || value instanceof Integer
+					|| value instanceof Short || value instanceof Byte;
+		case FLOAT:
+			return value instanceof Float;
+		case DOUBLE:
+			return value instanceof Double || value instanceof Float;
+		case SQL_DATE:
+		case SQL_TIME:
+		case DATE:
+			return value.getClass() == valueClass();
+		case SQL_TIMESTAMP:
+			return value instanceof java.sql.Timestamp;
+		case STRING:
+			return value instanceof String;
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the class of the values read from this encoding.
+	 */
+	Class<?> valueClass() {
+		switch (this) {
+		case BOOLEAN:
+			return Boolean.class;
+		case BYTE:
+			return Byte.class;
+		case SHORT:
+			return Short.class;
+		case INT:
+			return Integer.class;
+		case LONG:
+			return Long.class;
+		case FLOAT:
+			return Float.class;
+		case DOUBLE:
+			return Double.class;
+		case SQL_DATE:
+			return java.sql.Date.class;
+		case SQL_TIME:
+			return java.sql.Time.class;
+		case SQL_TIMESTAMP:
+			return java.sql.Timestamp.class;
+		case DATE:
+			return java.util.Date.class;
+		case STRING:
+			return String.class;
+		default:
+			return Object.class;
+		}
+	}
+
+	/**
+	 * Write the fixed-width value at the absolute position of the buffer.
+	 */
+	void put(ByteBuffer buffer, int position, Object value) {
+		switch (this) {
+		case BOOLEAN:
+			buffer.put(position, (byte) ((Boolean) value ? 1 : 0));
+			break;
+		case BYTE:
+			buffer.put(position, (Byte) value);
+			break;
+		case SHORT:
+			buffer.putShort(position, ((Number) value).shortValue());
+			break;
+		case INT:
+			buffer.putInt(position, ((Number) value).intValue());
+			break;
+		case LONG:
+			buffer.putLong(position, ((Number) value).longValue());
+			break;
+		case FLOAT:
+			buffer.putFloat(position, (Float) value);
+			break;
+		case DOUBLE:
+			buffer.putDouble(position, ((Number) value).doubleValue());
+			break;
+		case SQL_DATE:
+		case SQL_TIME:
+		case DATE:
+			buffer.putLong(position, ((java.util.Date) value).getTime());
+			break;
+		case SQL_TIMESTAMP:
+			java.sql.Timestamp ts = (java.sql.Timestamp) value;
+			buffer.putLong(position, ts.getTime());
+			buffer.putInt(position + 8, ts.getNanos());
+			break;
+		default:
+			throw new UnsupportedOperationException(this
+					+ " is not a fixed-width encoding");
+		}
+	}
+
+	/**
+	 * Read the fixed-width value at the absolute position of the buffer.
+	 */
+	Object get(ByteBuffer buffer, int position) {
+		switch (this) {
+		case BOOLEAN:
+			return buffer.get(position) != 0;
+		case BYTE:
+			return buffer.get(position);
+		case SHORT:
+			return buffer.getShort(position);
+		case INT:
+			return buffer.getInt(position);
+		case LONG:
+			return buffer.getLong(position);
+		case FLOAT:
+			return buffer.getFloat(position);
+		case DOUBLE:
+			return buffer.getDouble(position);
+		case SQL_DATE:
+			return new java.sql.Date(buffer.getLong(position));
+		case SQL_TIME:
+			return new java.sql.Time(buffer.getLong(position));
+		case DATE:
+			return new java.util.Date(buffer.getLong(position));
+		case SQL_TIMESTAMP:
+			java.sql.Timestamp ts = new java.sql.Timestamp(
+					buffer.getLong(position));
+			ts.setNanos(buffer.getInt(position + 8));
+			return ts;
+		default:
+			throw new UnsupportedOperationException(this
+					+ " is not a fixed-width encoding");
+		}
+	}
+
+	/**
+	 * Read the fixed-width value as a long without boxing. The dates are read
+	 * as milliseconds.
+	 */
+	long getLong(ByteBuffer buffer, int position) {
+		switch (this) {
+		case BOOLEAN:
+		case BYTE:
+			return buffer.get(position);
+		case SHORT:
+			return buffer.getShort(position);
+		case INT:
+			return buffer.getInt(position);
+		case FLOAT:
+			return (long) buffer.getFloat(position);
+		case DOUBLE:
+			return (long) buffer.getDouble(position);
+		case LONG:
+		case SQL_DATE:
+		case SQL_TIME:
+		case SQL_TIMESTAMP:
+		case DATE:
+			return buffer.getLong(position);
+		default:
+			throw new UnsupportedOperationException(this
+					+ " is not a fixed-width encoding");
+		}
+	}
+
+	/**
+	 * Read the fixed-width value as a double without boxing.
+	 */
+	double getDouble(ByteBuffer buffer, int position) {
+		switch (this) {
+		case FLOAT:
+			return buffer.getFloat(position);
+		case DOUBLE:
+			return buffer.getDouble(position);
+		default:
+			return getLong(buffer, position);
+		}
+	}
+
+	/**
+	 * Encode the variable-width value into bytes, the strings are encoded in
+	 * UTF-8 and the other objects are encoded by ValueCodec.
+	 */
+	byte[] toBytes(Object value) throws IOException {
+		if (this == STRING) {
+			return ((String) value).getBytes(ValueCodec.UTF_8);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		ValueCodec.write(out, value);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decode the variable-width value from the remaining bytes of the buffer.
+	 */
+	Object fromBytes(ByteBuffer in) throws IOException {
+		if (this == STRING) {
+			byte[] bytes = new byte[in.remaining()];
+			in.get(bytes);
+			return new String(bytes, ValueCodec.UTF_8);
+		}
+		return ValueCodec.read(in);
+	}
+
+}
@@ -0,0 +1,192 @@
+package wyq.toolbox.datamodel;
+
+/**
+ * This class holds the statistics of a column of a Table: the count of the
+ * values and the nulls, the min and max values, the estimated count of the
+ * distinct values and, for the numeric columns, the sum and the mean. The
+ * strings which are numbers count as numbers, so the columns of a csv file
+ * have sums too.
+ * <p>
+ * The statistics are collected by
+ * {@linkplain wyq.toolbox.datamodel.Table#loadData(TableDataSource)
+ * Table.loadData} in the same pass as the rows are loaded, see
+ * {@linkplain wyq.toolbox.datamodel.Table#setCollectStatistics(boolean)
+ * setCollectStatistics}.
+ * </p>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class ColumnStatistics {
+
+	private long count = 0;
+	private long nullCount = 0;
+	private Object min;
+	private Object max;
+	private final HyperLogLog distinct = new HyperLogLog();
+	private boolean numeric = true;
+	private long longSum = 0;
+	private double doubleSum = 0;
+	private boolean floating = false;
+
+	void add(Object value) {
+		count++;
+		if (value == null) {
+			nullCount++;
+			return;
+		}
+		if (min == null || Values.compare(value, min) < 0) {
+			min = value;
+		}
+		if (max == null || Values.compare(value, max) > 0) {
+			max = value;
+		}
+		distinct.add(value);
+		if (numeric) {
+			addNumber(value);
+		}
+	}
+
+	private void addNumber(Object value) {
+		Number number;
+		if (value instanceof Number) {
+			number = (Number) value;
+		} else if (value instanceof String) {
+			try {
+				number = Values.toNumber(value);
+			} catch (NumberFormatException e) {
+				// not a numeric column, stop parsing the strings
+				numeric = false;
+				return;
+			}
+		} else {
+			numeric = false;
+			return;
+		}
+		if (!floating && Values.isIntegral(number)) {
+			long n = number.longValue();
+			long sum = longSum + n;
+			// switch to double on overflow
+			if (((longSum ^ sum) & (n ^ sum)) >= 0) {
+				longSum = sum;
+				return;
+			}
+		}
+		if (!floating) {
+			doubleSum = longSum;
+			floating = true;
+		}
+		doubleSum += number.doubleValue();
+	}
+
+	/**
+	 * Add the statistics of another part of the same column.
+	 */
+	void merge(ColumnStatistics other) {
+		count += other.count;
+		nullCount += other.nullCount;
+		if (other.min != null
+				&& (min == null || Values.compare(other.min, min) < 0)) {
+			min = other.min;
+		}
+		if (other.max != null
+				&& (max == null || Values.compare(other.max, max) > 0)) {
+			max = other.max;
+		}
+		distinct.merge(other.distinct);
+		numeric &= other.numeric;
+		if (numeric) {
+			if (other.floating) {
+				addNumber(other.doubleSum);
+			} else {
+				addNumber(other.longSum);
+			}
+		}
+	}
+
+	/**
+	 * Returns the count of the values, including the nulls.
+	 *
+	 * @return
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	public long getNullCount() {
+		return nullCount;
+	}
+
+	/**
+	 * Returns the smallest non-null value, or null if all the values are null.
+	 *
+	 * @return
+	 */
+	public Object getMin() {
+		return min;
+	}
+
+	/**
+	 * Returns the largest non-null value, or null if all the values are null.
+	 *
+	 * @return
+	 */
+	public Object getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns the estimated count of the distinct non-null values.
+	 *
+	 * @return
+	 */
+	public long getDistinctCount() {
+		return Math.min(distinct.estimate(), count - nullCount);
+	}
+
+	/**
+	 * Returns true if all the non-null values are numbers or strings of
+	 * numbers, and there is at least one.
+	 *
+	 * @return
+	 */
+	public boolean isNumeric() {
+		return numeric && count > nullCount;
+	}
+
+	/**
+	 * Returns the sum of the values of a numeric column, a Long if all the
+	 * values are integral or a Double otherwise. Returns null if the column is
+	 * not numeric.
+	 *
+	 * @return
+	 */
+	public Number getSum() {
+		if (!isNumeric()) {
+			return null;
+		}
+		return floating ? (Number) doubleSum : (Number) longSum;
+	}
+
+	/**
+	 * Returns the mean of the values of a numeric column, or null if the
+	 * column is not numeric.
+	 *
+	 * @return
+	 */
+	public Double getMean() {
+		if (!isNumeric()) {
+			return null;
+		}
+		return getSum().doubleValue() / (count - nullCount);
+	}
+
+	@Override
+	public String toString() {
+		return "ColumnStatistics[count=" + count + ", nullCount=" + nullCount
+				+ ", min=" + min + ", max=" + max + ", distinct="
+				+ getDistinctCount() + ", sum=" + getSum() + ", mean="
+				+ getMean() + "]";
+	}
+
+}
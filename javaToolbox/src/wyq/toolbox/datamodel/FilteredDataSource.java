@@ -0,0 +1,125 @@
+package wyq.toolbox.datamodel;
+
+/**
+ * This class drops the rows of a
+ * {@linkplain wyq.toolbox.datamodel.TableDataSource TableDataSource} which do
+ * not match a {@linkplain RowFilter RowFilter} before they are stored into a
+ * table. The filter is evaluated a batch at a time on a view of the batch, so
+ * it can use the columns of the data source only.
+ *
+ * <pre>
+ * Table table = new MemoryTable(new FilteredDataSource(dataSource,
+ * 		RowFilter.gt(&quot;price&quot;, 100)));
+ * </pre>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class FilteredDataSource implements BatchTableDataSource {
+
+	private final BatchTableDataSource dataSource;
+	private final RowFilter filter;
+	private final BatchView view = new BatchView();
+	private int[] positions;
+	private Object[] values;
+
+	// the batch read by nextRow
+	private RowBatch rowBatch;
+	private int row = -1;
+	private int value = -1;
+
+	public FilteredDataSource(TableDataSource dataSource, RowFilter filter) {
+		this.dataSource = BatchDataSourceAdapter.of(dataSource);
+		this.filter = filter;
+	}
+
+	@Override
+	public int nextBatch(RowBatch batch) throws Exception {
+		while (dataSource.nextBatch(batch) > 0) {
+			int count = batch.size();
+			if (positions == null || positions.length < count) {
+				positions = new int[count];
+				values = new Object[count];
+			}
+			for (int i = 0; i < count; i++) {
+				positions[i] = i;
+			}
+			view.batch = batch;
+			try {
+				count = filter.filter(view, positions, count, values);
+			} finally {
+				view.batch = null;
+			}
+			batch.retain(positions, count);
+			if (count > 0) {
+				return count;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public boolean nextColumn() throws Exception {
+		if (!dataSource.nextColumn()) {
+			return false;
+		}
+		view.columnNames.add(dataSource.getColumnName());
+		return true;
+	}
+
+	@Override
+	public String getColumnName() throws Exception {
+		return dataSource.getColumnName();
+	}
+
+	@Override
+	public Class<?> getColumnType() throws Exception {
+		return dataSource.getColumnType();
+	}
+
+	@Override
+	public boolean nextRow() throws Exception {
+		if (rowBatch == null) {
+			rowBatch = new RowBatch(view.columnNames.size());
+		}
+		value = -1;
+		if (++row < rowBatch.size()) {
+			return true;
+		}
+		row = 0;
+		return nextBatch(rowBatch) > 0;
+	}
+
+	@Override
+	public boolean nextRowValue() throws Exception {
+		return ++value < rowBatch.getRowLength(row);
+	}
+
+	@Override
+	public Object getRowValue() throws Exception {
+		return rowBatch.getValueAt(row, value);
+	}
+
+	/**
+	 * This class shows a batch as a table for the filter.
+	 */
+	private static class BatchView extends Table {
+
+		RowBatch batch;
+
+		@Override
+		public Object getValueAt(int row, int column) {
+			if (row < 0 || row >= batch.size() || column < 0
+					|| column >= batch.getRowLength(row)) {
+				return null;
+			}
+			return batch.getValueAt(row, column);
+		}
+
+		@Override
+		public int size() {
+			return batch == null ? 0 : batch.size();
+		}
+	}
+
+}
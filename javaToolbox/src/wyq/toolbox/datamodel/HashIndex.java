@@ -0,0 +1,90 @@
+package wyq.toolbox.datamodel;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class implements the hash index for the equality lookups. Each distinct
+ * key is mapped to its first and last row, and the rows with the same key are
+ * chained through an int array, so no objects are created per row.
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class HashIndex extends TableIndex {
+
+	// first and last row of each key
+	private final Map<Object, int[]> keyRows;
+	private final int[] nextRows;
+
+	HashIndex(Table table, int[] columns) {
+		this(table, columns, 16);
+	}
+
+	HashIndex(Table table, int[] columns, int expectedKeys) {
+		super(table, columns);
+		int rows = table.size();
+		keyRows = new HashMap<Object, int[]>(Math.max(16,
+				(int) (expectedKeys / 0.75f) + 1));
+		nextRows = new int[rows];
+		for (int row = 0; row < rows; row++) {
+			nextRows[row] = -1;
+			Object key = Values.key(keyOf(row));
+			int[] firstAndLast = keyRows.get(key);
+			if (firstAndLast == null) {
+				keyRows.put(key, new int[] { row, row });
+			} else {
+				nextRows[firstAndLast[1]] = row;
+				firstAndLast[1] = row;
+			}
+		}
+	}
+
+	/**
+	 * Returns the count of the distinct keys.
+	 *
+	 * @return
+	 */
+	public int getKeyCount() {
+		return keyRows.size();
+	}
+
+	@Override
+	public int[] lookup(Object... key) {
+		checkKey(key, false);
+		int[] firstAndLast = keyRows.get(Values.key(key));
+		if (firstAndLast == null) {
+			return NO_ROWS;
+		}
+		int count = 0;
+		for (int row = firstAndLast[0]; row >= 0; row = nextRows[row]) {
+			count++;
+		}
+		int[] rows = new int[count];
+		count = 0;
+		for (int row = firstAndLast[0]; row >= 0; row = nextRows[row]) {
+			rows[count++] = row;
+		}
+		return rows;
+	}
+
+	@Override
+	public int first(Object... key) {
+		checkKey(key, false);
+		int[] firstAndLast = keyRows.get(Values.key(key));
+		return firstAndLast == null ? -1 : firstAndLast[0];
+	}
+
+	/**
+	 * Returns the position of the next row with the same key as the specified
+	 * row, or -1 if it is the last one. Use it with {@link #first(Object...)}
+	 * to walk through the matching rows without creating arrays.
+	 *
+	 * @param row
+	 * @return
+	 */
+	public int next(int row) {
+		return nextRows[row];
+	}
+
+}
@@ -0,0 +1,91 @@
+package wyq.toolbox.datamodel;
+
+/**
+ * This class estimates the count of the distinct values with the HyperLogLog
+ * algorithm in a fixed 4KB of memory, the standard error is about 1.6%.
+ *
+ * @author dewafer
+ * @version 1
+ */
+class HyperLogLog {
+
+	private static final int PRECISION = 12;
+	private static final int REGISTERS = 1 << PRECISION;
+	private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+	private final byte[] registers = new byte[REGISTERS];
+
+	void add(Object value) {
+		long hash = hash(value);
+		int index = (int) (hash >>> (64 - PRECISION));
+		// the sentinel bit limits the rank when the rest bits are all zero
+		long rest = (hash << PRECISION) | (1L << (PRECISION - 1));
+		byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+		if (rank > registers[index]) {
+			registers[index] = rank;
+		}
+	}
+
+	void merge(HyperLogLog other) {
+		for (int i = 0; i < REGISTERS; i++) {
+			if (other.registers[i] > registers[i]) {
+				registers[i] = other.registers[i];
+			}
+		}
+	}
+
+	long estimate() {
+		double sum = 0;
+		int zeros = 0;
+		for (byte register : registers) {
+			sum += 1.0 / (1L << register);
+			if (register == 0) {
+				zeros++;
+			}
+		}
+		double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+		if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+			// linear counting for the small cardinalities
+			estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	/**
+	 * 64 bits hash of the value, the numbers of the same value have the same
+	 * hash.
+	 */
+	static long hash(Object value) {
+		value = Values.normalize(value);
+		long h;
+		if (value instanceof String) {
+			// FNV-1a over the chars
+			String s = (String) value;
+			h = 0xcbf29ce484222325L;
+			for (int i = 0; i < s.length(); i++) {
+				h ^= s.charAt(i);
+				h *= 0x100000001b3L;
+			}
+		} else if (value instanceof Long) {
+			h = (Long) value;
+		} else if (value instanceof Double) {
+			h = Double.doubleToLongBits((Double) value);
+		} else {
+			h = value.hashCode();
+		}
+		return mix(h);
+	}
+
+	/**
+	 * The finalizer of MurmurHash3, spreads the bits over the whole long.
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
@@ -0,0 +1,13 @@
+package wyq.toolbox.datamodel;
+
+/**
+ * Compares two row positions without boxing them.
+ *
+ * @author dewafer
+ * @version 1
+ */
+interface IntComparator {
+
+	int compare(int a, int b);
+
+}
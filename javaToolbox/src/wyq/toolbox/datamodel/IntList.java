@@ -0,0 +1,60 @@
+package wyq.toolbox.datamodel;
+
+import java.util.Arrays;
+
+/**
+ * This class is a growable array of int values, used for the row positions.
+ *
+ * @author dewafer
+ * @version 1
+ */
+class IntList {
+
+	private int[] values;
+	private int size;
+
+	IntList() {
+		this(16);
+	}
+
+	IntList(int capacity) {
+		values = new int[Math.max(capacity, 1)];
+	}
+
+	void add(int value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+		values[size++] = value;
+	}
+
+	int get(int i) {
+		return values[i];
+	}
+
+	int size() {
+		return size;
+	}
+
+	int[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+
+	/**
+	 * Concatenate the lists into one array.
+	 */
+	static int[] concat(Iterable<IntList> lists) {
+		int total = 0;
+		for (IntList list : lists) {
+			total += list.size;
+		}
+		int[] result = new int[total];
+		int offset = 0;
+		for (IntList list : lists) {
+			System.arraycopy(list.values, 0, result, offset, list.size);
+			offset += list.size;
+		}
+		return result;
+	}
+
+}
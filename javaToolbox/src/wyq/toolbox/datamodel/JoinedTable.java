@@ -0,0 +1,125 @@
+package wyq.toolbox.datamodel;
+
+import java.util.List;
+
+/**
+ * This class is the read-only result of
+ * {@linkplain wyq.toolbox.datamodel.TableJoin TableJoin}. Each row is a pair
+ * of a row of the left table and a row of the right table, the values are read
+ * from the two tables when they are accessed. The columns of the left table
+ * come first, followed by the columns of the right table.
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class JoinedTable extends Table {
+
+	private final Table left;
+	private final Table right;
+	private int[] leftRows;
+	private int[] rightRows;
+	private final int[] rightColumns;
+	private final int leftColumnCount;
+
+	/**
+	 * @param rightRows
+	 *            -1 means no row of the right table, the values are null.
+	 * @param rightColumns
+	 *            the columns of the right table in the result.
+	 * @param names
+	 *            the names of all the result columns.
+	 */
+	JoinedTable(Table left, int[] leftRows, Table right, int[] rightRows,
+			int[] rightColumns, List<String> names) {
+		this.left = left;
+		this.right = right;
+		this.leftRows = leftRows;
+		this.rightRows = rightRows;
+		this.rightColumns = rightColumns;
+		this.leftColumnCount = left.getColumnCount();
+		columnNames.addAll(names);
+		for (int i = 0; i < leftColumnCount; i++) {
+			columnTypes.add(left.getColumnType(i));
+		}
+		for (int column : rightColumns) {
+			columnTypes.add(right.getColumnType(column));
+		}
+	}
+
+	/**
+	 * The rows of a join result can not be loaded.
+	 */
+	@Override
+	protected void loadData(TableDataSource dataSource) throws Exception {
+		throw new UnsupportedOperationException(
+				"the rows of a join result can not be loaded");
+	}
+
+	public Table getLeftTable() {
+		return left;
+	}
+
+	public Table getRightTable() {
+		return right;
+	}
+
+	/**
+	 * Returns the position of the row in the left table.
+	 *
+	 * @param row
+	 * @return
+	 */
+	public int getLeftRow(int row) {
+		return leftRows[row];
+	}
+
+	/**
+	 * Returns the position of the row in the right table, or -1 if there is
+	 * no matched row in a left join.
+	 *
+	 * @param row
+	 * @return
+	 */
+	public int getRightRow(int row) {
+		return rightRows[row];
+	}
+
+	@Override
+	public int size() {
+		return leftRows.length;
+	}
+
+	/**
+	 * Sorting a join result reorders the pairs of the rows only, the joined
+	 * tables are not changed.
+	 */
+	@Override
+	protected void reorder(int[] permutation) {
+		int[] sortedLeft = new int[permutation.length];
+		int[] sortedRight = new int[permutation.length];
+		for (int i = 0; i < permutation.length; i++) {
+			sortedLeft[i] = leftRows[permutation[i]];
+			sortedRight[i] = rightRows[permutation[i]];
+		}
+		leftRows = sortedLeft;
+		rightRows = sortedRight;
+	}
+
+	@Override
+	public Object getValueAt(int row, int column) {
+		if (row < 0 || row >= leftRows.length || column < 0
+				|| column >= columnNames.size()) {
+			return null;
+		}
+		if (column < leftColumnCount) {
+			return left.getValueAt(leftRows[row], column);
+		}
+		int rightRow = rightRows[row];
+		if (rightRow < 0) {
+			return null;
+		}
+		return right.getValueAt(rightRow, rightColumns[column
+				- leftColumnCount]);
+	}
+
+}
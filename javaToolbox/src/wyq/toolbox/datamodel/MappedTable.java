@@ -0,0 +1,221 @@
+package wyq.toolbox.datamodel;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import wyq.toolbox.util.BufferUtils;
+
+/**
+ * This class loads a table file written by
+ * {@linkplain wyq.toolbox.datamodel.TableFileWriter TableFileWriter}. Only the
+ * header is read when the table is created, each column block is
+ * memory-mapped on its first access and the values are read from the mapped
+ * buffers directly, so there is no deserialization pass. The compressed column
+ * blocks are inflated into direct buffers on their first access.
+ * <p>
+ * Call {@link #close()} to unmap the file.
+ * </p>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class MappedTable extends OffHeapTable {
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private ColumnEncoding[] encodings;
+	private long[] blocks;
+	private List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+	private String source;
+
+	public MappedTable(File tableFile) throws IOException {
+		file = new RandomAccessFile(tableFile, "r");
+		channel = file.getChannel();
+		try {
+			readHeader();
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the source written by
+	 * {@link TableFileWriter#write(Table, File, String)}, or an empty string
+	 * if the table is written without a source.
+	 * 
+	 * @return
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * MappedTable does not load from a data source.
+	 */
+	@Override
+	protected void loadData(TableDataSource dataSource) throws Exception {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * MappedTable is read-only, sort a
+	 * {@linkplain wyq.toolbox.datamodel.TableView TableView} of it instead.
+	 */
+	@Override
+	public void sort(String[] columns, boolean[] ascending, int threads) {
+		throw new UnsupportedOperationException("MappedTable is read-only");
+	}
+
+	private void readHeader() throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				Channels.newInputStream(channel)));
+		if (in.readInt() != TableFileWriter.MAGIC) {
+			throw new IOException("not a table file");
+		}
+		short version = in.readShort();
+		if (version != TableFileWriter.VERSION) {
+			throw new IOException("unsupported table file version:" + version);
+		}
+		in.readShort();
+		source = in.readUTF();
+		rows = in.readInt();
+		int columnCount = in.readInt();
+		encodings = new ColumnEncoding[columnCount];
+		for (int col = 0; col < columnCount; col++) {
+			columnNames.add(in.readUTF());
+			encodings[col] = ColumnEncoding.valueOf(in.readUTF());
+			columnTypes.add(toClass(in.readUTF()));
+		}
+		blocks = new long[columnCount * 2];
+		for (int i = 0; i < blocks.length; i++) {
+			blocks[i] = in.readLong();
+		}
+		columns = new OffHeapColumn[columnCount];
+	}
+
+	private static Class<?> toClass(String className) {
+		if (className.length() == 0) {
+			return null;
+		}
+		try {
+			return Class.forName(className);
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	@Override
+	synchronized OffHeapColumn column(int i) {
+		if (columns[i] == null) {
+			try {
+				columns[i] = mapColumn(i);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return columns[i];
+	}
+
+	private OffHeapColumn mapColumn(int col) throws IOException {
+		ByteBuffer block = channel.map(MapMode.READ_ONLY, blocks[col * 2],
+				blocks[col * 2 + 1]);
+		buffers.add(block);
+		byte compression = block.get(0);
+		long rawLength = block.getLong(1);
+		block.position(9);
+		ByteBuffer payload;
+		if (compression == TableFileWriter.UNCOMPRESSED) {
+			payload = block.slice();
+		} else if (compression == TableFileWriter.DEFLATE) {
+			payload = inflate(block, rawLength);
+			buffers.add(payload);
+		} else {
+			throw new IOException("unknown compression:" + compression);
+		}
+
+		ColumnEncoding encoding = encodings[col];
+		int bitmap = (rows + 7) >> 3;
+		ByteBuffer nulls = slice(payload, 0, bitmap);
+		if (encoding.isFixedWidth()) {
+			ByteBuffer data = slice(payload, bitmap, payload.capacity());
+			return new OffHeapColumn(encoding, rows, nulls, data, null);
+		}
+		int dataStart = bitmap + 4 * (rows + 1);
+		ByteBuffer offsets = slice(payload, bitmap, dataStart);
+		ByteBuffer data = slice(payload, dataStart, payload.capacity());
+		return new OffHeapColumn(encoding, rows, nulls, data, offsets);
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int from, int to) {
+		ByteBuffer dup = buffer.duplicate();
+		dup.limit(to);
+		dup.position(from);
+		return dup.slice();
+	}
+
+	private static ByteBuffer inflate(ByteBuffer block, long rawLength)
+			throws IOException {
+		if (rawLength > Integer.MAX_VALUE) {
+			throw new IOException("column is larger than 2GB");
+		}
+		ByteBuffer payload = ByteBuffer.allocateDirect((int) rawLength);
+		Inflater inflater = new Inflater();
+		byte[] input = new byte[64 * 1024];
+		byte[] output = new byte[64 * 1024];
+		try {
+			while (!inflater.finished()) {
+				if (inflater.needsInput()) {
+					if (!block.hasRemaining()) {
+						throw new IOException("unexpected end of column block");
+					}
+					int length = Math.min(input.length, block.remaining());
+					block.get(input, 0, length);
+					inflater.setInput(input, 0, length);
+				}
+				int inflated = inflater.inflate(output);
+				payload.put(output, 0, inflated);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException(e);
+		} finally {
+			inflater.end();
+		}
+		payload.clear();
+		return payload;
+	}
+
+	/**
+	 * Unmap the column blocks and close the file.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		closed = true;
+		for (ByteBuffer buffer : buffers) {
+			BufferUtils.release(buffer);
+		}
+		buffers.clear();
+		if (columns != null) {
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = null;
+			}
+		}
+		if (file != null) {
+			file.close();
+			file = null;
+			channel = null;
+		}
+	}
+
+}
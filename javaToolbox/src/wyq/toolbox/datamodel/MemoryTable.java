@@ -0,0 +1,63 @@
+package wyq.toolbox.datamodel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is a Table whose rows are added by the program, for example the
+ * results of {@linkplain wyq.toolbox.datamodel.TableQuery TableQuery}. It can
+ * also be loaded from a
+ * {@linkplain wyq.toolbox.datamodel.TableDataSource TableDataSource}.
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class MemoryTable extends Table {
+
+	/**
+	 * Create an empty table with the specified columns.
+	 *
+	 * @param columnNames
+	 * @param columnTypes
+	 */
+	public MemoryTable(List<String> columnNames, List<Class<?>> columnTypes) {
+		if (columnNames.size() != columnTypes.size()) {
+			throw new IllegalArgumentException(
+					"the count of the column names and types are different");
+		}
+		this.columnNames.addAll(columnNames);
+		this.columnTypes.addAll(columnTypes);
+		initDictionaries();
+	}
+
+	/**
+	 * Create a table and load all the data of the data source.
+	 *
+	 * @param dataSource
+	 * @throws Exception
+	 */
+	public MemoryTable(TableDataSource dataSource) throws Exception {
+		loadData(dataSource);
+	}
+
+	/**
+	 * Append a copy of the row to the table, the row should have one value for
+	 * each column.
+	 */
+	@Override
+	public void addRow(List<Object> dataRow) {
+		if (dataRow.size() != columnNames.size()) {
+			throw new IllegalArgumentException("the table has "
+					+ columnNames.size() + " columns but the row has "
+					+ dataRow.size() + " values");
+		}
+		try {
+			super.addRow(new ArrayList<Object>(dataRow));
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
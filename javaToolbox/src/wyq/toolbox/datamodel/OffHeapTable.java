@@ -0,0 +1,377 @@
+package wyq.toolbox.datamodel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import wyq.toolbox.util.BufferUtils;
+
+/**
+ * This class extends Table and keeps the data out of the java heap. Each
+ * column is stored in direct <code>ByteBuffer</code>s: the numbers, booleans
+ * and dates are encoded with a fixed width, the strings and the other objects
+ * are stored as offsets and bytes. The nulls are kept in a bitmap.
+ * <p>
+ * The column type declared by the data source decides the encoding, if it's
+ * unknown the class of the first non-null value is used. A column falls back
+ * to the object encoding if a value does not match its encoding. Values beyond
+ * the declared columns are dropped.
+ * </p>
+ * <p>
+ * The typed getters (getInt/getLong/getDouble/getBoolean/isNull) read the
+ * fixed-width columns without creating any objects. Call {@link #close()} to
+ * release the memory at once.
+ * </p>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class OffHeapTable extends Table implements Closeable {
+
+	static final int INITIAL_CAPACITY = 1024;
+
+	OffHeapColumn[] columns;
+	int rows = 0;
+	boolean closed = false;
+
+	/**
+	 * For the subclasses which provide the column buffers by themselves.
+	 */
+	OffHeapTable() {
+	}
+
+	public OffHeapTable(TableDataSource dataSource) throws Exception {
+		// the strings are kept in the buffers, not shared in the heap
+		setDictionaryLimit(0);
+		try {
+			loadData(dataSource);
+		} catch (Exception e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * This method overrides
+	 * {@linkplain wyq.toolbox.datamodel.Table#loadData(TableDataSource)
+	 * super.loadData} to encode the rows into the direct buffers.
+	 */
+	@Override
+	protected void loadData(TableDataSource dataSource) throws Exception {
+		super.loadData(dataSource);
+		initColumns();
+	}
+
+	@Override
+	protected void addRow(List<Object> dataRow) throws Exception {
+		initColumns();
+		for (int i = 0; i < columns.length; i++) {
+			columns[i].append(rows, i < dataRow.size() ? dataRow.get(i) : null);
+		}
+		rows++;
+	}
+
+	private void initColumns() {
+		if (columns == null) {
+			columns = new OffHeapColumn[getColumnCount()];
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = new OffHeapColumn(
+						ColumnEncoding.of(getColumnType(i)));
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return rows;
+	}
+
+	@Override
+	public Object getValueAt(int row, int column) {
+		if (!inRange(row, column))
+			return null;
+		return column(column).get(row);
+	}
+
+	@Override
+	public boolean isNull(int i) {
+		int row = getRow();
+		if (!inRange(row, i))
+			return true;
+		return column(i).isNull(row);
+	}
+
+	@Override
+	public long getLong(int i) {
+		int row = getRow();
+		if (isFixedWidth(row, i))
+			return column(i).getLong(row);
+		return super.getLong(i);
+	}
+
+	@Override
+	public double getDouble(int i) {
+		int row = getRow();
+		if (isFixedWidth(row, i))
+			return column(i).getDouble(row);
+		return super.getDouble(i);
+	}
+
+	@Override
+	public boolean getBoolean(int i) {
+		int row = getRow();
+		if (isFixedWidth(row, i))
+			return column(i).getDouble(row) != 0;
+		return super.getBoolean(i);
+	}
+
+	/**
+	 * This method overrides
+	 * {@linkplain wyq.toolbox.datamodel.Table#reorder(int[]) super.reorder} to
+	 * rebuild the column buffers in the sorted order.
+	 */
+	@Override
+	protected void reorder(int[] permutation) {
+		if (columns == null) {
+			return;
+		}
+		try {
+			for (int i = 0; i < columns.length; i++) {
+				OffHeapColumn column = column(i);
+				OffHeapColumn sorted = new OffHeapColumn(column.encoding);
+				for (int row = 0; row < permutation.length; row++) {
+					sorted.append(row, column.get(permutation[row]));
+				}
+				column.release();
+				columns[i] = sorted;
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private boolean inRange(int row, int column) {
+		if (closed)
+			throw new IllegalStateException("table is closed");
+		return row >= 0 && row < rows && column >= 0
+				&& column < getColumnCount();
+	}
+
+	/**
+	 * Returns the storage of the column.
+	 */
+	OffHeapColumn column(int i) {
+		return columns[i];
+	}
+
+	private boolean isFixedWidth(int row, int column) {
+		if (!inRange(row, column))
+			return false;
+		ColumnEncoding encoding = column(column).encoding;
+		return encoding != null && encoding.isFixedWidth();
+	}
+
+	/**
+	 * Release all the direct buffers. The table can not be read any more.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		if (columns != null) {
+			for (OffHeapColumn column : columns) {
+				if (column != null)
+					column.release();
+			}
+		}
+	}
+
+	/**
+	 * The storage of one column.
+	 */
+	static class OffHeapColumn {
+
+		ColumnEncoding encoding;
+		int capacity = 0;
+		ByteBuffer nulls;
+		ByteBuffer data;
+		// offsets of the variable-width values, value i is [i, i + 1)
+		ByteBuffer offsets;
+		int dataLength = 0;
+
+		OffHeapColumn(ColumnEncoding encoding) {
+			this.encoding = encoding;
+		}
+
+		/**
+		 * Create a read-only column over the existing buffers.
+		 */
+		OffHeapColumn(ColumnEncoding encoding, int rows, ByteBuffer nulls,
+				ByteBuffer data, ByteBuffer offsets) {
+			this.encoding = encoding;
+			this.capacity = rows;
+			this.nulls = nulls;
+			this.data = data;
+			this.offsets = offsets;
+		}
+
+		void append(int row, Object value) throws IOException {
+			if (encoding == null && value != null) {
+				// the previous values are all null, the encoding is decided by
+				// the first non-null value.
+				encoding = ColumnEncoding.of(value.getClass());
+				if (capacity > 0)
+					growData(capacity);
+			} else if (encoding != null && !encoding.accepts(value)) {
+				toObjectEncoding(row);
+			}
+			ensureCapacity(row + 1);
+			if (value == null) {
+				nulls.put(row >> 3,
+						(byte) (nulls.get(row >> 3) | (1 << (row & 7))));
+			}
+			if (encoding == null) {
+				return;
+			}
+			if (encoding.isFixedWidth()) {
+				if (value != null)
+					encoding.put(data, row * encoding.width, value);
+			} else {
+				if (value != null) {
+					byte[] bytes = encoding.toBytes(value);
+					ensureDataCapacity((long) dataLength + bytes.length);
+					data.position(dataLength);
+					data.put(bytes);
+					dataLength += bytes.length;
+				}
+				offsets.putInt((row + 1) * 4, dataLength);
+			}
+		}
+
+		private void toObjectEncoding(int rows) throws IOException {
+			OffHeapColumn objects = new OffHeapColumn(ColumnEncoding.OBJECT);
+			for (int i = 0; i < rows; i++) {
+				objects.append(i, get(i));
+			}
+			release();
+			encoding = objects.encoding;
+			capacity = objects.capacity;
+			nulls = objects.nulls;
+			data = objects.data;
+			offsets = objects.offsets;
+			dataLength = objects.dataLength;
+		}
+
+		private void ensureCapacity(int rows) {
+			if (rows <= capacity) {
+				return;
+			}
+			int newCapacity = Math.max(INITIAL_CAPACITY, capacity);
+			while (newCapacity < rows) {
+				newCapacity = newCapacity << 1;
+				if (newCapacity < 0) {
+					throw new IllegalStateException("too many rows");
+				}
+			}
+			nulls = grow(nulls, (newCapacity + 7) >> 3);
+			if (encoding != null) {
+				growData(newCapacity);
+			}
+			capacity = newCapacity;
+		}
+
+		private void growData(int newCapacity) {
+			if (encoding.isFixedWidth()) {
+				data = grow(data, checkedSize((long) newCapacity
+						* encoding.width));
+			} else {
+				offsets = grow(offsets,
+						checkedSize(((long) newCapacity + 1) * 4));
+				if (data == null) {
+					data = grow(null, INITIAL_CAPACITY * 16);
+				}
+			}
+		}
+
+		private void ensureDataCapacity(long bytes) {
+			if (bytes <= data.capacity()) {
+				return;
+			}
+			long newCapacity = data.capacity();
+			while (newCapacity < bytes) {
+				newCapacity = newCapacity << 1;
+			}
+			data = grow(data, checkedSize(Math.min(newCapacity,
+					Integer.MAX_VALUE - 8)));
+			if (data.capacity() < bytes) {
+				throw new IllegalStateException(
+						"a column can not hold more than 2GB of data");
+			}
+		}
+
+		private static int checkedSize(long size) {
+			if (size > Integer.MAX_VALUE - 8) {
+				throw new IllegalStateException(
+						"a column can not hold more than 2GB of data");
+			}
+			return (int) size;
+		}
+
+		private static ByteBuffer grow(ByteBuffer old, int size) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+			if (old != null) {
+				ByteBuffer src = old.duplicate();
+				src.clear();
+				buffer.put(src);
+				buffer.clear();
+				BufferUtils.release(old);
+			}
+			return buffer;
+		}
+
+		boolean isNull(int row) {
+			return (nulls.get(row >> 3) & (1 << (row & 7))) != 0;
+		}
+
+		Object get(int row) {
+			if (encoding == null || isNull(row)) {
+				return null;
+			}
+			if (encoding.isFixedWidth()) {
+				return encoding.get(data, row * encoding.width);
+			}
+			int start = offsets.getInt(row * 4);
+			int end = offsets.getInt((row + 1) * 4);
+			ByteBuffer in = data.duplicate();
+			in.limit(end);
+			in.position(start);
+			try {
+				return encoding.fromBytes(in);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		long getLong(int row) {
+			if (isNull(row))
+				return 0;
+			return encoding.getLong(data, row * encoding.width);
+		}
+
+		double getDouble(int row) {
+			if (isNull(row))
+				return 0;
+			return encoding.getDouble(data, row * encoding.width);
+		}
+
+		void release() {
+			BufferUtils.release(nulls);
+			BufferUtils.release(data);
+			BufferUtils.release(offsets);
+			nulls = null;
+			data = null;
+			offsets = null;
+		}
+	}
+
+}
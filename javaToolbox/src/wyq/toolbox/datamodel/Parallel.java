@@ -0,0 +1,88 @@
+package wyq.toolbox.datamodel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class splits the rows into ranges for several threads and runs the
+ * tasks of the ranges.
+ *
+ * @author dewafer
+ * @version 1
+ */
+class Parallel {
+
+	// a range smaller than this is not worth a thread
+	static final int MIN_PARTITION_ROWS = 64 * 1024;
+
+	/**
+	 * Returns the number of the ranges for the rows.
+	 */
+	static int partitions(int rows, int threads) {
+		return Math.max(1, Math.min(threads, rows / MIN_PARTITION_ROWS));
+	}
+
+	/**
+	 * Returns the start of the range p, the end is the start of p + 1.
+	 */
+	static int start(int rows, int partitions, int p) {
+		return (int) ((long) rows * p / partitions);
+	}
+
+	/**
+	 * Run the tasks and returns their results in the order of the tasks. A
+	 * single task is run by the current thread.
+	 */
+	static <T> List<T> run(List<Callable<T>> tasks) {
+		return run(tasks, tasks.size());
+	}
+
+	/**
+	 * Run the tasks by at most <code>threads</code> threads and returns their
+	 * results in the order of the tasks. The tasks are run by the current
+	 * thread if there is only one thread.
+	 */
+	static <T> List<T> run(List<Callable<T>> tasks, int threads) {
+		List<T> results = new ArrayList<T>();
+		threads = Math.min(threads, tasks.size());
+		if (threads <= 1) {
+			for (Callable<T> task : tasks) {
+				try {
+					results.add(task.call());
+				} catch (RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+			return results;
+		}
+		ExecutorService exec = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<T>> futures = new ArrayList<Future<T>>();
+			for (Callable<T> task : tasks) {
+				futures.add(exec.submit(task));
+			}
+			for (Future<T> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} finally {
+			exec.shutdownNow();
+		}
+	}
+
+}
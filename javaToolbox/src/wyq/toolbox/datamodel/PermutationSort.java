@@ -0,0 +1,146 @@
+package wyq.toolbox.datamodel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * This class sorts an array of row positions with a stable merge sort, so the
+ * rows with equal keys keep their original order.
+ *
+ * @author dewafer
+ * @version 1
+ */
+class PermutationSort {
+
+	private static final int INSERTION_SORT_THRESHOLD = 32;
+
+	/**
+	 * Returns the positions 0 to size - 1.
+	 */
+	static int[] identity(int size) {
+		int[] rows = new int[size];
+		for (int i = 0; i < size; i++) {
+			rows[i] = i;
+		}
+		return rows;
+	}
+
+	static void sort(int[] rows, IntComparator comparator) {
+		int[] buffer = rows.clone();
+		mergeSort(buffer, rows, 0, rows.length, comparator);
+	}
+
+	/**
+	 * Sort the ranges of the array by several threads and merge them pair by
+	 * pair, the pairs of a round are also merged in parallel.
+	 */
+	static void parallelSort(int[] rows, final IntComparator comparator,
+			int threads) {
+		int partitions = Parallel.partitions(rows.length, threads);
+		if (partitions == 1) {
+			sort(rows, comparator);
+			return;
+		}
+		final int[] buffer = rows.clone();
+		final int[] sorted = rows;
+		int[] bounds = new int[partitions + 1];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int p = 0; p <= partitions; p++) {
+			bounds[p] = Parallel.start(rows.length, partitions, p);
+		}
+		for (int p = 0; p < partitions; p++) {
+			final int from = bounds[p];
+			final int to = bounds[p + 1];
+			tasks.add(new Callable<Void>() {
+
+				@Override
+				public Void call() {
+					mergeSort(buffer, sorted, from, to, comparator);
+					return null;
+				}
+			});
+		}
+		Parallel.run(tasks);
+		int[] src = rows;
+		int[] dest = buffer;
+		while (bounds.length > 2) {
+			int[] merged = new int[bounds.length / 2 + 1];
+			tasks.clear();
+			for (int i = 0; i + 1 < bounds.length; i += 2) {
+				final int[] from = src;
+				final int[] to = dest;
+				final int start = bounds[i];
+				final int mid = bounds[i + 1];
+				final int end = i + 2 < bounds.length ? bounds[i + 2] : mid;
+				merged[i / 2] = start;
+				tasks.add(new Callable<Void>() {
+
+					@Override
+					public Void call() {
+						if (end > mid) {
+							merge(from, to, start, mid, end, comparator);
+						} else {
+							System.arraycopy(from, start, to, start, mid
+									- start);
+						}
+						return null;
+					}
+				});
+			}
+			merged[merged.length - 1] = rows.length;
+			Parallel.run(tasks);
+			bounds = merged;
+			int[] swap = src;
+			src = dest;
+			dest = swap;
+		}
+		if (src != rows) {
+			System.arraycopy(src, 0, rows, 0, rows.length);
+		}
+	}
+
+	/**
+	 * Sort src[from, to) into dest[from, to), both arrays contain the same
+	 * elements at the beginning.
+	 */
+	static void mergeSort(int[] src, int[] dest, int from, int to,
+			IntComparator comparator) {
+		int length = to - from;
+		if (length <= INSERTION_SORT_THRESHOLD) {
+			for (int i = from + 1; i < to; i++) {
+				int value = dest[i];
+				int j = i - 1;
+				while (j >= from && comparator.compare(dest[j], value) > 0) {
+					dest[j + 1] = dest[j];
+					j--;
+				}
+				dest[j + 1] = value;
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(dest, src, from, mid, comparator);
+		mergeSort(dest, src, mid, to, comparator);
+		merge(src, dest, from, mid, to, comparator);
+	}
+
+	/**
+	 * Merge the sorted src[from, mid) and src[mid, to) into dest[from, to).
+	 */
+	static void merge(int[] src, int[] dest, int from, int mid, int to,
+			IntComparator comparator) {
+		if (comparator.compare(src[mid - 1], src[mid]) <= 0) {
+			System.arraycopy(src, from, dest, from, to - from);
+			return;
+		}
+		for (int i = from, p = from, q = mid; i < to; i++) {
+			if (q >= to || p < mid && comparator.compare(src[p], src[q]) <= 0) {
+				dest[i] = src[p++];
+			} else {
+				dest[i] = src[q++];
+			}
+		}
+	}
+
+}
@@ -0,0 +1,145 @@
+package wyq.toolbox.datamodel;
+
+import java.util.Arrays;
+
+/**
+ * This class is a reusable batch of rows filled by a
+ * {@linkplain wyq.toolbox.datamodel.BatchTableDataSource BatchTableDataSource}.
+ * The arrays of the rows are allocated once and reused by each batch, so a
+ * source does not create any object for the batch itself.
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class RowBatch {
+
+	/**
+	 * The default count of the rows of a batch.
+	 */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final Object[][] rows;
+	private final int[] lengths;
+	private int size = 0;
+
+	/**
+	 * Create a batch of {@link #DEFAULT_CAPACITY} rows.
+	 *
+	 * @param columnCount
+	 */
+	public RowBatch(int columnCount) {
+		this(columnCount, DEFAULT_CAPACITY);
+	}
+
+	public RowBatch(int columnCount, int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("the capacity should be positive:"
+					+ capacity);
+		}
+		rows = new Object[capacity][columnCount];
+		lengths = new int[capacity];
+	}
+
+	/**
+	 * Returns the count of the rows in the batch.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getCapacity() {
+		return rows.length;
+	}
+
+	public boolean isFull() {
+		return size == rows.length;
+	}
+
+	/**
+	 * Remove all the rows, the sources call this method before they fill the
+	 * batch.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			// do not keep the values of the last batch alive
+			Arrays.fill(rows[i], 0, lengths[i], null);
+		}
+		size = 0;
+	}
+
+	/**
+	 * Append a row of <code>length</code> empty values to the batch.
+	 *
+	 * @param length
+	 * @return the position of the new row.
+	 */
+	public int addRow(int length) {
+		if (isFull()) {
+			throw new IllegalStateException("the batch is full");
+		}
+		if (rows[size].length < length) {
+			rows[size] = new Object[length];
+		}
+		lengths[size] = length;
+		return size++;
+	}
+
+	/**
+	 * Append a row with a copy of the first <code>length</code> values.
+	 *
+	 * @param values
+	 * @param length
+	 */
+	public void addRow(Object[] values, int length) {
+		System.arraycopy(values, 0, rows[addRow(length)], 0, length);
+	}
+
+	/**
+	 * Keep only the rows at the positions, which are moved to the beginning of
+	 * the batch in their order. The other rows are removed.
+	 *
+	 * @param positions
+	 *            the positions of the rows to keep, in ascending order.
+	 * @param count
+	 *            the number of the positions.
+	 */
+	public void retain(int[] positions, int count) {
+		for (int i = 0; i < count; i++) {
+			int p = positions[i];
+			if (p != i) {
+				// swap the arrays instead of copying the values
+				Object[] values = rows[i];
+				rows[i] = rows[p];
+				rows[p] = values;
+				int length = lengths[i];
+				lengths[i] = lengths[p];
+				lengths[p] = length;
+			}
+		}
+		for (int i = count; i < size; i++) {
+			Arrays.fill(rows[i], 0, lengths[i], null);
+		}
+		size = count;
+	}
+
+	public void setValueAt(int row, int column, Object value) {
+		rows[row][column] = value;
+	}
+
+	public Object getValueAt(int row, int column) {
+		return rows[row][column];
+	}
+
+	/**
+	 * Returns the count of the values of the row.
+	 *
+	 * @param row
+	 * @return
+	 */
+	public int getRowLength(int row) {
+		return lengths[row];
+	}
+
+}
@@ -0,0 +1,378 @@
+package wyq.toolbox.datamodel;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * This abstract class represents a condition on the rows of a Table, used by
+ * {@linkplain wyq.toolbox.datamodel.TableQuery#where(RowFilter)
+ * TableQuery.where}. Use the static methods to create the common conditions,
+ * or extend this class and implement {@link #accept(Table, int)}.
+ * <p>
+ * The conditions are evaluated a batch of rows at a time. The column
+ * conditions read the values of the batch with
+ * {@linkplain wyq.toolbox.datamodel.AbstractTable#getValuesAt(int[], int, int, Object[])
+ * getValuesAt} and compare them in a tight loop. A null value never matches a
+ * comparison. When the operand is a number the string values are compared as
+ * numbers, so the conditions also work on the tables read from the text files.
+ * </p>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public abstract class RowFilter {
+
+	/**
+	 * Returns true if the row of the table is accepted.
+	 *
+	 * @param table
+	 * @param row
+	 * @return
+	 */
+	public abstract boolean accept(Table table, int row);
+
+	/**
+	 * Keep the accepted rows at the beginning of the array, in their original
+	 * order.
+	 *
+	 * @param table
+	 * @param rows
+	 *            the positions of the rows to check.
+	 * @param count
+	 *            the number of the rows to check.
+	 * @param values
+	 *            an array for reading the values, at least <code>count</code>
+	 *            long.
+	 * @return the number of the accepted rows.
+	 */
+	protected int filter(Table table, int[] rows, int count, Object[] values) {
+		int accepted = 0;
+		for (int i = 0; i < count; i++) {
+			if (accept(table, rows[i])) {
+				rows[accepted++] = rows[i];
+			}
+		}
+		return accepted;
+	}
+
+	static int columnOf(Table table, String column) {
+		int i = table.columnNames.indexOf(column);
+		if (i < 0) {
+			throw new IllegalArgumentException("column not found:" + column);
+		}
+		return i;
+	}
+
+	public static RowFilter eq(String column, Object value) {
+		if (value == null) {
+			return isNull(column);
+		}
+		return new Comparison(column, Comparison.EQ, value);
+	}
+
+	public static RowFilter ne(String column, Object value) {
+		if (value == null) {
+			return notNull(column);
+		}
+		return new Comparison(column, Comparison.NE, value);
+	}
+
+	public static RowFilter gt(String column, Object value) {
+		return new Comparison(column, Comparison.GT, value);
+	}
+
+	public static RowFilter ge(String column, Object value) {
+		return new Comparison(column, Comparison.GE, value);
+	}
+
+	public static RowFilter lt(String column, Object value) {
+		return new Comparison(column, Comparison.LT, value);
+	}
+
+	public static RowFilter le(String column, Object value) {
+		return new Comparison(column, Comparison.LE, value);
+	}
+
+	/**
+	 * The value is between low and high, both inclusive.
+	 */
+	public static RowFilter between(String column, Object low, Object high) {
+		return and(ge(column, low), le(column, high));
+	}
+
+	/**
+	 * The value equals one of the specified values.
+	 */
+	public static RowFilter in(String column, Object... values) {
+		return new In(column, values);
+	}
+
+	public static RowFilter isNull(final String column) {
+		return new ColumnFilter(column) {
+
+			@Override
+			boolean test(Object value) {
+				return value == null;
+			}
+		};
+	}
+
+	public static RowFilter notNull(final String column) {
+		return new ColumnFilter(column) {
+
+			@Override
+			boolean test(Object value) {
+				return value != null;
+			}
+		};
+	}
+
+	/**
+	 * The string form of the value starts with the prefix.
+	 */
+	public static RowFilter startsWith(final String column, final String prefix) {
+		return new ColumnFilter(column) {
+
+			@Override
+			boolean test(Object value) {
+				return value != null && value.toString().startsWith(prefix);
+			}
+		};
+	}
+
+	public static RowFilter and(RowFilter... filters) {
+		return new And(filters);
+	}
+
+	public static RowFilter or(final RowFilter... filters) {
+		return new RowFilter() {
+
+			@Override
+			public boolean accept(Table table, int row) {
+				for (RowFilter filter : filters) {
+					if (filter.accept(table, row)) {
+						return true;
+					}
+				}
+				return false;
+			}
+
+			@Override
+			protected int filter(Table table, int[] rows, int count,
+					Object[] values) {
+				boolean[] accepted = new boolean[count];
+				int[] rest = new int[count];
+				int[] restIndexes = new int[count];
+				int restCount = count;
+				for (int i = 0; i < count; i++) {
+					restIndexes[i] = i;
+				}
+				for (int f = 0; f < filters.length && restCount > 0; f++) {
+					for (int i = 0; i < restCount; i++) {
+						rest[i] = rows[restIndexes[i]];
+					}
+					int matched = filters[f].filter(table, rest, restCount,
+							values);
+					// both arrays are in the original order, walk them together
+					int next = 0;
+					int remain = 0;
+					for (int i = 0; i < restCount; i++) {
+						int index = restIndexes[i];
+						if (next < matched && rest[next] == rows[index]) {
+							accepted[index] = true;
+							next++;
+						} else {
+							restIndexes[remain++] = index;
+						}
+					}
+					restCount = remain;
+				}
+				int result = 0;
+				for (int i = 0; i < count; i++) {
+					if (accepted[i]) {
+						rows[result++] = rows[i];
+					}
+				}
+				return result;
+			}
+		};
+	}
+
+	public static RowFilter not(final RowFilter filter) {
+		return new RowFilter() {
+
+			@Override
+			public boolean accept(Table table, int row) {
+				return !filter.accept(table, row);
+			}
+
+			@Override
+			protected int filter(Table table, int[] rows, int count,
+					Object[] values) {
+				int[] matched = new int[count];
+				System.arraycopy(rows, 0, matched, 0, count);
+				int matchedCount = filter.filter(table, matched, count, values);
+				int next = 0;
+				int result = 0;
+				for (int i = 0; i < count; i++) {
+					if (next < matchedCount && matched[next] == rows[i]) {
+						next++;
+					} else {
+						rows[result++] = rows[i];
+					}
+				}
+				return result;
+			}
+		};
+	}
+
+	/**
+	 * The condition on the value of a single column.
+	 */
+	abstract static class ColumnFilter extends RowFilter {
+
+		final String column;
+
+		ColumnFilter(String column) {
+			this.column = column;
+		}
+
+		abstract boolean test(Object value);
+
+		@Override
+		public boolean accept(Table table, int row) {
+			return test(table.getValueAt(row, columnOf(table, column)));
+		}
+
+		@Override
+		protected int filter(Table table, int[] rows, int count,
+				Object[] values) {
+			table.getValuesAt(rows, count, columnOf(table, column), values);
+			int accepted = 0;
+			for (int i = 0; i < count; i++) {
+				if (test(values[i])) {
+					rows[accepted++] = rows[i];
+				}
+			}
+			return accepted;
+		}
+	}
+
+	static class And extends RowFilter {
+
+		final RowFilter[] filters;
+
+		And(RowFilter[] filters) {
+			this.filters = filters;
+		}
+
+		@Override
+		public boolean accept(Table table, int row) {
+			for (RowFilter filter : filters) {
+				if (!filter.accept(table, row)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		protected int filter(Table table, int[] rows, int count, Object[] values) {
+			for (int i = 0; i < filters.length && count > 0; i++) {
+				count = filters[i].filter(table, rows, count, values);
+			}
+			return count;
+		}
+	}
+
+	static class Comparison extends ColumnFilter {
+
+		static final int EQ = 0;
+		static final int NE = 1;
+		static final int GT = 2;
+		static final int GE = 3;
+		static final int LT = 4;
+		static final int LE = 5;
+
+		final int operator;
+		final Object operand;
+
+		Comparison(String column, int operator, Object operand) {
+			super(column);
+			this.operator = operator;
+			this.operand = operand;
+		}
+
+		/**
+		 * The equality of a string on a dictionary encoded column compares the
+		 * codes of the rows.
+		 */
+		@Override
+		protected int filter(Table table, int[] rows, int count,
+				Object[] values) {
+			if ((operator == EQ || operator == NE) && operand instanceof String) {
+				ColumnDictionary dictionary = table.getDictionary(columnOf(
+						table, column));
+				if (dictionary != null) {
+					return dictionary.filter(rows, count,
+							dictionary.getCode(operand), operator == EQ);
+				}
+			}
+			return super.filter(table, rows, count, values);
+		}
+
+		@Override
+		boolean test(Object value) {
+			value = Values.coerce(value, operand);
+			if (value == null || operand == null) {
+				return false;
+			}
+			int c = Values.compare(value, operand);
+			switch (operator) {
+			case EQ:
+				return c == 0;
+			case NE:
+				return c != 0;
+			case GT:
+				return c > 0;
+			case GE:
+				return c >= 0;
+			case LT:
+				return c < 0;
+			default:
+				return c <= 0;
+			}
+		}
+	}
+
+	static class In extends ColumnFilter {
+
+		private final Set<Object> values = new HashSet<Object>();
+		private boolean numbers;
+
+		In(String column, Object[] values) {
+			super(column);
+			for (Object value : values) {
+				if (value != null) {
+					this.values.add(Values.normalize(value));
+					numbers |= value instanceof Number;
+				}
+			}
+		}
+
+		@Override
+		boolean test(Object value) {
+			if (value == null) {
+				return false;
+			} else if (values.contains(Values.normalize(value))) {
+				return true;
+			} else if (numbers && value instanceof String) {
+				Object number = Values.coerce(value, 0L);
+				return number != null
+						&& values.contains(Values.normalize(number));
+			}
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,45 @@
+package wyq.toolbox.datamodel;
+
+import java.util.List;
+
+/**
+ * This class is the read-only result of
+ * {@linkplain wyq.toolbox.datamodel.TableBuilder TableBuilder}. The rows can
+ * not be loaded or sorted, sort a
+ * {@linkplain wyq.toolbox.datamodel.TableView TableView} of it instead.
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class SealedTable extends Table {
+
+	SealedTable(List<String> columnNames, List<Class<?>> columnTypes,
+			List<List<Object>> rows) {
+		this.columnNames.addAll(columnNames);
+		this.columnTypes.addAll(columnTypes);
+		this.resultList = rows;
+	}
+
+	/**
+	 * The rows of a sealed table can not be loaded.
+	 */
+	@Override
+	protected void loadData(TableDataSource dataSource) throws Exception {
+		throw new UnsupportedOperationException("SealedTable is read-only");
+	}
+
+	@Override
+	protected void addRow(List<Object> dataRow) throws Exception {
+		throw new UnsupportedOperationException("SealedTable is read-only");
+	}
+
+	/**
+	 * SealedTable is read-only, sort a
+	 * {@linkplain wyq.toolbox.datamodel.TableView TableView} of it instead.
+	 */
+	@Override
+	public void sort(String[] columns, boolean[] ascending, int threads) {
+		throw new UnsupportedOperationException("SealedTable is read-only");
+	}
+
+}
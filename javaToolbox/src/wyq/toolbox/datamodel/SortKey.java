@@ -0,0 +1,215 @@
+package wyq.toolbox.datamodel;
+
+import java.util.Date;
+
+/**
+ * This class holds the values of a sort column in an array of the type of the
+ * values, so the rows are compared without boxing or checking the classes of
+ * the values. The integral numbers and the dates are kept as long values, the
+ * other numbers as double values and the strings as String values. The columns
+ * with mixed values are compared like
+ * {@linkplain wyq.toolbox.datamodel.SortedIndex SortedIndex} does. Nulls are
+ * the smallest.
+ *
+ * @author dewafer
+ * @version 1
+ */
+abstract class SortKey implements IntComparator {
+
+	final boolean[] nulls;
+	// 1 for ascending and -1 for descending
+	final int sign;
+
+	SortKey(boolean[] nulls, boolean ascending) {
+		this.nulls = nulls;
+		this.sign = ascending ? 1 : -1;
+	}
+
+	@Override
+	public int compare(int a, int b) {
+		if (nulls[a] || nulls[b]) {
+			return sign * (nulls[a] == nulls[b] ? 0 : (nulls[a] ? -1 : 1));
+		}
+		return sign * compareValues(a, b);
+	}
+
+	abstract int compareValues(int a, int b);
+
+	/**
+	 * Returns the comparator of the rows of the table by the columns, the
+	 * columns without direction are ascending.
+	 */
+	static IntComparator of(Table table, int[] columns, boolean[] ascending) {
+		final SortKey[] keys = new SortKey[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			keys[i] = of(table, columns[i], ascending == null
+					|| i >= ascending.length || ascending[i]);
+		}
+		if (keys.length == 1) {
+			return keys[0];
+		}
+		return new IntComparator() {
+
+			@Override
+			public int compare(int a, int b) {
+				for (SortKey key : keys) {
+					int c = key.compare(a, b);
+					if (c != 0) {
+						return c;
+					}
+				}
+				return 0;
+			}
+		};
+	}
+
+	static SortKey of(Table table, int column, boolean ascending) {
+		int size = table.size();
+		boolean[] nulls = new boolean[size];
+		if (table instanceof OffHeapTable) {
+			SortKey key = ofOffHeap((OffHeapTable) table, column, ascending,
+					nulls);
+			if (key != null) {
+				return key;
+			}
+		}
+		Object[] values = new Object[size];
+		boolean integral = true;
+		boolean number = true;
+		boolean date = true;
+		boolean string = true;
+		for (int row = 0; row < size; row++) {
+			Object value = table.getValueAt(row, column);
+			values[row] = value;
+			if (value == null) {
+				nulls[row] = true;
+				continue;
+			}
+			integral &= Values.isIntegral(value);
+			number &= Values.isIntegral(value) || value instanceof Double
+					|| value instanceof Float;
+			// the timestamps have nanoseconds
+			date &= value instanceof Date
+					&& !(value instanceof java.sql.Timestamp);
+			string &= value instanceof String;
+		}
+		if (integral || date) {
+			long[] longs = new long[size];
+			for (int row = 0; row < size; row++) {
+				if (!nulls[row]) {
+					longs[row] = integral ? ((Number) values[row]).longValue()
+							: ((Date) values[row]).getTime();
+				}
+			}
+			return new LongKey(longs, nulls, ascending);
+		} else if (number) {
+			double[] doubles = new double[size];
+			for (int row = 0; row < size; row++) {
+				if (!nulls[row]) {
+					doubles[row] = ((Number) values[row]).doubleValue();
+				}
+			}
+			return new DoubleKey(doubles, nulls, ascending);
+		} else if (string) {
+			String[] strings = new String[size];
+			for (int row = 0; row < size; row++) {
+				strings[row] = (String) values[row];
+			}
+			return new StringKey(strings, nulls, ascending);
+		}
+		return new ObjectKey(values, nulls, ascending);
+	}
+
+	/**
+	 * Read the fixed-width numbers of the off-heap columns directly.
+	 */
+	private static SortKey ofOffHeap(OffHeapTable table, int column,
+			boolean ascending, boolean[] nulls) {
+		OffHeapTable.OffHeapColumn storage = table.column(column);
+		ColumnEncoding encoding = storage.encoding;
+		if (encoding == null || !encoding.isFixedWidth()
+				|| encoding == ColumnEncoding.BOOLEAN
+				|| encoding == ColumnEncoding.SQL_TIMESTAMP) {
+			return null;
+		}
+		int size = table.size();
+		for (int row = 0; row < size; row++) {
+			nulls[row] = storage.isNull(row);
+		}
+		if (encoding == ColumnEncoding.FLOAT
+				|| encoding == ColumnEncoding.DOUBLE) {
+			double[] doubles = new double[size];
+			for (int row = 0; row < size; row++) {
+				doubles[row] = storage.getDouble(row);
+			}
+			return new DoubleKey(doubles, nulls, ascending);
+		}
+		long[] longs = new long[size];
+		for (int row = 0; row < size; row++) {
+			longs[row] = storage.getLong(row);
+		}
+		return new LongKey(longs, nulls, ascending);
+	}
+
+	static class LongKey extends SortKey {
+
+		private final long[] values;
+
+		LongKey(long[] values, boolean[] nulls, boolean ascending) {
+			super(nulls, ascending);
+			this.values = values;
+		}
+
+		@Override
+		int compareValues(int a, int b) {
+			return values[a] < values[b] ? -1 : (values[a] == values[b] ? 0
+					: 1);
+		}
+	}
+
+	static class DoubleKey extends SortKey {
+
+		private final double[] values;
+
+		DoubleKey(double[] values, boolean[] nulls, boolean ascending) {
+			super(nulls, ascending);
+			this.values = values;
+		}
+
+		@Override
+		int compareValues(int a, int b) {
+			return Double.compare(values[a], values[b]);
+		}
+	}
+
+	static class StringKey extends SortKey {
+
+		private final String[] values;
+
+		StringKey(String[] values, boolean[] nulls, boolean ascending) {
+			super(nulls, ascending);
+			this.values = values;
+		}
+
+		@Override
+		int compareValues(int a, int b) {
+			return values[a].compareTo(values[b]);
+		}
+	}
+
+	static class ObjectKey extends SortKey {
+
+		private final Object[] values;
+
+		ObjectKey(Object[] values, boolean[] nulls, boolean ascending) {
+			super(nulls, ascending);
+			this.values = values;
+		}
+
+		@Override
+		int compareValues(int a, int b) {
+			return Values.compare(values[a], values[b]);
+		}
+	}
+
+}
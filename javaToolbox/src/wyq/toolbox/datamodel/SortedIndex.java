@@ -0,0 +1,160 @@
+package wyq.toolbox.datamodel;
+
+import java.util.Arrays;
+
+/**
+ * This class implements the sorted index for the equality, range and prefix
+ * lookups. The row positions are sorted by their keys, nulls first, and the
+ * rows with equal keys keep their original order.
+ * <p>
+ * The lookups with less values than the indexed columns match the leading
+ * columns only.
+ * </p>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class SortedIndex extends TableIndex {
+
+	// the key values of each indexed column, by row
+	private final Object[][] keys;
+	private final int[] rows;
+
+	SortedIndex(Table table, int[] columns) {
+		super(table, columns);
+		int size = table.size();
+		keys = new Object[columns.length][size];
+		for (int i = 0; i < columns.length; i++) {
+			for (int row = 0; row < size; row++) {
+				keys[i][row] = table.getValueAt(row, columns[i]);
+			}
+		}
+		rows = PermutationSort.identity(size);
+		PermutationSort.sort(rows, new IntComparator() {
+
+			@Override
+			public int compare(int a, int b) {
+				for (int i = 0; i < keys.length; i++) {
+					int c = Values.compare(keys[i][a], keys[i][b]);
+					if (c != 0) {
+						return c;
+					}
+				}
+				return 0;
+			}
+		});
+	}
+
+	/**
+	 * Compare the key of the row with the specified key, only the columns of
+	 * the specified key are compared.
+	 */
+	private int compare(int row, Object[] key) {
+		for (int i = 0; i < key.length; i++) {
+			int c = Values.compare(keys[i][row], key[i]);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public int[] lookup(Object... key) {
+		checkKey(key, true);
+		int from = lowerBound(key, true);
+		int to = lowerBound(key, false);
+		return Arrays.copyOfRange(rows, from, to);
+	}
+
+	@Override
+	public int first(Object... key) {
+		checkKey(key, true);
+		int from = lowerBound(key, true);
+		if (from < rows.length && compare(rows[from], key) == 0) {
+			return rows[from];
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the positions of the rows whose keys are between the specified
+	 * keys, in the order of the keys. A null bound means unbounded.
+	 *
+	 * @param from
+	 * @param fromInclusive
+	 * @param to
+	 * @param toInclusive
+	 * @return
+	 */
+	public int[] range(Object[] from, boolean fromInclusive, Object[] to,
+			boolean toInclusive) {
+		int start = 0;
+		int end = rows.length;
+		if (from != null) {
+			checkKey(from, true);
+			start = lowerBound(from, fromInclusive);
+		}
+		if (to != null) {
+			checkKey(to, true);
+			end = lowerBound(to, !toInclusive);
+		}
+		if (start >= end) {
+			return NO_ROWS;
+		}
+		return Arrays.copyOfRange(rows, start, end);
+	}
+
+	/**
+	 * Returns the positions of the rows whose first indexed column starts with
+	 * the specified string, in the order of the keys.
+	 *
+	 * @param prefix
+	 * @return
+	 */
+	public int[] startsWith(String prefix) {
+		Object[] key = new Object[] { prefix };
+		int start = lowerBound(key, true);
+		int low = start;
+		int high = rows.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			Object value = keys[0][rows[mid]];
+			if (value != null && value.toString().startsWith(prefix)) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return Arrays.copyOfRange(rows, start, low);
+	}
+
+	/**
+	 * Returns the row positions in the order of the keys.
+	 *
+	 * @return
+	 */
+	public int[] getRows() {
+		return rows.clone();
+	}
+
+	/**
+	 * Returns the first position whose key is greater than or equal to (if
+	 * inclusive) or greater than (if not inclusive) the specified key.
+	 */
+	private int lowerBound(Object[] key, boolean inclusive) {
+		int low = 0;
+		int high = rows.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			int c = compare(rows[mid], key);
+			if (c < 0 || (!inclusive && c == 0)) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+}
@@ -0,0 +1,528 @@
+package wyq.toolbox.datamodel;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import wyq.toolbox.util.BufferUtils;
+
+/**
+ * This class extends Table and keeps the rows in memory until the estimated
+ * size of them exceeds the memory budget. After that the rows are encoded in
+ * a compact binary form and written into a temporary file page by page. The
+ * spilled pages are read back through a LRU cache of memory-mapped buffers, so
+ * all the navigation methods of
+ * {@linkplain wyq.toolbox.datamodel.AbstractTable AbstractTable} are still
+ * available.
+ * <p>
+ * The temporary file is deleted by {@link #close()}.
+ * </p>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class SpillableTable extends Table implements Closeable {
+
+	public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+	public static final int DEFAULT_CACHED_PAGES = 16;
+
+	static final int PAGE_SIZE = 1024 * 1024;
+
+	// the estimated heap size of the rows of a sorted run at most
+	private static final long MAX_RUN = 1024L * 1024 * 1024;
+
+	private final long memoryBudget;
+	private final int cachedPages;
+
+	private long memoryUsed = 0;
+	private int spilledRows = 0;
+	private List<Page> pages = new ArrayList<Page>();
+	private Map<Page, ByteBuffer> pageCache;
+
+	private File spillFile;
+	private FileChannel channel;
+	private long fileLength = 0;
+
+	private int decodedRow = -1;
+	private List<Object> decodedValues;
+
+	public SpillableTable(TableDataSource dataSource) throws Exception {
+		this(dataSource, DEFAULT_MEMORY_BUDGET);
+	}
+
+	public SpillableTable(TableDataSource dataSource, long memoryBudget)
+			throws Exception {
+		this(dataSource, memoryBudget, DEFAULT_CACHED_PAGES);
+	}
+
+	/**
+	 * @param dataSource
+	 * @param memoryBudget
+	 *            bytes of the rows allowed to be kept in the java heap.
+	 * @param cachedPages
+	 *            count of the spilled pages kept mapped.
+	 * @throws Exception
+	 */
+	public SpillableTable(TableDataSource dataSource, long memoryBudget,
+			int cachedPages) throws Exception {
+		if (memoryBudget < 0 || cachedPages < 1) {
+			throw new IllegalArgumentException("memoryBudget:" + memoryBudget
+					+ ", cachedPages:" + cachedPages);
+		}
+		this.memoryBudget = memoryBudget;
+		// the spilled rows are encoded without the dictionaries
+		setDictionaryLimit(0);
+		this.cachedPages = cachedPages;
+		this.pageCache = newPageCache();
+		try {
+			loadData(dataSource);
+		} catch (Exception e) {
+			close();
+			throw e;
+		}
+	}
+
+	private Map<Page, ByteBuffer> newPageCache() {
+		return new LinkedHashMap<Page, ByteBuffer>(cachedPages, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Page, ByteBuffer> eldest) {
+				if (size() > cachedPages) {
+					BufferUtils.release(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * This method overrides
+	 * {@linkplain wyq.toolbox.datamodel.Table#addRow(List) super.addRow} to
+	 * spill the rows in memory into the temporary file when the memory budget
+	 * is exceeded.
+	 */
+	@Override
+	protected void addRow(List<Object> dataRow) throws Exception {
+		super.addRow(dataRow);
+		memoryUsed += estimateHeapSize(dataRow);
+		if (memoryUsed > memoryBudget) {
+			spill();
+		}
+	}
+
+	private static long estimateHeapSize(List<Object> dataRow) {
+		long size = 56 + 8 * dataRow.size();
+		for (Object value : dataRow) {
+			size += ValueCodec.estimateHeapSize(value);
+		}
+		return size;
+	}
+
+	/**
+	 * Returns true if some rows have been written into the temporary file.
+	 *
+	 * @return
+	 */
+	public boolean isSpilled() {
+		return spilledRows > 0;
+	}
+
+	private void spill() throws IOException {
+		if (channel == null) {
+			spillFile = File.createTempFile("table", ".spill");
+			spillFile.deleteOnExit();
+			channel = new RandomAccessFile(spillFile, "rw").getChannel();
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(PAGE_SIZE);
+		DataOutputStream out = new DataOutputStream(bytes);
+		List<Integer> rowOffsets = new ArrayList<Integer>();
+		int firstRow = spilledRows;
+		for (List<Object> dataRow : resultList) {
+			rowOffsets.add(out.size());
+			ValueCodec.writeVarLong(out, dataRow.size());
+			for (Object value : dataRow) {
+				ValueCodec.write(out, value);
+			}
+			if (out.size() >= PAGE_SIZE) {
+				writePage(bytes, out, rowOffsets, firstRow);
+				firstRow += rowOffsets.size();
+				rowOffsets.clear();
+			}
+		}
+		if (!rowOffsets.isEmpty()) {
+			writePage(bytes, out, rowOffsets, firstRow);
+		}
+		spilledRows += resultList.size();
+		resultList.clear();
+		memoryUsed = 0;
+	}
+
+	private void writePage(ByteArrayOutputStream bytes, DataOutputStream out,
+			List<Integer> rowOffsets, int firstRow) throws IOException {
+		// page layout: rows, offsets of the rows, count of the rows
+		for (Integer offset : rowOffsets) {
+			out.writeInt(offset);
+		}
+		out.writeInt(rowOffsets.size());
+		out.flush();
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		Page page = new Page(firstRow, rowOffsets.size(), fileLength,
+				buffer.remaining());
+		while (buffer.hasRemaining()) {
+			fileLength += channel.write(buffer, fileLength);
+		}
+		pages.add(page);
+		bytes.reset();
+	}
+
+	@Override
+	public int size() {
+		return spilledRows + resultList.size();
+	}
+
+	@Override
+	public Object getValueAt(int row, int column) {
+		if (row >= spilledRows) {
+			return super.getValueAt(row - spilledRows, column);
+		}
+		if (row < 0 || column < 0) {
+			return null;
+		}
+		List<Object> dataRow = readSpilledRow(row);
+		if (column >= dataRow.size()) {
+			return null;
+		}
+		return dataRow.get(column);
+	}
+
+	private synchronized List<Object> readSpilledRow(int row) {
+		if (row == decodedRow) {
+			return decodedValues;
+		}
+		Page page = findPage(row);
+		try {
+			ByteBuffer buffer = pageCache.get(page);
+			if (buffer == null) {
+				buffer = channel.map(MapMode.READ_ONLY, page.offset,
+						page.length);
+				pageCache.put(page, buffer);
+			}
+			int index = row - page.firstRow;
+			int offsetPos = page.length - 4 * (page.rowCount - index + 1);
+			ByteBuffer in = buffer.duplicate();
+			in.position(buffer.getInt(offsetPos));
+			int columns = (int) ValueCodec.readVarLong(in);
+			List<Object> dataRow = new ArrayList<Object>(columns);
+			for (int i = 0; i < columns; i++) {
+				dataRow.add(ValueCodec.read(in));
+			}
+			decodedRow = row;
+			decodedValues = dataRow;
+			return dataRow;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * This method overrides
+	 * {@linkplain wyq.toolbox.datamodel.Table#sort(String[], boolean[], int)
+	 * super.sort} to sort the spilled rows with an external merge sort: the
+	 * rows are sorted in runs fitting in the memory budget, the runs are
+	 * written into temporary files and merged back into this table, which
+	 * spills into a new temporary file while the merged rows are added. The
+	 * old rows are kept until the merge succeeds, so the table is unchanged
+	 * if the sort fails. The rows in memory only are sorted in place.
+	 */
+	@Override
+	public synchronized void sort(String[] columns, boolean[] ascending,
+			int threads) {
+		if (!isSpilled()) {
+			super.sort(columns, ascending, threads);
+			return;
+		}
+		int[] cols = columnIndexes(columns);
+		List<File> runs = new ArrayList<File>();
+		Spill old = null;
+		try {
+			writeRuns(cols, ascending, threads, runs);
+			old = new Spill();
+			mergeRuns(runs, cols, ascending);
+		} catch (Exception e) {
+			if (old != null) {
+				try {
+					old.restore();
+				} catch (IOException suppressed) {
+					e.addSuppressed(suppressed);
+				}
+			}
+			if (e instanceof RuntimeException) {
+				throw (RuntimeException) e;
+			}
+			throw new RuntimeException(e);
+		} finally {
+			for (File run : runs) {
+				run.delete();
+			}
+		}
+		try {
+			old.release();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		dropIndexes();
+		beforeFirst();
+	}
+
+	/**
+	 * The rows and the spill file of the table before it is rebuilt by sort.
+	 * The table starts empty with a new spill file, and the old ones are
+	 * released once the new rows are complete, or restored if they are not.
+	 */
+	private class Spill {
+		final List<List<Object>> rows = resultList;
+		final List<Page> oldPages = pages;
+		final Map<Page, ByteBuffer> oldPageCache = pageCache;
+		final File oldSpillFile = spillFile;
+		final FileChannel oldChannel = channel;
+		final long oldFileLength = fileLength;
+		final int oldSpilledRows = spilledRows;
+		final long oldMemoryUsed = memoryUsed;
+
+		Spill() {
+			resultList = new ArrayList<List<Object>>();
+			pages = new ArrayList<Page>();
+			pageCache = newPageCache();
+			spillFile = null;
+			channel = null;
+			fileLength = 0;
+			spilledRows = 0;
+			memoryUsed = 0;
+			decodedRow = -1;
+			decodedValues = null;
+		}
+
+		/**
+		 * Delete the new spill file and bring the old rows back.
+		 */
+		void restore() throws IOException {
+			try {
+				close();
+			} finally {
+				resultList = rows;
+				pages = oldPages;
+				pageCache = oldPageCache;
+				spillFile = oldSpillFile;
+				channel = oldChannel;
+				fileLength = oldFileLength;
+				spilledRows = oldSpilledRows;
+				memoryUsed = oldMemoryUsed;
+			}
+		}
+
+		/**
+		 * Release the old pages and delete the old spill file.
+		 */
+		void release() throws IOException {
+			for (ByteBuffer buffer : oldPageCache.values()) {
+				BufferUtils.release(buffer);
+			}
+			oldPageCache.clear();
+			if (oldChannel != null) {
+				oldChannel.close();
+			}
+			if (oldSpillFile != null) {
+				oldSpillFile.delete();
+			}
+		}
+	}
+
+	private void writeRuns(int[] columns, boolean[] ascending, int threads,
+			List<File> runs) throws IOException {
+		// a mapped run file can not be larger than 2GB
+		long runBudget = Math.max(PAGE_SIZE, Math.min(memoryBudget, MAX_RUN));
+		MemoryTable run = new MemoryTable(columnNames, columnTypes);
+		long runSize = 0;
+		int size = size();
+		for (int row = 0; row < size; row++) {
+			List<Object> dataRow = row < spilledRows ? readSpilledRow(row)
+					: resultList.get(row - spilledRows);
+			run.resultList.add(dataRow);
+			runSize += estimateHeapSize(dataRow);
+			if (runSize > runBudget || row == size - 1) {
+				String[] names = new String[columns.length];
+				for (int i = 0; i < columns.length; i++) {
+					names[i] = getColumnName(columns[i]);
+				}
+				run.sort(names, ascending, threads);
+				runs.add(writeRun(run));
+				run = new MemoryTable(columnNames, columnTypes);
+				runSize = 0;
+			}
+		}
+	}
+
+	private File writeRun(MemoryTable run) throws IOException {
+		File file = File.createTempFile("table", ".run");
+		file.deleteOnExit();
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+		try {
+			for (List<Object> dataRow : run.resultList) {
+				ValueCodec.writeVarLong(out, dataRow.size());
+				for (Object value : dataRow) {
+					ValueCodec.write(out, value);
+				}
+			}
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private void mergeRuns(List<File> runs, final int[] columns,
+			final boolean[] ascending) throws Exception {
+		PriorityQueue<Run> queue = new PriorityQueue<Run>(runs.size(),
+				new Comparator<Run>() {
+
+					@Override
+					public int compare(Run a, Run b) {
+						for (int i = 0; i < columns.length; i++) {
+							int c = Values.compare(a.row.get(columns[i]),
+									b.row.get(columns[i]));
+							if (c != 0) {
+								return ascending == null
+										|| i >= ascending.length
+										|| ascending[i] ? c : -c;
+							}
+						}
+						// the earlier runs have the earlier rows
+						return a.index - b.index;
+					}
+				});
+		List<Run> opened = new ArrayList<Run>();
+		try {
+			for (int i = 0; i < runs.size(); i++) {
+				Run run = new Run(runs.get(i), i);
+				opened.add(run);
+				if (run.next()) {
+					queue.add(run);
+				}
+			}
+			while (!queue.isEmpty()) {
+				Run run = queue.poll();
+				addRow(run.row);
+				if (run.next()) {
+					queue.add(run);
+				}
+			}
+		} finally {
+			for (Run run : opened) {
+				BufferUtils.release(run.buffer);
+			}
+		}
+	}
+
+	/**
+	 * A sorted run read from its temporary file.
+	 */
+	static class Run {
+		final int index;
+		final ByteBuffer buffer;
+		List<Object> row;
+
+		Run(File file, int index) throws IOException {
+			this.index = index;
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				buffer = raf.getChannel().map(MapMode.READ_ONLY, 0,
+						raf.length());
+			} finally {
+				raf.close();
+			}
+		}
+
+		boolean next() throws IOException {
+			if (!buffer.hasRemaining()) {
+				row = null;
+				return false;
+			}
+			int columns = (int) ValueCodec.readVarLong(buffer);
+			row = new ArrayList<Object>(columns);
+			for (int i = 0; i < columns; i++) {
+				row.add(ValueCodec.read(buffer));
+			}
+			return true;
+		}
+	}
+
+	private Page findPage(int row) {
+		int low = 0;
+		int high = pages.size() - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (pages.get(mid).firstRow <= row) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return pages.get(low);
+	}
+
+	/**
+	 * Release the mapped pages and delete the temporary file.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		Iterator<ByteBuffer> itr = pageCache.values().iterator();
+		while (itr.hasNext()) {
+			BufferUtils.release(itr.next());
+			itr.remove();
+		}
+		decodedRow = -1;
+		decodedValues = null;
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+		if (spillFile != null) {
+			spillFile.delete();
+			spillFile = null;
+		}
+	}
+
+	static class Page {
+		final int firstRow;
+		final int rowCount;
+		final long offset;
+		final int length;
+
+		Page(int firstRow, int rowCount, long offset, int length) {
+			this.firstRow = firstRow;
+			this.rowCount = rowCount;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+}
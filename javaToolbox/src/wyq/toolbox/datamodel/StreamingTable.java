@@ -0,0 +1,266 @@
+package wyq.toolbox.datamodel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class extends Table but does not load the whole
+ * {@linkplain wyq.toolbox.datamodel.TableDataSource TableDataSource} into
+ * memory. Only the column definitions are read by
+ * {@linkplain #loadData(TableDataSource) loadData}, the rows are pulled from the
+ * data source on demand while the cursor moves forward.
+ * <p>
+ * At most <code>lookBack</code> rows behind the current row are kept, so the
+ * memory usage stays constant for single-pass consumers. Moving the cursor
+ * backward (previous/relative/absolute/first/beforeFirst) is allowed within
+ * that window only, otherwise an <code>IllegalStateException</code> is thrown.
+ * Since the total number of rows is unknown until the data source is
+ * exhausted, {@link #size()} returns the number of rows read so far.
+ * </p>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class StreamingTable extends Table implements Closeable {
+
+	private TableDataSource dataSource;
+	private List<Object>[] window;
+	private int current = -1;
+	private int rowsRead = 0;
+	private boolean exhausted = false;
+
+	/**
+	 * Create a forward-only table without look-back.
+	 *
+	 * @param dataSource
+	 * @throws Exception
+	 */
+	public StreamingTable(TableDataSource dataSource) throws Exception {
+		this(dataSource, 0);
+	}
+
+	/**
+	 * Create a table which keeps <code>lookBack</code> rows behind the current
+	 * row.
+	 *
+	 * @param dataSource
+	 * @param lookBack
+	 * @throws Exception
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public StreamingTable(TableDataSource dataSource, int lookBack)
+			throws Exception {
+		if (lookBack < 0) {
+			throw new IllegalArgumentException("lookBack can not be negative");
+		}
+		// the current row and one read-ahead row are always kept.
+		this.window = new List[lookBack + 2];
+		loadData(dataSource);
+	}
+
+	/**
+	 * This method overrides
+	 * {@linkplain wyq.toolbox.datamodel.Table#loadData(TableDataSource)
+	 * super.loadData} to read the column definitions only. The rows are read
+	 * while the cursor moves.
+	 */
+	@Override
+	protected void loadData(TableDataSource dataSource) throws Exception {
+		while (dataSource.nextColumn()) {
+			columnNames.add(dataSource.getColumnName());
+			columnTypes.add(dataSource.getColumnType());
+		}
+		this.dataSource = dataSource;
+	}
+
+	/**
+	 * Returns true if all the rows of the data source has been read.
+	 *
+	 * @return
+	 */
+	public boolean isExhausted() {
+		return exhausted;
+	}
+
+	/**
+	 * StreamingTable can not be sorted since the rows are not kept.
+	 */
+	@Override
+	public void sort(String[] columns, boolean[] ascending, int threads) {
+		throw new UnsupportedOperationException(
+				"StreamingTable does not keep its rows");
+	}
+
+	/**
+	 * Close the underlying data source if it is <code>Closeable</code>.
+	 */
+	@Override
+	public void close() throws IOException {
+		exhausted = true;
+		if (dataSource instanceof Closeable) {
+			((Closeable) dataSource).close();
+		}
+	}
+
+	private boolean fetch() {
+		if (exhausted)
+			return false;
+		try {
+			if (!dataSource.nextRow()) {
+				close();
+				return false;
+			}
+			List<Object> dataRow = new ArrayList<Object>(getColumnCount());
+			while (dataSource.nextRowValue()) {
+				dataRow.add(dataSource.getRowValue());
+			}
+			window[rowsRead % window.length] = dataRow;
+			rowsRead++;
+			return true;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private boolean ensureRead(int row) {
+		while (rowsRead <= row) {
+			if (!fetch())
+				return false;
+		}
+		return true;
+	}
+
+	private void drain() {
+		while (fetch())
+			;
+	}
+
+	private void checkAvailable(int row) {
+		int lowest = rowsRead - window.length;
+		if (row < lowest) {
+			throw new IllegalStateException("row " + row
+					+ " is out of the look-back window, the oldest row is "
+					+ lowest);
+		}
+	}
+
+	private boolean moveTo(int row) {
+		if (row < 0) {
+			checkAvailable(0);
+			current = -1;
+			return false;
+		}
+		checkAvailable(row);
+		if (!ensureRead(row)) {
+			current = rowsRead;
+			return false;
+		}
+		current = row;
+		return true;
+	}
+
+	@Override
+	public Object getValue(int i) {
+		return getValueAt(current, i);
+	}
+
+	/**
+	 * Only the rows within the look-back window can be accessed, null is
+	 * returned for the other rows.
+	 */
+	@Override
+	public Object getValueAt(int row, int column) {
+		if (row < 0 || row >= rowsRead || row < rowsRead - window.length)
+			return null;
+		List<Object> dataRow = window[row % window.length];
+		if (column < 0 || dataRow.size() <= column)
+			return null;
+		return dataRow.get(column);
+	}
+
+	@Override
+	public boolean next() {
+		if (current >= rowsRead && exhausted)
+			return false;
+		return moveTo(current + 1);
+	}
+
+	@Override
+	public int size() {
+		return rowsRead;
+	}
+
+	@Override
+	public int getRow() {
+		return current;
+	}
+
+	@Override
+	public boolean absolute(int row) {
+		return moveTo(row);
+	}
+
+	@Override
+	public void afterLast() {
+		drain();
+		current = rowsRead;
+	}
+
+	@Override
+	public void beforeFirst() {
+		moveTo(-1);
+	}
+
+	@Override
+	public boolean first() {
+		return moveTo(0);
+	}
+
+	@Override
+	public boolean isAfterLast() {
+		return current >= 0 && !ensureRead(current);
+	}
+
+	@Override
+	public boolean isBeforeFirst() {
+		return current == -1;
+	}
+
+	@Override
+	public boolean isFirst() {
+		return current == 0 && rowsRead > 0;
+	}
+
+	@Override
+	public boolean isLast() {
+		if (current >= 0 && current < rowsRead) {
+			return !ensureRead(current + 1);
+		}
+		// same as AbstractTable, an empty table is always at its last row.
+		return current == -1 && !ensureRead(0);
+	}
+
+	@Override
+	public boolean last() {
+		drain();
+		return moveTo(rowsRead - 1);
+	}
+
+	@Override
+	public boolean previous() {
+		if (current < 0)
+			return false;
+		return moveTo(current - 1);
+	}
+
+	@Override
+	public boolean relative(int rows) {
+		int row = current + rows;
+		if (row < -1)
+			row = -1;
+		return moveTo(row);
+	}
+
+}
@@ -1,6 +1,8 @@
 package wyq.toolbox.datamodel;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -21,11 +23,25 @@ import java.util.Map;
 public abstract class Table extends AbstractTable<TableDataSource> implements
 		Iterable<Map<String, Object>> {
 
+	/**
+	 * The default count of the distinct strings of a dictionary encoded
+	 * column.
+	 */
+	public static final int DEFAULT_DICTIONARY_LIMIT = 4096;
+
+	private Map<List<String>, TableIndex> indexes = new HashMap<List<String>, TableIndex>();
+	private int dictionaryLimit = DEFAULT_DICTIONARY_LIMIT;
+	private ColumnDictionary[] dictionaries;
+	private boolean collectStatistics = false;
+	private ColumnStatistics[] statistics;
+
 	/**
 	 * This method overrides
 	 * {@linkplain wyq.appengine2.datamodel.AbstractTable#loadData(T)
 	 * super.loadData} to load the data into memory and also make this class
-	 * iterable.
+	 * iterable. The rows are read in batches, see
+	 * {@linkplain wyq.toolbox.datamodel.BatchTableDataSource
+	 * BatchTableDataSource}.
 	 */
 	@Override
 	protected void loadData(TableDataSource dataSource) throws Exception {
@@ -33,13 +49,359 @@ public abstract class Table extends AbstractTable<TableDataSource> implements
 			columnNames.add(dataSource.getColumnName());
 			columnTypes.add(dataSource.getColumnType());
 		}
-		while (dataSource.nextRow()) {
-			List<Object> dataRow = new ArrayList<Object>();
-			while (dataSource.nextRowValue()) {
-				dataRow.add(dataSource.getRowValue());
+		initDictionaries();
+		if (collectStatistics) {
+			statistics = newStatistics();
+		}
+		BatchTableDataSource batchSource = BatchDataSourceAdapter
+				.of(dataSource);
+		RowBatch batch = new RowBatch(columnNames.size());
+		while (batchSource.nextBatch(batch) > 0) {
+			for (int row = 0; row < batch.size(); row++) {
+				int length = batch.getRowLength(row);
+				List<Object> dataRow = new ArrayList<Object>(length);
+				for (int i = 0; i < length; i++) {
+					dataRow.add(batch.getValueAt(row, i));
+				}
+				if (statistics != null) {
+					for (int i = 0; i < statistics.length; i++) {
+						statistics[i].add(i < length ? dataRow.get(i) : null);
+					}
+				}
+				addRow(dataRow);
+			}
+		}
+	}
+
+	/**
+	 * Collect the {@linkplain ColumnStatistics statistics} of the columns
+	 * while the rows are loaded by {@linkplain #loadData(TableDataSource)
+	 * loadData}. The statistics are used to presize the hash tables of the
+	 * indexes, queries and joins and to choose the most selective index.
+	 * <p>
+	 * Call this method before the data is loaded, or call
+	 * {@link #computeStatistics()} after that.
+	 * </p>
+	 * 
+	 * @param collectStatistics
+	 */
+	public void setCollectStatistics(boolean collectStatistics) {
+		this.collectStatistics = collectStatistics;
+	}
+
+	/**
+	 * Compute the statistics of all the rows with a pass over the table.
+	 */
+	public synchronized void computeStatistics() {
+		ColumnStatistics[] computed = newStatistics();
+		int size = size();
+		for (int row = 0; row < size; row++) {
+			for (int i = 0; i < computed.length; i++) {
+				computed[i].add(getValueAt(row, i));
+			}
+		}
+		statistics = computed;
+	}
+
+	/**
+	 * Returns the statistics of the column, or null if they are not collected
+	 * or the rows have been changed since then.
+	 * 
+	 * @param column
+	 * @return
+	 */
+	public ColumnStatistics getStatistics(int column) {
+		if (statistics == null || column < 0 || column >= statistics.length
+				|| statistics[column].getCount() != size()) {
+			return null;
+		}
+		return statistics[column];
+	}
+
+	public ColumnStatistics getStatistics(String columnName) {
+		return getStatistics(columnNames.indexOf(columnName));
+	}
+
+	void setStatistics(ColumnStatistics[] statistics) {
+		this.statistics = statistics;
+	}
+
+	ColumnStatistics[] newStatistics() {
+		ColumnStatistics[] result = new ColumnStatistics[getColumnCount()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = new ColumnStatistics();
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the estimated count of the distinct keys of the columns, or -1
+	 * if the statistics are not available.
+	 */
+	long estimateDistinctKeys(int[] columns) {
+		long keys = 1;
+		for (int column : columns) {
+			ColumnStatistics columnStatistics = getStatistics(column);
+			if (columnStatistics == null) {
+				return -1;
+			}
+			keys *= Math.max(1, columnStatistics.getDistinctCount());
+			if (keys >= size()) {
+				return size();
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Set the count of the distinct strings of a dictionary encoded column.
+	 * The string columns (or the columns without type) are dictionary encoded
+	 * by {@linkplain #loadData(TableDataSource) loadData}: the equal strings
+	 * share one instance and each row gets an int code, see
+	 * {@link ColumnDictionary}. A column switches to plain storage when it has
+	 * more distinct strings than the limit or a value which is not a string. 0
+	 * turns the dictionary encoding off.
+	 * <p>
+	 * The limit is used by the data loaded after this method is called.
+	 * </p>
+	 * 
+	 * @param limit
+	 */
+	public void setDictionaryLimit(int limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("limit can not be negative");
+		}
+		this.dictionaryLimit = limit;
+	}
+
+	/**
+	 * Returns the dictionary of the column, or null if the column is not
+	 * dictionary encoded.
+	 * 
+	 * @param column
+	 * @return
+	 */
+	public ColumnDictionary getDictionary(int column) {
+		if (dictionaries == null || column < 0
+				|| column >= dictionaries.length) {
+			return null;
+		}
+		ColumnDictionary dictionary = dictionaries[column];
+		// the rows added without encoding make the dictionary useless
+		if (dictionary == null || dictionary.getRowCount() != size()) {
+			return null;
+		}
+		return dictionary;
+	}
+
+	public ColumnDictionary getDictionary(String columnName) {
+		return getDictionary(columnNames.indexOf(columnName));
+	}
+
+	void setDictionaries(ColumnDictionary[] dictionaries) {
+		this.dictionaries = dictionaries;
+	}
+
+	int getDictionaryLimit() {
+		return dictionaryLimit;
+	}
+
+	void initDictionaries() {
+		if (dictionaryLimit == 0 || dictionaries != null) {
+			return;
+		}
+		dictionaries = new ColumnDictionary[getColumnCount()];
+		for (int i = 0; i < dictionaries.length; i++) {
+			Class<?> type = getColumnType(i);
+			if (type == null || type == String.class) {
+				dictionaries[i] = new ColumnDictionary();
+			}
+		}
+	}
+
+	/**
+	 * Add the strings of the row to the dictionaries and replace them with the
+	 * shared instances.
+	 */
+	void encodeRow(List<Object> dataRow) {
+		if (dictionaries == null) {
+			return;
+		}
+		for (int i = 0; i < dictionaries.length; i++) {
+			ColumnDictionary dictionary = dictionaries[i];
+			if (dictionary == null) {
+				continue;
+			}
+			Object value = i < dataRow.size() ? dataRow.get(i) : null;
+			if (value != null
+					&& (!(value instanceof String) || dictionary.size() >= dictionaryLimit
+							&& !dictionary.contains((String) value))) {
+				// switch to plain storage
+				dictionaries[i] = null;
+				continue;
+			}
+			String shared = dictionary.add((String) value);
+			if (shared != value) {
+				dataRow.set(i, shared);
+			}
+		}
+	}
+
+	/**
+	 * This method is called by
+	 * {@linkplain #loadData(TableDataSource) loadData} for each row read from
+	 * the data source. Override this method to store the rows somewhere else
+	 * than <code>resultList</code>. The strings of the row are replaced by the
+	 * shared instances of the dictionaries.
+	 * 
+	 * @param dataRow
+	 * @throws Exception
+	 */
+	protected void addRow(List<Object> dataRow) throws Exception {
+		encodeRow(dataRow);
+		resultList.add(dataRow);
+	}
+
+	/**
+	 * Build a hash index on the specified columns.
+	 * 
+	 * @param columns
+	 * @return
+	 */
+	public TableIndex buildIndex(String... columns) {
+		return buildIndex(TableIndex.Type.HASH, columns);
+	}
+
+	/**
+	 * Build an index on the specified columns. Several columns make a
+	 * composite key. The index is kept by the table and can be got by
+	 * {@link #getIndex(String...)} later.
+	 * 
+	 * @param type
+	 * @param columns
+	 * @return
+	 */
+	public synchronized TableIndex buildIndex(TableIndex.Type type,
+			String... columns) {
+		int[] cols = columnIndexes(columns);
+		TableIndex index;
+		if (type == TableIndex.Type.SORTED) {
+			index = new SortedIndex(this, cols);
+		} else {
+			long keys = estimateDistinctKeys(cols);
+			index = keys < 0 ? new HashIndex(this, cols) : new HashIndex(this,
+					cols, (int) keys);
+		}
+		indexes.put(Arrays.asList(columns), index);
+		return index;
+	}
+
+	/**
+	 * Returns the index built on the specified columns, or null if there is
+	 * no such index.
+	 * 
+	 * @param columns
+	 * @return
+	 */
+	public synchronized TableIndex getIndex(String... columns) {
+		return indexes.get(Arrays.asList(columns));
+	}
+
+	/**
+	 * Drop all the indexes built on this table.
+	 */
+	public synchronized void dropIndexes() {
+		indexes.clear();
+	}
+
+	/**
+	 * Sort the rows by the columns in ascending order.
+	 * 
+	 * @param columns
+	 */
+	public void sort(String... columns) {
+		sort(columns, null);
+	}
+
+	/**
+	 * Sort the rows by the columns.
+	 * 
+	 * @param columns
+	 * @param ascending
+	 *            the direction of each column, null means all ascending.
+	 */
+	public void sort(String[] columns, boolean[] ascending) {
+		sort(columns, ascending, 1);
+	}
+
+	/**
+	 * Sort the rows by the columns with several threads. The rows are sorted
+	 * in place with a stable merge sort on their positions, so the rows with
+	 * equal keys keep their order. Nulls are the smallest. The values of each
+	 * column are copied into an array of their type before sorting, so the
+	 * numbers, dates and strings are compared without boxing.
+	 * <p>
+	 * The indexes of the table are dropped and the cursor is moved before the
+	 * first row.
+	 * </p>
+	 * 
+	 * @param columns
+	 * @param ascending
+	 *            the direction of each column, null means all ascending.
+	 * @param threads
+	 */
+	public synchronized void sort(String[] columns, boolean[] ascending,
+			int threads) {
+		int[] cols = columnIndexes(columns);
+		int[] permutation = PermutationSort.identity(size());
+		PermutationSort.parallelSort(permutation,
+				SortKey.of(this, cols, ascending), threads);
+		reorder(permutation);
+		if (dictionaries != null) {
+			for (int i = 0; i < dictionaries.length; i++) {
+				ColumnDictionary dictionary = getDictionary(i);
+				if (dictionary != null) {
+					dictionary.reorder(permutation);
+				} else {
+					dictionaries[i] = null;
+				}
+			}
+		}
+		dropIndexes();
+		beforeFirst();
+	}
+
+	/**
+	 * This method is called by {@link #sort(String[], boolean[], int)} to move
+	 * the rows into the sorted order. Override this method together with
+	 * {@link #getValueAt(int, int)} to provide another storage than
+	 * <code>resultList</code>.
+	 * 
+	 * @param permutation
+	 *            the row i of the sorted table is the row permutation[i].
+	 */
+	protected void reorder(int[] permutation) {
+		Object[] rows = resultList.toArray();
+		for (int i = 0; i < permutation.length; i++) {
+			@SuppressWarnings("unchecked")
+			List<Object> dataRow = (List<Object>) rows[permutation[i]];
+			resultList.set(i, dataRow);
+		}
+	}
+
+	int[] columnIndexes(String[] columns) {
+		if (columns == null || columns.length == 0) {
+			throw new IllegalArgumentException("no column is specified");
+		}
+		int[] cols = new int[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			cols[i] = columnNames.indexOf(columns[i]);
+			if (cols[i] < 0) {
+				throw new IllegalArgumentException("column not found:"
+						+ columns[i]);
 			}
-			resultList.add(dataRow);
 		}
+		return cols;
 	}
 
 	@Override
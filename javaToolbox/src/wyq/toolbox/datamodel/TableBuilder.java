@@ -0,0 +1,335 @@
+package wyq.toolbox.datamodel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class builds one Table from the rows appended by several threads, for
+ * example the csv files of the same columns or the partitioned queries of a
+ * database. Each thread gets its own
+ * {@linkplain wyq.toolbox.datamodel.TableBuilder.Appender Appender} whose
+ * rows are kept in its own chunk, so the threads do not wait for each other.
+ * {@link #build()} puts the chunks together into a read-only
+ * {@linkplain wyq.toolbox.datamodel.SealedTable SealedTable}.
+ *
+ * <pre>
+ * TableBuilder builder = new TableBuilder(names, types);
+ * // in each thread
+ * TableBuilder.Appender appender = builder.appender(shard);
+ * appender.load(dataSource);
+ * // after all the threads are done
+ * Table table = builder.build();
+ * </pre>
+ * <p>
+ * The rows of a shard come before the rows of the next shard, and the rows of
+ * the appenders of the same shard are in the order the appenders are created.
+ * </p>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class TableBuilder {
+
+	private final List<String> columnNames;
+	private final List<Class<?>> columnTypes;
+	private final ConcurrentLinkedQueue<Appender> appenders = new ConcurrentLinkedQueue<Appender>();
+	private final AtomicInteger sequence = new AtomicInteger();
+	private volatile boolean built = false;
+	private int dictionaryLimit = Table.DEFAULT_DICTIONARY_LIMIT;
+	private boolean collectStatistics = false;
+
+	public TableBuilder(List<String> columnNames, List<Class<?>> columnTypes) {
+		if (columnNames.size() != columnTypes.size()) {
+			throw new IllegalArgumentException(
+					"the count of the column names and types are different");
+		}
+		this.columnNames = new ArrayList<String>(columnNames);
+		this.columnTypes = new ArrayList<Class<?>>(columnTypes);
+	}
+
+	/**
+	 * Set the count of the distinct strings of a dictionary encoded column,
+	 * see {@link Table#setDictionaryLimit(int)}. Call this method before the
+	 * appenders are created.
+	 *
+	 * @param limit
+	 */
+	public void setDictionaryLimit(int limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("limit can not be negative");
+		}
+		this.dictionaryLimit = limit;
+	}
+
+	/**
+	 * Collect the statistics of the columns while the rows are appended, see
+	 * {@link Table#setCollectStatistics(boolean)}. Call this method before the
+	 * appenders are created.
+	 *
+	 * @param collectStatistics
+	 */
+	public void setCollectStatistics(boolean collectStatistics) {
+		this.collectStatistics = collectStatistics;
+	}
+
+	/**
+	 * Returns a new appender of the shard 0.
+	 *
+	 * @return
+	 */
+	public Appender appender() {
+		return appender(0);
+	}
+
+	/**
+	 * Returns a new appender of the shard. The appender should be used by one
+	 * thread only.
+	 *
+	 * @param shard
+	 * @return
+	 */
+	public Appender appender(int shard) {
+		checkNotBuilt();
+		Appender appender = new Appender(shard, sequence.getAndIncrement());
+		appenders.add(appender);
+		return appender;
+	}
+
+	/**
+	 * Load the data sources by several threads, the data source i is the shard
+	 * i.
+	 *
+	 * @param dataSources
+	 * @param threads
+	 * @return this builder.
+	 */
+	public TableBuilder load(List<? extends TableDataSource> dataSources,
+			int threads) {
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (int i = 0; i < dataSources.size(); i++) {
+			final Appender appender = appender(i);
+			final TableDataSource dataSource = dataSources.get(i);
+			tasks.add(new Callable<Integer>() {
+
+				@Override
+				public Integer call() throws Exception {
+					return appender.load(dataSource);
+				}
+			});
+		}
+		Parallel.run(tasks, threads);
+		return this;
+	}
+
+	/**
+	 * Put the rows of all the appenders into a read-only table. All the
+	 * threads should finish appending before this method is called, the
+	 * appenders can not be used after that.
+	 *
+	 * @return
+	 */
+	public synchronized SealedTable build() {
+		checkNotBuilt();
+		built = true;
+		List<Appender> chunks = new ArrayList<Appender>(appenders);
+		Collections.sort(chunks, new Comparator<Appender>() {
+
+			@Override
+			public int compare(Appender a1, Appender a2) {
+				if (a1.shard != a2.shard) {
+					return a1.shard < a2.shard ? -1 : 1;
+				}
+				return a1.sequence < a2.sequence ? -1
+						: a1.sequence == a2.sequence ? 0 : 1;
+			}
+		});
+		long size = 0;
+		for (Appender chunk : chunks) {
+			size += chunk.rows.size();
+		}
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalStateException("too many rows:" + size);
+		}
+		List<List<Object>> rows = new ArrayList<List<Object>>((int) size);
+		for (Appender chunk : chunks) {
+			rows.addAll(chunk.rows.resultList);
+		}
+		SealedTable table = new SealedTable(columnNames, columnTypes, rows);
+		table.setDictionaries(mergeDictionaries(chunks));
+		if (collectStatistics) {
+			ColumnStatistics[] statistics = table.newStatistics();
+			for (Appender chunk : chunks) {
+				for (int i = 0; i < statistics.length; i++) {
+					statistics[i].merge(chunk.statistics[i]);
+				}
+			}
+			table.setStatistics(statistics);
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the dictionaries of the columns which are dictionary encoded by
+	 * all the chunks and have no more strings than the limit in total.
+	 */
+	private ColumnDictionary[] mergeDictionaries(List<Appender> chunks) {
+		if (dictionaryLimit == 0) {
+			return null;
+		}
+		ColumnDictionary[] merged = new ColumnDictionary[columnNames.size()];
+		for (int i = 0; i < merged.length; i++) {
+			ColumnDictionary dictionary = new ColumnDictionary();
+			for (Appender chunk : chunks) {
+				ColumnDictionary chunkDictionary = chunk.rows.getDictionary(i);
+				if (chunkDictionary == null && chunk.rows.size() > 0) {
+					dictionary = null;
+					break;
+				}
+				if (chunkDictionary != null) {
+					dictionary.append(chunkDictionary);
+				}
+				if (dictionary.size() > dictionaryLimit) {
+					dictionary = null;
+					break;
+				}
+			}
+			merged[i] = dictionary;
+		}
+		return merged;
+	}
+
+	private void checkNotBuilt() {
+		if (built) {
+			throw new IllegalStateException("the table has been built");
+		}
+	}
+
+	/**
+	 * This class appends the rows of one thread into its own chunk.
+	 *
+	 * @author dewafer
+	 *
+	 */
+	public class Appender {
+
+		private final int shard;
+		private final int sequence;
+		private final Chunk rows;
+		private final ColumnStatistics[] statistics;
+
+		Appender(int shard, int sequence) {
+			this.shard = shard;
+			this.sequence = sequence;
+			this.rows = new Chunk(dictionaryLimit);
+			this.statistics = collectStatistics ? rows.newStatistics() : null;
+		}
+
+		/**
+		 * Append a copy of the row, the row should have one value for each
+		 * column.
+		 *
+		 * @param dataRow
+		 */
+		public void add(List<Object> dataRow) {
+			if (dataRow.size() != columnNames.size()) {
+				throw new IllegalArgumentException("the table has "
+						+ columnNames.size() + " columns but the row has "
+						+ dataRow.size() + " values");
+			}
+			checkNotBuilt();
+			append(new ArrayList<Object>(dataRow));
+		}
+
+		/**
+		 * Append the rows of the batch.
+		 *
+		 * @param batch
+		 */
+		public void add(RowBatch batch) {
+			checkNotBuilt();
+			for (int row = 0; row < batch.size(); row++) {
+				int length = batch.getRowLength(row);
+				List<Object> dataRow = new ArrayList<Object>(length);
+				for (int i = 0; i < length; i++) {
+					dataRow.add(batch.getValueAt(row, i));
+				}
+				append(dataRow);
+			}
+		}
+
+		/**
+		 * Append all the rows of the data source. The data source should have
+		 * the same count of the columns as the builder.
+		 *
+		 * @param dataSource
+		 * @return the count of the rows appended.
+		 * @throws Exception
+		 */
+		public int load(TableDataSource dataSource) throws Exception {
+			int columns = 0;
+			while (dataSource.nextColumn()) {
+				columns++;
+			}
+			if (columns != columnNames.size()) {
+				throw new IllegalArgumentException("the table has "
+						+ columnNames.size() + " columns but the data source has "
+						+ columns + " columns");
+			}
+			BatchTableDataSource batchSource = BatchDataSourceAdapter
+					.of(dataSource);
+			RowBatch batch = new RowBatch(columns);
+			int count = 0;
+			while (batchSource.nextBatch(batch) > 0) {
+				add(batch);
+				count += batch.size();
+			}
+			return count;
+		}
+
+		/**
+		 * Returns the count of the rows appended by this appender.
+		 *
+		 * @return
+		 */
+		public int size() {
+			return rows.size();
+		}
+
+		private void append(List<Object> dataRow) {
+			if (statistics != null) {
+				for (int i = 0; i < statistics.length; i++) {
+					statistics[i].add(i < dataRow.size() ? dataRow.get(i)
+							: null);
+				}
+			}
+			rows.append(dataRow);
+		}
+
+	}
+
+	/**
+	 * The rows of an appender, they are dictionary encoded the same way as a
+	 * Table.
+	 */
+	private class Chunk extends Table {
+
+		Chunk(int dictionaryLimit) {
+			this.columnNames.addAll(TableBuilder.this.columnNames);
+			this.columnTypes.addAll(TableBuilder.this.columnTypes);
+			setDictionaryLimit(dictionaryLimit);
+			initDictionaries();
+		}
+
+		void append(List<Object> dataRow) {
+			encodeRow(dataRow);
+			resultList.add(dataRow);
+		}
+
+	}
+
+}
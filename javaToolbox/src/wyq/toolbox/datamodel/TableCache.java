@@ -0,0 +1,266 @@
+package wyq.toolbox.datamodel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * This class keeps the loaded tables in memory so the same file or query is
+ * not loaded again. When several threads ask for the same key at the same
+ * time, only one of them loads the table and the others wait for it. The
+ * least recently used tables are removed once the cells of all the tables are
+ * more than the limit.
+ * <p>
+ * Each caller gets its own {@linkplain wyq.toolbox.datamodel.TableView
+ * TableView} of the cached table, so the cursors and the sorting of the
+ * callers do not affect each other. Do not change the rows of a cached table.
+ * </p>
+ *
+ * <pre>
+ * TableCache cache = TableCache.getShared();
+ * Table table = new CsvFile(path).readAllCsv(cache);
+ * </pre>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class TableCache {
+
+	/**
+	 * The default count of the cells of the shared cache.
+	 */
+	public static final long DEFAULT_MAX_CELLS = 64L * 1024 * 1024;
+
+	private static final TableCache SHARED = new TableCache(DEFAULT_MAX_CELLS);
+
+	private final long maxCells;
+	private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(
+			16, 0.75f, true);
+	private long cells = 0;
+	private long hitCount = 0;
+	private long missCount = 0;
+
+	/**
+	 * Returns the cache shared by the whole application.
+	 *
+	 * @return
+	 */
+	public static TableCache getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * @param maxCells
+	 *            the count of the cells (rows x columns) of all the tables
+	 *            kept by the cache.
+	 */
+	public TableCache(long maxCells) {
+		if (maxCells < 0) {
+			throw new IllegalArgumentException("maxCells can not be negative");
+		}
+		this.maxCells = maxCells;
+	}
+
+	/**
+	 * Returns the key of a file. The key changes when the file is modified, so
+	 * the table of the old file is not returned again.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static Object fileKey(File file) throws IOException {
+		return Arrays.<Object> asList("file", file.getCanonicalPath(),
+				file.lastModified(), file.length());
+	}
+
+	/**
+	 * Returns the key of a query on a database.
+	 *
+	 * @param database
+	 *            the object which tells the databases apart, for example the
+	 *            connection provider.
+	 * @param sql
+	 * @param parameters
+	 *            the parameters of the query, in order.
+	 * @return
+	 */
+	public static Object queryKey(Object database, String sql,
+			Collection<?> parameters) {
+		List<Object> key = new ArrayList<Object>();
+		key.add("query");
+		key.add(database);
+		key.add(sql);
+		if (parameters != null) {
+			key.addAll(parameters);
+		}
+		return key;
+	}
+
+	/**
+	 * Returns a view of the table of the key, the table is loaded by the
+	 * loader if it is not in the cache. The exception thrown by the loader is
+	 * thrown to all the callers waiting for it and nothing is cached.
+	 *
+	 * @param key
+	 * @param loader
+	 * @return
+	 * @throws Exception
+	 */
+	public Table get(Object key, Callable<? extends Table> loader)
+			throws Exception {
+		Entry entry;
+		boolean loading = false;
+		synchronized (this) {
+			entry = entries.get(key);
+			if (entry == null) {
+				entry = new Entry(loader);
+				entries.put(key, entry);
+				loading = true;
+				missCount++;
+			} else {
+				hitCount++;
+			}
+		}
+		if (loading) {
+			// load outside the lock, the other keys are not blocked
+			entry.task.run();
+		}
+		Table table;
+		try {
+			table = entry.task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw e;
+		} catch (ExecutionException e) {
+			synchronized (this) {
+				if (entries.get(key) == entry) {
+					entries.remove(key);
+				}
+			}
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+		if (loading) {
+			synchronized (this) {
+				if (entries.get(key) == entry) {
+					entry.cells = (long) table.size() * table.getColumnCount();
+					cells += entry.cells;
+					evict();
+				}
+			}
+		}
+		return new TableView(table);
+	}
+
+	/**
+	 * Remove the table of the key from the cache.
+	 *
+	 * @param key
+	 */
+	public synchronized void invalidate(Object key) {
+		Entry entry = entries.remove(key);
+		if (entry != null && entry.cells > 0) {
+			cells -= entry.cells;
+		}
+	}
+
+	/**
+	 * Remove the tables of all the queries on the database, see
+	 * {@link #queryKey(Object, String, Collection)}. Call it after the data of
+	 * the database is changed.
+	 *
+	 * @param database
+	 */
+	public synchronized void invalidateQueries(Object database) {
+		Iterator<Map.Entry<Object, Entry>> iterator = entries.entrySet()
+				.iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Object, Entry> e = iterator.next();
+			if (e.getKey() instanceof List) {
+				List<?> key = (List<?>) e.getKey();
+				if (key.size() >= 2 && "query".equals(key.get(0))
+						&& (database == null ? key.get(1) == null : database
+								.equals(key.get(1)))) {
+					if (e.getValue().cells > 0) {
+						cells -= e.getValue().cells;
+					}
+					iterator.remove();
+				}
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		cells = 0;
+	}
+
+	/**
+	 * Returns the count of the tables in the cache, including the ones being
+	 * loaded.
+	 *
+	 * @return
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the count of the cells of the loaded tables in the cache.
+	 *
+	 * @return
+	 */
+	public synchronized long getCellCount() {
+		return cells;
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Remove the least recently used tables until the cells are not more than
+	 * the limit, the tables being loaded are not removed.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<Object, Entry>> iterator = entries.entrySet()
+				.iterator();
+		while (cells > maxCells && iterator.hasNext()) {
+			Entry entry = iterator.next().getValue();
+			if (entry.cells >= 0) {
+				cells -= entry.cells;
+				iterator.remove();
+			}
+		}
+	}
+
+	private static class Entry {
+
+		final FutureTask<Table> task;
+		// -1 until the table is loaded
+		long cells = -1;
+
+		@SuppressWarnings("unchecked")
+		Entry(Callable<? extends Table> loader) {
+			task = new FutureTask<Table>((Callable<Table>) loader);
+		}
+
+	}
+
+}
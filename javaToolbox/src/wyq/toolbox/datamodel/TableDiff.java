@@ -0,0 +1,572 @@
+package wyq.toolbox.datamodel;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * This class compares two versions of a Table by their key columns, for
+ * example a csv extract and the database table it comes from, and finds the
+ * rows which are added, removed or changed.
+ *
+ * <pre>
+ * TableDiff.Result diff = new TableDiff(dbTable, csvTable).on(&quot;id&quot;)
+ * 		.parallel(4).execute();
+ * Table added = diff.getAdded();
+ * </pre>
+ * <p>
+ * The rows are compared in two passes, both by several threads if
+ * {@link #parallel(int)} is set. The first pass reads the keys of the rows and
+ * hashes their compared columns into 64 bits, and puts the rows into
+ * partitions by the hashes of the keys. The second pass matches the rows of
+ * each partition by their keys, the matched rows whose hashes are different
+ * are changed. Two rows whose values are different but have the same hash are
+ * taken as unchanged, which is very unlikely with 64 bits.
+ * </p>
+ * <p>
+ * If a column is a number on one side and a string on the other side, the
+ * strings are compared as numbers, and the numbers of different classes are
+ * compared by their values, so a csv file can be compared with a database
+ * table. The decimals are compared exactly, a double is compared by its
+ * shortest decimal form, so the double 0.1 equals the BigDecimal 0.1 but not
+ * 0.10000000000000001. The rows with null keys are never matched. If several rows have the
+ * same key, they are matched in their order.
+ * </p>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class TableDiff {
+
+	private static final int BATCH_SIZE = TableQuery.BATCH_SIZE;
+
+	private static final long NULL_HASH = 0x5bd1e9955bd1e995L;
+
+	private final Table oldTable;
+	private final Table newTable;
+	private String[] keys;
+	private String[] columns;
+	private String suffix = "_new";
+	private int threads = 1;
+
+	/**
+	 * @param oldTable
+	 *            the rows not in the new table are removed.
+	 * @param newTable
+	 *            the rows not in the old table are added.
+	 */
+	public TableDiff(Table oldTable, Table newTable) {
+		if (oldTable instanceof StreamingTable
+				|| newTable instanceof StreamingTable) {
+			throw new IllegalArgumentException(
+					"StreamingTable does not provide random access to its rows");
+		}
+		this.oldTable = oldTable;
+		this.newTable = newTable;
+	}
+
+	/**
+	 * Match the rows by the columns, which should be in both tables.
+	 *
+	 * @param keys
+	 * @return this
+	 */
+	public TableDiff on(String... keys) {
+		if (keys.length == 0) {
+			throw new IllegalArgumentException("no key columns");
+		}
+		this.keys = keys;
+		return this;
+	}
+
+	/**
+	 * Compare only the columns, by default all the columns of the old table
+	 * except the keys are compared.
+	 *
+	 * @param columns
+	 * @return this
+	 */
+	public TableDiff compare(String... columns) {
+		this.columns = columns;
+		return this;
+	}
+
+	/**
+	 * Set the suffix of the columns of the new table in the changed rows whose
+	 * names are already used by the old table.
+	 *
+	 * @param suffix
+	 * @return this
+	 */
+	public TableDiff suffix(String suffix) {
+		this.suffix = suffix;
+		return this;
+	}
+
+	/**
+	 * Hash and match the rows with several threads.
+	 *
+	 * @param threads
+	 * @return this
+	 */
+	public TableDiff parallel(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be positive");
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	public Result execute() {
+		if (keys == null) {
+			throw new IllegalStateException("the key columns are not specified");
+		}
+		String[] compared = columns;
+		if (compared == null) {
+			List<String> names = new ArrayList<String>();
+			for (int i = 0; i < oldTable.getColumnCount(); i++) {
+				String name = oldTable.getColumnName(i);
+				if (!Arrays.asList(keys).contains(name)) {
+					names.add(name);
+				}
+			}
+			compared = names.toArray(new String[names.size()]);
+		}
+		final String[] readColumns = new String[keys.length + compared.length];
+		System.arraycopy(keys, 0, readColumns, 0, keys.length);
+		System.arraycopy(compared, 0, readColumns, keys.length,
+				compared.length);
+		final boolean[] numeric = new boolean[readColumns.length];
+		for (int i = 0; i < readColumns.length; i++) {
+			numeric[i] = isNumber(oldTable.getColumnType(RowFilter.columnOf(
+					oldTable, readColumns[i])))
+					|| isNumber(newTable.getColumnType(RowFilter.columnOf(
+							newTable, readColumns[i])));
+		}
+		final int partitions = threads;
+
+		// the first pass: hash the rows into the partitions
+		final List<Scan> oldScans = scan(oldTable, readColumns, numeric,
+				partitions);
+		final List<Scan> newScans = scan(newTable, readColumns, numeric,
+				partitions);
+
+		// the second pass: match the rows of each partition
+		List<Callable<Match>> tasks = new ArrayList<Callable<Match>>();
+		for (int p = 0; p < partitions; p++) {
+			final int partition = p;
+			tasks.add(new Callable<Match>() {
+
+				@Override
+				public Match call() {
+					return match(oldScans, newScans, partition);
+				}
+			});
+		}
+		List<Match> matches = Parallel.run(tasks, threads);
+
+		List<IntList> added = new ArrayList<IntList>();
+		List<IntList> removed = new ArrayList<IntList>();
+		List<IntList> changed = new ArrayList<IntList>();
+		for (Scan scan : newScans) {
+			added.add(scan.nullKeyRows);
+		}
+		for (Scan scan : oldScans) {
+			removed.add(scan.nullKeyRows);
+		}
+		int unchanged = 0;
+		for (Match match : matches) {
+			added.add(match.added);
+			removed.add(match.removed);
+			changed.add(match.changed);
+			unchanged += match.unchanged;
+		}
+		int[] addedRows = IntList.concat(added);
+		int[] removedRows = IntList.concat(removed);
+		Arrays.sort(addedRows);
+		Arrays.sort(removedRows);
+		return new Result(new TableView(newTable, addedRows, null),
+				new TableView(oldTable, removedRows, null),
+				changedTable(IntList.concat(changed)), unchanged);
+	}
+
+	private List<Scan> scan(final Table table, String[] readColumns,
+			final boolean[] numeric, final int partitions) {
+		final int keyCount = keys.length;
+		final int[] cols = new int[readColumns.length];
+		for (int i = 0; i < cols.length; i++) {
+			cols[i] = RowFilter.columnOf(table, readColumns[i]);
+		}
+		int total = table.size();
+		int ranges = Parallel.partitions(total, threads);
+		List<Callable<Scan>> tasks = new ArrayList<Callable<Scan>>();
+		for (int r = 0; r < ranges; r++) {
+			final int from = Parallel.start(total, ranges, r);
+			final int to = Parallel.start(total, ranges, r + 1);
+			tasks.add(new Callable<Scan>() {
+
+				@Override
+				public Scan call() {
+					Scan scan = new Scan(partitions);
+					scan.run(table, cols, numeric, keyCount, from, to);
+					return scan;
+				}
+			});
+		}
+		return Parallel.run(tasks, threads);
+	}
+
+	/**
+	 * Match the rows of the partition, the old rows are put into a hash table
+	 * and the new rows are looked up in it.
+	 */
+	private Match match(List<Scan> oldScans, List<Scan> newScans, int partition) {
+		int size = 0;
+		for (Scan scan : oldScans) {
+			size += scan.partitions[partition].size();
+		}
+		// the old rows of each key are chained in their order
+		Map<Object, int[]> keyRows = new HashMap<Object, int[]>(Math.max(16,
+				(int) (size / 0.75f) + 1));
+		int[] nextRows = new int[size];
+		Partition[] olds = new Partition[oldScans.size()];
+		int[] offsets = new int[olds.length];
+		int index = 0;
+		for (int s = 0; s < olds.length; s++) {
+			olds[s] = oldScans.get(s).partitions[partition];
+			offsets[s] = index;
+			for (int i = 0; i < olds[s].size(); i++, index++) {
+				nextRows[index] = -1;
+				Object key = olds[s].keys.get(i);
+				int[] firstAndLast = keyRows.get(key);
+				if (firstAndLast == null) {
+					keyRows.put(key, new int[] { index, index });
+				} else {
+					nextRows[firstAndLast[1]] = index;
+					firstAndLast[1] = index;
+				}
+			}
+		}
+		long[] oldHashes = new long[size];
+		int[] oldRows = new int[size];
+		for (int s = 0; s < olds.length; s++) {
+			for (int i = 0; i < olds[s].size(); i++) {
+				oldHashes[offsets[s] + i] = olds[s].hashes[i];
+				oldRows[offsets[s] + i] = olds[s].rows.get(i);
+			}
+		}
+
+		Match match = new Match();
+		boolean[] matched = new boolean[size];
+		for (Scan scan : newScans) {
+			Partition part = scan.partitions[partition];
+			for (int i = 0; i < part.size(); i++) {
+				int[] firstAndLast = keyRows.get(part.keys.get(i));
+				int row = part.rows.get(i);
+				if (firstAndLast == null || firstAndLast[0] < 0) {
+					match.added.add(row);
+					continue;
+				}
+				int old = firstAndLast[0];
+				firstAndLast[0] = nextRows[old];
+				matched[old] = true;
+				if (oldHashes[old] == part.hashes[i]) {
+					match.unchanged++;
+				} else {
+					match.changed.add(oldRows[old]);
+					match.changed.add(row);
+				}
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			if (!matched[i]) {
+				match.removed.add(oldRows[i]);
+			}
+		}
+		return match;
+	}
+
+	/**
+	 * The pairs of the changed rows in the order of the new table: the
+	 * columns of the old table followed by the columns of the new table
+	 * except the keys.
+	 */
+	private JoinedTable changedTable(int[] pairs) {
+		long[] sorted = new long[pairs.length / 2];
+		for (int i = 0; i < sorted.length; i++) {
+			sorted[i] = ((long) pairs[i * 2 + 1] << 32) | pairs[i * 2];
+		}
+		Arrays.sort(sorted);
+		int[] oldRows = new int[sorted.length];
+		int[] newRows = new int[sorted.length];
+		for (int i = 0; i < sorted.length; i++) {
+			newRows[i] = (int) (sorted[i] >>> 32);
+			oldRows[i] = (int) sorted[i];
+		}
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < oldTable.getColumnCount(); i++) {
+			names.add(oldTable.getColumnName(i));
+		}
+		IntList columns = new IntList();
+		for (int i = 0; i < newTable.getColumnCount(); i++) {
+			String name = newTable.getColumnName(i);
+			if (Arrays.asList(keys).contains(name)) {
+				continue;
+			}
+			while (names.contains(name)) {
+				name += suffix;
+			}
+			names.add(name);
+			columns.add(i);
+		}
+		return new JoinedTable(oldTable, oldRows, newTable, newRows,
+				columns.toArray(), names);
+	}
+
+	private static boolean isNumber(Class<?> type) {
+		return type != null && Number.class.isAssignableFrom(type);
+	}
+
+	/**
+	 * Parse the string of a number column exactly, or as it is if it is not a
+	 * number.
+	 */
+	private static Object parse(String value) {
+		try {
+			return new BigDecimal(value.trim());
+		} catch (NumberFormatException e) {
+			try {
+				// NaN and Infinity
+				return Values.toNumber(value);
+			} catch (NumberFormatException notNumber) {
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * The value to match and hash: the numbers of the same value become the
+	 * same Long, or the same BigDecimal without the trailing zeros. Unlike
+	 * {@link Values#normalize(Object)} the decimals are not rounded to
+	 * doubles, so a small difference is not hidden.
+	 */
+	private static Object canonical(Object value) {
+		if (!(value instanceof Number) || value instanceof Long) {
+			return value;
+		} else if (Values.isIntegral(value)) {
+			return ((Number) value).longValue();
+		}
+		BigDecimal decimal;
+		if (value instanceof BigDecimal) {
+			decimal = (BigDecimal) value;
+		} else if (value instanceof BigInteger) {
+			decimal = new BigDecimal((BigInteger) value);
+		} else {
+			double d = ((Number) value).doubleValue();
+			if (Double.isNaN(d) || Double.isInfinite(d)) {
+				return d;
+			}
+			try {
+				// the shortest decimal form of a float or a double
+				decimal = new BigDecimal(value.toString());
+			} catch (NumberFormatException e) {
+				decimal = BigDecimal.valueOf(d);
+			}
+		}
+		if (decimal.signum() == 0) {
+			return 0L;
+		}
+		decimal = decimal.stripTrailingZeros();
+		if (decimal.scale() <= 0) {
+			try {
+				return decimal.longValueExact();
+			} catch (ArithmeticException e) {
+				// too large for a long
+			}
+		}
+		return decimal;
+	}
+
+	private static long hash(Object value) {
+		// HyperLogLog.hash would round the decimal to a double, the string
+		// of a canonical decimal is unique
+		return HyperLogLog.hash(value instanceof BigDecimal ? value.toString()
+				: value);
+	}
+
+	/**
+	 * The results of the first pass over a range of a table.
+	 */
+	private static class Scan {
+
+		final Partition[] partitions;
+		final IntList nullKeyRows = new IntList();
+
+		Scan(int count) {
+			partitions = new Partition[count];
+			for (int i = 0; i < count; i++) {
+				partitions[i] = new Partition();
+			}
+		}
+
+		void run(Table table, int[] cols, boolean[] numeric, int keyCount,
+				int from, int to) {
+			Object[][] values = new Object[cols.length][BATCH_SIZE];
+			int[] batch = new int[BATCH_SIZE];
+			for (int start = from; start < to; start += BATCH_SIZE) {
+				int count = Math.min(BATCH_SIZE, to - start);
+				for (int i = 0; i < count; i++) {
+					batch[i] = start + i;
+				}
+				for (int c = 0; c < cols.length; c++) {
+					table.getValuesAt(batch, count, cols[c], values[c]);
+					for (int i = 0; i < count; i++) {
+						Object value = values[c][i];
+						if (numeric[c] && value instanceof String) {
+							value = parse((String) value);
+						}
+						values[c][i] = canonical(value);
+					}
+				}
+				for (int i = 0; i < count; i++) {
+					Object key = keyOf(values, i, keyCount);
+					if (key == null) {
+						nullKeyRows.add(batch[i]);
+						continue;
+					}
+					long hash = 1;
+					for (int c = keyCount; c < cols.length; c++) {
+						Object value = values[c][i];
+						hash = hash * 0x9E3779B97F4A7C15L
+								+ (value == null ? NULL_HASH : hash(value));
+					}
+					int partition = (int) ((HyperLogLog.hash(key) >>> 1) % partitions.length);
+					partitions[partition].add(key, batch[i], hash);
+				}
+			}
+		}
+
+		private Object keyOf(Object[][] values, int i, int keyCount) {
+			if (keyCount == 1) {
+				return values[0][i];
+			}
+			Object[] key = new Object[keyCount];
+			for (int c = 0; c < keyCount; c++) {
+				key[c] = values[c][i];
+				if (key[c] == null) {
+					return null;
+				}
+			}
+			return Arrays.asList(key);
+		}
+	}
+
+	/**
+	 * The keys, rows and hashes of a partition of a range.
+	 */
+	private static class Partition {
+
+		final List<Object> keys = new ArrayList<Object>();
+		final IntList rows = new IntList();
+		private long[] hashes = new long[16];
+
+		void add(Object key, int row, long hash) {
+			if (keys.size() == hashes.length) {
+				hashes = Arrays.copyOf(hashes, hashes.length * 2);
+			}
+			hashes[keys.size()] = hash;
+			keys.add(key);
+			rows.add(row);
+		}
+
+		int size() {
+			return keys.size();
+		}
+	}
+
+	/**
+	 * The results of the second pass over a partition.
+	 */
+	private static class Match {
+
+		final IntList added = new IntList();
+		final IntList removed = new IntList();
+		// pairs of the old and new rows
+		final IntList changed = new IntList();
+		int unchanged = 0;
+	}
+
+	/**
+	 * The rows found by {@link TableDiff#execute()}.
+	 *
+	 * @author dewafer
+	 *
+	 */
+	public static class Result {
+
+		private final Table added;
+		private final Table removed;
+		private final JoinedTable changed;
+		private final int unchangedCount;
+
+		Result(Table added, Table removed, JoinedTable changed,
+				int unchangedCount) {
+			this.added = added;
+			this.removed = removed;
+			this.changed = changed;
+			this.unchangedCount = unchangedCount;
+		}
+
+		/**
+		 * Returns a view of the rows of the new table whose keys are not in
+		 * the old table, in their order.
+		 *
+		 * @return
+		 */
+		public Table getAdded() {
+			return added;
+		}
+
+		/**
+		 * Returns a view of the rows of the old table whose keys are not in
+		 * the new table, in their order.
+		 *
+		 * @return
+		 */
+		public Table getRemoved() {
+			return removed;
+		}
+
+		/**
+		 * Returns the pairs of the old and new rows whose keys are matched but
+		 * the compared columns are different, in the order of the new table.
+		 * Use {@link JoinedTable#getLeftRow(int)} and
+		 * {@link JoinedTable#getRightRow(int)} for the positions of the rows.
+		 *
+		 * @return
+		 */
+		public JoinedTable getChanged() {
+			return changed;
+		}
+
+		public int getUnchangedCount() {
+			return unchangedCount;
+		}
+
+		/**
+		 * Returns true if no row is added, removed or changed.
+		 *
+		 * @return
+		 */
+		public boolean isEmpty() {
+			return added.size() == 0 && removed.size() == 0
+					&& changed.size() == 0;
+		}
+	}
+
+}
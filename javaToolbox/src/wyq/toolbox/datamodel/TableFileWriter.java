@@ -0,0 +1,296 @@
+package wyq.toolbox.datamodel;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * This class writes a Table into a binary file which can be loaded again by
+ * {@linkplain wyq.toolbox.datamodel.MappedTable MappedTable} without parsing.
+ * <p>
+ * The file starts with a header: magic number, format version, the source of
+ * the table, row count, column count and the name, encoding and declared type
+ * of each column, followed by the offset and length of each column block.
+ * Each column block contains a compression flag, the uncompressed length and
+ * the payload: the null bitmap, then either the fixed-width values or the
+ * offsets and bytes of the variable-width values, laid out the same way as
+ * {@linkplain wyq.toolbox.datamodel.OffHeapTable OffHeapTable} does.
+ * </p>
+ * <p>
+ * The table is read column by column through
+ * {@linkplain AbstractTable#getValueAt(int, int) getValueAt}, so it must
+ * provide random access to all of its rows.
+ * </p>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class TableFileWriter {
+
+	static final int MAGIC = 0x5754424C; // "WTBL"
+
+	static final short VERSION = 1;
+
+	static final byte UNCOMPRESSED = 0;
+
+	static final byte DEFLATE = 1;
+
+	private boolean compress;
+
+	public TableFileWriter() {
+		this(false);
+	}
+
+	/**
+	 * @param compress
+	 *            compress the column blocks with deflate. The compressed
+	 *            columns are inflated into memory on first access.
+	 */
+	public TableFileWriter(boolean compress) {
+		this.compress = compress;
+	}
+
+	public void write(Table table, File file) throws IOException {
+		write(table, file, "");
+	}
+
+	/**
+	 * Write the table with a description of where it comes from, for example
+	 * the length and the last modified time of the source file. The source is
+	 * returned by {@link MappedTable#getSource()} to tell whether the file is
+	 * still up to date.
+	 * 
+	 * @param table
+	 * @param file
+	 * @param source
+	 * @throws IOException
+	 */
+	public void write(Table table, File file, String source)
+			throws IOException {
+		if (table instanceof StreamingTable) {
+			throw new IllegalArgumentException(
+					"StreamingTable does not provide random access to its rows");
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			int rows = table.size();
+			int columns = table.getColumnCount();
+			ColumnEncoding[] encodings = new ColumnEncoding[columns];
+			byte[][] nulls = new byte[columns][];
+			for (int col = 0; col < columns; col++) {
+				nulls[col] = new byte[(rows + 7) >> 3];
+				encodings[col] = scanColumn(table, col, nulls[col]);
+			}
+
+			DataOutputStream out = open(channel);
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeShort(0);
+			out.writeUTF(source);
+			out.writeInt(rows);
+			out.writeInt(columns);
+			for (int col = 0; col < columns; col++) {
+				String name = table.getColumnName(col);
+				Class<?> type = table.getColumnType(col);
+				out.writeUTF(name == null ? "" : name);
+				out.writeUTF(encodings[col].name());
+				out.writeUTF(type == null ? "" : type.getName());
+			}
+			out.flush();
+			long directory = channel.position();
+			channel.position(directory + 16L * columns);
+
+			long[] blocks = new long[columns * 2];
+			for (int col = 0; col < columns; col++) {
+				long start = channel.position();
+				writeColumn(channel, table, col, encodings[col], nulls[col]);
+				blocks[col * 2] = start;
+				blocks[col * 2 + 1] = channel.position() - start;
+				if (blocks[col * 2 + 1] > Integer.MAX_VALUE) {
+					throw new IOException("column " + table.getColumnName(col)
+							+ " is larger than 2GB");
+				}
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate(blocks.length * 8);
+			buffer.asLongBuffer().put(blocks);
+			while (buffer.hasRemaining()) {
+				directory += channel.write(buffer, directory);
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Fill the null bitmap and decide the encoding of the column.
+	 */
+	private ColumnEncoding scanColumn(Table table, int col, byte[] nulls) {
+		ColumnEncoding encoding = ColumnEncoding.of(table.getColumnType(col));
+		for (int row = 0; row < table.size(); row++) {
+			Object value = table.getValueAt(row, col);
+			if (value == null) {
+				nulls[row >> 3] |= 1 << (row & 7);
+			} else if (encoding == null) {
+				encoding = ColumnEncoding.of(value.getClass());
+			} else if (!encoding.accepts(value)) {
+				encoding = ColumnEncoding.OBJECT;
+			}
+		}
+		return encoding == null ? ColumnEncoding.STRING : encoding;
+	}
+
+	private void writeColumn(FileChannel channel, Table table, int col,
+			ColumnEncoding encoding, byte[] nulls) throws IOException {
+		int rows = table.size();
+		long blockStart = channel.position();
+		DataOutputStream header = open(channel);
+		header.writeByte(compress ? DEFLATE : UNCOMPRESSED);
+		// the uncompressed length is written after the payload
+		header.writeLong(0);
+		header.flush();
+
+		Deflater deflater = null;
+		DeflaterOutputStream deflaterOut = null;
+		CountingOutputStream counter;
+		if (compress) {
+			deflater = new Deflater(Deflater.BEST_SPEED);
+			deflaterOut = new DeflaterOutputStream(
+					Channels.newOutputStream(channel), deflater, 64 * 1024);
+			counter = new CountingOutputStream(deflaterOut);
+		} else {
+			counter = new CountingOutputStream(
+					Channels.newOutputStream(channel));
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				counter, 64 * 1024));
+
+		out.write(nulls);
+		if (encoding.isFixedWidth()) {
+			ByteBuffer values = ByteBuffer.allocate(encoding.width * 4096);
+			for (int row = 0; row < rows; row++) {
+				Object v = table.getValueAt(row, col);
+				int position = values.position();
+				if (v != null) {
+					encoding.put(values, position, v);
+				} else {
+					for (int i = 0; i < encoding.width; i++) {
+						values.put(position + i, (byte) 0);
+					}
+				}
+				values.position(position + encoding.width);
+				if (!values.hasRemaining()) {
+					out.write(values.array(), 0, values.position());
+					values.clear();
+				}
+			}
+			out.write(values.array(), 0, values.position());
+		} else {
+			int offset = 0;
+			out.writeInt(offset);
+			for (int row = 0; row < rows; row++) {
+				Object v = table.getValueAt(row, col);
+				if (v != null) {
+					long next = (long) offset + length(encoding, v);
+					if (next > Integer.MAX_VALUE) {
+						throw new IOException("column "
+								+ table.getColumnName(col)
+								+ " is larger than 2GB");
+					}
+					offset = (int) next;
+				}
+				out.writeInt(offset);
+			}
+			for (int row = 0; row < rows; row++) {
+				Object v = table.getValueAt(row, col);
+				if (v != null) {
+					out.write(encoding.toBytes(v));
+				}
+			}
+		}
+		out.flush();
+		if (deflater != null) {
+			deflaterOut.finish();
+			deflater.end();
+		}
+
+		ByteBuffer rawLength = ByteBuffer.allocate(8);
+		rawLength.putLong(0, counter.count);
+		channel.write(rawLength, blockStart + 1);
+	}
+
+	private static int length(ColumnEncoding encoding, Object value)
+			throws IOException {
+		if (encoding != ColumnEncoding.STRING) {
+			return encoding.toBytes(value).length;
+		}
+		// count the UTF-8 bytes without encoding the string
+		String str = (String) value;
+		int length = 0;
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < str.length()
+					&& Character.isLowSurrogate(str.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				// unpaired surrogates are replaced by '?'
+				length++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
+	private static DataOutputStream open(FileChannel channel) {
+		return new DataOutputStream(new BufferedOutputStream(
+				Channels.newOutputStream(channel)));
+	}
+
+	/**
+	 * Counts the bytes written before the compression.
+	 */
+	static class CountingOutputStream extends FilterOutputStream {
+
+		long count = 0;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public void close() throws IOException {
+			// the channel is closed by the writer
+			flush();
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+package wyq.toolbox.datamodel;
+
+/**
+ * This abstract class represents a secondary index on one or more columns of a
+ * Table. Use {@linkplain wyq.toolbox.datamodel.Table#buildIndex(Type, String...)
+ * Table.buildIndex} to create it. The index is read-only and can be used by
+ * several threads at the same time, but it does not follow the changes of the
+ * table, rebuild it after the table is reordered.
+ * <p>
+ * The numbers are compared by their values regardless of their classes, so an
+ * Integer key also matches a Long cell with the same value, and 3.0 or
+ * BigDecimal 3.00 matches 3, in both types of the index.
+ * </p>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public abstract class TableIndex {
+
+	/**
+	 * The types of the index.
+	 */
+	public static enum Type {
+		/**
+		 * Hash index for the equality lookups.
+		 */
+		HASH,
+		/**
+		 * Sorted index for the equality, range and prefix lookups.
+		 */
+		SORTED
+	}
+
+	static final int[] NO_ROWS = new int[0];
+
+	protected final Table table;
+	protected final int[] columns;
+
+	protected TableIndex(Table table, int[] columns) {
+		this.table = table;
+		this.columns = columns;
+	}
+
+	public Table getTable() {
+		return table;
+	}
+
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	public String getColumnName(int i) {
+		return table.getColumnName(columns[i]);
+	}
+
+	/**
+	 * Returns the positions of the rows whose key equals the specified key,
+	 * one value for each indexed column.
+	 *
+	 * @param key
+	 * @return
+	 */
+	public abstract int[] lookup(Object... key);
+
+	/**
+	 * Returns the position of the first row whose key equals the specified key
+	 * or -1 if not found. This method does not create any arrays for the
+	 * result.
+	 *
+	 * @param key
+	 * @return
+	 */
+	public abstract int first(Object... key);
+
+	/**
+	 * Move the cursor of the table to the first row whose key equals the
+	 * specified key.
+	 *
+	 * @param key
+	 * @return false if not found, the cursor is not moved.
+	 */
+	public boolean seek(Object... key) {
+		int row = first(key);
+		if (row < 0) {
+			return false;
+		}
+		return table.absolute(row);
+	}
+
+	public boolean contains(Object... key) {
+		return first(key) >= 0;
+	}
+
+	/**
+	 * Read the key values of the row.
+	 */
+	Object[] keyOf(int row) {
+		Object[] key = new Object[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			key[i] = table.getValueAt(row, columns[i]);
+		}
+		return key;
+	}
+
+	void checkKey(Object[] key, boolean allowPrefix) {
+		if (key == null || key.length > columns.length
+				|| (!allowPrefix && key.length != columns.length)) {
+			throw new IllegalArgumentException("the index has "
+					+ columns.length + " columns but "
+					+ (key == null ? 0 : key.length) + " values are given");
+		}
+	}
+
+}
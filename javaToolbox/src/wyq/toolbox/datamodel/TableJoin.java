@@ -0,0 +1,437 @@
+package wyq.toolbox.datamodel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * This class joins two Tables by the values of their key columns with a hash
+ * join: a hash table is built on the rows of one table and the rows of the
+ * other table are looked up in it, by several threads if
+ * {@link #parallel(int)} is set.
+ *
+ * <pre>
+ * Table result = new TableJoin(orders, customers)
+ * 		.on(new String[] { &quot;customer&quot; }, new String[] { &quot;id&quot; })
+ * 		.type(TableJoin.Type.LEFT).parallel(4).execute();
+ * </pre>
+ * <p>
+ * The result of the inner and left joins is a
+ * {@linkplain wyq.toolbox.datamodel.JoinedTable JoinedTable} with the columns
+ * of the left table followed by the columns of the right table. The right key
+ * columns with the same names as the left ones are left out, the other right
+ * columns whose names are already used get a suffix, <code>_right</code> by
+ * default. The result of the semi and anti joins is a
+ * {@linkplain wyq.toolbox.datamodel.TableView TableView} of the left table.
+ * </p>
+ * <p>
+ * The hash table is built on the smaller table (with less distinct keys if
+ * the sizes are equal and the
+ * {@linkplain wyq.toolbox.datamodel.ColumnStatistics statistics} are
+ * collected), except for the left join
+ * which always builds it on the right table. The rows of the result are in the
+ * order of the looked up table, the matched rows of the hash table are in
+ * their original order. The null keys never match. If a key column is a number
+ * on one side and a string on the other side, the strings are compared as
+ * numbers, so a table read from a csv file can be joined with a database
+ * table.
+ * </p>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class TableJoin {
+
+	/**
+	 * The types of the join.
+	 */
+	public static enum Type {
+		/**
+		 * The pairs of the matched rows.
+		 */
+		INNER,
+		/**
+		 * The pairs of the matched rows, and the left rows without matched
+		 * rows paired with null values.
+		 */
+		LEFT,
+		/**
+		 * The left rows with matched rows.
+		 */
+		SEMI,
+		/**
+		 * The left rows without matched rows.
+		 */
+		ANTI
+	}
+
+	private static final int BATCH_SIZE = TableQuery.BATCH_SIZE;
+
+	private final Table left;
+	private final Table right;
+	private String[] leftKeys;
+	private String[] rightKeys;
+	private Type type = Type.INNER;
+	private String suffix = "_right";
+	private int threads = 1;
+
+	public TableJoin(Table left, Table right) {
+		if (left instanceof StreamingTable || right instanceof StreamingTable) {
+			throw new IllegalArgumentException(
+					"StreamingTable does not provide random access to its rows");
+		}
+		this.left = left;
+		this.right = right;
+	}
+
+	/**
+	 * Join by the columns with the same names in both tables.
+	 *
+	 * @param columns
+	 * @return this
+	 */
+	public TableJoin on(String... columns) {
+		return on(columns, columns);
+	}
+
+	/**
+	 * Join by the columns of the left table and the columns of the right
+	 * table, in pairs.
+	 *
+	 * @param leftColumns
+	 * @param rightColumns
+	 * @return this
+	 */
+	public TableJoin on(String[] leftColumns, String[] rightColumns) {
+		if (leftColumns.length == 0
+				|| leftColumns.length != rightColumns.length) {
+			throw new IllegalArgumentException(
+					"the key columns of the two tables do not match");
+		}
+		this.leftKeys = leftColumns;
+		this.rightKeys = rightColumns;
+		return this;
+	}
+
+	public TableJoin type(Type type) {
+		this.type = type;
+		return this;
+	}
+
+	/**
+	 * Set the suffix of the right columns whose names are already used by the
+	 * left columns.
+	 *
+	 * @param suffix
+	 * @return this
+	 */
+	public TableJoin suffix(String suffix) {
+		this.suffix = suffix;
+		return this;
+	}
+
+	/**
+	 * Look up the rows with several threads.
+	 *
+	 * @param threads
+	 * @return this
+	 */
+	public TableJoin parallel(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be positive");
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	public Table execute() {
+		if (leftKeys == null) {
+			throw new IllegalStateException("the key columns are not specified");
+		}
+		int[] leftColumns = new int[leftKeys.length];
+		int[] rightColumns = new int[rightKeys.length];
+		boolean[] numeric = new boolean[leftKeys.length];
+		for (int i = 0; i < leftKeys.length; i++) {
+			leftColumns[i] = RowFilter.columnOf(left, leftKeys[i]);
+			rightColumns[i] = RowFilter.columnOf(right, rightKeys[i]);
+			numeric[i] = isNumber(left.getColumnType(leftColumns[i])) != isNumber(right
+					.getColumnType(rightColumns[i]));
+		}
+		boolean buildLeft = type != Type.LEFT
+				&& buildCost(left, leftColumns) < buildCost(right, rightColumns);
+		final Table build = buildLeft ? left : right;
+		final Table probe = buildLeft ? right : left;
+		int[] buildColumns = buildLeft ? leftColumns : rightColumns;
+		final HashTable hashTable = new HashTable(new KeyReader(build,
+				buildColumns, numeric), build.estimateDistinctKeys(buildColumns));
+		final int[] probeColumns = buildLeft ? rightColumns : leftColumns;
+		final boolean[] numericKeys = numeric;
+
+		int total = probe.size();
+		int partitions = Parallel.partitions(total, threads);
+		List<Callable<Probe>> tasks = new ArrayList<Callable<Probe>>();
+		for (int p = 0; p < partitions; p++) {
+			final int from = Parallel.start(total, partitions, p);
+			final int to = Parallel.start(total, partitions, p + 1);
+			final boolean markBuild = buildLeft
+					&& (type == Type.SEMI || type == Type.ANTI);
+			tasks.add(new Callable<Probe>() {
+
+				@Override
+				public Probe call() {
+					Probe result = new Probe(markBuild ? build.size() : 0);
+					result.run(new KeyReader(probe, probeColumns, numericKeys),
+							hashTable, from, to, markBuild, type);
+					return result;
+				}
+			});
+		}
+		List<Probe> probes = Parallel.run(tasks);
+
+		if (type == Type.SEMI || type == Type.ANTI) {
+			boolean wanted = type == Type.SEMI;
+			IntList rows = new IntList();
+			if (buildLeft) {
+				// the matched flags of the left rows are collected by all ranges
+				boolean[] matched = new boolean[left.size()];
+				for (Probe result : probes) {
+					for (int row = 0; row < matched.length; row++) {
+						matched[row] |= result.matched[row];
+					}
+				}
+				for (int row = 0; row < matched.length; row++) {
+					if (matched[row] == wanted) {
+						rows.add(row);
+					}
+				}
+			} else {
+				for (Probe result : probes) {
+					for (int i = 0; i < result.probeRows.size(); i++) {
+						if ((result.buildRows.get(i) >= 0) == wanted) {
+							rows.add(result.probeRows.get(i));
+						}
+					}
+				}
+			}
+			return new TableView(left, rows.toArray(), null);
+		}
+
+		List<IntList> probeRows = new ArrayList<IntList>();
+		List<IntList> buildRows = new ArrayList<IntList>();
+		for (Probe result : probes) {
+			probeRows.add(result.probeRows);
+			buildRows.add(result.buildRows);
+		}
+		int[] leftRows = IntList.concat(buildLeft ? buildRows : probeRows);
+		int[] rightRows = IntList.concat(buildLeft ? probeRows : buildRows);
+		return joinedTable(leftRows, rightRows);
+	}
+
+	private JoinedTable joinedTable(int[] leftRows, int[] rightRows) {
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < left.getColumnCount(); i++) {
+			names.add(left.getColumnName(i));
+		}
+		List<Integer> columns = new ArrayList<Integer>();
+		for (int i = 0; i < right.getColumnCount(); i++) {
+			String name = right.getColumnName(i);
+			int key = Arrays.asList(rightKeys).indexOf(name);
+			if (key >= 0 && name.equals(leftKeys[key])) {
+				continue;
+			}
+			while (names.contains(name)) {
+				name += suffix;
+			}
+			names.add(name);
+			columns.add(i);
+		}
+		int[] rightColumns = new int[columns.size()];
+		for (int i = 0; i < rightColumns.length; i++) {
+			rightColumns[i] = columns.get(i);
+		}
+		return new JoinedTable(left, leftRows, right, rightRows, rightColumns,
+				names);
+	}
+
+	/**
+	 * The cost of building the hash table on the table: its rows, and its
+	 * distinct keys as the tie breaker when the statistics are available.
+	 */
+	private static double buildCost(Table table, int[] columns) {
+		long keys = table.estimateDistinctKeys(columns);
+		return table.size() + (keys < 0 ? 0 : (double) keys / (table.size() + 1));
+	}
+
+	private static boolean isNumber(Class<?> type) {
+		return type != null && Number.class.isAssignableFrom(type);
+	}
+
+	/**
+	 * Read the keys of a batch of rows.
+	 */
+	private static class KeyReader {
+
+		private final Table table;
+		private final int[] columns;
+		private final boolean[] numeric;
+		private final Object[][] values;
+
+		KeyReader(Table table, int[] columns, boolean[] numeric) {
+			this.table = table;
+			this.columns = columns;
+			this.numeric = numeric;
+			this.values = new Object[columns.length][BATCH_SIZE];
+		}
+
+		void read(int[] rows, int count) {
+			for (int c = 0; c < columns.length; c++) {
+				table.getValuesAt(rows, count, columns[c], values[c]);
+			}
+		}
+
+		/**
+		 * Returns the hash key of the row i of the batch, or null if any of the
+		 * values is null.
+		 */
+		Object keyOf(int i) {
+			if (columns.length == 1) {
+				return valueOf(0, i);
+			}
+			Object[] key = new Object[columns.length];
+			for (int c = 0; c < columns.length; c++) {
+				key[c] = valueOf(c, i);
+				if (key[c] == null) {
+					return null;
+				}
+			}
+			return Arrays.asList(key);
+		}
+
+		private Object valueOf(int c, int i) {
+			Object value = values[c][i];
+			if (numeric[c] && value instanceof String) {
+				try {
+					value = Values.toNumber(value);
+				} catch (NumberFormatException e) {
+					// compared as a string, which does not match any number.
+				}
+			}
+			return Values.normalize(value);
+		}
+	}
+
+	/**
+	 * The hash table of the keys, the rows with the same key are chained in
+	 * their original order.
+	 */
+	private static class HashTable {
+
+		// first and last row of each key
+		private final Map<Object, int[]> keyRows;
+		private final int[] nextRows;
+
+		/**
+		 * @param expectedKeys
+		 *            the estimated count of the keys from the statistics, or -1
+		 *            if unknown.
+		 */
+		HashTable(KeyReader reader, long expectedKeys) {
+			int size = reader.table.size();
+			keyRows = expectedKeys < 0 ? new HashMap<Object, int[]>()
+					: new HashMap<Object, int[]>(Math.max(16,
+							(int) (expectedKeys / 0.75f) + 1));
+			nextRows = new int[size];
+			int[] batch = new int[BATCH_SIZE];
+			for (int start = 0; start < size; start += BATCH_SIZE) {
+				int count = Math.min(BATCH_SIZE, size - start);
+				for (int i = 0; i < count; i++) {
+					batch[i] = start + i;
+				}
+				reader.read(batch, count);
+				for (int i = 0; i < count; i++) {
+					int row = batch[i];
+					nextRows[row] = -1;
+					Object key = reader.keyOf(i);
+					if (key == null) {
+						continue;
+					}
+					int[] firstAndLast = keyRows.get(key);
+					if (firstAndLast == null) {
+						keyRows.put(key, new int[] { row, row });
+					} else {
+						nextRows[firstAndLast[1]] = row;
+						firstAndLast[1] = row;
+					}
+				}
+			}
+		}
+
+		int first(Object key) {
+			int[] firstAndLast = keyRows.get(key);
+			return firstAndLast == null ? -1 : firstAndLast[0];
+		}
+	}
+
+	/**
+	 * The pairs of the rows found for a range of the looked up table, -1 for
+	 * the build row means not found. For the semi and anti joins built on the
+	 * left table, the found left rows are flagged instead.
+	 */
+	private static class Probe {
+
+		final IntList probeRows = new IntList(BATCH_SIZE);
+		final IntList buildRows = new IntList(BATCH_SIZE);
+		final boolean[] matched;
+
+		Probe(int buildSize) {
+			matched = new boolean[buildSize];
+		}
+
+		void run(KeyReader reader, HashTable hashTable, int from, int to,
+				boolean markBuild, Type type) {
+			// the left and anti joins need the rows not found
+			boolean keepUnmatched = type == Type.LEFT || type == Type.ANTI;
+			// the semi and anti joins need only one row found
+			boolean firstOnly = type == Type.SEMI || type == Type.ANTI;
+			int[] batch = new int[BATCH_SIZE];
+			for (int start = from; start < to; start += BATCH_SIZE) {
+				int count = Math.min(BATCH_SIZE, to - start);
+				for (int i = 0; i < count; i++) {
+					batch[i] = start + i;
+				}
+				reader.read(batch, count);
+				for (int i = 0; i < count; i++) {
+					Object key = reader.keyOf(i);
+					int row = key == null ? -1 : hashTable.first(key);
+					if (markBuild) {
+						// the rows of a chain have the same key, so the chain
+						// is marked already if its first row is
+						if (row >= 0 && matched[row]) {
+							continue;
+						}
+						for (; row >= 0; row = hashTable.nextRows[row]) {
+							matched[row] = true;
+						}
+					} else if (row < 0) {
+						if (keepUnmatched) {
+							probeRows.add(batch[i]);
+							buildRows.add(-1);
+						}
+					} else if (firstOnly) {
+						probeRows.add(batch[i]);
+						buildRows.add(row);
+					} else {
+						for (; row >= 0; row = hashTable.nextRows[row]) {
+							probeRows.add(batch[i]);
+							buildRows.add(row);
+						}
+					}
+				}
+			}
+		}
+	}
+
+}
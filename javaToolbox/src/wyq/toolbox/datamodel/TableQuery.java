@@ -0,0 +1,435 @@
+package wyq.toolbox.datamodel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * This class runs a query on a Table: filter the rows, group them, compute the
+ * aggregates and project the columns. The result is a Table too, so it can be
+ * queried again.
+ *
+ * <pre>
+ * Table result = new TableQuery(table)
+ * 		.where(RowFilter.gt(&quot;price&quot;, 100))
+ * 		.groupBy(&quot;category&quot;)
+ * 		.aggregate(Aggregate.count(), Aggregate.sum(&quot;price&quot;).as(&quot;total&quot;))
+ * 		.execute();
+ * </pre>
+ * <p>
+ * The rows are processed a batch at a time: the positions of a batch are kept
+ * in an int array which is narrowed by the filters, and the values of a column
+ * are read for the whole batch before they are compared or aggregated. No
+ * object is created for a row except for the composite group keys. The
+ * equality filters and the group-by on a
+ * {@linkplain wyq.toolbox.datamodel.ColumnDictionary dictionary encoded}
+ * column work on the int codes of the strings.
+ * </p>
+ * <p>
+ * Without aggregates the result is a
+ * {@linkplain wyq.toolbox.datamodel.TableView TableView} of the matched rows,
+ * the values are not copied. With aggregates the result is a
+ * {@linkplain wyq.toolbox.datamodel.MemoryTable MemoryTable} with the group
+ * columns followed by the aggregates, one row for each group in the order of
+ * their first rows. <code>select</code> is applied to the columns of the
+ * result.
+ * </p>
+ * <p>
+ * With {@link #parallel(int)} the rows are split into ranges processed by
+ * several threads and the partial results are merged in the order of the
+ * ranges, so the result is the same as the sequential one. The table is only
+ * read, but it should not be changed during the query.
+ * </p>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class TableQuery {
+
+	static final int BATCH_SIZE = 1024;
+
+	private final Table table;
+	private RowFilter filter;
+	private String[] groupBy = new String[0];
+	private List<Aggregate> aggregates = new ArrayList<Aggregate>();
+	private String[] select;
+	private int threads = 1;
+
+	public TableQuery(Table table) {
+		if (table instanceof StreamingTable) {
+			throw new IllegalArgumentException(
+					"StreamingTable does not provide random access to its rows");
+		}
+		this.table = table;
+	}
+
+	/**
+	 * Keep the rows accepted by the filter. Calling this method several times
+	 * combines the filters with and.
+	 *
+	 * @param filter
+	 * @return this
+	 */
+	public TableQuery where(RowFilter filter) {
+		this.filter = this.filter == null ? filter : RowFilter.and(
+				this.filter, filter);
+		return this;
+	}
+
+	/**
+	 * Select the columns of the result.
+	 *
+	 * @param columns
+	 * @return this
+	 */
+	public TableQuery select(String... columns) {
+		this.select = columns;
+		return this;
+	}
+
+	/**
+	 * Group the rows by the values of the columns.
+	 *
+	 * @param columns
+	 * @return this
+	 */
+	public TableQuery groupBy(String... columns) {
+		this.groupBy = columns;
+		return this;
+	}
+
+	public TableQuery aggregate(Aggregate... aggregates) {
+		this.aggregates.addAll(Arrays.asList(aggregates));
+		return this;
+	}
+
+	/**
+	 * Run the query with several threads.
+	 *
+	 * @param threads
+	 * @return this
+	 */
+	public TableQuery parallel(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be positive");
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	public Table execute() {
+		int[] groupColumns = new int[groupBy.length];
+		for (int i = 0; i < groupBy.length; i++) {
+			groupColumns[i] = RowFilter.columnOf(table, groupBy[i]);
+		}
+		int[] aggregateColumns = new int[aggregates.size()];
+		for (int i = 0; i < aggregateColumns.length; i++) {
+			String column = aggregates.get(i).getColumn();
+			aggregateColumns[i] = column == null ? -1 : RowFilter.columnOf(
+					table, column);
+		}
+		boolean aggregating = groupColumns.length > 0 || !aggregates.isEmpty();
+
+		int[] candidates = indexedRows();
+		int total = candidates == null ? table.size() : candidates.length;
+		int partitions = Parallel.partitions(total, threads);
+		List<Callable<Partial>> tasks = new ArrayList<Callable<Partial>>();
+		for (int p = 0; p < partitions; p++) {
+			tasks.add(new Partial(candidates,
+					Parallel.start(total, partitions, p), Parallel.start(total,
+							partitions, p + 1), groupColumns, aggregateColumns,
+					aggregating));
+		}
+		List<Partial> partials = Parallel.run(tasks);
+
+		Table result;
+		if (aggregating) {
+			result = toTable(merge(partials), groupColumns, aggregateColumns);
+		} else {
+			int count = 0;
+			for (Partial partial : partials) {
+				count += partial.rowCount;
+			}
+			int[] rows = new int[count];
+			count = 0;
+			for (Partial partial : partials) {
+				System.arraycopy(partial.rows, 0, rows, count,
+						partial.rowCount);
+				count += partial.rowCount;
+			}
+			result = new TableView(table, rows, null);
+		}
+		if (select != null) {
+			int[] columns = new int[select.length];
+			for (int i = 0; i < select.length; i++) {
+				columns[i] = RowFilter.columnOf(result, select[i]);
+			}
+			result = new TableView(result, null, columns);
+		}
+		return result;
+	}
+
+	/**
+	 * Use the index of the table for an equality filter, the filter is still
+	 * applied to the rows found. The string columns are not looked up with a
+	 * number since the filter compares them as numbers.
+	 */
+	private int[] indexedRows() {
+		List<RowFilter.Comparison> equalities = new ArrayList<RowFilter.Comparison>();
+		if (filter instanceof RowFilter.Comparison) {
+			equalities.add((RowFilter.Comparison) filter);
+		} else if (filter instanceof RowFilter.And) {
+			for (RowFilter f : ((RowFilter.And) filter).filters) {
+				if (f instanceof RowFilter.Comparison) {
+					equalities.add((RowFilter.Comparison) f);
+				}
+			}
+		}
+		// the index of the column with the most distinct values is the most
+		// selective one, the first one is used without statistics.
+		TableIndex best = null;
+		Object bestKey = null;
+		long bestDistinct = -1;
+		for (RowFilter.Comparison c : equalities) {
+			if (c.operator != RowFilter.Comparison.EQ) {
+				continue;
+			}
+			TableIndex index = table.getIndex(c.column);
+			Class<?> type = table.getColumnType(c.column);
+			if (index != null && indexable(c.operand, type)) {
+				ColumnStatistics statistics = table.getStatistics(c.column);
+				long distinct = statistics == null ? 0 : statistics
+						.getDistinctCount();
+				if (best == null || distinct > bestDistinct) {
+					best = index;
+					bestKey = c.operand;
+					bestDistinct = distinct;
+				}
+			}
+		}
+		return best == null ? null : best.lookup(bestKey);
+	}
+
+	/**
+	 * Returns true if the index finds the same rows as the scan for the
+	 * operand. The scan parses the strings of the columns without a number
+	 * type when the operand is a number, which the index does not.
+	 */
+	private static boolean indexable(Object operand, Class<?> type) {
+		if (operand instanceof Number) {
+			return type != null && Number.class.isAssignableFrom(type);
+		} else if (type == null) {
+			// the columns of the text files have no types
+			return operand instanceof String;
+		}
+		return type.isInstance(operand);
+	}
+
+	/**
+	 * The group keys of a range, numbered by their first rows.
+	 */
+	private static class Groups {
+
+		private final Map<Object, Integer> numbers;
+		private final List<Object[]> keys;
+
+		Groups(int expectedGroups) {
+			numbers = new HashMap<Object, Integer>(Math.max(16,
+					(int) (expectedGroups / 0.75f) + 1));
+			keys = new ArrayList<Object[]>(expectedGroups);
+		}
+
+		int numberOf(Object[] key) {
+			Object hashKey = Values.key(key);
+			Integer number = numbers.get(hashKey);
+			if (number == null) {
+				number = keys.size();
+				numbers.put(hashKey, number);
+				keys.add(key.clone());
+			}
+			return number;
+		}
+
+		int size() {
+			return keys.size();
+		}
+	}
+
+	/**
+	 * The result of a range of the rows, which is also the task of the range.
+	 */
+	private class Partial implements Callable<Partial> {
+
+		private final int[] candidates;
+		private final int from;
+		private final int to;
+		private final int[] groupColumns;
+		private final int[] aggregateColumns;
+		private final boolean aggregating;
+
+		int[] rows;
+		int rowCount;
+		Groups groups;
+		Aggregate.Accumulator[] accumulators;
+
+		Partial(int[] candidates, int from, int to, int[] groupColumns,
+				int[] aggregateColumns, boolean aggregating) {
+			this.candidates = candidates;
+			this.from = from;
+			this.to = to;
+			this.groupColumns = groupColumns;
+			this.aggregateColumns = aggregateColumns;
+			this.aggregating = aggregating;
+		}
+
+		@Override
+		public Partial call() {
+			int[] batch = new int[BATCH_SIZE];
+			Object[] values = new Object[BATCH_SIZE];
+			Object[][] keyValues = new Object[groupColumns.length][BATCH_SIZE];
+			Object[] key = new Object[groupColumns.length];
+			int[] groupNumbers = new int[BATCH_SIZE];
+			// a single dictionary encoded group column is grouped by the codes
+			ColumnDictionary dictionary = null;
+			int[] codes = null;
+			int[] groupOfCode = null;
+			if (groupColumns.length == 1) {
+				dictionary = table.getDictionary(groupColumns[0]);
+			}
+			if (dictionary != null) {
+				codes = new int[BATCH_SIZE];
+				groupOfCode = new int[dictionary.size() + 1];
+				Arrays.fill(groupOfCode, -1);
+			}
+			if (aggregating) {
+				// presize the groups by the statistics of the group columns
+				long expectedGroups = table.estimateDistinctKeys(groupColumns);
+				groups = new Groups((int) Math.min(to - from,
+						Math.max(expectedGroups, 1)));
+				accumulators = new Aggregate.Accumulator[aggregateColumns.length];
+				for (int i = 0; i < accumulators.length; i++) {
+					accumulators[i] = aggregates.get(i).newAccumulator();
+				}
+				if (groupColumns.length == 0) {
+					// the aggregates without groups always have one row
+					groups.numberOf(key);
+				}
+			} else {
+				rows = new int[Math.min(to - from, BATCH_SIZE)];
+			}
+			for (int start = from; start < to; start += BATCH_SIZE) {
+				int count = Math.min(BATCH_SIZE, to - start);
+				for (int i = 0; i < count; i++) {
+					batch[i] = candidates == null ? start + i
+							: candidates[start + i];
+				}
+				if (filter != null) {
+					count = filter.filter(table, batch, count, values);
+				}
+				if (count == 0) {
+					continue;
+				}
+				if (!aggregating) {
+					if (rowCount + count > rows.length) {
+						rows = Arrays.copyOf(rows,
+								Math.max(rowCount + count, rows.length * 2));
+					}
+					System.arraycopy(batch, 0, rows, rowCount, count);
+					rowCount += count;
+					continue;
+				}
+				if (dictionary != null) {
+					dictionary.getCodesAt(batch, count, codes);
+					for (int i = 0; i < count; i++) {
+						// the null code -1 is kept at the end of the array
+						int code = codes[i] < 0 ? groupOfCode.length - 1
+								: codes[i];
+						if (groupOfCode[code] < 0) {
+							key[0] = codes[i] < 0 ? null : dictionary
+									.getValue(codes[i]);
+							groupOfCode[code] = groups.numberOf(key);
+						}
+						groupNumbers[i] = groupOfCode[code];
+					}
+				} else {
+					for (int c = 0; c < groupColumns.length; c++) {
+						table.getValuesAt(batch, count, groupColumns[c],
+								keyValues[c]);
+					}
+					for (int i = 0; i < count; i++) {
+						for (int c = 0; c < key.length; c++) {
+							key[c] = keyValues[c][i];
+						}
+						groupNumbers[i] = groups.numberOf(key);
+					}
+				}
+				for (int a = 0; a < accumulators.length; a++) {
+					Object[] aggregateValues = null;
+					if (aggregateColumns[a] >= 0) {
+						table.getValuesAt(batch, count, aggregateColumns[a],
+								values);
+						aggregateValues = values;
+					}
+					accumulators[a].add(groupNumbers, aggregateValues, count,
+							groups.size());
+				}
+			}
+			if (aggregating) {
+				for (Aggregate.Accumulator accumulator : accumulators) {
+					accumulator.ensureCapacity(groups.size());
+				}
+			}
+			return this;
+		}
+	}
+
+	/**
+	 * Merge the groups and the aggregates of the other ranges into the first
+	 * one.
+	 */
+	private Partial merge(List<Partial> partials) {
+		Partial result = partials.get(0);
+		for (int p = 1; p < partials.size(); p++) {
+			Partial partial = partials.get(p);
+			int[] groupMap = new int[partial.groups.size()];
+			for (int g = 0; g < groupMap.length; g++) {
+				groupMap[g] = result.groups.numberOf(partial.groups.keys.get(g));
+			}
+			for (int a = 0; a < result.accumulators.length; a++) {
+				result.accumulators[a].merge(partial.accumulators[a], groupMap,
+						result.groups.size());
+			}
+		}
+		return result;
+	}
+
+	private Table toTable(Partial partial, int[] groupColumns,
+			int[] aggregateColumns) {
+		List<String> names = new ArrayList<String>();
+		List<Class<?>> types = new ArrayList<Class<?>>();
+		for (int column : groupColumns) {
+			names.add(table.getColumnName(column));
+			types.add(table.getColumnType(column));
+		}
+		for (int a = 0; a < aggregateColumns.length; a++) {
+			names.add(aggregates.get(a).getName());
+			types.add(partial.accumulators[a]
+					.getType(aggregateColumns[a] < 0 ? null : table
+							.getColumnType(aggregateColumns[a])));
+		}
+		MemoryTable result = new MemoryTable(names, types);
+		for (int g = 0; g < partial.groups.size(); g++) {
+			List<Object> row = new ArrayList<Object>(names.size());
+			row.addAll(Arrays.asList(partial.groups.keys.get(g)));
+			for (Aggregate.Accumulator accumulator : partial.accumulators) {
+				row.add(accumulator.get(g));
+			}
+			result.addRow(row);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,107 @@
+package wyq.toolbox.datamodel;
+
+/**
+ * This class provides the rows of a Table as a
+ * {@linkplain wyq.toolbox.datamodel.BatchTableDataSource BatchTableDataSource},
+ * so a Table can be copied into another Table or written by an exporter the
+ * same way as a csv file or a query result.
+ * <p>
+ * The rows are read by {@linkplain AbstractTable#getValuesAt(int[], int, int, Object[])
+ * getValuesAt} without moving the cursor of the table. A
+ * {@linkplain wyq.toolbox.datamodel.StreamingTable StreamingTable} is read by
+ * moving its cursor forward from the current row instead.
+ * </p>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class TableSource implements BatchTableDataSource {
+
+	private final Table table;
+	private final boolean streaming;
+	private int col = -1;
+	private int row = -1;
+	private int value = -1;
+	private int[] rows;
+	private Object[] values;
+
+	public TableSource(Table table) {
+		this.table = table;
+		this.streaming = table instanceof StreamingTable;
+	}
+
+	@Override
+	public boolean nextColumn() throws Exception {
+		return ++col < table.getColumnCount();
+	}
+
+	@Override
+	public String getColumnName() throws Exception {
+		return table.getColumnName(col);
+	}
+
+	@Override
+	public Class<?> getColumnType() throws Exception {
+		return table.getColumnType(col);
+	}
+
+	@Override
+	public boolean nextRow() throws Exception {
+		value = -1;
+		if (streaming) {
+			return table.next();
+		}
+		return ++row < table.size();
+	}
+
+	@Override
+	public boolean nextRowValue() throws Exception {
+		return ++value < table.getColumnCount();
+	}
+
+	@Override
+	public Object getRowValue() throws Exception {
+		if (streaming) {
+			return table.getValue(value);
+		}
+		return table.getValueAt(row, value);
+	}
+
+	@Override
+	public int nextBatch(RowBatch batch) throws Exception {
+		batch.clear();
+		int columns = table.getColumnCount();
+		if (streaming) {
+			while (!batch.isFull() && table.next()) {
+				int r = batch.addRow(columns);
+				for (int i = 0; i < columns; i++) {
+					batch.setValueAt(r, i, table.getValue(i));
+				}
+			}
+			return batch.size();
+		}
+		int count = Math.max(0,
+				Math.min(batch.getCapacity(), table.size() - (row + 1)));
+		if (count == 0) {
+			return 0;
+		}
+		if (rows == null || rows.length < count) {
+			rows = new int[batch.getCapacity()];
+			values = new Object[batch.getCapacity()];
+		}
+		for (int i = 0; i < count; i++) {
+			rows[i] = ++row;
+			batch.addRow(columns);
+		}
+		// read column by column, the column storages read faster this way
+		for (int c = 0; c < columns; c++) {
+			table.getValuesAt(rows, count, c, values);
+			for (int i = 0; i < count; i++) {
+				batch.setValueAt(i, c, values[i]);
+				values[i] = null;
+			}
+		}
+		return count;
+	}
+
+}
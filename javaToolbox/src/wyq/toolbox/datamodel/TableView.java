@@ -0,0 +1,126 @@
+package wyq.toolbox.datamodel;
+
+/**
+ * This class is a read-only view of some rows and columns of another Table.
+ * The values are not copied, they are read from the base table when they are
+ * accessed. The view has its own cursor, so several views of the same table
+ * can be used at the same time.
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class TableView extends Table {
+
+	private final Table base;
+	private int[] rows;
+	private final int[] columns;
+
+	/**
+	 * Create a view of all the rows and columns of the table.
+	 *
+	 * @param base
+	 */
+	public TableView(Table base) {
+		this(base, null, null);
+	}
+
+	/**
+	 * Create a view of the table.
+	 *
+	 * @param base
+	 * @param rows
+	 *            the positions of the rows in the base table, or null for all
+	 *            the rows.
+	 * @param columns
+	 *            the positions of the columns in the base table, or null for
+	 *            all the columns.
+	 */
+	public TableView(Table base, int[] rows, int[] columns) {
+		if (base instanceof StreamingTable) {
+			throw new IllegalArgumentException(
+					"StreamingTable does not provide random access to its rows");
+		}
+		if (columns == null) {
+			columns = new int[base.getColumnCount()];
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = i;
+			}
+		}
+		if (base instanceof TableView) {
+			// view of a view reads the underlying table directly.
+			TableView view = (TableView) base;
+			if (rows != null && view.rows != null) {
+				int[] baseRows = new int[rows.length];
+				for (int i = 0; i < rows.length; i++) {
+					baseRows[i] = view.rows[rows[i]];
+				}
+				rows = baseRows;
+			} else if (rows == null) {
+				rows = view.rows;
+			}
+			int[] baseColumns = new int[columns.length];
+			for (int i = 0; i < columns.length; i++) {
+				baseColumns[i] = view.columns[columns[i]];
+			}
+			columns = baseColumns;
+			base = view.base;
+		}
+		this.base = base;
+		this.rows = rows;
+		this.columns = columns;
+		for (int column : columns) {
+			columnNames.add(base.getColumnName(column));
+			columnTypes.add(base.getColumnType(column));
+		}
+	}
+
+	/**
+	 * The rows of a view can not be loaded.
+	 */
+	@Override
+	protected void loadData(TableDataSource dataSource) throws Exception {
+		throw new UnsupportedOperationException(
+				"the rows of a view can not be loaded");
+	}
+
+	public Table getBaseTable() {
+		return base;
+	}
+
+	/**
+	 * Returns the position of the row in the base table.
+	 *
+	 * @param row
+	 * @return
+	 */
+	public int getBaseRow(int row) {
+		return rows == null ? row : rows[row];
+	}
+
+	@Override
+	public int size() {
+		return rows == null ? base.size() : rows.length;
+	}
+
+	/**
+	 * Sorting a view reorders the rows of the view only, the base table is not
+	 * changed.
+	 */
+	@Override
+	protected void reorder(int[] permutation) {
+		int[] sorted = new int[permutation.length];
+		for (int i = 0; i < permutation.length; i++) {
+			sorted[i] = getBaseRow(permutation[i]);
+		}
+		rows = sorted;
+	}
+
+	@Override
+	public Object getValueAt(int row, int column) {
+		if (row < 0 || row >= size() || column < 0 || column >= columns.length) {
+			return null;
+		}
+		return base.getValueAt(getBaseRow(row), columns[column]);
+	}
+
+}
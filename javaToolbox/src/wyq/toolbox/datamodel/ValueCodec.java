@@ -0,0 +1,259 @@
+package wyq.toolbox.datamodel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * This class encodes the cell values into a compact binary form. Each value is
+ * written as a one byte tag followed by its content, integral numbers and
+ * lengths are written as variable-length integers. The values of the types
+ * which are not known by this class are written using the java serialization.
+ *
+ * @author dewafer
+ * @version 1
+ */
+class ValueCodec {
+
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte INTEGER = 2;
+	private static final byte LONG = 3;
+	private static final byte DOUBLE = 4;
+	private static final byte FLOAT = 5;
+	private static final byte SHORT = 6;
+	private static final byte BYTE = 7;
+	private static final byte TRUE = 8;
+	private static final byte FALSE = 9;
+	private static final byte BIG_DECIMAL = 10;
+	private static final byte BIG_INTEGER = 11;
+	private static final byte SQL_DATE = 12;
+	private static final byte SQL_TIME = 13;
+	private static final byte SQL_TIMESTAMP = 14;
+	private static final byte DATE = 15;
+	private static final byte BYTES = 16;
+	private static final byte SERIALIZED = 127;
+
+	static void write(DataOutput out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof String) {
+			out.writeByte(STRING);
+			writeBytes(out, ((String) value).getBytes(UTF_8));
+		} else if (value instanceof Integer) {
+			out.writeByte(INTEGER);
+			writeVarLong(out, (Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			writeVarLong(out, (Long) value);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Float) {
+			out.writeByte(FLOAT);
+			out.writeFloat((Float) value);
+		} else if (value instanceof Short) {
+			out.writeByte(SHORT);
+			writeVarLong(out, (Short) value);
+		} else if (value instanceof Byte) {
+			out.writeByte(BYTE);
+			out.writeByte((Byte) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte((Boolean) value ? TRUE : FALSE);
+		} else if (value instanceof BigDecimal) {
+			out.writeByte(BIG_DECIMAL);
+			writeBytes(out, value.toString().getBytes(UTF_8));
+		} else if (value instanceof BigInteger) {
+			out.writeByte(BIG_INTEGER);
+			writeBytes(out, ((BigInteger) value).toByteArray());
+		} else if (value.getClass() == java.sql.Date.class) {
+			out.writeByte(SQL_DATE);
+			writeVarLong(out, ((java.util.Date) value).getTime());
+		} else if (value.getClass() == java.sql.Time.class) {
+			out.writeByte(SQL_TIME);
+			writeVarLong(out, ((java.util.Date) value).getTime());
+		} else if (value.getClass() == java.sql.Timestamp.class) {
+			java.sql.Timestamp ts = (java.sql.Timestamp) value;
+			out.writeByte(SQL_TIMESTAMP);
+			writeVarLong(out, ts.getTime());
+			writeVarLong(out, ts.getNanos());
+		} else if (value.getClass() == java.util.Date.class) {
+			out.writeByte(DATE);
+			writeVarLong(out, ((java.util.Date) value).getTime());
+		} else if (value instanceof byte[]) {
+			out.writeByte(BYTES);
+			writeBytes(out, (byte[]) value);
+		} else {
+			out.writeByte(SERIALIZED);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(bytes);
+			oos.writeObject(value);
+			oos.close();
+			writeBytes(out, bytes.toByteArray());
+		}
+	}
+
+	static Object read(ByteBuffer in) throws IOException {
+		byte tag = in.get();
+		switch (tag) {
+		case NULL:
+			return null;
+		case STRING:
+			return new String(readBytes(in), UTF_8);
+		case INTEGER:
+			return (int) readVarLong(in);
+		case LONG:
+			return readVarLong(in);
+		case DOUBLE:
+			return in.getDouble();
+		case FLOAT:
+			return in.getFloat();
+		case SHORT:
+			return (short) readVarLong(in);
+		case BYTE:
+			return in.get();
+		case TRUE:
+			return Boolean.TRUE;
+		case FALSE:
+			return Boolean.FALSE;
+		case BIG_DECIMAL:
+			return new BigDecimal(new String(readBytes(in), UTF_8));
+		case BIG_INTEGER:
+			return new BigInteger(readBytes(in));
+		case SQL_DATE:
+			return new java.sql.Date(readVarLong(in));
+		case SQL_TIME:
+			return new java.sql.Time(readVarLong(in));
+		case SQL_TIMESTAMP:
+			java.sql.Timestamp ts = new java.sql.Timestamp(readVarLong(in));
+			ts.setNanos((int) readVarLong(in));
+			return ts;
+		case DATE:
+			return new java.util.Date(readVarLong(in));
+		case BYTES:
+			return readBytes(in);
+		case SERIALIZED:
+			ObjectInputStream ois = new ObjectInputStream(
+					new ByteArrayInputStream(readBytes(in)));
+			try {
+				return ois.readObject();
+			} catch (ClassNotFoundException e) {
+				throw new IOException(e);
+			} finally {
+				ois.close();
+			}
+		default:
+			throw new IOException("unknown value tag:" + tag);
+		}
+	}
+
+	/**
+	 * Skip one value in the buffer without decoding it.
+	 */
+	static void skip(ByteBuffer in) throws IOException {
+		byte tag = in.get();
+		switch (tag) {
+		case NULL:
+		case TRUE:
+		case FALSE:
+			break;
+		case BYTE:
+			in.get();
+			break;
+		case FLOAT:
+			in.getFloat();
+			break;
+		case DOUBLE:
+			in.getDouble();
+			break;
+		case INTEGER:
+		case LONG:
+		case SHORT:
+		case SQL_DATE:
+		case SQL_TIME:
+		case DATE:
+			readVarLong(in);
+			break;
+		case SQL_TIMESTAMP:
+			readVarLong(in);
+			readVarLong(in);
+			break;
+		case STRING:
+		case BIG_DECIMAL:
+		case BIG_INTEGER:
+		case BYTES:
+		case SERIALIZED:
+			int length = (int) readVarLong(in);
+			in.position(in.position() + length);
+			break;
+		default:
+			throw new IOException("unknown value tag:" + tag);
+		}
+	}
+
+	/**
+	 * Roughly estimate how many bytes the value takes in the java heap,
+	 * including the reference to it.
+	 */
+	static long estimateHeapSize(Object value) {
+		if (value == null) {
+			return 8;
+		} else if (value instanceof String) {
+			return 8 + 40 + 2L * ((String) value).length();
+		} else if (value instanceof Integer || value instanceof Float
+				|| value instanceof Short || value instanceof Byte
+				|| value instanceof Boolean) {
+			return 8 + 16;
+		} else if (value instanceof byte[]) {
+			return 8 + 16 + ((byte[]) value).length;
+		} else if (value instanceof BigDecimal) {
+			return 8 + 72;
+		} else {
+			return 8 + 24;
+		}
+	}
+
+	private static void writeBytes(DataOutput out, byte[] bytes)
+			throws IOException {
+		writeVarLong(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte[] readBytes(ByteBuffer in) {
+		byte[] bytes = new byte[(int) readVarLong(in)];
+		in.get(bytes);
+		return bytes;
+	}
+
+	static void writeVarLong(DataOutput out, long value) throws IOException {
+		// zigzag encoding to keep the small negative numbers short
+		long v = (value << 1) ^ (value >> 63);
+		while ((v & ~0x7FL) != 0) {
+			out.writeByte((int) ((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		out.writeByte((int) v);
+	}
+
+	static long readVarLong(ByteBuffer in) {
+		long v = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in.get();
+			v |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+}
@@ -0,0 +1,169 @@
+package wyq.toolbox.datamodel;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * This class compares and normalizes the cell values so that the values of
+ * different number classes can be compared, hashed and looked up together.
+ *
+ * @author dewafer
+ * @version 1
+ */
+class Values {
+
+	/**
+	 * Normalize the value for hashing: a number becomes a Long if it has an
+	 * integral value, or a Double otherwise, so the equal numbers of different
+	 * classes like 7, 7.0 and BigDecimal 7.00 have the same hash key.
+	 */
+	static Object normalize(Object value) {
+		if (!(value instanceof Number) || value instanceof Long) {
+			return value;
+		}
+		Number number = (Number) value;
+		if (isIntegral(number)) {
+			return number.longValue();
+		} else if (number instanceof BigInteger) {
+			return ((BigInteger) number).bitLength() < 64 ? (Object) number
+					.longValue() : number.doubleValue();
+		} else if (number instanceof BigDecimal) {
+			BigDecimal decimal = (BigDecimal) number;
+			if (decimal.signum() == 0 || decimal.scale() <= 0
+					|| decimal.stripTrailingZeros().scale() <= 0) {
+				try {
+					return decimal.longValueExact();
+				} catch (ArithmeticException e) {
+					// too large for a long
+				}
+			}
+		}
+		double d = number.doubleValue();
+		if (d == Math.rint(d) && Math.abs(d) < 0x1p63) {
+			return (long) d;
+		}
+		return d;
+	}
+
+	/**
+	 * Build the hash key of the values, a single value is used as it is and
+	 * several values are wrapped into a list.
+	 */
+	static Object key(Object[] values) {
+		if (values.length == 1) {
+			return normalize(values[0]);
+		}
+		Object[] key = new Object[values.length];
+		for (int i = 0; i < values.length; i++) {
+			key[i] = normalize(values[i]);
+		}
+		return Arrays.asList(key);
+	}
+
+	/**
+	 * Compare two values, nulls are the smallest. Numbers are compared by
+	 * their values regardless of their classes and go before the other values,
+	 * so a numeric string is never equal to a number, as in the hash keys.
+	 * Other values are compared by their natural order if they are comparable
+	 * to each other, or by their class names and then their string forms
+	 * otherwise.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static int compare(Object a, Object b) {
+		if (a == b) {
+			return 0;
+		} else if (a == null) {
+			return -1;
+		} else if (b == null) {
+			return 1;
+		} else if (a instanceof Number && b instanceof Number
+				&& a.getClass() != b.getClass()) {
+			return compareNumbers((Number) a, (Number) b);
+		} else if (a instanceof Number != b instanceof Number) {
+			return a instanceof Number ? -1 : 1;
+		} else if (a instanceof Comparable && a.getClass().isInstance(b)) {
+			return ((Comparable) a).compareTo(b);
+		} else if (b instanceof Comparable && b.getClass().isInstance(a)) {
+			return -((Comparable) b).compareTo(a);
+		}
+		int c = typeName(a).compareTo(typeName(b));
+		return c != 0 ? c : a.toString().compareTo(b.toString());
+	}
+
+	/**
+	 * The dates of the subclasses are compared with each other, they have the
+	 * same place among the other classes.
+	 */
+	private static String typeName(Object value) {
+		return value instanceof java.util.Date ? java.util.Date.class
+				.getName() : value.getClass().getName();
+	}
+
+	private static int compareNumbers(Number a, Number b) {
+		if (isIntegral(a) && isIntegral(b)) {
+			return a.longValue() < b.longValue() ? -1
+					: (a.longValue() == b.longValue() ? 0 : 1);
+		} else if (a instanceof BigDecimal || b instanceof BigDecimal
+				|| a instanceof BigInteger || b instanceof BigInteger) {
+			return toBigDecimal(a).compareTo(toBigDecimal(b));
+		}
+		return Double.compare(a.doubleValue(), b.doubleValue());
+	}
+
+	static boolean isIntegral(Object value) {
+		return value instanceof Long || value instanceof Integer
+				|| value instanceof Short || value instanceof Byte;
+	}
+
+	/**
+	 * Convert the value to a number, the strings are parsed as Long or Double.
+	 *
+	 * @throws NumberFormatException
+	 *             if the value is not a number.
+	 */
+	static Number toNumber(Object value) {
+		if (value instanceof Number) {
+			return (Number) value;
+		} else if (value instanceof Boolean) {
+			return (Boolean) value ? 1L : 0L;
+		} else if (value instanceof java.util.Date) {
+			return ((java.util.Date) value).getTime();
+		}
+		String s = value.toString().trim();
+		try {
+			return Long.parseLong(s);
+		} catch (NumberFormatException e) {
+			return Double.valueOf(s);
+		}
+	}
+
+	/**
+	 * Make the value comparable with the operand: a string value is parsed if
+	 * the operand is a number, the text files have no types.
+	 *
+	 * @return the value, or null if it can not be compared with the operand.
+	 */
+	static Object coerce(Object value, Object operand) {
+		if (operand instanceof Number && value instanceof String) {
+			try {
+				return toNumber(value);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		return value;
+	}
+
+	static BigDecimal toBigDecimal(Number value) {
+		if (value instanceof BigDecimal) {
+			return (BigDecimal) value;
+		} else if (value instanceof BigInteger) {
+			return new BigDecimal((BigInteger) value);
+		} else if (isIntegral(value)) {
+			return BigDecimal.valueOf(value.longValue());
+		}
+		return BigDecimal.valueOf(value.doubleValue());
+	}
+
+}
@@ -9,8 +9,12 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
+import wyq.toolbox.datamodel.BatchTableDataSource;
+import wyq.toolbox.datamodel.RowBatch;
 import wyq.toolbox.datamodel.Table;
+import wyq.toolbox.datamodel.TableCache;
 import wyq.toolbox.datamodel.TableDataSource;
 import wyq.toolbox.db.DBEngine.DBResult;
 
@@ -31,11 +35,56 @@ public class DBSimpleTool {
 	private static final String SQL_PREFIX_UPDATE = "UPDATE ";
 	private static final String SQL_PREFIX_DELETE = "DELETE FROM ";
 
+	private boolean collectStatistics = false;
+	private TableCache cache;
+
 	public DBSimpleTool(DBEngine engine) {
 		this.engine = engine;
 	}
 
+	/**
+	 * Collect the column statistics of the tables returned by select while the
+	 * rows are loaded, see
+	 * {@link wyq.toolbox.datamodel.Table#setCollectStatistics(boolean)}.
+	 * 
+	 * @param collectStatistics
+	 */
+	public void setCollectStatistics(boolean collectStatistics) {
+		this.collectStatistics = collectStatistics;
+	}
+
+	/**
+	 * Keep the tables returned by select in the cache, the same query with the
+	 * same parameters is not executed again until the table is removed from
+	 * the cache. The tables are views of the cached tables. null turns the
+	 * cache off. The cached tables of the database are removed by insert,
+	 * update and delete of this tool, but not by the changes made elsewhere.
+	 * 
+	 * @param cache
+	 */
+	public void setCache(TableCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Remove the cached tables of the database after insert, update or delete,
+	 * so the next select does not return the old rows.
+	 */
+	private void invalidateCache() {
+		if (cache != null) {
+			cache.invalidateQueries(engine.getProvider());
+		}
+	}
+
 	public int insert(String tblName, List<Map<String, Object>> lines) throws ClassNotFoundException, SQLException {
+		try {
+			return insertLines(tblName, lines);
+		} finally {
+			invalidateCache();
+		}
+	}
+
+	private int insertLines(String tblName, List<Map<String, Object>> lines) throws ClassNotFoundException, SQLException {
 
 		engine.connect();
 
@@ -90,11 +139,9 @@ public class DBSimpleTool {
 		return insert(tblName, v);
 	}
 
-	public Table select(String tblName, List<String> colList, Map<String, Object> where, List<String> orderBy)
+	public Table select(String tblName, List<String> colList, final Map<String, Object> where, List<String> orderBy)
 			throws Exception {
 
-		engine.connect();
-
 		// prepare SQL
 		StringBuilder sql = new StringBuilder(SQL_PREFIX_SELECT);
 		if (colList != null) {
@@ -138,19 +185,42 @@ public class DBSimpleTool {
 			}
 		}
 
+		if (cache == null) {
+			return select(sql.toString(), where, keyList);
+		}
+		final String selectSql = sql.toString();
+		final List<String> selectKeys = keyList;
+		List<Object> parameters = new ArrayList<Object>();
+		for (String key : keyList) {
+			parameters.add(where.get(key));
+		}
+		return cache.get(TableCache.queryKey(engine.getProvider(), selectSql, parameters), new Callable<Table>() {
+
+			@Override
+			public Table call() throws Exception {
+				return select(selectSql, where, selectKeys);
+			}
+		});
+	}
+
+	private Table select(String sql, Map<String, Object> where, List<String> keyList) throws Exception {
+
+		engine.connect();
+
 		// set handler
 		DBDriverHandler handler = new DBDriverHandler();
 		handler.entry = where;
 		handler.keyList = keyList;
 		engine.setHandler(handler);
 		// go sql
-		engine.executeSQL(sql.toString());
+		engine.executeSQL(sql);
 		// process result
 		ResultSetTableSourceAdapter adapter = new ResultSetTableSourceAdapter();
 		adapter.resultSet = handler.result.getResultSet();
 		adapter.metaData = handler.result.getResultSet().getMetaData();
 
 		DBDriverResultTable tbl = new DBDriverResultTable();
+		tbl.setCollectStatistics(collectStatistics);
 		tbl.load(adapter);
 
 		engine.close();
@@ -160,6 +230,15 @@ public class DBSimpleTool {
 
 	public int update(String tblName, List<Map<String, Object>> setList, List<Map<String, Object>> whereList)
 			throws SQLException, ClassNotFoundException {
+		try {
+			return updateLines(tblName, setList, whereList);
+		} finally {
+			invalidateCache();
+		}
+	}
+
+	private int updateLines(String tblName, List<Map<String, Object>> setList, List<Map<String, Object>> whereList)
+			throws SQLException, ClassNotFoundException {
 
 		engine.connect();
 
@@ -232,6 +311,14 @@ public class DBSimpleTool {
 	}
 
 	public int delete(String tblName, List<Map<String, Object>> whereList) throws SQLException, ClassNotFoundException {
+		try {
+			return deleteLines(tblName, whereList);
+		} finally {
+			invalidateCache();
+		}
+	}
+
+	private int deleteLines(String tblName, List<Map<String, Object>> whereList) throws SQLException, ClassNotFoundException {
 		engine.connect();
 
 		// prepare SQL prefix
@@ -329,7 +416,7 @@ public class DBSimpleTool {
 		}
 	}
 
-	class ResultSetTableSourceAdapter implements TableDataSource {
+	class ResultSetTableSourceAdapter implements BatchTableDataSource {
 
 		ResultSet resultSet;
 		ResultSetMetaData metaData;
@@ -337,9 +424,25 @@ public class DBSimpleTool {
 		int currentColDef = 0;
 		int currentCol = 0;
 
+		// the java types of the columns, looked up once instead of per value
+		private Class<?>[] javaTypes;
+
+		// resultSet.next() has returned false
+		private boolean end = false;
+
+		private Class<?>[] javaTypes() throws SQLException {
+			if (javaTypes == null) {
+				javaTypes = new Class<?>[metaData.getColumnCount()];
+				for (int i = 0; i < javaTypes.length; i++) {
+					javaTypes[i] = Types.getJavaType(metaData.getColumnType(i + 1));
+				}
+			}
+			return javaTypes;
+		}
+
 		@Override
 		public boolean nextColumn() throws Exception {
-			if (currentColDef < metaData.getColumnCount()) {
+			if (currentColDef < javaTypes().length) {
 				currentColDef++;
 				return true;
 			} else {
@@ -360,12 +463,12 @@ public class DBSimpleTool {
 
 		@Override
 		public Class<?> getColumnType() throws Exception {
-			return Types.getJavaType(metaData.getColumnType(currentColDef));
+			return javaTypes()[currentColDef - 1];
 		}
 
 		@Override
 		public boolean nextRowValue() throws Exception {
-			if (currentCol < metaData.getColumnCount()) {
+			if (currentCol < javaTypes().length) {
 				currentCol++;
 				return true;
 			} else {
@@ -375,7 +478,25 @@ public class DBSimpleTool {
 
 		@Override
 		public Object getRowValue() throws Exception {
-			return resultSet.getObject(currentCol, Types.getJavaType(metaData.getColumnType(currentCol)));
+			return resultSet.getObject(currentCol, javaTypes()[currentCol - 1]);
+		}
+
+		@Override
+		public int nextBatch(RowBatch batch) throws Exception {
+			batch.clear();
+			Class<?>[] types = javaTypes();
+			while (!end && !batch.isFull()) {
+				if (!resultSet.next()) {
+					// the driver may throw if next is called again
+					end = true;
+					break;
+				}
+				int row = batch.addRow(types.length);
+				for (int i = 0; i < types.length; i++) {
+					batch.setValueAt(row, i, resultSet.getObject(i + 1, types[i]));
+				}
+			}
+			return batch.size();
 		}
 
 	}
@@ -0,0 +1,153 @@
+package wyq.toolbox.file;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * This class writes the characters into a channel through a char buffer and a
+ * byte buffer which are allocated once, the characters which can not be
+ * encoded by the charset are replaced like OutputStreamWriter does. The
+ * channel is closed when this writer is closed.
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class BufferedChannelWriter extends Writer {
+
+	/**
+	 * The default size of the byte buffer.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+	private final WritableByteChannel channel;
+	private final CharsetEncoder encoder;
+	private final CharBuffer chars;
+	private final ByteBuffer bytes;
+	private boolean closed = false;
+
+	public BufferedChannelWriter(WritableByteChannel channel, Charset charset) {
+		this(channel, charset, DEFAULT_BUFFER_SIZE);
+	}
+
+	public BufferedChannelWriter(WritableByteChannel channel, Charset charset,
+			int bufferSize) {
+		this.channel = channel;
+		this.encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.bytes = ByteBuffer.allocate(bufferSize);
+		this.chars = CharBuffer.allocate(Math.max(1024, bufferSize / 4));
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		if (!chars.hasRemaining()) {
+			encode(false);
+		}
+		chars.put((char) c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		while (len > 0) {
+			if (!chars.hasRemaining()) {
+				encode(false);
+			}
+			int n = Math.min(len, chars.remaining());
+			chars.put(cbuf, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		while (len > 0) {
+			if (!chars.hasRemaining()) {
+				encode(false);
+			}
+			int n = Math.min(len, chars.remaining());
+			// String.getChars copies into the array of the buffer directly
+			str.getChars(off, off + n, chars.array(), chars.arrayOffset()
+					+ chars.position());
+			chars.position(chars.position() + n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	@Override
+	public Writer append(CharSequence csq) throws IOException {
+		String str = String.valueOf(csq);
+		write(str, 0, str.length());
+		return this;
+	}
+
+	/**
+	 * Encode the characters in the char buffer, the byte buffer is written
+	 * into the channel whenever it is full.
+	 */
+	private void encode(boolean endOfInput) throws IOException {
+		checkOpen();
+		chars.flip();
+		while (true) {
+			CoderResult result = encoder.encode(chars, bytes, endOfInput);
+			if (result.isOverflow()) {
+				drain();
+			} else if (result.isUnderflow()) {
+				break;
+			} else {
+				result.throwException();
+			}
+		}
+		if (endOfInput) {
+			while (encoder.flush(bytes).isOverflow()) {
+				drain();
+			}
+		}
+		// a high surrogate at the end waits for the next characters
+		chars.compact();
+	}
+
+	private void drain() throws IOException {
+		bytes.flip();
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		bytes.clear();
+	}
+
+	private void checkOpen() throws IOException {
+		if (closed) {
+			throw new IOException("the writer is closed");
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		encode(false);
+		drain();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			encode(true);
+			drain();
+		} finally {
+			closed = true;
+			channel.close();
+		}
+	}
+
+}
@@ -0,0 +1,58 @@
+package wyq.toolbox.file;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * This class decodes the bytes of a buffer, for example a mapped part of a
+ * file, into characters without copying the bytes. The malformed bytes are
+ * replaced like InputStreamReader does.
+ *
+ * @author dewafer
+ * @version 1
+ */
+class ByteBufferReader extends Reader {
+
+	private final ByteBuffer bytes;
+	private final CharsetDecoder decoder;
+	private boolean flushed = false;
+
+	ByteBufferReader(ByteBuffer bytes, Charset charset) {
+		this.bytes = bytes;
+		this.decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if (flushed) {
+			return -1;
+		}
+		CharBuffer chars = CharBuffer.wrap(cbuf, off, len);
+		CoderResult result = decoder.decode(bytes, chars, true);
+		if (result.isError()) {
+			result.throwException();
+		}
+		if (result.isUnderflow() && decoder.flush(chars).isUnderflow()) {
+			flushed = true;
+		}
+		int n = chars.position() - off;
+		return n == 0 && flushed ? -1 : n;
+	}
+
+	@Override
+	public void close() {
+		flushed = true;
+	}
+
+}
@@ -0,0 +1,561 @@
+package wyq.toolbox.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * This class parses the records of a csv file on the raw bytes instead of the
+ * decoded characters. The delimiters, the quotes and the line breaks are found
+ * on the bytes, and a field is decoded into a String only when it is read by
+ * {@link #getField(int)}, so the fields which are never read cost nothing but
+ * the scan.
+ * <p>
+ * The charset should encode the quote, the line breaks and the delimiter as
+ * their ASCII bytes, and no other character may contain these bytes. This is
+ * true for UTF-8 and the single byte charsets like ISO-8859-1. The double byte
+ * charsets GBK, GB18030, Big5, Shift_JIS, EUC-JP and EUC-KR are supported if
+ * the delimiter is below 0x40, for example the comma, the semicolon or the
+ * tab, since the second bytes of their characters start from 0x40. UTF-16,
+ * UTF-32 and the charsets with escape sequences are not supported, use
+ * {@link CsvParser} with a Reader for them. The rules of the quotes and the
+ * line breaks are the same as CsvParser.
+ * </p>
+ *
+ * <pre>
+ * CsvByteParser parser = new CsvByteParser(in, Charset.forName(&quot;GBK&quot;));
+ * while (parser.next()) {
+ * 	String name = parser.getField(2);
+ * 	...
+ * }
+ * parser.close();
+ * </pre>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class CsvByteParser implements CsvTokenizer {
+
+	private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private static final int END_OF_TEXT = -1;
+
+	/**
+	 * Returned by {@link #getLong(int)} if the field is not a long, or is
+	 * Long.MIN_VALUE itself.
+	 */
+	static final long NOT_A_LONG = Long.MIN_VALUE;
+
+	private static final byte QUOTE = '"';
+
+	private static final byte CR = '\r';
+
+	private static final byte LF = '\n';
+
+	// the bytes of the characters of these charsets are 0x80 or above, except
+	// the second bytes which may be from 0x40, or from 0x30 for GB18030
+	private static final Set<String> DOUBLE_BYTE_CHARSETS = new HashSet<String>(
+			Arrays.asList("GBK", "GB2312", "GB18030", "Big5", "Big5-HKSCS",
+					"Shift_JIS", "windows-31j", "EUC-JP", "EUC-KR",
+					"x-windows-949"));
+
+	private static final byte[] UTF8_BOM = { (byte) 0xEF, (byte) 0xBB,
+			(byte) 0xBF };
+
+	private final InputStream in;
+	private final Charset charset;
+	private final byte delimiter;
+	private byte[] buf;
+	private int pos = 0;
+	private int limit = 0;
+	private boolean endOfReader = false;
+	private boolean endOfText = false;
+	private boolean firstRecord = true;
+
+	// the start of the current record, the bytes before it are discarded when
+	// the buffer is refilled
+	private int recordStart = 0;
+	// the count of the bytes discarded from the front of the buffer
+	private long discarded = 0;
+	private int fieldStart = 0;
+	// the end of the unquoted bytes of a quoted field
+	private int write = 0;
+
+	private int[] starts = new int[16];
+	private int[] ends = new int[16];
+	private String[] values = new String[16];
+	private int fieldCount = 0;
+	private boolean[] selected;
+
+	// null to check the bytes one by one
+	private StructuralIndex index;
+
+	public CsvByteParser(InputStream in, Charset charset) {
+		this(in, charset, ',');
+	}
+
+	public CsvByteParser(InputStream in, Charset charset, char delimiter) {
+		this(in, charset, delimiter, DEFAULT_BUFFER_SIZE);
+	}
+
+	CsvByteParser(InputStream in, Charset charset, char delimiter,
+			int bufferSize) {
+		if (delimiter == '"' || delimiter == '\r' || delimiter == '\n') {
+			throw new IllegalArgumentException("invalid delimiter:"
+					+ delimiter);
+		}
+		if (!supports(charset, delimiter)) {
+			throw new IllegalArgumentException("the charset " + charset
+					+ " is not supported with the delimiter " + delimiter);
+		}
+		this.in = in;
+		this.charset = charset;
+		this.delimiter = (byte) delimiter;
+		this.buf = new byte[bufferSize];
+	}
+
+	/**
+	 * Returns true if the bytes of the charset can be parsed with the
+	 * delimiter.
+	 *
+	 * @param charset
+	 * @param delimiter
+	 * @return
+	 */
+	public static boolean supports(Charset charset, char delimiter) {
+		if (delimiter >= 0x80 || !charset.canEncode()) {
+			return false;
+		}
+		String ascii = "\"\r\n" + delimiter;
+		if (!Arrays.equals(ascii.getBytes(charset),
+				ascii.getBytes(Charset.forName("US-ASCII")))) {
+			return false;
+		}
+		if ("UTF-8".equals(charset.name())
+				|| charset.newEncoder().maxBytesPerChar() == 1) {
+			return true;
+		}
+		return delimiter < 0x40
+				&& DOUBLE_BYTE_CHARSETS.contains(charset.name());
+	}
+
+	/**
+	 * Parse the next record.
+	 *
+	 * @return false if there is no more record.
+	 * @throws IOException
+	 */
+	@Override
+	public boolean next() throws IOException {
+		Arrays.fill(values, 0, fieldCount, null);
+		fieldCount = 0;
+		recordStart = pos;
+		if (endOfText || !fill()) {
+			endOfText = true;
+			return false;
+		}
+		if (firstRecord) {
+			firstRecord = false;
+			if (skipBom() && !fill()) {
+				endOfText = true;
+				return false;
+			}
+			recordStart = pos;
+		}
+		byte b = buf[pos];
+		if (b == LF || b == CR) {
+			// an empty line
+			pos++;
+			endOfLine(b);
+			return true;
+		}
+		while (true) {
+			int end = parseField();
+			if (end == delimiter) {
+				continue;
+			}
+			if (end == END_OF_TEXT) {
+				endOfText = true;
+			} else {
+				endOfLine((byte) end);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the offset of the first byte of the current record in the
+	 * stream, the record can be parsed again from there.
+	 *
+	 * @return
+	 */
+	public long getRecordOffset() {
+		return discarded + recordStart;
+	}
+
+	@Override
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * Returns the field of the current record, the field is decoded at the
+	 * first call.
+	 *
+	 * @param i
+	 * @return the field, or null if it is not selected.
+	 */
+	@Override
+	public String getField(int i) {
+		if (i < 0 || i >= fieldCount) {
+			throw new IndexOutOfBoundsException("field " + i + " of "
+					+ fieldCount);
+		}
+		String value = values[i];
+		if (value == null && isSelected(i)) {
+			value = new String(buf, starts[i], ends[i] - starts[i], charset);
+			values[i] = value;
+		}
+		return value;
+	}
+
+	/**
+	 * Returns true if the field of the current record is empty.
+	 */
+	boolean isEmpty(int i) {
+		return starts[i] == ends[i];
+	}
+
+	/**
+	 * Parse the field of the current record as a long on the bytes, without
+	 * decoding it into a string.
+	 *
+	 * @return the value, or {@link #NOT_A_LONG}.
+	 */
+	long getLong(int i) {
+		int p = starts[i];
+		int end = ends[i];
+		if (p == end || !isSelected(i)) {
+			return NOT_A_LONG;
+		}
+		boolean negative = buf[p] == '-';
+		if (negative || buf[p] == '+') {
+			p++;
+		}
+		if (p == end || end - p > 18) {
+			// 18 digits never overflow
+			return NOT_A_LONG;
+		}
+		long value = 0;
+		for (; p < end; p++) {
+			int digit = buf[p] - '0';
+			if (digit < 0 || digit > 9) {
+				return NOT_A_LONG;
+			}
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	@Override
+	public String[] toArray() {
+		String[] fields = new String[fieldCount];
+		for (int i = 0; i < fieldCount; i++) {
+			fields[i] = getField(i);
+		}
+		return fields;
+	}
+
+	/**
+	 * Decode only the fields at the positions, the other fields are null.
+	 *
+	 * @param positions
+	 *            the positions of the fields, or null to decode all the
+	 *            fields.
+	 */
+	@Override
+	public void select(int... positions) {
+		if (positions == null) {
+			selected = null;
+			return;
+		}
+		int max = -1;
+		for (int p : positions) {
+			max = Math.max(max, p);
+		}
+		selected = new boolean[max + 1];
+		for (int p : positions) {
+			selected[p] = true;
+		}
+	}
+
+	/**
+	 * Find the delimiters, the quotes and the line breaks 8 bytes at a time
+	 * through a {@linkplain StructuralIndex StructuralIndex} instead of one by
+	 * one. This is faster on the files with long fields, and slower on the
+	 * files with many short fields.
+	 *
+	 * @param structuralIndex
+	 */
+	public void setStructuralIndex(boolean structuralIndex) {
+		if (!structuralIndex) {
+			index = null;
+		} else if (index == null) {
+			index = new StructuralIndex(delimiter);
+			index.reset(pos);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		endOfText = true;
+		in.close();
+	}
+
+	private boolean isSelected(int i) {
+		return selected == null || i < selected.length && selected[i];
+	}
+
+	/**
+	 * Skip the byte order mark of UTF-8.
+	 *
+	 * @return true if it is skipped.
+	 */
+	private boolean skipBom() throws IOException {
+		if (!"UTF-8".equals(charset.name())) {
+			return false;
+		}
+		for (int i = 0; i < UTF8_BOM.length; i++) {
+			if (pos + i == limit && !more()) {
+				return false;
+			}
+			if (buf[pos + i] != UTF8_BOM[i]) {
+				return false;
+			}
+		}
+		pos += UTF8_BOM.length;
+		return true;
+	}
+
+	/**
+	 * Parse a field and returns the byte which ends it: the delimiter, CR, LF
+	 * or END_OF_TEXT.
+	 */
+	private int parseField() throws IOException {
+		if (!fill()) {
+			// the delimiter at the end of the text
+			addField(pos, pos);
+			return END_OF_TEXT;
+		}
+		if (buf[pos] == QUOTE) {
+			pos++;
+			return index == null ? parseQuoted() : parseQuotedIndexed();
+		}
+		fieldStart = pos;
+		if (index != null) {
+			return parseIndexed();
+		}
+		while (true) {
+			while (pos < limit) {
+				byte b = buf[pos];
+				if (b == delimiter || b == LF || b == CR) {
+					addField(fieldStart, pos++);
+					return b;
+				}
+				pos++;
+			}
+			if (!fill()) {
+				addField(fieldStart, pos);
+				return END_OF_TEXT;
+			}
+		}
+	}
+
+	/**
+	 * The doubled quotes are unescaped in place, the bytes are moved left
+	 * only after the first doubled quote.
+	 */
+	private int parseQuoted() throws IOException {
+		fieldStart = pos;
+		write = pos;
+		while (true) {
+			while (pos < limit) {
+				byte b = buf[pos++];
+				if (b != QUOTE) {
+					buf[write++] = b;
+					continue;
+				}
+				if (!fill()) {
+					addField(fieldStart, write);
+					return END_OF_TEXT;
+				}
+				if (buf[pos] != QUOTE) {
+					return parseAfterQuote();
+				}
+				// a doubled quote
+				buf[write++] = buf[pos++];
+			}
+			if (!fill()) {
+				// the quote is not closed
+				addField(fieldStart, write);
+				return END_OF_TEXT;
+			}
+		}
+	}
+
+	/**
+	 * Same as the unquoted part of {@link #parseField()}, the bytes between
+	 * the positions of the index are skipped.
+	 */
+	private int parseIndexed() throws IOException {
+		while (true) {
+			pos = index.find(buf, pos, limit);
+			if (pos < limit) {
+				byte b = buf[pos];
+				if (b == delimiter || b == LF || b == CR) {
+					addField(fieldStart, pos++);
+					return b;
+				}
+				// a quote in the middle of the field
+				pos++;
+			} else if (!fill()) {
+				addField(fieldStart, pos);
+				return END_OF_TEXT;
+			}
+		}
+	}
+
+	/**
+	 * Same as {@link #parseQuoted()}, the bytes between the quotes are moved
+	 * by arraycopy if there has been a doubled quote.
+	 */
+	private int parseQuotedIndexed() throws IOException {
+		fieldStart = pos;
+		write = pos;
+		while (true) {
+			int end = index.find(buf, pos, limit);
+			if (write != pos) {
+				System.arraycopy(buf, pos, buf, write, end - pos);
+			}
+			write += end - pos;
+			pos = end;
+			if (pos == limit) {
+				if (!fill()) {
+					// the quote is not closed
+					addField(fieldStart, write);
+					return END_OF_TEXT;
+				}
+				continue;
+			}
+			byte b = buf[pos++];
+			if (b != QUOTE) {
+				buf[write++] = b;
+				continue;
+			}
+			if (!fill()) {
+				addField(fieldStart, write);
+				return END_OF_TEXT;
+			}
+			if (buf[pos] != QUOTE) {
+				return parseAfterQuote();
+			}
+			// a doubled quote
+			buf[write++] = buf[pos++];
+		}
+	}
+
+	/**
+	 * Append the bytes between the closing quote and the end of the field.
+	 */
+	private int parseAfterQuote() throws IOException {
+		while (true) {
+			while (pos < limit) {
+				byte b = buf[pos++];
+				if (b == delimiter || b == LF || b == CR) {
+					addField(fieldStart, write);
+					return b;
+				}
+				buf[write++] = b;
+			}
+			if (!fill()) {
+				addField(fieldStart, write);
+				return END_OF_TEXT;
+			}
+		}
+	}
+
+	/**
+	 * Skip the LF of CRLF.
+	 */
+	private void endOfLine(byte b) throws IOException {
+		if (b == CR && fill() && buf[pos] == LF) {
+			pos++;
+		}
+	}
+
+	/**
+	 * Make sure there are bytes in the buffer.
+	 *
+	 * @return false at the end of the stream.
+	 */
+	private boolean fill() throws IOException {
+		return pos < limit || more();
+	}
+
+	/**
+	 * Read more bytes after the limit. The bytes before the current record are
+	 * discarded first, and the buffer grows if the record fills it.
+	 *
+	 * @return false at the end of the stream.
+	 */
+	private boolean more() throws IOException {
+		if (endOfReader) {
+			return false;
+		}
+		int shift = recordStart;
+		if (shift > 0) {
+			System.arraycopy(buf, shift, buf, 0, limit - shift);
+			discarded += shift;
+			limit -= shift;
+			pos -= shift;
+			recordStart = 0;
+			fieldStart -= shift;
+			write -= shift;
+			for (int i = 0; i < fieldCount; i++) {
+				starts[i] -= shift;
+				ends[i] -= shift;
+			}
+		} else if (limit == buf.length) {
+			buf = Arrays.copyOf(buf, buf.length * 2);
+		}
+		if (index != null) {
+			// the positions are changed
+			index.reset(pos);
+		}
+		int n;
+		do {
+			n = in.read(buf, limit, buf.length - limit);
+		} while (n == 0);
+		if (n < 0) {
+			endOfReader = true;
+			return false;
+		}
+		limit += n;
+		return true;
+	}
+
+	private void addField(int start, int end) {
+		if (fieldCount == starts.length) {
+			starts = Arrays.copyOf(starts, fieldCount * 2);
+			ends = Arrays.copyOf(ends, fieldCount * 2);
+			values = Arrays.copyOf(values, fieldCount * 2);
+		}
+		starts[fieldCount] = start;
+		ends[fieldCount] = end;
+		fieldCount++;
+	}
+
+}
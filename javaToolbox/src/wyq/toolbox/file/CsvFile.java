@@ -1,19 +1,42 @@
 package wyq.toolbox.file;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URI;
-import java.util.ArrayList;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
 
+import wyq.toolbox.datamodel.BatchTableDataSource;
+import wyq.toolbox.datamodel.FilteredDataSource;
+import wyq.toolbox.datamodel.MappedTable;
+import wyq.toolbox.datamodel.OffHeapTable;
+import wyq.toolbox.datamodel.RowBatch;
+import wyq.toolbox.datamodel.RowFilter;
+import wyq.toolbox.datamodel.SealedTable;
+import wyq.toolbox.datamodel.SpillableTable;
+import wyq.toolbox.datamodel.StreamingTable;
 import wyq.toolbox.datamodel.Table;
+import wyq.toolbox.datamodel.TableCache;
 import wyq.toolbox.datamodel.TableDataSource;
+import wyq.toolbox.datamodel.TableFileWriter;
 
 /**
  * This class extends from the TextFile class can read the CSV files through the
  * readAllCsv method and the result is wrapped into a Table object which can be
- * accessed like ResultSet style. TODO: Add methods to write into CSV file.
+ * accessed like ResultSet style. The CSV files are written by the writeAllCsv
+ * method or a {@linkplain CsvWriter CsvWriter}.
+ * <p>
+ * The files in UTF-8, the single byte charsets and GBK are parsed on the bytes
+ * by {@linkplain CsvByteParser CsvByteParser}, the files in the other
+ * charsets like UTF-16 are decoded first, see {@link #setCharset(Charset)}.
+ * </p>
  * 
  * @author dewafer
  * @version 2
@@ -25,6 +48,12 @@ public class CsvFile extends TextFile {
 	 */
 	private static final long serialVersionUID = -1970285980252228385L;
 
+	private boolean collectStatistics = false;
+
+	private boolean structuralIndex = false;
+
+	private CsvSchema schema;
+
 	public CsvFile(File parent, String child) {
 		super(parent, child);
 	}
@@ -41,6 +70,63 @@ public class CsvFile extends TextFile {
 		super(name);
 	}
 
+	/**
+	 * Collect the column statistics of the tables returned by readAllCsv while
+	 * the rows are loaded, see
+	 * {@link wyq.toolbox.datamodel.Table#setCollectStatistics(boolean)}.
+	 * 
+	 * @param collectStatistics
+	 */
+	public void setCollectStatistics(boolean collectStatistics) {
+		this.collectStatistics = collectStatistics;
+	}
+
+	/**
+	 * Scan the bytes of the file 8 at a time, see
+	 * {@link CsvByteParser#setStructuralIndex(boolean)}. This is faster on the
+	 * files with long text fields. It has no effect if the file is parsed on
+	 * the characters because of the charset.
+	 * 
+	 * @param structuralIndex
+	 */
+	public void setStructuralIndex(boolean structuralIndex) {
+		this.structuralIndex = structuralIndex;
+	}
+
+	/**
+	 * Set the types of the columns, the values are parsed into the types once
+	 * while the file is read by the readAllCsv and streamCsv methods, and the
+	 * tables report the types by getColumnType. Null to read all the values as
+	 * strings, which is the default. readAllCsvParallel always reads strings.
+	 * 
+	 * @param schema
+	 */
+	public void setSchema(CsvSchema schema) {
+		this.schema = schema;
+	}
+
+	public CsvSchema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * Infer the types of the columns from the first rows of the file, see
+	 * {@link CsvSchema#inferTypes(CsvRecordIterator, int)}.
+	 * 
+	 * @param sampleRows
+	 *            the count of the rows to check.
+	 * @return a new {@linkplain CsvSchema CsvSchema}
+	 * @throws Exception
+	 */
+	public CsvSchema inferSchema(int sampleRows) throws Exception {
+		CsvRecordIterator records = records();
+		try {
+			return new CsvSchema().inferTypes(records, sampleRows);
+		} finally {
+			records.close();
+		}
+	}
+
 	/**
 	 * Read all the contents of the csv file and return a
 	 * {@linkplain wyq.appengine2.datamodel.Table Table} object.
@@ -52,72 +138,360 @@ public class CsvFile extends TextFile {
 		return new CsvTable(this);
 	}
 
+	/**
+	 * Read the selected columns of the rows which match the filter. The other
+	 * fields are skipped while parsing and the rows which do not match are
+	 * dropped before they are stored, which saves the time and the memory on
+	 * the wide files.
+	 * 
+	 * @param columns
+	 *            the columns of the table in this order, or null for all the
+	 *            columns.
+	 * @param filter
+	 *            the filter on the selected columns, or null to read all the
+	 *            rows.
+	 * @return {@linkplain wyq.toolbox.datamodel.Table Table}
+	 * @throws Exception
+	 */
+	public Table readAllCsv(String[] columns, RowFilter filter)
+			throws Exception {
+		return new CsvTable(this, source(columns, filter));
+	}
+
+	/**
+	 * Read all the contents of the csv file through the cache. The file is
+	 * parsed only if the cache does not have the table of the file or the file
+	 * has been modified since then, and the concurrent callers of the same
+	 * file wait for one parse.
+	 * 
+	 * @param cache
+	 * @return a {@linkplain wyq.toolbox.datamodel.TableView TableView} of the
+	 *         cached table.
+	 * @throws Exception
+	 */
+	public Table readAllCsv(TableCache cache) throws Exception {
+		final CsvFile csvFile = this;
+		// a copy, the key must not change with the schema
+		Object key = Arrays.asList(TableCache.fileKey(this), getCharset(),
+				schema == null ? null : schema.copy());
+		return cache.get(key, new Callable<Table>() {
+
+			@Override
+			public Table call() throws Exception {
+				return new CsvTable(csvFile);
+			}
+		});
+	}
+
+	/**
+	 * Read all the contents of the csv file into a
+	 * {@linkplain wyq.toolbox.datamodel.SpillableTable SpillableTable} which
+	 * writes the rows into a temporary file once they take more than
+	 * <code>memoryBudget</code> bytes of memory. Close the table to delete the
+	 * temporary file.
+	 * 
+	 * @param memoryBudget
+	 * @return {@linkplain wyq.toolbox.datamodel.SpillableTable SpillableTable}
+	 * @throws Exception
+	 */
+	public SpillableTable readAllCsv(long memoryBudget) throws Exception {
+		return new SpillableTable(new CsvSource(this), memoryBudget);
+	}
+
+	/**
+	 * Read all the contents of the csv file through a binary snapshot file.
+	 * The length and the last modified time of the csv file, the charset and
+	 * the {@linkplain #setSchema(CsvSchema) schema} are kept in the snapshot.
+	 * If the snapshot does not exist or any of them is different, the csv file
+	 * is parsed and written into the snapshot by
+	 * {@linkplain wyq.toolbox.datamodel.TableFileWriter TableFileWriter} first.
+	 * Close the returned table to unmap the snapshot.
+	 * 
+	 * @param snapshot
+	 * @return {@linkplain wyq.toolbox.datamodel.MappedTable MappedTable}
+	 * @throws Exception
+	 */
+	public MappedTable readAllCsv(File snapshot) throws Exception {
+		String source = length() + "," + lastModified() + ","
+				+ getCharset().name() + ","
+				+ (schema == null ? "" : schema.describe());
+		if (snapshot.exists()) {
+			MappedTable table = null;
+			try {
+				table = new MappedTable(snapshot);
+			} catch (IOException e) {
+				// a broken snapshot, write it again
+			}
+			if (table != null) {
+				if (source.equals(table.getSource())) {
+					return table;
+				}
+				table.close();
+			}
+		}
+		File tmp = new File(snapshot.getPath() + ".tmp");
+		new TableFileWriter().write(readAllCsv(), tmp, source);
+		snapshot.delete();
+		if (!tmp.renameTo(snapshot)) {
+			throw new IOException("can not create snapshot:" + snapshot);
+		}
+		return new MappedTable(snapshot);
+	}
+
+	/**
+	 * Read all the contents of the csv file into an
+	 * {@linkplain wyq.toolbox.datamodel.OffHeapTable OffHeapTable}. With a
+	 * {@linkplain #setSchema(CsvSchema) schema} the numbers, booleans and
+	 * dates are stored as primitives outside of the heap instead of the
+	 * objects. Close the table to free the memory.
+	 * 
+	 * @return {@linkplain wyq.toolbox.datamodel.OffHeapTable OffHeapTable}
+	 * @throws Exception
+	 */
+	public OffHeapTable readAllCsvOffHeap() throws Exception {
+		return new OffHeapTable(new CsvSource(this));
+	}
+
+	/**
+	 * Read all the contents of a large csv file with several threads by
+	 * {@linkplain ParallelCsvReader ParallelCsvReader}. The rows are in the
+	 * same order as {@link #readAllCsv()}.
+	 *
+	 * @param threads
+	 * @return {@linkplain wyq.toolbox.datamodel.SealedTable SealedTable}
+	 * @throws Exception
+	 */
+	public SealedTable readAllCsvParallel(int threads) throws Exception {
+		ParallelCsvReader reader = new ParallelCsvReader(this, threads);
+		reader.setCollectStatistics(collectStatistics);
+		reader.setCharset(getCharset());
+		return reader.read();
+	}
+
+	/**
+	 * Read the csv file row by row through a
+	 * {@linkplain wyq.toolbox.datamodel.StreamingTable StreamingTable} instead
+	 * of loading all the contents into memory. The cursor can only move
+	 * forward.
+	 * 
+	 * @return {@linkplain wyq.toolbox.datamodel.StreamingTable StreamingTable}
+	 * @throws Exception
+	 */
+	public StreamingTable streamCsv() throws Exception {
+		return streamCsv(0);
+	}
+
+	/**
+	 * Read the csv file row by row through a
+	 * {@linkplain wyq.toolbox.datamodel.StreamingTable StreamingTable} which
+	 * keeps <code>lookBack</code> rows behind the cursor.
+	 * 
+	 * @param lookBack
+	 * @return {@linkplain wyq.toolbox.datamodel.StreamingTable StreamingTable}
+	 * @throws Exception
+	 */
+	public StreamingTable streamCsv(int lookBack) throws Exception {
+		return new StreamingTable(new CsvSource(this), lookBack);
+	}
+
+	/**
+	 * Read the selected columns of the rows which match the filter row by row,
+	 * see {@link #readAllCsv(String[], RowFilter)}.
+	 * 
+	 * @param columns
+	 * @param filter
+	 * @return {@linkplain wyq.toolbox.datamodel.StreamingTable StreamingTable}
+	 * @throws Exception
+	 */
+	public StreamingTable streamCsv(String[] columns, RowFilter filter)
+			throws Exception {
+		return new StreamingTable(source(columns, filter), 0);
+	}
+
+	/**
+	 * Open the parser of the file, on the bytes if the charset allows.
+	 */
+	CsvTokenizer openParser() throws IOException {
+		Charset charset = getCharset();
+		InputStream in = new FileInputStream(this);
+		try {
+			if (CsvByteParser.supports(charset, ',')) {
+				CsvByteParser parser = new CsvByteParser(in, charset);
+				parser.setStructuralIndex(structuralIndex);
+				return parser;
+			}
+			return new CsvParser(new InputStreamReader(in, charset));
+		} catch (RuntimeException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	private TableDataSource source(String[] columns, RowFilter filter)
+			throws Exception {
+		CsvSource source = new CsvSource(this, columns);
+		return filter == null ? source
+				: new FilteredDataSource(source, filter);
+	}
+
+	/**
+	 * Open the {@linkplain CsvKeyIndex CsvKeyIndex} of the key column to look
+	 * up the records by the key without reading the file. The index is kept in
+	 * the sidecar file named after the csv file and the key column, like
+	 * <code>data.csv.id.idx</code>, and is built again when the csv file is
+	 * changed.
+	 * 
+	 * @param keyColumn
+	 * @return {@linkplain CsvKeyIndex CsvKeyIndex}
+	 * @throws IOException
+	 */
+	public CsvKeyIndex openKeyIndex(String keyColumn) throws IOException {
+		return openKeyIndex(keyColumn, new File(getPath() + "." + keyColumn
+				+ ".idx"));
+	}
+
+	/**
+	 * Open the {@linkplain CsvKeyIndex CsvKeyIndex} of the key column kept in
+	 * the index file.
+	 * 
+	 * @param keyColumn
+	 * @param indexFile
+	 * @return {@linkplain CsvKeyIndex CsvKeyIndex}
+	 * @throws IOException
+	 */
+	public CsvKeyIndex openKeyIndex(String keyColumn, File indexFile)
+			throws IOException {
+		return new CsvKeyIndex(this, getCharset(), keyColumn, indexFile);
+	}
+
+	/**
+	 * Read the records of the csv file one by one through a
+	 * {@linkplain CsvRecordIterator CsvRecordIterator}. The records are parsed
+	 * while iterating and not kept in memory. Close the iterator if it is not
+	 * read to the end.
+	 *
+	 * @return {@linkplain CsvRecordIterator CsvRecordIterator}
+	 * @throws Exception
+	 */
+	public CsvRecordIterator records() throws Exception {
+		return new CsvRecordIterator(openParser());
+	}
+
+	/**
+	 * Read the records of the csv file through a stream, see
+	 * {@link CsvRecordIterator#stream()}. Close the stream to close the file.
+	 *
+	 * @return
+	 * @throws Exception
+	 */
+	public Stream<CsvRecord> recordStream() throws Exception {
+		return records().stream();
+	}
+
+	/**
+	 * Write all the rows of the table into the csv file, the first line is the
+	 * column names. The file is overwritten in the charset of this file, see
+	 * {@link #setCharset(Charset)}.
+	 *
+	 * @param table
+	 * @return the count of the rows written.
+	 * @throws Exception
+	 */
+	public long writeAllCsv(Table table) throws Exception {
+		CsvWriter writer = openCsvWriter(false);
+		try {
+			return writer.writeTable(table);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Open a {@linkplain CsvWriter CsvWriter} of the csv file in the charset
+	 * of this file. Close the writer after writing.
+	 *
+	 * @param append
+	 *            true to append the rows to the end of the file.
+	 * @return {@linkplain CsvWriter CsvWriter}
+	 * @throws Exception
+	 */
+	public CsvWriter openCsvWriter(boolean append) throws Exception {
+		return new CsvWriter(this, getCharset(), append);
+	}
+
 	/**
 	 * This class extends {@linkplain wyq.appengine2.datamodel.Table Table}
-	 * class and also implements
-	 * {@linkplain wyq.appengine2.datamodel.TableDataSource TableDataSource}
-	 * interface to provide data for the Table class.
+	 * class and loads all the rows of the csv file provided by
+	 * {@linkplain CsvSource CsvSource}.
 	 * 
 	 * @author dewafer
 	 * 
 	 */
-	static class CsvTable extends Table implements TableDataSource {
+	static class CsvTable extends Table {
+
+		public CsvTable(CsvFile csvFile) throws Exception {
+			this(csvFile, new CsvSource(csvFile));
+		}
 
-		private static final char SPLITER_REPLACEMENT = '#';
+		public CsvTable(CsvFile csvFile, TableDataSource dataSource)
+				throws Exception {
+			setCollectStatistics(csvFile.collectStatistics);
+			super.loadData(dataSource);
+		}
 
-		private static final String SPLITER = ",";
+	}
 
-		private static final String REPLACE_PATTERN = "(^|,)(\"[^\"]*,+[^\"]*\")(,|$)";
+	/**
+	 * This class implements
+	 * {@linkplain wyq.toolbox.datamodel.BatchTableDataSource
+	 * BatchTableDataSource} interface to provide the data of the csv file for
+	 * the Table class. The file is parsed by {@link CsvByteParser} or
+	 * {@link CsvParser} and closed after the last row is read.
+	 * 
+	 * @author dewafer
+	 * 
+	 */
+	static class CsvSource implements BatchTableDataSource, Closeable {
 
-		CsvFile file;
+		CsvTokenizer parser;
 		String[] columns;
-		String currentLine;
-		String[] currentRow;
+		Object[] currentRow;
 		int col = -1;
 		int row = -1;
 
-		public CsvTable(CsvFile csvFile) throws Exception {
-			this.file = csvFile;
-			file.reset();
-			currentLine = file.readLine();
-			columns = lineSpliter(currentLine);
-			super.loadData(this);
-		}
-
-		private String[] lineSpliter(String line) {
-			if (line == null || line.length() == 0)
-				return new String[0];
-			line = line.replaceAll("\"\"", "");
-			Pattern pattern = Pattern.compile(REPLACE_PATTERN);
-			Matcher matcher = pattern.matcher(line);
-			List<Integer> spliterRepPosList = new ArrayList<Integer>();
-			StringBuilder sb = new StringBuilder(line);
-			while (matcher.find()) {
-				String tmp = matcher.group(2);
-				for (int i = 0; i < tmp.length(); i++) {
-					if (SPLITER.charAt(0) == tmp.charAt(i)) {
-						int pos = matcher.start(2) + i;
-						spliterRepPosList.add(pos);
-						sb.setCharAt(pos, SPLITER_REPLACEMENT);
+		// the positions of the selected columns, null for all the columns
+		int[] projection;
+		// null if there is no schema
+		CsvSchema.Decoder decoder;
+
+		public CsvSource(CsvFile csvFile) throws Exception {
+			this(csvFile, null);
+		}
+
+		/**
+		 * Read the selected columns only, the other fields are skipped by the
+		 * parser.
+		 */
+		public CsvSource(CsvFile csvFile, String[] selection) throws Exception {
+			parser = csvFile.openParser();
+			columns = parser.next() ? parser.toArray() : new String[0];
+			if (selection != null) {
+				List<String> names = Arrays.asList(columns);
+				projection = new int[selection.length];
+				for (int i = 0; i < selection.length; i++) {
+					projection[i] = names.indexOf(selection[i]);
+					if (projection[i] < 0) {
+						close();
+						throw new IllegalArgumentException("column not found:"
+								+ selection[i]);
 					}
 				}
+				columns = selection.clone();
+				parser.select(projection);
 			}
-			String[] split = sb.toString().split(SPLITER);
-			int linepos = 0;
-			for (int i = 0; i < split.length; i++) {
-				String value = split[i];
-				if (value.contains(String.valueOf(SPLITER_REPLACEMENT))) {
-					StringBuilder valueSb = new StringBuilder(value);
-					for (int j = 0; j < value.length(); j++) {
-						if (spliterRepPosList.contains(linepos + j)) {
-							valueSb.setCharAt(j, SPLITER.charAt(0));
-						}
-					}
-					split[i] = valueSb.toString();
-				}
-				linepos += value.length() + 1;
+			if (csvFile.schema != null) {
+				decoder = csvFile.schema.newDecoder(columns);
 			}
-			return split;
 		}
 
 		@Override
@@ -132,15 +506,54 @@ public class CsvFile extends TextFile {
 
 		@Override
 		public boolean nextRow() throws Exception {
-			boolean next = (currentLine = file.readLine()) != null;
-			currentRow = lineSpliter(currentLine);
+			boolean next = parser.next();
+			int count = projection == null ? parser.getFieldCount()
+					: projection.length;
+			currentRow = new Object[count];
+			for (int i = 0; i < count; i++) {
+				currentRow[i] = value(i);
+			}
 			row = -1;
+			if (!next) {
+				close();
+			}
 			return next;
 		}
 
+		@Override
+		public int nextBatch(RowBatch batch) throws Exception {
+			batch.clear();
+			while (!batch.isFull()) {
+				if (!parser.next()) {
+					close();
+					break;
+				}
+				int count = projection == null ? parser.getFieldCount()
+						: projection.length;
+				int r = batch.addRow(count);
+				for (int i = 0; i < count; i++) {
+					batch.setValueAt(r, i, value(i));
+				}
+			}
+			return batch.size();
+		}
+
+		/**
+		 * Returns the value of the column of the current record, or null if
+		 * the record is shorter.
+		 */
+		private Object value(int column) {
+			int field = projection == null ? column : projection[column];
+			if (decoder != null && column < columns.length) {
+				return decoder.decode(parser, field, column);
+			}
+			return field < parser.getFieldCount() ? parser.getField(field)
+					: null;
+		}
+
 		@Override
 		public Class<?> getColumnType() throws Exception {
-			return null;
+			return decoder == null ? null : decoder.getType(col);
 		}
 
 		@Override
@@ -153,5 +566,10 @@ public class CsvFile extends TextFile {
 			return currentRow[row];
 		}
 
+		@Override
+		public void close() throws IOException {
+			parser.close();
+		}
+
 	}
 }
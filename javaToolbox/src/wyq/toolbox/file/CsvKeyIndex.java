@@ -0,0 +1,384 @@
+package wyq.toolbox.file;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import wyq.toolbox.util.BufferUtils;
+
+/**
+ * This class finds the records of a large csv file by the value of a key
+ * column without reading the file. The byte offsets of the records are kept in
+ * a sidecar index file sorted by the keys, the index file is memory-mapped and
+ * searched, then the record is parsed from its offset through a FileChannel.
+ * <p>
+ * The index file is built on the first open, and reused as long as the length
+ * and the last modified time of the csv file, the charset and the key column
+ * are the same, otherwise it is built again. The csv file should not be
+ * changed while the index is open. Call {@link #close()} to unmap the index
+ * file and close the csv file.
+ * </p>
+ * <p>
+ * The index file starts with a header: magic number, format version, the
+ * length and the last modified time of the csv file, the charset, the key
+ * column, the count of the keys and the length of the key bytes. Then the
+ * offsets of the records and the offsets of the keys in the key bytes, in the
+ * order of the keys, followed by the UTF-8 bytes of the keys. The records
+ * whose keys are equal are in the order of the file.
+ * </p>
+ *
+ * <pre>
+ * CsvKeyIndex index = new CsvFile(&quot;huge.csv&quot;).openKeyIndex(&quot;id&quot;);
+ * String[] record = index.get(&quot;12345&quot;);
+ * index.close();
+ * </pre>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class CsvKeyIndex implements Closeable {
+
+	static final int MAGIC = 0x57434B49; // "WCKI"
+
+	static final short VERSION = 1;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// a record is usually much shorter, the buffer grows if it is not
+	private static final int RECORD_BUFFER_SIZE = 4096;
+
+	private final Charset charset;
+	private final String keyColumn;
+	private RandomAccessFile csv;
+	private FileChannel csvChannel;
+	private List<String> header;
+	private int count;
+	// the offsets of the records, the offsets of the keys and the keys
+	private ByteBuffer data;
+	private int keyStarts;
+	private int keys;
+
+	/**
+	 * Open the index of the key column, the index file is built if it does not
+	 * match the csv file.
+	 *
+	 * @param csvFile
+	 * @param charset
+	 *            the charset of the csv file, it should be supported by
+	 *            {@linkplain CsvByteParser CsvByteParser}.
+	 * @param keyColumn
+	 * @param indexFile
+	 * @throws IOException
+	 */
+	public CsvKeyIndex(File csvFile, Charset charset, String keyColumn,
+			File indexFile) throws IOException {
+		if (!CsvByteParser.supports(charset, ',')) {
+			throw new IllegalArgumentException(
+					"not an ASCII compatible charset:" + charset);
+		}
+		this.charset = charset;
+		this.keyColumn = keyColumn;
+		csv = new RandomAccessFile(csvFile, "r");
+		csvChannel = csv.getChannel();
+		try {
+			String[] columns = readRecord(0);
+			header = Collections.unmodifiableList(Arrays
+					.asList(columns == null ? new String[0] : columns));
+			if (!header.contains(keyColumn)) {
+				throw new IllegalArgumentException("column not found:"
+						+ keyColumn);
+			}
+			if (!open(csvFile, indexFile)) {
+				build(csvFile, indexFile);
+				if (!open(csvFile, indexFile)) {
+					throw new IOException("can not open key index:"
+							+ indexFile);
+				}
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		} catch (RuntimeException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the column names in the first line of the csv file.
+	 *
+	 * @return
+	 */
+	public List<String> getHeader() {
+		return header;
+	}
+
+	public String getKeyColumn() {
+		return keyColumn;
+	}
+
+	/**
+	 * Returns the count of the indexed records, the records which do not have
+	 * the key column are not indexed.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns the byte offset of the first record of the key in the csv file,
+	 * or -1 if the key is not found.
+	 *
+	 * @param key
+	 * @return
+	 */
+	public long getOffset(String key) {
+		int i = find(key.getBytes(UTF8));
+		return i < 0 ? -1 : recordOffset(i);
+	}
+
+	/**
+	 * Returns the fields of the first record of the key, or null if the key is
+	 * not found.
+	 *
+	 * @param key
+	 * @return
+	 * @throws IOException
+	 */
+	public String[] get(String key) throws IOException {
+		long offset = getOffset(key);
+		return offset < 0 ? null : readRecord(offset);
+	}
+
+	/**
+	 * Returns the fields of all the records of the key in the order of the
+	 * file.
+	 *
+	 * @param key
+	 * @return an empty list if the key is not found.
+	 * @throws IOException
+	 */
+	public List<String[]> getAll(String key) throws IOException {
+		byte[] bytes = key.getBytes(UTF8);
+		List<String[]> records = new ArrayList<String[]>();
+		for (int i = find(bytes); i >= 0 && i < count
+				&& compare(i, bytes) == 0; i++) {
+			records.add(readRecord(recordOffset(i)));
+		}
+		return records;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (data != null) {
+			BufferUtils.release(data);
+			data = null;
+		}
+		if (csv != null) {
+			csv.close();
+			csv = null;
+		}
+	}
+
+	/**
+	 * Parse the record at the offset of the csv file.
+	 */
+	private synchronized String[] readRecord(long offset) throws IOException {
+		csvChannel.position(offset);
+		// not closed, it would close the channel
+		CsvByteParser parser = new CsvByteParser(
+				Channels.newInputStream(csvChannel), charset, ',',
+				RECORD_BUFFER_SIZE);
+		return parser.next() ? parser.toArray() : null;
+	}
+
+	/**
+	 * Returns the position of the first key which is equal to the bytes, or
+	 * -1 if there is none.
+	 */
+	private int find(byte[] key) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (compare(mid, key) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low < count && compare(low, key) == 0 ? low : -1;
+	}
+
+	/**
+	 * Compares the key at the position with the bytes, byte by byte unsigned.
+	 */
+	private int compare(int i, byte[] key) {
+		int start = data.getInt(keyStarts + i * 4);
+		int length = data.getInt(keyStarts + i * 4 + 4) - start;
+		int n = Math.min(length, key.length);
+		for (int j = 0; j < n; j++) {
+			int c = (data.get(keys + start + j) & 0xFF) - (key[j] & 0xFF);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return length - key.length;
+	}
+
+	private long recordOffset(int i) {
+		return data.getLong(i * 8);
+	}
+
+	/**
+	 * Map the index file if it matches the csv file.
+	 *
+	 * @return false if the index file does not exist or does not match.
+	 */
+	private boolean open(File csvFile, File indexFile) throws IOException {
+		if (!indexFile.exists()) {
+			return false;
+		}
+		RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+		try {
+			if (raf.length() < 8 || raf.readInt() != MAGIC
+					|| raf.readShort() != VERSION) {
+				return false;
+			}
+			raf.readShort();
+			if (raf.readLong() != csvFile.length()
+					|| raf.readLong() != csvFile.lastModified()
+					|| !charset.name().equals(raf.readUTF())
+					|| !keyColumn.equals(raf.readUTF())) {
+				return false;
+			}
+			count = raf.readInt();
+			long keyLength = raf.readLong();
+			long start = raf.getFilePointer();
+			long length = count * 12L + 4 + keyLength;
+			if (start + length != raf.length()) {
+				return false;
+			}
+			data = raf.getChannel().map(MapMode.READ_ONLY, start, length);
+			keyStarts = count * 8;
+			keys = keyStarts + (count + 1) * 4;
+			return true;
+		} catch (EOFException e) {
+			// a broken index file
+			return false;
+		} finally {
+			// the mapped buffer stays valid
+			raf.close();
+		}
+	}
+
+	/**
+	 * Parse the csv file and write the index file.
+	 */
+	private void build(File csvFile, File indexFile) throws IOException {
+		long length = csvFile.length();
+		long lastModified = csvFile.lastModified();
+		final List<byte[]> keyList = new ArrayList<byte[]>();
+		long[] offsets = new long[1024];
+		CsvByteParser parser = new CsvByteParser(new FileInputStream(csvFile),
+				charset);
+		try {
+			parser.next();
+			int column = header.indexOf(keyColumn);
+			parser.select(column);
+			while (parser.next()) {
+				if (column >= parser.getFieldCount()) {
+					continue;
+				}
+				if (keyList.size() == offsets.length) {
+					offsets = Arrays.copyOf(offsets, offsets.length * 2);
+				}
+				offsets[keyList.size()] = parser.getRecordOffset();
+				keyList.add(parser.getField(column).getBytes(UTF8));
+			}
+		} finally {
+			parser.close();
+		}
+
+		Integer[] order = new Integer[keyList.size()];
+		long keyLength = 0;
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+			keyLength += keyList.get(i).length;
+		}
+		if (order.length * 12L + 4 + keyLength > Integer.MAX_VALUE) {
+			throw new IOException("too many keys to index:" + csvFile);
+		}
+		// stable, the records of the same key stay in the order of the file
+		Arrays.sort(order, new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer a, Integer b) {
+				return compareBytes(keyList.get(a), keyList.get(b));
+			}
+		});
+
+		File tmp = new File(indexFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeShort(0);
+			out.writeLong(length);
+			out.writeLong(lastModified);
+			out.writeUTF(charset.name());
+			out.writeUTF(keyColumn);
+			out.writeInt(order.length);
+			out.writeLong(keyLength);
+			for (Integer i : order) {
+				out.writeLong(offsets[i]);
+			}
+			int start = 0;
+			for (Integer i : order) {
+				out.writeInt(start);
+				start += keyList.get(i).length;
+			}
+			out.writeInt(start);
+			for (Integer i : order) {
+				out.write(keyList.get(i));
+			}
+		} finally {
+			out.close();
+		}
+		indexFile.delete();
+		if (!tmp.renameTo(indexFile)) {
+			throw new IOException("can not create key index:" + indexFile);
+		}
+	}
+
+	private static int compareBytes(byte[] a, byte[] b) {
+		int n = Math.min(a.length, b.length);
+		for (int i = 0; i < n; i++) {
+			int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return a.length - b.length;
+	}
+
+}
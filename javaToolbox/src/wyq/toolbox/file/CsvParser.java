@@ -0,0 +1,348 @@
+package wyq.toolbox.file;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * This class parses the records of a csv text (RFC 4180) character by
+ * character in one pass. The quoted fields may contain the delimiter, the
+ * line breaks and the doubled quotes. The records are separated by LF, CRLF
+ * or CR, an empty line is a record without any field.
+ * <p>
+ * The parser is lenient: a quote in the middle of an unquoted field is kept
+ * as it is, the characters after the closing quote of a field are appended to
+ * the field, and an unclosed quote ends at the end of the text.
+ * </p>
+ *
+ * <pre>
+ * CsvParser parser = new CsvParser(reader);
+ * while (parser.next()) {
+ * 	for (int i = 0; i &lt; parser.getFieldCount(); i++) {
+ * 		String field = parser.getField(i);
+ * 		...
+ * 	}
+ * }
+ * parser.close();
+ * </pre>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class CsvParser implements CsvTokenizer {
+
+	private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	private static final int END_OF_TEXT = -1;
+
+	private final Reader reader;
+	private final char delimiter;
+	private final char[] buf;
+	private int pos = 0;
+	private int limit = 0;
+	private boolean endOfReader = false;
+	private boolean endOfText = false;
+	private boolean firstRecord = true;
+
+	// the characters of a field which crosses the buffer or has quotes
+	private char[] field = new char[256];
+	private int fieldLength = 0;
+
+	private String[] fields = new String[16];
+	private int fieldCount = 0;
+
+	// the fields to parse, null for all the fields
+	private boolean[] selected;
+	private boolean skip = false;
+
+	public CsvParser(Reader reader) {
+		this(reader, ',');
+	}
+
+	public CsvParser(Reader reader, char delimiter) {
+		this(reader, delimiter, DEFAULT_BUFFER_SIZE);
+	}
+
+	CsvParser(Reader reader, char delimiter, int bufferSize) {
+		if (delimiter == '"' || delimiter == '\r' || delimiter == '\n') {
+			throw new IllegalArgumentException("invalid delimiter:"
+					+ delimiter);
+		}
+		this.reader = reader;
+		this.delimiter = delimiter;
+		this.buf = new char[bufferSize];
+	}
+
+	/**
+	 * Parse the next record.
+	 *
+	 * @return false if there is no more record.
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException {
+		fieldCount = 0;
+		if (endOfText || !fill()) {
+			endOfText = true;
+			return false;
+		}
+		if (firstRecord) {
+			firstRecord = false;
+			// skip the byte order mark
+			if (buf[pos] == '\uFEFF') {
+				pos++;
+				if (!fill()) {
+					endOfText = true;
+					return false;
+				}
+			}
+		}
+		char c = buf[pos];
+		if (c == '\n' || c == '\r') {
+			// an empty line
+			pos++;
+			endOfLine(c);
+			return true;
+		}
+		while (true) {
+			int end = parseField();
+			if (end == delimiter) {
+				continue;
+			}
+			if (end == END_OF_TEXT) {
+				endOfText = true;
+			} else {
+				endOfLine((char) end);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the count of the fields of the current record.
+	 *
+	 * @return
+	 */
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * Returns the field of the current record.
+	 *
+	 * @param i
+	 * @return
+	 */
+	public String getField(int i) {
+		if (i < 0 || i >= fieldCount) {
+			throw new IndexOutOfBoundsException("field " + i + " of "
+					+ fieldCount);
+		}
+		return fields[i];
+	}
+
+	/**
+	 * Parse only the fields at the positions of the next records. The other
+	 * fields are skipped without creating the strings and are null.
+	 *
+	 * @param positions
+	 *            the positions of the fields, or null to parse all the fields.
+	 */
+	public void select(int... positions) {
+		if (positions == null) {
+			selected = null;
+			return;
+		}
+		int max = -1;
+		for (int p : positions) {
+			max = Math.max(max, p);
+		}
+		selected = new boolean[max + 1];
+		for (int p : positions) {
+			selected[p] = true;
+		}
+	}
+
+	/**
+	 * Returns a new array of the fields of the current record.
+	 *
+	 * @return
+	 */
+	public String[] toArray() {
+		return Arrays.copyOf(fields, fieldCount);
+	}
+
+	@Override
+	public void close() throws IOException {
+		endOfText = true;
+		reader.close();
+	}
+
+	/**
+	 * Parse a field and returns the character which ends it: the delimiter,
+	 * CR, LF or END_OF_TEXT.
+	 */
+	private int parseField() throws IOException {
+		fieldLength = 0;
+		skip = selected != null
+				&& (fieldCount >= selected.length || !selected[fieldCount]);
+		if (!fill()) {
+			// the delimiter at the end of the text
+			addField();
+			return END_OF_TEXT;
+		}
+		if (buf[pos] == '"') {
+			pos++;
+			return parseQuoted();
+		}
+		int start = pos;
+		while (true) {
+			while (pos < limit) {
+				char c = buf[pos];
+				if (c == delimiter || c == '\n' || c == '\r') {
+					addField(start, pos++);
+					return c;
+				}
+				pos++;
+			}
+			append(start, pos);
+			if (!fill()) {
+				addField();
+				return END_OF_TEXT;
+			}
+			start = pos;
+		}
+	}
+
+	private int parseQuoted() throws IOException {
+		int start = pos;
+		while (true) {
+			while (pos < limit) {
+				if (buf[pos] != '"') {
+					pos++;
+					continue;
+				}
+				append(start, pos++);
+				if (!fill()) {
+					addField();
+					return END_OF_TEXT;
+				}
+				if (buf[pos] != '"') {
+					return parseAfterQuote();
+				}
+				// a doubled quote
+				start = pos++;
+			}
+			append(start, pos);
+			if (!fill()) {
+				// the quote is not closed
+				addField();
+				return END_OF_TEXT;
+			}
+			start = pos;
+		}
+	}
+
+	/**
+	 * Append the characters between the closing quote and the end of the
+	 * field.
+	 */
+	private int parseAfterQuote() throws IOException {
+		int start = pos;
+		while (true) {
+			while (pos < limit) {
+				char c = buf[pos];
+				if (c == delimiter || c == '\n' || c == '\r') {
+					append(start, pos++);
+					addField();
+					return c;
+				}
+				pos++;
+			}
+			append(start, pos);
+			if (!fill()) {
+				addField();
+				return END_OF_TEXT;
+			}
+			start = pos;
+		}
+	}
+
+	/**
+	 * Skip the LF of CRLF.
+	 */
+	private void endOfLine(char c) throws IOException {
+		if (c == '\r' && fill() && buf[pos] == '\n') {
+			pos++;
+		}
+	}
+
+	/**
+	 * Make sure there are characters in the buffer.
+	 *
+	 * @return false at the end of the reader.
+	 */
+	private boolean fill() throws IOException {
+		if (pos < limit) {
+			return true;
+		}
+		if (endOfReader) {
+			return false;
+		}
+		int n;
+		do {
+			n = reader.read(buf, 0, buf.length);
+		} while (n == 0);
+		pos = 0;
+		if (n < 0) {
+			endOfReader = true;
+			limit = 0;
+			return false;
+		}
+		limit = n;
+		return true;
+	}
+
+	private void append(int start, int end) {
+		int length = end - start;
+		if (length == 0 || skip) {
+			return;
+		}
+		if (fieldLength + length > field.length) {
+			field = Arrays.copyOf(field,
+					Math.max(fieldLength + length, field.length * 2));
+		}
+		System.arraycopy(buf, start, field, fieldLength, length);
+		fieldLength += length;
+	}
+
+	/**
+	 * Add the field in the buffer, or in the field array if some characters
+	 * have been appended.
+	 */
+	private void addField(int start, int end) {
+		if (skip) {
+			addField((String) null);
+		} else if (fieldLength == 0) {
+			addField(new String(buf, start, end - start));
+		} else {
+			append(start, end);
+			addField();
+		}
+	}
+
+	private void addField() {
+		if (skip) {
+			addField((String) null);
+			return;
+		}
+		addField(fieldLength == 0 ? "" : new String(field, 0, fieldLength));
+	}
+
+	private void addField(String value) {
+		if (fieldCount == fields.length) {
+			fields = Arrays.copyOf(fields, fieldCount * 2);
+		}
+		fields[fieldCount++] = value;
+	}
+
+}
@@ -0,0 +1,139 @@
+package wyq.toolbox.file;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is a view of the current record of a {@link CsvRecordIterator}.
+ * The same view is returned for all the records and shows the next record
+ * once the iterator moves, copy the values by {@link #toArray()} or
+ * {@link #toMap()} to keep them.
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class CsvRecord {
+
+	private final CsvTokenizer parser;
+	private final List<String> header;
+	private final Map<String, Integer> columns;
+	private long recordNumber = 0;
+
+	CsvRecord(CsvTokenizer parser, String[] header) {
+		this.parser = parser;
+		this.header = Collections.unmodifiableList(Arrays.asList(header));
+		this.columns = new HashMap<String, Integer>(header.length * 2);
+		for (int i = header.length - 1; i >= 0; i--) {
+			// the first column wins if the names are duplicated
+			columns.put(header[i], i);
+		}
+	}
+
+	/**
+	 * Returns the column names in the first line of the file.
+	 *
+	 * @return
+	 */
+	public List<String> getHeader() {
+		return header;
+	}
+
+	/**
+	 * Returns the index of the column, or -1 if the column is not found.
+	 *
+	 * @param columnName
+	 * @return
+	 */
+	public int indexOf(String columnName) {
+		Integer i = columns.get(columnName);
+		return i == null ? -1 : i;
+	}
+
+	/**
+	 * Returns the number of the record, the first record after the header is
+	 * 1.
+	 *
+	 * @return
+	 */
+	public long getRecordNumber() {
+		return recordNumber;
+	}
+
+	/**
+	 * Returns the count of the fields of the record, which may be different
+	 * from the count of the columns.
+	 *
+	 * @return
+	 */
+	public int getFieldCount() {
+		return parser.getFieldCount();
+	}
+
+	/**
+	 * Returns the field at the index, or null if the record is shorter than
+	 * the index like {@link #toMap()}.
+	 *
+	 * @param i
+	 * @return
+	 */
+	public String get(int i) {
+		return i < parser.getFieldCount() ? parser.getField(i) : null;
+	}
+
+	/**
+	 * Returns the field of the column, or null if the record does not have
+	 * the column.
+	 *
+	 * @param columnName
+	 * @return
+	 */
+	public String get(String columnName) {
+		int i = indexOf(columnName);
+		if (i < 0) {
+			throw new IllegalArgumentException("column not found:"
+					+ columnName);
+		}
+		return get(i);
+	}
+
+	/**
+	 * Returns a new array of the fields of the record.
+	 *
+	 * @return
+	 */
+	public String[] toArray() {
+		return parser.toArray();
+	}
+
+	/**
+	 * Returns a new map of the column names and the fields of the record. The
+	 * columns which the record does not have are mapped to null, and the first
+	 * column wins if the names are duplicated like {@link #get(String)}.
+	 *
+	 * @return
+	 */
+	public Map<String, String> toMap() {
+		Map<String, String> row = new LinkedHashMap<String, String>();
+		int count = parser.getFieldCount();
+		for (int i = 0; i < header.size(); i++) {
+			if (!row.containsKey(header.get(i))) {
+				row.put(header.get(i), i < count ? parser.getField(i) : null);
+			}
+		}
+		return row;
+	}
+
+	void next() {
+		recordNumber++;
+	}
+
+	@Override
+	public String toString() {
+		return toMap().toString();
+	}
+
+}
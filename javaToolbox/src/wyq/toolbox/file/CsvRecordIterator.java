@@ -0,0 +1,136 @@
+package wyq.toolbox.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class iterates the records of a csv text one by one without keeping
+ * them in memory. The first line is the column names. The records are
+ * returned as the same {@link CsvRecord} view, and the reader is closed at the
+ * end of the text or by {@link #close()}.
+ *
+ * <pre>
+ * CsvRecordIterator records = csvFile.records();
+ * try {
+ * 	while (records.hasNext()) {
+ * 		CsvRecord record = records.next();
+ * 		String name = record.get(&quot;name&quot;);
+ * 		...
+ * 	}
+ * } finally {
+ * 	records.close();
+ * }
+ * </pre>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class CsvRecordIterator implements Iterator<CsvRecord>, Closeable {
+
+	private final CsvTokenizer parser;
+	private final CsvRecord record;
+	private boolean parsed = false;
+	private boolean hasNext = false;
+	private boolean closed = false;
+
+	public CsvRecordIterator(Reader reader) throws IOException {
+		this(new CsvParser(reader));
+	}
+
+	public CsvRecordIterator(Reader reader, char delimiter) throws IOException {
+		this(new CsvParser(reader, delimiter));
+	}
+
+	CsvRecordIterator(CsvTokenizer parser) throws IOException {
+		this.parser = parser;
+		String[] header = parser.next() ? parser.toArray() : new String[0];
+		this.record = new CsvRecord(parser, header);
+	}
+
+	/**
+	 * Returns the column names in the first line.
+	 *
+	 * @return
+	 */
+	public List<String> getHeader() {
+		return record.getHeader();
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (!parsed) {
+			parsed = true;
+			try {
+				hasNext = !closed && parser.next();
+				if (!hasNext) {
+					close();
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return hasNext;
+	}
+
+	/**
+	 * Returns the view of the next record, the view is changed by the next
+	 * call of {@link #hasNext()} or this method.
+	 */
+	@Override
+	public CsvRecord next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		parsed = false;
+		record.next();
+		return record;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns a sequential stream of the records, closing the stream closes
+	 * this iterator. Like {@link #next()}, the stream passes the same view for
+	 * all the records, map the records to their values before any stateful
+	 * operation like sorted.
+	 *
+	 * @return
+	 */
+	public Stream<CsvRecord> stream() {
+		Stream<CsvRecord> stream = StreamSupport.stream(
+				Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED
+						| Spliterator.NONNULL), false);
+		return stream.onClose(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					close();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			hasNext = false;
+			parser.close();
+		}
+	}
+
+}
@@ -0,0 +1,363 @@
+package wyq.toolbox.file;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * This class tells the types of the columns of a csv file, so the values are
+ * parsed once while the file is loaded instead of being kept as strings. The
+ * types can be set column by column, or inferred from the first rows of the
+ * file by {@link #inferTypes(CsvRecordIterator, int)}.
+ * <p>
+ * The supported types are Integer, Long, BigDecimal, Double, Boolean,
+ * java.sql.Date and java.sql.Timestamp, the other columns are strings. The
+ * empty values of the typed columns are null. A value which can not be parsed
+ * as the type of its column fails the reading with an
+ * IllegalArgumentException, so the values of a column are always of its type.
+ * Set the type of such a column to String to keep the values as they are.
+ * </p>
+ *
+ * <pre>
+ * CsvSchema schema = csvFile.inferSchema(1000);
+ * schema.setType(&quot;zip&quot;, String.class);
+ * csvFile.setSchema(schema);
+ * Table table = csvFile.readAllCsv();
+ * </pre>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class CsvSchema {
+
+	private static final List<Class<?>> TYPES = Arrays.<Class<?>> asList(
+			Integer.class, Long.class, BigDecimal.class, Double.class,
+			Boolean.class, Date.class, Timestamp.class, String.class);
+
+	// a decimal number without the hex, the suffix or the spaces which
+	// Double.parseDouble also accepts
+	private static final Pattern NUMBER = Pattern
+			.compile("[+-]?(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?");
+
+	private final Map<String, Class<?>> types = new HashMap<String, Class<?>>();
+	private String dateFormat = "yyyy-MM-dd";
+	private String timestampFormat = "yyyy-MM-dd HH:mm:ss";
+	private boolean exactDecimals = false;
+
+	/**
+	 * Set the type of the column.
+	 *
+	 * @param column
+	 * @param type
+	 *            one of the supported types.
+	 * @return this schema.
+	 */
+	public CsvSchema setType(String column, Class<?> type) {
+		if (!TYPES.contains(type)) {
+			throw new IllegalArgumentException("unsupported type:" + type);
+		}
+		types.put(column, type);
+		return this;
+	}
+
+	/**
+	 * Returns the type of the column, or null if it is not set.
+	 *
+	 * @param column
+	 * @return
+	 */
+	public Class<?> getType(String column) {
+		return types.get(column);
+	}
+
+	/**
+	 * Set the format of the date columns, yyyy-MM-dd by default.
+	 *
+	 * @param dateFormat
+	 *            the pattern of SimpleDateFormat.
+	 */
+	public CsvSchema setDateFormat(String dateFormat) {
+		this.dateFormat = dateFormat;
+		return this;
+	}
+
+	/**
+	 * Set the format of the timestamp columns, yyyy-MM-dd HH:mm:ss by default.
+	 *
+	 * @param timestampFormat
+	 *            the pattern of SimpleDateFormat.
+	 */
+	public CsvSchema setTimestampFormat(String timestampFormat) {
+		this.timestampFormat = timestampFormat;
+		return this;
+	}
+
+	/**
+	 * Infer the decimal numbers as BigDecimal instead of Double, false by
+	 * default.
+	 *
+	 * @param exactDecimals
+	 */
+	public CsvSchema setExactDecimals(boolean exactDecimals) {
+		this.exactDecimals = exactDecimals;
+		return this;
+	}
+
+	/**
+	 * Infer the types of the columns whose types are not set from the first
+	 * rows. A column gets the narrowest type which all the non-empty values in
+	 * the rows can be parsed as: Integer, Long, Double (or BigDecimal, see
+	 * {@link #setExactDecimals(boolean)}), Boolean, Date, Timestamp, or
+	 * String. The records are not closed.
+	 *
+	 * @param records
+	 * @param sampleRows
+	 *            the count of the rows to check.
+	 * @return this schema.
+	 */
+	public CsvSchema inferTypes(CsvRecordIterator records, int sampleRows) {
+		List<String> header = records.getHeader();
+		Class<?>[] candidates = new Class<?>[] { Integer.class, Long.class,
+				exactDecimals ? BigDecimal.class : Double.class,
+				Boolean.class, Date.class, Timestamp.class };
+		// the candidates which every value so far matches
+		boolean[][] matches = new boolean[header.size()][candidates.length];
+		boolean[] found = new boolean[header.size()];
+		for (boolean[] match : matches) {
+			Arrays.fill(match, true);
+		}
+		Decoder decoder = new Decoder(new String[0], new Class<?>[0]);
+		for (int row = 0; row < sampleRows && records.hasNext(); row++) {
+			CsvRecord record = records.next();
+			int count = Math.min(header.size(), record.getFieldCount());
+			for (int i = 0; i < count; i++) {
+				String value = record.get(i);
+				if (value == null || value.isEmpty()) {
+					continue;
+				}
+				found[i] = true;
+				for (int c = 0; c < candidates.length; c++) {
+					if (matches[i][c]
+							&& decoder.parse(candidates[c], value) == null) {
+						matches[i][c] = false;
+					}
+				}
+			}
+		}
+		for (int i = 0; i < header.size(); i++) {
+			String column = header.get(i);
+			if (types.containsKey(column)) {
+				continue;
+			}
+			Class<?> type = String.class;
+			for (int c = 0; c < candidates.length && found[i]; c++) {
+				if (matches[i][c]) {
+					type = candidates[c];
+					break;
+				}
+			}
+			types.put(column, type);
+		}
+		return this;
+	}
+
+	/**
+	 * Returns a new decoder of the columns, a decoder is used by one thread.
+	 */
+	Decoder newDecoder(String[] columns) {
+		Class<?>[] columnTypes = new Class<?>[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			Class<?> type = types.get(columns[i]);
+			columnTypes[i] = type == null ? String.class : type;
+		}
+		return new Decoder(columns, columnTypes);
+	}
+
+	/**
+	 * Returns a copy of this schema, the copy does not change with this
+	 * schema.
+	 */
+	CsvSchema copy() {
+		CsvSchema copy = new CsvSchema();
+		copy.types.putAll(types);
+		copy.dateFormat = dateFormat;
+		copy.timestampFormat = timestampFormat;
+		copy.exactDecimals = exactDecimals;
+		return copy;
+	}
+
+	/**
+	 * The schemas are equal if they have the same types of the columns, the
+	 * same formats and the same setting of the exact decimals.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CsvSchema)) {
+			return false;
+		}
+		CsvSchema other = (CsvSchema) obj;
+		return types.equals(other.types)
+				&& dateFormat.equals(other.dateFormat)
+				&& timestampFormat.equals(other.timestampFormat)
+				&& exactDecimals == other.exactDecimals;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = types.hashCode();
+		hash = hash * 31 + dateFormat.hashCode();
+		hash = hash * 31 + timestampFormat.hashCode();
+		return hash * 31 + (exactDecimals ? 1 : 0);
+	}
+
+	/**
+	 * Returns the types of the columns in the order of the names, the formats
+	 * and the setting of the exact decimals as a string, the equal schemas
+	 * have the same description.
+	 */
+	String describe() {
+		StringBuilder description = new StringBuilder();
+		for (Map.Entry<String, Class<?>> entry : new TreeMap<String, Class<?>>(
+				types).entrySet()) {
+			description.append(entry.getKey()).append('=')
+					.append(entry.getValue().getName()).append(';');
+		}
+		return description.append(dateFormat).append(';')
+				.append(timestampFormat).append(';').append(exactDecimals)
+				.toString();
+	}
+
+	@Override
+	public String toString() {
+		return "CsvSchema" + types;
+	}
+
+	/**
+	 * This class parses the fields of the records into the types of the
+	 * columns.
+	 */
+	class Decoder {
+
+		private final String[] columns;
+		private final Class<?>[] columnTypes;
+		private final SimpleDateFormat date;
+		private final SimpleDateFormat timestamp;
+		private final ParsePosition position = new ParsePosition(0);
+
+		Decoder(String[] columns, Class<?>[] columnTypes) {
+			this.columns = columns;
+			this.columnTypes = columnTypes;
+			this.date = new SimpleDateFormat(dateFormat);
+			this.timestamp = new SimpleDateFormat(timestampFormat);
+			date.setLenient(false);
+			timestamp.setLenient(false);
+		}
+
+		Class<?> getType(int column) {
+			return columnTypes[column];
+		}
+
+		/**
+		 * Returns the value of the field of the current record in the type of
+		 * the column.
+		 *
+		 * @param parser
+		 * @param field
+		 * @param column
+		 * @throws IllegalArgumentException
+		 *             if the field can not be parsed as the type.
+		 */
+		Object decode(CsvTokenizer parser, int field, int column) {
+			if (field >= parser.getFieldCount()) {
+				return null;
+			}
+			Class<?> type = columnTypes[column];
+			if (type == String.class) {
+				return parser.getField(field);
+			}
+			if ((type == Integer.class || type == Long.class)
+					&& parser instanceof CsvByteParser) {
+				// the integers are parsed on the bytes without the string
+				CsvByteParser byteParser = (CsvByteParser) parser;
+				if (byteParser.isEmpty(field)) {
+					return null;
+				}
+				long value = byteParser.getLong(field);
+				if (value != CsvByteParser.NOT_A_LONG) {
+					if (type == Long.class) {
+						return value;
+					} else if (value == (int) value) {
+						return (int) value;
+					}
+				}
+			}
+			String text = parser.getField(field);
+			if (text == null || text.isEmpty()) {
+				return null;
+			}
+			Object value = parse(type, text);
+			if (value == null) {
+				throw new IllegalArgumentException("can not parse \"" + text
+						+ "\" as " + type.getSimpleName() + " in column "
+						+ columns[column]);
+			}
+			return value;
+		}
+
+		/**
+		 * Returns the value of the text in the type, or null if it can not be
+		 * parsed.
+		 */
+		Object parse(Class<?> type, String text) {
+			try {
+				if (type == Integer.class) {
+					return Integer.valueOf(text);
+				} else if (type == Long.class) {
+					return Long.valueOf(text);
+				} else if (type == Double.class) {
+					return NUMBER.matcher(text).matches() ? Double
+							.valueOf(text) : null;
+				} else if (type == BigDecimal.class) {
+					return NUMBER.matcher(text).matches() ? new BigDecimal(
+							text) : null;
+				} else if (type == Boolean.class) {
+					if ("true".equalsIgnoreCase(text)) {
+						return Boolean.TRUE;
+					}
+					return "false".equalsIgnoreCase(text) ? Boolean.FALSE
+							: null;
+				} else if (type == Date.class) {
+					java.util.Date value = parseDate(date, text);
+					return value == null ? null : new Date(value.getTime());
+				} else if (type == Timestamp.class) {
+					java.util.Date value = parseDate(timestamp, text);
+					return value == null ? null : new Timestamp(
+							value.getTime());
+				}
+				return text;
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+
+		private java.util.Date parseDate(SimpleDateFormat format, String text) {
+			position.setIndex(0);
+			position.setErrorIndex(-1);
+			java.util.Date value = format.parse(text, position);
+			// the whole text should be the date
+			return position.getIndex() == text.length() ? value : null;
+		}
+	}
+
+}
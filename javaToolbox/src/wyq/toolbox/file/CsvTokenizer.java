@@ -0,0 +1,29 @@
+package wyq.toolbox.file;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * This interface is the common methods of the csv parsers, the
+ * {@linkplain CsvParser CsvParser} of the characters and the
+ * {@linkplain CsvByteParser CsvByteParser} of the bytes.
+ *
+ * @author dewafer
+ * @version 1
+ */
+interface CsvTokenizer extends Closeable {
+
+	boolean next() throws IOException;
+
+	int getFieldCount();
+
+	String getField(int i);
+
+	String[] toArray();
+
+	void select(int... positions);
+
+	@Override
+	void close() throws IOException;
+
+}
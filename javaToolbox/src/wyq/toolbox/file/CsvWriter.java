@@ -0,0 +1,257 @@
+package wyq.toolbox.file;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import wyq.toolbox.datamodel.RowBatch;
+import wyq.toolbox.datamodel.Table;
+import wyq.toolbox.datamodel.TableSource;
+
+/**
+ * This class writes the rows of the csv file from arrays, lists, maps or a
+ * Table. The values are encoded into a large byte buffer by
+ * {@linkplain BufferedChannelWriter BufferedChannelWriter} which is written
+ * into the file channel when it is full, instead of writing line by line.
+ * <p>
+ * The values which contain the delimiter, the quote or a line break are
+ * quoted and the quotes are doubled (RFC 4180), so the file can be read back
+ * by {@link CsvFile#readAllCsv()}. The nulls are written as empty values.
+ * </p>
+ *
+ * <pre>
+ * CsvWriter writer = new CsvWriter(new File(&quot;out.csv&quot;));
+ * try {
+ * 	writer.writeHeader(&quot;id&quot;, &quot;name&quot;);
+ * 	writer.writeRow(1, &quot;a,b&quot;);
+ * } finally {
+ * 	writer.close();
+ * }
+ * </pre>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class CsvWriter implements Closeable, Flushable {
+
+	private final Writer out;
+	private char delimiter = ',';
+	private String lineSeparator = TextFile.LINE_SEP;
+	private List<String> header;
+	private long rowCount = 0;
+
+	/**
+	 * Create a writer which overwrites the file in the default charset of the
+	 * system, which is also the charset CsvFile reads.
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public CsvWriter(File file) throws IOException {
+		this(file, Charset.defaultCharset(), false);
+	}
+
+	public CsvWriter(File file, Charset charset, boolean append)
+			throws IOException {
+		this(new FileOutputStream(file, append).getChannel(), charset,
+				BufferedChannelWriter.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Create a writer of the channel, the channel is closed by
+	 * {@link #close()}.
+	 *
+	 * @param channel
+	 * @param charset
+	 * @param bufferSize
+	 *            the size of the byte buffer.
+	 */
+	public CsvWriter(WritableByteChannel channel, Charset charset,
+			int bufferSize) {
+		this.out = new BufferedChannelWriter(channel, charset, bufferSize);
+	}
+
+	/**
+	 * Set the delimiter of the values, the comma by default.
+	 *
+	 * @param delimiter
+	 */
+	public void setDelimiter(char delimiter) {
+		if (delimiter == '"' || delimiter == '\r' || delimiter == '\n') {
+			throw new IllegalArgumentException("invalid delimiter:"
+					+ delimiter);
+		}
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Set the separator of the lines, the line separator of the system by
+	 * default.
+	 *
+	 * @param lineSeparator
+	 */
+	public void setLineSeparator(String lineSeparator) {
+		this.lineSeparator = lineSeparator;
+	}
+
+	/**
+	 * Write the column names. The names are also the keys of the maps written
+	 * by {@link #writeRow(Map)}.
+	 *
+	 * @param columnNames
+	 * @throws IOException
+	 */
+	public void writeHeader(String... columnNames) throws IOException {
+		writeHeader(Arrays.asList(columnNames));
+	}
+
+	public void writeHeader(List<String> columnNames) throws IOException {
+		if (header != null) {
+			throw new IllegalStateException("the header has been written");
+		}
+		header = new ArrayList<String>(columnNames);
+		writeLine(header);
+	}
+
+	public void writeRow(Object... values) throws IOException {
+		writeRow(Arrays.asList(values));
+	}
+
+	public void writeRow(List<?> values) throws IOException {
+		writeLine(values);
+		rowCount++;
+	}
+
+	/**
+	 * Write the values of the map in the order of the header, the columns
+	 * which are not in the map are empty.
+	 *
+	 * @param row
+	 * @throws IOException
+	 */
+	public void writeRow(Map<String, ?> row) throws IOException {
+		if (header == null) {
+			throw new IllegalStateException("the header has not been written");
+		}
+		for (int i = 0; i < header.size(); i++) {
+			if (i > 0) {
+				out.write(delimiter);
+			}
+			writeValue(row.get(header.get(i)));
+		}
+		out.write(lineSeparator);
+		rowCount++;
+	}
+
+	/**
+	 * Write the column names of the table if the header has not been written,
+	 * then all the rows of the table. The cursor of the table is not moved.
+	 *
+	 * @param table
+	 * @return the count of the rows written.
+	 * @throws Exception
+	 */
+	public long writeTable(Table table) throws Exception {
+		TableSource source = new TableSource(table);
+		List<String> columnNames = new ArrayList<String>();
+		while (source.nextColumn()) {
+			columnNames.add(source.getColumnName());
+		}
+		if (header == null) {
+			writeHeader(columnNames);
+		}
+		int columns = columnNames.size();
+		RowBatch batch = new RowBatch(columns);
+		long count = 0;
+		while (source.nextBatch(batch) > 0) {
+			for (int row = 0; row < batch.size(); row++) {
+				int length = Math.min(columns, batch.getRowLength(row));
+				for (int i = 0; i < columns; i++) {
+					if (i > 0) {
+						out.write(delimiter);
+					}
+					if (i < length) {
+						writeValue(batch.getValueAt(row, i));
+					}
+				}
+				out.write(lineSeparator);
+			}
+			count += batch.size();
+		}
+		rowCount += count;
+		return count;
+	}
+
+	/**
+	 * Returns the count of the rows written, not including the header.
+	 *
+	 * @return
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	private void writeLine(List<?> values) throws IOException {
+		for (int i = 0; i < values.size(); i++) {
+			if (i > 0) {
+				out.write(delimiter);
+			}
+			writeValue(values.get(i));
+		}
+		out.write(lineSeparator);
+	}
+
+	private void writeValue(Object value) throws IOException {
+		if (value != null) {
+			writeField(out, value.toString(), delimiter);
+		}
+	}
+
+	/**
+	 * Write the value and quote it if it contains the delimiter, the quote or
+	 * a line break.
+	 */
+	static void writeField(Writer out, String s, char delimiter)
+			throws IOException {
+		boolean quote = false;
+		for (int i = 0; i < s.length() && !quote; i++) {
+			char c = s.charAt(i);
+			quote = c == delimiter || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			out.write(s);
+			return;
+		}
+		out.write('"');
+		int start = 0;
+		for (int i = 0; i < s.length(); i++) {
+			if (s.charAt(i) == '"') {
+				// write the quote twice
+				out.write(s, start, i + 1 - start);
+				start = i;
+			}
+		}
+		out.write(s, start, s.length() - start);
+		out.write('"');
+	}
+
+}
@@ -0,0 +1,366 @@
+package wyq.toolbox.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import wyq.toolbox.datamodel.RowBatch;
+import wyq.toolbox.datamodel.SealedTable;
+import wyq.toolbox.datamodel.TableBuilder;
+import wyq.toolbox.util.BufferUtils;
+
+/**
+ * This class reads a large csv file with several threads. The file is mapped
+ * into memory and split into chunks at the line breaks which are not inside
+ * the quotes, then the chunks are parsed by {@link CsvParser} on a
+ * ForkJoinPool.
+ * <p>
+ * To find the line breaks outside the quotes, the quotes of each chunk are
+ * counted first (also in parallel): a line break is outside the quotes if the
+ * count of the quotes before it is even, the doubled quotes count twice so
+ * they do not matter. The charset should encode the quote, the comma and the
+ * line feed as their ASCII bytes, which is true for UTF-8, GBK and the other
+ * ASCII compatible charsets, but not for UTF-16. The records should be
+ * separated by LF or CRLF.
+ * </p>
+ *
+ * <pre>
+ * ParallelCsvReader reader = new ParallelCsvReader(file, 8);
+ * Table table = reader.read();
+ * </pre>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class ParallelCsvReader {
+
+	/**
+	 * This interface receives the rows read by
+	 * {@link ParallelCsvReader#read(BatchHandler)}.
+	 */
+	public interface BatchHandler {
+
+		/**
+		 * Handle a batch of the rows of a chunk. This method is called by
+		 * several threads at the same time, the batch is reused after it
+		 * returns.
+		 *
+		 * @param chunk
+		 *            the index of the chunk in the file.
+		 * @param batch
+		 * @throws Exception
+		 */
+		void handle(int chunk, RowBatch batch) throws Exception;
+	}
+
+	private static final int MIN_CHUNK_SIZE = 1024 * 1024;
+
+	private static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+
+	private static final byte QUOTE = '"';
+
+	private static final byte LF = '\n';
+
+	private final File file;
+	private final int threads;
+	private Charset charset = Charset.defaultCharset();
+	private char delimiter = ',';
+	private boolean collectStatistics = false;
+
+	public ParallelCsvReader(File file) {
+		this(file, Runtime.getRuntime().availableProcessors());
+	}
+
+	public ParallelCsvReader(File file, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("threads must be positive");
+		}
+		this.file = file;
+		this.threads = threads;
+	}
+
+	/**
+	 * Set the charset of the file, the default charset of the system by
+	 * default like the other methods of CsvFile.
+	 *
+	 * @param charset
+	 */
+	public void setCharset(Charset charset) {
+		byte[] ascii = "\",\n\r".getBytes(charset);
+		if (!Arrays.equals(ascii, new byte[] { '"', ',', '\n', '\r' })) {
+			throw new IllegalArgumentException("not an ASCII compatible charset:"
+					+ charset);
+		}
+		this.charset = charset;
+	}
+
+	public void setDelimiter(char delimiter) {
+		if (delimiter >= 0x80) {
+			throw new IllegalArgumentException("not an ASCII delimiter:"
+					+ delimiter);
+		}
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Collect the column statistics of the table, see
+	 * {@link wyq.toolbox.datamodel.Table#setCollectStatistics(boolean)}.
+	 *
+	 * @param collectStatistics
+	 */
+	public void setCollectStatistics(boolean collectStatistics) {
+		this.collectStatistics = collectStatistics;
+	}
+
+	/**
+	 * Read all the rows of the file into a table in their order in the file.
+	 * The first line is the column names.
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	public SealedTable read() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long[] bounds = split(channel);
+			List<String> names = header(channel, bounds[1]);
+			List<Class<?>> types = new ArrayList<Class<?>>();
+			for (int i = 0; i < names.size(); i++) {
+				types.add(null);
+			}
+			TableBuilder builder = new TableBuilder(names, types);
+			builder.setCollectStatistics(collectStatistics);
+			parse(channel, bounds, names.size(), null, builder);
+			return builder.build();
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Read all the rows of the file except the column names and pass them to
+	 * the handler as soon as they are parsed, the batches of different chunks
+	 * are not in order.
+	 *
+	 * @param handler
+	 * @return the column names.
+	 * @throws IOException
+	 */
+	public List<String> read(BatchHandler handler) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long[] bounds = split(channel);
+			List<String> names = header(channel, bounds[1]);
+			parse(channel, bounds, names.size(), handler, null);
+			return names;
+		} finally {
+			raf.close();
+		}
+	}
+
+	private List<String> header(FileChannel channel, long end)
+			throws IOException {
+		MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+				end);
+		try {
+			CsvParser parser = new CsvParser(new ByteBufferReader(bytes,
+					charset), delimiter);
+			return parser.next() ? Arrays.asList(parser.toArray())
+					: new ArrayList<String>();
+		} finally {
+			BufferUtils.release(bytes);
+		}
+	}
+
+	/**
+	 * Split the file into chunks at the line breaks outside the quotes.
+	 *
+	 * @return the start of each chunk followed by the end of the file.
+	 */
+	long[] split(final FileChannel channel) throws IOException {
+		final long size = channel.size();
+		long chunkSize = Math.max(MIN_CHUNK_SIZE,
+				Math.min(MAX_CHUNK_SIZE, size / (threads * 4L) + 1));
+		int count = (int) ((size + chunkSize - 1) / chunkSize);
+		final long[] starts = new long[Math.max(count, 1) + 1];
+		for (int i = 0; i < starts.length - 1; i++) {
+			starts[i] = i * chunkSize;
+		}
+		starts[starts.length - 1] = size;
+
+		// count the quotes of each rough chunk
+		List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+		for (int i = 0; i < starts.length - 1; i++) {
+			final long from = starts[i];
+			final long to = starts[i + 1];
+			tasks.add(new Callable<Long>() {
+
+				@Override
+				public Long call() throws IOException {
+					return countQuotes(channel, from, to);
+				}
+			});
+		}
+		List<Long> quotes = run(tasks);
+
+		// move the start of each chunk after the next line break outside
+		// the quotes, the chunks without such line break are merged
+		final long[] bounds = new long[starts.length];
+		int n = 0;
+		bounds[n++] = 0;
+		long quotesBefore = 0;
+		for (int i = 1; i < starts.length - 1; i++) {
+			quotesBefore += quotes.get(i - 1);
+			if (starts[i] < bounds[n - 1]) {
+				continue;
+			}
+			long start = nextRecord(channel, starts[i], size,
+					quotesBefore % 2 == 1);
+			if (start > bounds[n - 1] && start < size) {
+				bounds[n++] = start;
+			}
+		}
+		bounds[n++] = size;
+		return Arrays.copyOf(bounds, n);
+	}
+
+	private long countQuotes(FileChannel channel, long from, long to)
+			throws IOException {
+		MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,
+				from, to - from);
+		try {
+			long count = 0;
+			int limit = bytes.limit();
+			for (int i = 0; i < limit; i++) {
+				if (bytes.get(i) == QUOTE) {
+					count++;
+				}
+			}
+			return count;
+		} finally {
+			BufferUtils.release(bytes);
+		}
+	}
+
+	/**
+	 * Returns the position after the first line feed outside the quotes from
+	 * the position, or the end of the file.
+	 */
+	private long nextRecord(FileChannel channel, long from, long size,
+			boolean quoted) throws IOException {
+		long window = 64 * 1024;
+		while (from < size) {
+			long length = Math.min(window, size - from);
+			MappedByteBuffer bytes = channel.map(
+					FileChannel.MapMode.READ_ONLY, from, length);
+			try {
+				for (int i = 0; i < length; i++) {
+					byte b = bytes.get(i);
+					if (b == QUOTE) {
+						quoted = !quoted;
+					} else if (b == LF && !quoted) {
+						return from + i + 1;
+					}
+				}
+			} finally {
+				BufferUtils.release(bytes);
+			}
+			from += length;
+			window = Math.min(window * 2, MAX_CHUNK_SIZE);
+		}
+		return size;
+	}
+
+	/**
+	 * Parse the chunks, the rows are passed to the handler or appended to the
+	 * builder with the chunk as the shard.
+	 */
+	private void parse(final FileChannel channel, final long[] bounds,
+			final int columnCount, final BatchHandler handler,
+			final TableBuilder builder)
+			throws IOException {
+		List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+		for (int i = 0; i < bounds.length - 1; i++) {
+			final int chunk = i;
+			tasks.add(new Callable<Long>() {
+
+				@Override
+				public Long call() throws Exception {
+					TableBuilder.Appender appender = builder == null ? null
+							: builder.appender(chunk);
+					MappedByteBuffer bytes = channel.map(
+							FileChannel.MapMode.READ_ONLY, bounds[chunk],
+							bounds[chunk + 1] - bounds[chunk]);
+					try {
+						CsvParser parser = new CsvParser(new ByteBufferReader(
+								bytes, charset), delimiter);
+						if (chunk == 0) {
+							// the column names
+							parser.next();
+						}
+						RowBatch batch = new RowBatch(columnCount);
+						long rows = 0;
+						while (true) {
+							batch.clear();
+							while (!batch.isFull() && parser.next()) {
+								int count = parser.getFieldCount();
+								int row = batch.addRow(count);
+								for (int c = 0; c < count; c++) {
+									batch.setValueAt(row, c, parser.getField(c));
+								}
+							}
+							if (batch.size() == 0) {
+								return rows;
+							}
+							rows += batch.size();
+							if (appender != null) {
+								appender.add(batch);
+							} else {
+								handler.handle(chunk, batch);
+							}
+						}
+					} finally {
+						BufferUtils.release(bytes);
+					}
+				}
+			});
+		}
+		run(tasks);
+	}
+
+	private <T> List<T> run(List<Callable<T>> tasks) throws IOException {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			List<T> results = new ArrayList<T>();
+			for (Future<T> future : pool.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+}
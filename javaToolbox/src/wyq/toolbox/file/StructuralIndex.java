@@ -0,0 +1,122 @@
+package wyq.toolbox.file;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This class finds the positions of the delimiters, the quotes and the line
+ * breaks in the bytes of {@linkplain CsvByteParser CsvByteParser}. The bytes
+ * are checked 8 at a time in a long (SWAR, SIMD within a register), and the
+ * positions of a block of bytes are kept in an array, so the parser jumps from
+ * one position to the next instead of checking every byte.
+ *
+ * @author dewafer
+ * @version 1
+ */
+final class StructuralIndex {
+
+	// the bytes indexed at a time
+	private static final int BLOCK_SIZE = 4096;
+
+	private static final long ONES = 0x0101010101010101L;
+
+	private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+	private final long delimiter;
+	private final long quote = ONES * '"';
+	private final long cr = ONES * '\r';
+	private final long lf = ONES * '\n';
+	private final byte delimiterByte;
+
+	private byte[] buf;
+	private ByteBuffer words;
+	private final int[] marks = new int[BLOCK_SIZE];
+	private int count = 0;
+	private int next = 0;
+	private int indexed = 0;
+
+	StructuralIndex(byte delimiter) {
+		this.delimiterByte = delimiter;
+		this.delimiter = ONES * delimiter;
+	}
+
+	/**
+	 * Forget the positions, the bytes from the position are indexed again.
+	 * Called when the bytes in the buffer are moved or the buffer is changed.
+	 *
+	 * @param from
+	 */
+	void reset(int from) {
+		count = 0;
+		next = 0;
+		indexed = from;
+	}
+
+	/**
+	 * Returns the position of the first delimiter, quote or line break at or
+	 * after the position.
+	 *
+	 * @param buf
+	 * @param pos
+	 * @param limit
+	 *            the end of the bytes in the buffer.
+	 * @return the position, or the limit if there is none.
+	 */
+	int find(byte[] buf, int pos, int limit) {
+		while (true) {
+			while (next < count) {
+				int mark = marks[next];
+				if (mark >= pos) {
+					return mark;
+				}
+				next++;
+			}
+			if (indexed >= limit) {
+				return limit;
+			}
+			if (pos > indexed) {
+				indexed = pos;
+			}
+			index(buf, Math.min(limit, indexed + BLOCK_SIZE));
+		}
+	}
+
+	/**
+	 * Index the bytes from the indexed position to the end.
+	 */
+	private void index(byte[] buf, int end) {
+		if (buf != this.buf) {
+			this.buf = buf;
+			words = ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		count = 0;
+		next = 0;
+		int i = indexed;
+		for (; i + 8 <= end; i += 8) {
+			long word = words.getLong(i);
+			long found = zeros(word ^ delimiter) | zeros(word ^ quote)
+					| zeros(word ^ cr) | zeros(word ^ lf);
+			while (found != 0) {
+				// the lowest byte comes first in the little endian word
+				marks[count++] = i + (Long.numberOfTrailingZeros(found) >>> 3);
+				found &= found - 1;
+			}
+		}
+		for (; i < end; i++) {
+			byte b = buf[i];
+			if (b == delimiterByte || b == '"' || b == '\r' || b == '\n') {
+				marks[count++] = i;
+			}
+		}
+		indexed = end;
+	}
+
+	/**
+	 * Returns the high bit of each zero byte of the word. Unlike the common
+	 * (x - 0x01..) &amp; ~x trick, there is no false positive.
+	 */
+	private static long zeros(long x) {
+		return ~(((x & LOW_BITS) + LOW_BITS) | x | LOW_BITS);
+	}
+
+}
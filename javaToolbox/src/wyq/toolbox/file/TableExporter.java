@@ -0,0 +1,311 @@
+package wyq.toolbox.file;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import wyq.toolbox.datamodel.BatchDataSourceAdapter;
+import wyq.toolbox.datamodel.BatchTableDataSource;
+import wyq.toolbox.datamodel.RowBatch;
+import wyq.toolbox.datamodel.Table;
+import wyq.toolbox.datamodel.TableDataSource;
+import wyq.toolbox.datamodel.TableSource;
+
+/**
+ * This class writes the rows of a Table or a
+ * {@linkplain wyq.toolbox.datamodel.TableDataSource TableDataSource} into a
+ * csv, tsv or JSON Lines file. The rows are written a batch at a time through
+ * a {@linkplain BufferedChannelWriter BufferedChannelWriter}, the whole output
+ * is never kept in memory.
+ * <ul>
+ * <li>CSV: the values which contain the comma, the quote or a line break are
+ * quoted and the quotes are doubled (RFC 4180). The nulls are empty.</li>
+ * <li>TSV: the tabs, line breaks and backslashes of the values are escaped as
+ * \t, \n, \r and \\. The nulls are empty.</li>
+ * <li>JSONL: each row is a JSON object of the column names and the values.
+ * The numbers and booleans are written as they are, the other values as
+ * strings.</li>
+ * </ul>
+ *
+ * <pre>
+ * TableExporter exporter = new TableExporter(TableExporter.Format.CSV);
+ * exporter.setCharset(Charset.forName(&quot;GBK&quot;));
+ * exporter.export(table, new File(&quot;report.csv&quot;));
+ * </pre>
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class TableExporter {
+
+	public enum Format {
+		CSV, TSV, JSONL
+	}
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final Format format;
+	private Charset charset = Charset.forName("UTF-8");
+	private String lineSeparator = System.getProperty("line.separator");
+	private boolean header = true;
+	private int bufferSize = BufferedChannelWriter.DEFAULT_BUFFER_SIZE;
+
+	public TableExporter(Format format) {
+		this.format = format;
+	}
+
+	/**
+	 * Set the charset of the file, UTF-8 by default.
+	 *
+	 * @param charset
+	 */
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Set the separator of the lines, the line separator of the system by
+	 * default.
+	 *
+	 * @param lineSeparator
+	 */
+	public void setLineSeparator(String lineSeparator) {
+		this.lineSeparator = lineSeparator;
+	}
+
+	/**
+	 * Write the column names as the first line of a csv or tsv file, true by
+	 * default.
+	 *
+	 * @param header
+	 */
+	public void setHeader(boolean header) {
+		this.header = header;
+	}
+
+	public void setBufferSize(int bufferSize) {
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Write all the rows of the table into the file. The cursor of the table
+	 * is not moved, except for a
+	 * {@linkplain wyq.toolbox.datamodel.StreamingTable StreamingTable} which
+	 * is read from its current row.
+	 *
+	 * @param table
+	 * @param file
+	 * @return the count of the rows written.
+	 * @throws Exception
+	 */
+	public long export(Table table, File file) throws Exception {
+		return export(new TableSource(table), file);
+	}
+
+	/**
+	 * Write all the rows of the data source into the file, the file is
+	 * overwritten.
+	 *
+	 * @param dataSource
+	 * @param file
+	 * @return the count of the rows written.
+	 * @throws Exception
+	 */
+	public long export(TableDataSource dataSource, File file) throws Exception {
+		return export(dataSource, new FileOutputStream(file).getChannel());
+	}
+
+	/**
+	 * Write all the rows of the data source into the channel, the channel is
+	 * closed after that.
+	 *
+	 * @param dataSource
+	 * @param channel
+	 * @return the count of the rows written.
+	 * @throws Exception
+	 */
+	public long export(TableDataSource dataSource, WritableByteChannel channel)
+			throws Exception {
+		BufferedChannelWriter out = new BufferedChannelWriter(channel,
+				charset, bufferSize);
+		try {
+			return write(dataSource, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	private long write(TableDataSource dataSource, Writer out)
+			throws Exception {
+		BatchTableDataSource batchSource = BatchDataSourceAdapter
+				.of(dataSource);
+		List<String> columnNames = new ArrayList<String>();
+		while (batchSource.nextColumn()) {
+			columnNames.add(batchSource.getColumnName());
+		}
+		int columns = columnNames.size();
+		String[] jsonNames = null;
+		if (format == Format.JSONL) {
+			// the column names of each row are escaped once
+			jsonNames = new String[columns];
+			for (int i = 0; i < columns; i++) {
+				StringWriter name = new StringWriter();
+				name.write(i == 0 ? '{' : ',');
+				writeJsonString(name, columnNames.get(i));
+				name.write(':');
+				jsonNames[i] = name.toString();
+			}
+		} else if (header) {
+			for (int i = 0; i < columns; i++) {
+				if (i > 0) {
+					out.write(separator());
+				}
+				writeValue(out, columnNames.get(i));
+			}
+			out.write(lineSeparator);
+		}
+		RowBatch batch = new RowBatch(columns);
+		long count = 0;
+		while (batchSource.nextBatch(batch) > 0) {
+			for (int row = 0; row < batch.size(); row++) {
+				int length = Math.min(columns, batch.getRowLength(row));
+				if (format == Format.JSONL) {
+					if (columns == 0) {
+						out.write('{');
+					}
+					for (int i = 0; i < columns; i++) {
+						out.write(jsonNames[i]);
+						writeJson(out, i < length ? batch.getValueAt(row, i)
+								: null);
+					}
+					out.write('}');
+				} else {
+					for (int i = 0; i < columns; i++) {
+						if (i > 0) {
+							out.write(separator());
+						}
+						if (i < length) {
+							writeValue(out, batch.getValueAt(row, i));
+						}
+					}
+				}
+				out.write(lineSeparator);
+			}
+			count += batch.size();
+		}
+		return count;
+	}
+
+	private char separator() {
+		return format == Format.TSV ? '\t' : ',';
+	}
+
+	private void writeValue(Writer out, Object value) throws IOException {
+		if (value == null) {
+			return;
+		}
+		String s = value.toString();
+		if (format == Format.TSV) {
+			writeTsv(out, s);
+		} else {
+			CsvWriter.writeField(out, s, ',');
+		}
+	}
+
+	private void writeTsv(Writer out, String s) throws IOException {
+		int start = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			String escape;
+			switch (c) {
+			case '\t':
+				escape = "\\t";
+				break;
+			case '\n':
+				escape = "\\n";
+				break;
+			case '\r':
+				escape = "\\r";
+				break;
+			case '\\':
+				escape = "\\\\";
+				break;
+			default:
+				continue;
+			}
+			out.write(s, start, i - start);
+			out.write(escape);
+			start = i + 1;
+		}
+		out.write(s, start, s.length() - start);
+	}
+
+	private void writeJson(Writer out, Object value) throws IOException {
+		if (value == null) {
+			out.write("null");
+		} else if (value instanceof Boolean) {
+			out.write(value.toString());
+		} else if (value instanceof Number && isJsonNumber((Number) value)) {
+			out.write(value.toString());
+		} else {
+			writeJsonString(out, value.toString());
+		}
+	}
+
+	private boolean isJsonNumber(Number number) {
+		if (number instanceof Double || number instanceof Float) {
+			double d = number.doubleValue();
+			return !Double.isNaN(d) && !Double.isInfinite(d);
+		}
+		return true;
+	}
+
+	private void writeJsonString(Writer out, String s) throws IOException {
+		out.write('"');
+		int start = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c >= 0x20 && c != '"' && c != '\\') {
+				continue;
+			}
+			out.write(s, start, i - start);
+			switch (c) {
+			case '"':
+				out.write("\\\"");
+				break;
+			case '\\':
+				out.write("\\\\");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			case '\b':
+				out.write("\\b");
+				break;
+			case '\f':
+				out.write("\\f");
+				break;
+			default:
+				out.write("\\u00");
+				out.write(HEX[c >> 4]);
+				out.write(HEX[c & 0xF]);
+			}
+			start = i + 1;
+		}
+		out.write(s, start, s.length() - start);
+		out.write('"');
+	}
+
+}
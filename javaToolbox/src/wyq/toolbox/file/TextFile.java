@@ -4,11 +4,28 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+
+import wyq.toolbox.util.BufferUtils;
 
 /**
  * <p>
@@ -42,12 +59,18 @@ import java.net.URI;
  * txtFile.writeLine("one line");
  * txtFile.close();
  * 
+ * // 大文件用NIO一次性读取，不会逐行处理。
+ * TextFile bigFile = new TextFile("big.txt");
+ * bigFile.setCharset(Charset.forName("UTF-8"));
+ * bigFile.setIOMode(TextFile.IOMode.MAPPED);
+ * String content = bigFile.readAll();
+ * 
  * </pre>
  * 
  * </p>
  * 
  * @author dewafer
- * @version 2.2
+ * @version 2.3
  */
 public class TextFile extends File implements Closeable {
 
@@ -58,6 +81,47 @@ public class TextFile extends File implements Closeable {
 
 	public static final String LINE_SEP = System.getProperty("line.separator");
 
+	/**
+	 * How readAll and writeAll read and write the whole file.
+	 */
+	public static enum IOMode {
+		/**
+		 * Line by line through BufferedReader, the line breaks are replaced by
+		 * LINE_SEP and a LINE_SEP is added after the last line. The default.
+		 */
+		LINES,
+		/**
+		 * The bytes of the whole file by Files.readAllBytes and Files.write.
+		 * The contents are kept as they are.
+		 */
+		BYTES,
+		/**
+		 * Through a FileChannel and a small buffer, the characters are decoded
+		 * into a buffer of the size of the file. Unlike BYTES there is no copy
+		 * of all the bytes in memory. The contents are kept as they are.
+		 */
+		CHANNEL,
+		/**
+		 * Like CHANNEL, but the files larger than the map threshold are
+		 * memory-mapped and decoded at once, see
+		 * {@link TextFile#setMapThreshold(long)}. Writing is the same as
+		 * CHANNEL.
+		 */
+		MAPPED
+	}
+
+	// the buffer of the CHANNEL mode
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// the largest array which can be allocated
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	private Charset charset;
+
+	private IOMode ioMode = IOMode.LINES;
+
+	private long mapThreshold = 4 * 1024 * 1024;
+
 	public TextFile(File parent, String child) {
 		super(parent, child);
 	}
@@ -76,7 +140,56 @@ public class TextFile extends File implements Closeable {
 
 	private TextFileReaderWriter readerWriter = new TextFileReaderWriter();
 
+	/**
+	 * Set the charset of the file, the default charset of the system by
+	 * default.
+	 * 
+	 * @param charset
+	 */
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+
+	public Charset getCharset() {
+		return charset == null ? Charset.defaultCharset() : charset;
+	}
+
+	/**
+	 * Set how readAll and writeAll read and write the file, LINES by default.
+	 * 
+	 * @param ioMode
+	 */
+	public void setIOMode(IOMode ioMode) {
+		this.ioMode = ioMode;
+	}
+
+	public IOMode getIOMode() {
+		return ioMode;
+	}
+
+	/**
+	 * Set the size in bytes above which the MAPPED mode maps the file, 4MB by
+	 * default. Mapping a small file costs more than reading it.
+	 * 
+	 * @param mapThreshold
+	 */
+	public void setMapThreshold(long mapThreshold) {
+		this.mapThreshold = mapThreshold;
+	}
+
 	public String readAll() throws IOException {
+		switch (ioMode) {
+		case BYTES:
+			return new String(Files.readAllBytes(toPath()), getCharset());
+		case CHANNEL:
+		case MAPPED:
+			return readChannel();
+		default:
+			return readLines();
+		}
+	}
+
+	private String readLines() throws IOException {
 		StringBuilder sb = new StringBuilder();
 		try {
 			readerWriter.openRead();
@@ -91,7 +204,57 @@ public class TextFile extends File implements Closeable {
 		return sb.toString();
 	}
 
+	/**
+	 * Decode the whole file into a buffer of the size of the file.
+	 */
+	private String readChannel() throws IOException {
+		FileChannel channel = FileChannel.open(toPath(),
+				StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			CharsetDecoder decoder = getCharset().newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			double capacity = Math.ceil(size
+					* (double) decoder.maxCharsPerByte());
+			if (capacity > MAX_ARRAY_SIZE) {
+				throw new IOException("file is too large to read at once:"
+						+ this);
+			}
+			CharBuffer chars = CharBuffer.allocate((int) capacity);
+			CoderResult result;
+			if (ioMode == IOMode.MAPPED && size >= mapThreshold) {
+				MappedByteBuffer bytes = channel.map(MapMode.READ_ONLY, 0, size);
+				try {
+					result = decoder.decode(bytes, chars, true);
+				} finally {
+					BufferUtils.release(bytes);
+				}
+			} else {
+				ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+				boolean end = false;
+				do {
+					end = channel.read(bytes) < 0;
+					bytes.flip();
+					result = decoder.decode(bytes, chars, end);
+					bytes.compact();
+				} while (!end && !result.isOverflow());
+			}
+			if (result.isOverflow() || decoder.flush(chars).isOverflow()) {
+				throw new IOException("file is changed while reading:" + this);
+			}
+			chars.flip();
+			return chars.toString();
+		} finally {
+			channel.close();
+		}
+	}
+
 	public void writeAll(String content, boolean append) throws IOException {
+		if (ioMode != IOMode.LINES) {
+			writeBulk(content, append);
+			return;
+		}
 		try {
 			readerWriter.openWrite(append);
 			readerWriter.write(content);
@@ -101,6 +264,66 @@ public class TextFile extends File implements Closeable {
 		}
 	}
 
+	/**
+	 * Write the content at once, or through a FileChannel and a small buffer.
+	 */
+	private void writeBulk(String content, boolean append) throws IOException {
+		File parent = getAbsoluteFile().getParentFile();
+		if (!exists() && parent != null) {
+			parent.mkdirs();
+		}
+		OpenOption[] options = { StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE,
+				append ? StandardOpenOption.APPEND
+						: StandardOpenOption.TRUNCATE_EXISTING };
+		if (ioMode == IOMode.BYTES) {
+			Files.write(toPath(), content.getBytes(getCharset()), options);
+			return;
+		}
+		FileChannel channel = FileChannel.open(toPath(), options);
+		try {
+			CharsetEncoder encoder = getCharset().newEncoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			// the characters are copied into an array a chunk at a time, the
+			// encoder is much slower on a CharBuffer wrapping the string
+			CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE / 4);
+			ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+			CoderResult result;
+			int from = 0;
+			boolean end = false;
+			while (!end) {
+				int n = Math.min(chars.remaining(), content.length() - from);
+				content.getChars(from, from + n, chars.array(),
+						chars.position());
+				chars.position(chars.position() + n);
+				from += n;
+				end = from == content.length();
+				chars.flip();
+				do {
+					result = encoder.encode(chars, bytes, end);
+					write(channel, bytes);
+				} while (result.isOverflow());
+				chars.compact();
+			}
+			do {
+				result = encoder.flush(bytes);
+				write(channel, bytes);
+			} while (result.isOverflow());
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static void write(FileChannel channel, ByteBuffer bytes)
+			throws IOException {
+		bytes.flip();
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		bytes.clear();
+	}
+
 	public String readLine() throws IOException {
 		String line = null;
 		readerWriter.openRead();
@@ -136,7 +359,8 @@ public class TextFile extends File implements Closeable {
 
 		public void openRead() throws FileNotFoundException {
 			if (reader == null) {
-				reader = new BufferedReader(new FileReader(TextFile.this));
+				reader = new BufferedReader(new InputStreamReader(
+						new FileInputStream(TextFile.this), getCharset()));
 			}
 		}
 
@@ -146,9 +370,9 @@ public class TextFile extends File implements Closeable {
 					TextFile.this.getParentFile().mkdirs();
 					TextFile.this.createNewFile();
 				}
-				writer = new BufferedWriter(new FileWriter(TextFile.this,
-						append));
-
+				writer = new BufferedWriter(new OutputStreamWriter(
+						new FileOutputStream(TextFile.this, append),
+						getCharset()));
 			}
 		}
 
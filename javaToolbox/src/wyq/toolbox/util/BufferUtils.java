@@ -0,0 +1,71 @@
+package wyq.toolbox.util;
+
+import static wyq.toolbox.util.LogUtils.logIntentionallyIgnoredCatch;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+
+/**
+ * This class provides the ability to release direct and memory-mapped
+ * <code>ByteBuffer</code>s at once instead of waiting for the garbage
+ * collector. The cleaner is looked up by reflection, if it's not available the
+ * buffer will be released by the garbage collector as usual.
+ *
+ * @author dewafer
+ * @version 1
+ */
+public class BufferUtils {
+
+	static Logger log = Logger.getLogger(BufferUtils.class.getCanonicalName());
+
+	private static Object unsafe;
+	private static Method invokeCleaner;
+
+	static {
+		try {
+			// java 9+
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			unsafe = theUnsafe.get(null);
+			invokeCleaner = unsafeClass.getMethod("invokeCleaner",
+					ByteBuffer.class);
+		} catch (Exception e) {
+			logIntentionallyIgnoredCatch(log, e);
+			unsafe = null;
+			invokeCleaner = null;
+		}
+	}
+
+	/**
+	 * Release the memory of the direct or memory-mapped buffer. The buffer can
+	 * not be used any more after this method is called. Heap buffers are
+	 * ignored.
+	 *
+	 * @param buffer
+	 */
+	public static void release(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect()) {
+			return;
+		}
+		try {
+			if (invokeCleaner != null) {
+				invokeCleaner.invoke(unsafe, buffer);
+			} else {
+				// java 8
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			}
+		} catch (Exception e) {
+			// slices and duplicates can not be cleaned, leave them to the GC.
+			logIntentionallyIgnoredCatch(log, e);
+		}
+	}
+
+}
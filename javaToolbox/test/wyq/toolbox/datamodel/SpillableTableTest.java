@@ -0,0 +1,147 @@
+package wyq.toolbox.datamodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SpillableTableTest {
+
+	private static final int ROWS = 50000;
+
+	// id是打乱的顺序，group有重复，用来检查排序的稳定性
+	private static MemoryTable source() {
+		List<Class<?>> types = new ArrayList<Class<?>>();
+		types.add(Integer.class);
+		types.add(Integer.class);
+		types.add(String.class);
+		MemoryTable table = new MemoryTable(Arrays.asList("id", "group",
+				"name"), types);
+		for (int i = 0; i < ROWS; i++) {
+			int id = (int) ((i * 7919L) % ROWS);
+			table.addRow(Arrays.<Object> asList(id, id % 10, "name" + i));
+		}
+		return table;
+	}
+
+	/**
+	 * 在排序合并时第failAt行出错的表。
+	 */
+	static class FailingTable extends SpillableTable {
+
+		// 构造的时候还没有初始化，所以用默认值false表示不出错
+		boolean failing;
+		int failAt;
+
+		FailingTable(TableDataSource dataSource, long memoryBudget)
+				throws Exception {
+			super(dataSource, memoryBudget, 1);
+		}
+
+		@Override
+		protected void addRow(List<Object> dataRow) throws Exception {
+			if (failing && failAt-- == 0) {
+				throw new IOException("disk full");
+			}
+			super.addRow(dataRow);
+		}
+	}
+
+	@Test
+	public void spillTest() throws Exception {
+		MemoryTable source = source();
+		// 只缓存一个页，读回的时候会反复映射
+		SpillableTable table = new SpillableTable(new TableSource(source),
+				256 * 1024, 1);
+		try {
+			assertTrue(table.isSpilled());
+			assertEquals(ROWS, table.size());
+			for (int row = 0; row < ROWS; row += 97) {
+				for (int col = 0; col < 3; col++) {
+					assertEquals(source.getValueAt(row, col),
+							table.getValueAt(row, col));
+				}
+			}
+			// 倒着读也一样
+			for (int row = ROWS - 1; row >= 0; row -= 1013) {
+				assertEquals(source.getValueAt(row, 2),
+						table.getValueAt(row, 2));
+			}
+			assertEquals(null, table.getValueAt(0, 3));
+		} finally {
+			table.close();
+		}
+	}
+
+	@Test
+	public void sortTest() throws Exception {
+		SpillableTable table = new SpillableTable(new TableSource(source()),
+				256 * 1024, 2);
+		try {
+			table.sort(new String[] { "group", "id" }, new boolean[] { true,
+					false });
+			assertEquals(ROWS, table.size());
+			assertTrue(table.isSpilled());
+			for (int row = 1; row < ROWS; row++) {
+				int group = (Integer) table.getValueAt(row, 1);
+				int previousGroup = (Integer) table.getValueAt(row - 1, 1);
+				assertTrue(previousGroup <= group);
+				if (previousGroup == group) {
+					assertTrue((Integer) table.getValueAt(row - 1, 0) > (Integer) table
+							.getValueAt(row, 0));
+				}
+			}
+			// 相同的键保持原来的顺序
+			table.sort("group");
+			for (int row = 1; row < ROWS; row++) {
+				if (table.getValueAt(row, 1).equals(
+						table.getValueAt(row - 1, 1))) {
+					assertTrue((Integer) table.getValueAt(row - 1, 0) > (Integer) table
+							.getValueAt(row, 0));
+				}
+			}
+		} finally {
+			table.close();
+		}
+	}
+
+	@Test
+	public void sortFailureTest() throws Exception {
+		MemoryTable source = source();
+		FailingTable table = new FailingTable(new TableSource(source),
+				256 * 1024);
+		try {
+			table.failing = true;
+			table.failAt = ROWS / 2;
+			try {
+				table.sort("id");
+				fail();
+			} catch (RuntimeException e) {
+				assertEquals("disk full", e.getCause().getMessage());
+			}
+			// 出错的时候表保持原样
+			assertEquals(ROWS, table.size());
+			for (int row = 0; row < ROWS; row += 101) {
+				for (int col = 0; col < 3; col++) {
+					assertEquals(source.getValueAt(row, col),
+							table.getValueAt(row, col));
+				}
+			}
+			// 再排序一次就成功了
+			table.failing = false;
+			table.sort("id");
+			for (int row = 0; row < ROWS; row += 101) {
+				assertEquals(row, table.getValueAt(row, 0));
+			}
+		} finally {
+			table.close();
+		}
+	}
+
+}
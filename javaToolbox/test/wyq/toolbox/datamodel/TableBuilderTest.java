@@ -0,0 +1,125 @@
+package wyq.toolbox.datamodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TableBuilderTest {
+
+	private static final String[] NAMES = { "a", "b", "c", "d", null };
+
+	private static final int ROWS = 30;
+
+	private static final List<String> COLUMNS = Arrays.asList("shard",
+			"sequence", "name", "unique");
+
+	private static List<Class<?>> types() {
+		List<Class<?>> types = new ArrayList<Class<?>>();
+		types.add(Integer.class);
+		types.add(Integer.class);
+		types.add(String.class);
+		types.add(String.class);
+		return types;
+	}
+
+	private static TableBuilder builder() {
+		TableBuilder builder = new TableBuilder(COLUMNS, types());
+		// 每个块的unique都不超过限制，合起来就超过了
+		builder.setDictionaryLimit(50);
+		return builder;
+	}
+
+	// 每个块里name出现的顺序不一样，所以块里的编码也不一样
+	private static List<Object> row(int shard, int sequence, int row) {
+		return Arrays.<Object> asList(shard, sequence,
+				NAMES[(row + sequence) % NAMES.length], shard + "-" + sequence
+						+ "-" + row);
+	}
+
+	private static void checkDictionaries(Table table) {
+		ColumnDictionary names = table.getDictionary("name");
+		assertNotNull(names);
+		assertEquals(4, names.size());
+		for (int row = 0; row < table.size(); row++) {
+			Object name = table.getValueAt(row, 2);
+			int code = names.getCodeAt(row);
+			if (name == null) {
+				assertEquals(-1, code);
+			} else {
+				assertEquals(name, names.getValue(code));
+				assertEquals(code, names.getCode(name));
+			}
+		}
+		assertNull(table.getDictionary("unique"));
+		assertNull(table.getDictionary("shard"));
+	}
+
+	@Test
+	public void appenderTest() throws Exception {
+		final TableBuilder builder = builder();
+		// 创建的顺序和分片的顺序不一样
+		int[][] appenders = { { 2, 0 }, { 0, 1 }, { 1, 2 }, { 0, 3 }, { 2, 4 } };
+		List<Thread> threads = new ArrayList<Thread>();
+		for (final int[] appender : appenders) {
+			final TableBuilder.Appender a = builder.appender(appender[0]);
+			threads.add(new Thread() {
+
+				@Override
+				public void run() {
+					for (int row = 0; row < ROWS; row++) {
+						a.add(row(appender[0], appender[1], row));
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		SealedTable table = builder.build();
+
+		// 先按分片，同一个分片按创建的顺序
+		int[][] order = { { 0, 1 }, { 0, 3 }, { 1, 2 }, { 2, 0 }, { 2, 4 } };
+		assertEquals(order.length * ROWS, table.size());
+		for (int i = 0; i < order.length; i++) {
+			for (int row = 0; row < ROWS; row++) {
+				List<Object> expected = row(order[i][0], order[i][1], row);
+				for (int col = 0; col < expected.size(); col++) {
+					assertEquals(expected.get(col),
+							table.getValueAt(i * ROWS + row, col));
+				}
+			}
+		}
+		checkDictionaries(table);
+	}
+
+	@Test
+	public void loadTest() throws Exception {
+		TableBuilder builder = builder();
+		List<TableDataSource> sources = new ArrayList<TableDataSource>();
+		for (int shard = 0; shard < 4; shard++) {
+			MemoryTable source = new MemoryTable(COLUMNS, types());
+			for (int row = 0; row < ROWS; row++) {
+				source.addRow(row(shard, shard, row));
+			}
+			sources.add(new TableSource(source));
+		}
+		SealedTable table = builder.load(sources, 3).build();
+		assertEquals(4 * ROWS, table.size());
+		for (int row = 0; row < table.size(); row++) {
+			assertEquals(row / ROWS, table.getValueAt(row, 0));
+			assertEquals(row(row / ROWS, row / ROWS, row % ROWS).get(3),
+					table.getValueAt(row, 3));
+		}
+		checkDictionaries(table);
+	}
+
+}
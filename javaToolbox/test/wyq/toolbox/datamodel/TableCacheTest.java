@@ -0,0 +1,192 @@
+package wyq.toolbox.datamodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TableCacheTest {
+
+	// rows行2列的表
+	private static Table table(int rows) {
+		List<Class<?>> types = new ArrayList<Class<?>>();
+		types.add(Integer.class);
+		types.add(String.class);
+		MemoryTable table = new MemoryTable(Arrays.asList("id", "name"), types);
+		for (int i = 0; i < rows; i++) {
+			table.addRow(Arrays.<Object> asList(i, "name" + i));
+		}
+		return table;
+	}
+
+	private static Callable<Table> loader(final int rows,
+			final AtomicInteger loads) {
+		return new Callable<Table>() {
+
+			@Override
+			public Table call() throws Exception {
+				loads.incrementAndGet();
+				return table(rows);
+			}
+		};
+	}
+
+	// 等到两个线程都调用了get
+	private static void awaitCallers(TableCache cache) throws Exception {
+		while (cache.getHitCount() + cache.getMissCount() < 2) {
+			Thread.sleep(1);
+		}
+	}
+
+	@Test
+	public void singleFlightTest() throws Exception {
+		final TableCache cache = new TableCache(1000);
+		final AtomicInteger loads = new AtomicInteger();
+		final CountDownLatch release = new CountDownLatch(1);
+		final Callable<Table> loader = new Callable<Table>() {
+
+			@Override
+			public Table call() throws Exception {
+				loads.incrementAndGet();
+				release.await();
+				return table(10);
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<Table>> results = new ArrayList<Future<Table>>();
+			for (int i = 0; i < 2; i++) {
+				results.add(executor.submit(new Callable<Table>() {
+
+					@Override
+					public Table call() throws Exception {
+						return cache.get("key", loader);
+					}
+				}));
+			}
+			awaitCallers(cache);
+			release.countDown();
+			// 只加载一次，每个调用者得到自己的视图
+			Table a = results.get(0).get();
+			Table b = results.get(1).get();
+			assertEquals(1, loads.get());
+			assertEquals(10, a.size());
+			assertEquals(10, b.size());
+			assertTrue(a != b);
+			assertEquals(1, cache.getHitCount());
+			assertEquals(1, cache.getMissCount());
+			assertEquals(20, cache.getCellCount());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void exceptionTest() throws Exception {
+		final TableCache cache = new TableCache(1000);
+		final IOException error = new IOException("broken");
+		final CountDownLatch release = new CountDownLatch(1);
+		final Callable<Table> loader = new Callable<Table>() {
+
+			@Override
+			public Table call() throws Exception {
+				release.await();
+				throw error;
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			List<Future<Table>> results = new ArrayList<Future<Table>>();
+			for (int i = 0; i < 2; i++) {
+				results.add(executor.submit(new Callable<Table>() {
+
+					@Override
+					public Table call() throws Exception {
+						return cache.get("key", loader);
+					}
+				}));
+			}
+			awaitCallers(cache);
+			release.countDown();
+			// 等待的调用者都得到同一个异常
+			for (Future<Table> result : results) {
+				try {
+					result.get();
+					fail();
+				} catch (ExecutionException e) {
+					assertSame(error, e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+		// 什么都没有缓存，下次重新加载
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getCellCount());
+		AtomicInteger loads = new AtomicInteger();
+		assertEquals(3, cache.get("key", loader(3, loads)).size());
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void evictTest() throws Exception {
+		// 每张表4个格子，最多放10个
+		TableCache cache = new TableCache(10);
+		AtomicInteger loads = new AtomicInteger();
+		cache.get("a", loader(2, loads));
+		cache.get("b", loader(2, loads));
+		// a最近被用过，c放进来的时候b被移除
+		cache.get("a", loader(2, loads));
+		cache.get("c", loader(2, loads));
+		assertEquals(3, loads.get());
+		assertEquals(2, cache.size());
+		assertEquals(8, cache.getCellCount());
+		cache.get("a", loader(2, loads));
+		cache.get("c", loader(2, loads));
+		assertEquals(3, loads.get());
+		cache.get("b", loader(2, loads));
+		assertEquals(4, loads.get());
+		// 比上限还大的表不会留在缓存里
+		cache.get("d", loader(6, loads));
+		assertTrue(cache.getCellCount() <= 10);
+	}
+
+	@Test
+	public void invalidateTest() throws Exception {
+		TableCache cache = new TableCache(1000);
+		AtomicInteger loads = new AtomicInteger();
+		List<Object> parameters = Arrays.<Object> asList(1);
+		cache.get(TableCache.queryKey("db1", "select a", parameters),
+				loader(1, loads));
+		cache.get(TableCache.queryKey("db1", "select b", null),
+				loader(1, loads));
+		cache.get(TableCache.queryKey("db2", "select a", parameters),
+				loader(1, loads));
+		cache.get("other", loader(1, loads));
+		cache.invalidateQueries("db1");
+		assertEquals(2, cache.size());
+		assertEquals(4, cache.getCellCount());
+		cache.invalidate("other");
+		assertEquals(1, cache.size());
+		cache.get(TableCache.queryKey("db2", "select a", parameters),
+				loader(1, loads));
+		assertEquals(4, loads.get());
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+
+}
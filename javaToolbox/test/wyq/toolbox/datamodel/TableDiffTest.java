@@ -0,0 +1,105 @@
+package wyq.toolbox.datamodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TableDiffTest {
+
+	private static MemoryTable table(List<String> names,
+			List<Class<?>> types, Object[]... rows) {
+		MemoryTable table = new MemoryTable(names, types);
+		for (Object[] row : rows) {
+			table.addRow(Arrays.asList(row));
+		}
+		return table;
+	}
+
+	private static List<Class<?>> types(Class<?>... types) {
+		return new ArrayList<Class<?>>(Arrays.asList(types));
+	}
+
+	@Test
+	public void decimalTest() {
+		// 数据库的NUMERIC列和csv的字符串
+		List<String> names = Arrays.asList("id", "amount");
+		MemoryTable db = table(names, types(Long.class, BigDecimal.class),
+				new Object[] { 1L, new BigDecimal("0.10000000000000001") },
+				new Object[] { 2L, new BigDecimal("0.10") },
+				new Object[] { 3L, new BigDecimal("7.00") },
+				new Object[] { 4L, new BigDecimal("1E+20") },
+				new Object[] { 5L, new BigDecimal("2.5") });
+		MemoryTable csv = table(names, types(null, null), new Object[] { "1",
+				"0.1" }, new Object[] { "2", "0.1" }, new Object[] { "3",
+				"7" }, new Object[] { "4", "100000000000000000000" },
+				new Object[] { "5", "2.50" });
+		MemoryTable doubles = table(names, types(Integer.class, Double.class),
+				new Object[] { 1, 0.1 }, new Object[] { 2, 0.1 },
+				new Object[] { 3, 7.0 }, new Object[] { 4, 1e20 },
+				new Object[] { 5, 2.5 });
+		for (int threads = 1; threads <= 3; threads++) {
+			// 精度的差别不能被隐藏
+			TableDiff.Result result = new TableDiff(db, csv).on("id")
+					.parallel(threads).execute();
+			assertEquals(1, result.getChanged().size());
+			assertEquals(0, result.getChanged().getLeftRow(0));
+			assertEquals(4, result.getUnchangedCount());
+			result = new TableDiff(db, doubles).on("id").parallel(threads)
+					.execute();
+			assertEquals(1, result.getChanged().size());
+			assertEquals(4, result.getUnchangedCount());
+			assertTrue(new TableDiff(csv, doubles).on("id").parallel(threads)
+					.execute().isEmpty());
+		}
+	}
+
+	@Test
+	public void keyTest() {
+		List<String> names = Arrays.asList("k1", "k2", "value");
+		MemoryTable oldTable = table(names,
+				types(String.class, Integer.class, String.class),
+				new Object[] { "a", 1, "x" }, new Object[] { "a", 2, "y" },
+				new Object[] { "b", 1, "z" }, new Object[] { "b", 1, "w" },
+				new Object[] { "c", 1, "v" }, new Object[] { null, 1, "n" });
+		// 新表的key是Long，值按顺序匹配重复的key
+		MemoryTable newTable = table(names,
+				types(String.class, Long.class, String.class),
+				new Object[] { "a", 2L, "y" }, new Object[] { "a", 1L, "x2" },
+				new Object[] { "b", 1L, "z" }, new Object[] { "b", 1L, "w2" },
+				new Object[] { "b", 1L, "u" }, new Object[] { "d", 1L, "t" },
+				new Object[] { "a", null, "n" });
+		for (int threads = 1; threads <= 4; threads++) {
+			TableDiff.Result result = new TableDiff(oldTable, newTable)
+					.on("k1", "k2").parallel(threads).execute();
+			assertEquals(2, result.getUnchangedCount());
+
+			// 修改的行按照新表的顺序
+			JoinedTable changed = result.getChanged();
+			assertEquals(2, changed.size());
+			assertEquals(0, changed.getLeftRow(0));
+			assertEquals(1, changed.getRightRow(0));
+			assertEquals(3, changed.getLeftRow(1));
+			assertEquals(3, changed.getRightRow(1));
+			assertEquals("x", changed.getValueAt(0, 2));
+			assertEquals("x2", changed.getValueAt(0, 3));
+
+			// null的key不会匹配
+			Table added = result.getAdded();
+			assertEquals(3, added.size());
+			assertEquals("u", added.getValueAt(0, 2));
+			assertEquals("t", added.getValueAt(1, 2));
+			assertEquals("n", added.getValueAt(2, 2));
+			Table removed = result.getRemoved();
+			assertEquals(2, removed.size());
+			assertEquals("v", removed.getValueAt(0, 2));
+			assertEquals("n", removed.getValueAt(1, 2));
+		}
+	}
+
+}
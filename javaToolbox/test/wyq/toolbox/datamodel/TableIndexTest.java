@@ -0,0 +1,131 @@
+package wyq.toolbox.datamodel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TableIndexTest {
+
+	private MemoryTable table;
+
+	@Before
+	public void setUp() {
+		// id是Long，price是Double，name是字符串
+		List<Class<?>> types = new ArrayList<Class<?>>();
+		types.add(Long.class);
+		types.add(Double.class);
+		types.add(String.class);
+		table = new MemoryTable(Arrays.asList("id", "price", "name"), types);
+		for (int i = 0; i < 100; i++) {
+			table.addRow(Arrays.<Object> asList((long) (i % 10),
+					i % 4 == 0 ? (double) i / 2 : i + 0.5, "name" + (i % 3)));
+		}
+	}
+
+	@Test
+	public void numberKeyTest() {
+		// 两种索引对不同类型的相同数值给出同样的结果
+		for (TableIndex.Type type : TableIndex.Type.values()) {
+			TableIndex id = table.buildIndex(type, "id");
+			int[] expected = id.lookup(3L);
+			assertEquals(10, expected.length);
+			assertArrayEquals(expected, id.lookup(3));
+			assertArrayEquals(expected, id.lookup((short) 3));
+			assertArrayEquals(expected, id.lookup(3.0));
+			assertArrayEquals(expected, id.lookup(3.0f));
+			assertArrayEquals(expected, id.lookup(new BigDecimal("3")));
+			assertArrayEquals(expected, id.lookup(new BigDecimal("3.00")));
+			assertEquals(0, id.lookup(3.5).length);
+			assertEquals(3, id.first(new BigDecimal("3.0")));
+
+			TableIndex price = table.buildIndex(type, "price");
+			// 0, 8, 16 ... 的price是整数值的Double
+			assertArrayEquals(new int[] { 8 }, price.lookup(4));
+			assertArrayEquals(new int[] { 8 }, price.lookup(4L));
+			assertArrayEquals(new int[] { 1 }, price.lookup(1.5));
+			assertArrayEquals(new int[] { 1 },
+					price.lookup(new BigDecimal("1.50")));
+
+			// 复合键
+			TableIndex composite = table.buildIndex(type, "id", "name");
+			int[] rows = composite.lookup(new BigDecimal("1"), "name1");
+			assertArrayEquals(new int[] { 1, 31, 61, 91 }, rows);
+			assertArrayEquals(rows, composite.lookup(1.0, "name1"));
+			assertEquals(0, composite.lookup(1, "name9").length);
+		}
+	}
+
+	@Test
+	public void hashIndexTest() {
+		HashIndex index = (HashIndex) table.buildIndex("id");
+		assertEquals(10, index.getKeyCount());
+		assertEquals(index, table.getIndex("id"));
+		// 用first和next按原来的顺序遍历
+		int count = 0;
+		for (int row = index.first(7); row >= 0; row = index.next(row)) {
+			assertEquals(7 + count * 10, row);
+			count++;
+		}
+		assertEquals(10, count);
+		assertEquals(-1, index.first(10));
+	}
+
+	@Test
+	public void sortedIndexTest() {
+		SortedIndex index = (SortedIndex) table.buildIndex(
+				TableIndex.Type.SORTED, "id");
+		// 范围查找，相同的键按原来的顺序
+		int[] rows = index.range(new Object[] { 8 }, false,
+				new Object[] { new BigDecimal("9") }, true);
+		assertEquals(10, rows.length);
+		assertEquals(9, rows[0]);
+		assertEquals(19, rows[1]);
+		assertEquals(20,
+				index.range(null, false, new Object[] { 1.5 }, true).length);
+		SortedIndex name = (SortedIndex) table.buildIndex(
+				TableIndex.Type.SORTED, "name");
+		assertEquals(34, name.startsWith("name0").length);
+		assertEquals(100, name.startsWith("name").length);
+	}
+
+	@Test
+	public void mixedKeyTest() {
+		// 数字的字符串不等于数字，两种索引的结果一样
+		for (TableIndex.Type type : TableIndex.Type.values()) {
+			TableIndex id = table.buildIndex(type, "id");
+			assertEquals(0, id.lookup("3").length);
+			assertEquals(-1, id.first("3"));
+			TableIndex name = table.buildIndex(type, "name");
+			assertEquals(0, name.lookup(0).length);
+		}
+		// 数字在其他值的前面，比较是可传递的
+		Object[] values = { "10", 9, "9", 10L, null, 2.5, "a",
+				new java.util.Date(5), new Timestamp(3), Boolean.TRUE,
+				new BigDecimal("9.00") };
+		for (Object a : values) {
+			for (Object b : values) {
+				assertEquals(Integer.signum(Values.compare(a, b)),
+						-Integer.signum(Values.compare(b, a)));
+				for (Object c : values) {
+					if (Values.compare(a, b) <= 0
+							&& Values.compare(b, c) <= 0) {
+						assertEquals(true, Values.compare(a, c) <= 0);
+					}
+				}
+			}
+		}
+		assertEquals(-1, Values.compare(10L, "10"));
+		assertEquals(0, Values.compare(9, new BigDecimal("9.00")));
+		assertEquals(true, Values.compare(new Timestamp(3),
+				new java.util.Date(5)) < 0);
+	}
+
+}
@@ -0,0 +1,93 @@
+package wyq.toolbox.datamodel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 1M x 100K的join性能测试，直接运行main方法。
+ * 对比手写的HashMap循环、单线程和多线程的TableJoin。
+ */
+public class TableJoinBenchmark {
+
+	private static final int ORDERS = 1000000;
+	private static final int CUSTOMERS = 100000;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		// 订单表的customer是字符串（像csv），客户表的id是Integer（像数据库）
+		MemoryTable orders = new MemoryTable(Arrays.asList("id", "customer",
+				"amount"), Arrays.<Class<?>> asList(Integer.class,
+				String.class, String.class));
+		for (int i = 0; i < ORDERS; i++) {
+			orders.addRow(Arrays.<Object> asList(i,
+					String.valueOf(i % (CUSTOMERS + CUSTOMERS / 10)),
+					String.valueOf(i % 997)));
+		}
+		MemoryTable customers = new MemoryTable(Arrays.asList("id", "name"),
+				Arrays.<Class<?>> asList(Integer.class, String.class));
+		for (int i = 0; i < CUSTOMERS; i++) {
+			customers.addRow(Arrays.<Object> asList(i, "customer" + i));
+		}
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			int loop = handWritten(orders, customers);
+			long handWritten = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			Table inner = new TableJoin(orders, customers)
+					.on(new String[] { "customer" }, new String[] { "id" })
+					.execute();
+			long sequential = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			Table parallel = new TableJoin(orders, customers)
+					.on(new String[] { "customer" }, new String[] { "id" })
+					.parallel(threads).execute();
+			long parallelTime = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			Table anti = new TableJoin(orders, customers)
+					.on(new String[] { "customer" }, new String[] { "id" })
+					.type(TableJoin.Type.ANTI).parallel(threads).execute();
+			long antiTime = System.nanoTime() - start;
+
+			System.out.println("round " + round + ": hand-written "
+					+ handWritten / 1000000 + "ms (" + loop + " rows), inner "
+					+ sequential / 1000000 + "ms (" + inner.size()
+					+ " rows), inner x" + threads + " " + parallelTime
+					/ 1000000 + "ms (" + parallel.size() + " rows), anti x"
+					+ threads + " " + antiTime / 1000000 + "ms ("
+					+ anti.size() + " rows)");
+		}
+	}
+
+	/**
+	 * 以前的写法：把客户表放进HashMap，再循环订单表。
+	 */
+	private static int handWritten(Table orders, Table customers) {
+		Map<Integer, List<Integer>> map = new HashMap<Integer, List<Integer>>();
+		for (customers.beforeFirst(); customers.next();) {
+			Integer id = (Integer) customers.getValue("id");
+			List<Integer> rows = map.get(id);
+			if (rows == null) {
+				rows = new ArrayList<Integer>();
+				map.put(id, rows);
+			}
+			rows.add(customers.getRow());
+		}
+		int count = 0;
+		for (orders.beforeFirst(); orders.next();) {
+			List<Integer> rows = map.get(orders.getInt("customer"));
+			if (rows != null) {
+				count += rows.size();
+			}
+		}
+		return count;
+	}
+
+}
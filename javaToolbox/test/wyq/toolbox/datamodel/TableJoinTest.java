@@ -0,0 +1,76 @@
+package wyq.toolbox.datamodel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TableJoinTest {
+
+	private static MemoryTable table(String key, Class<?> type,
+			Object... values) {
+		List<Class<?>> types = new ArrayList<Class<?>>();
+		types.add(type);
+		types.add(String.class);
+		MemoryTable table = new MemoryTable(Arrays.asList(key, "name"), types);
+		for (Object value : values) {
+			table.addRow(Arrays.<Object> asList(value, key + value));
+		}
+		return table;
+	}
+
+	@Test
+	public void numberKeyTest() {
+		// 数据库的NUMERIC列是BigDecimal，csv的列是没有类型的字符串
+		MemoryTable db = table("id", BigDecimal.class, new BigDecimal("7"),
+				new BigDecimal("8.00"), new BigDecimal("9.5"), null);
+		MemoryTable csv = table("id", null, "7", "8", "9.5", "10");
+		MemoryTable longs = table("id", Long.class, 7L, 8L, 10L);
+		MemoryTable doubles = table("id", Double.class, 7.0, 9.5);
+		for (int threads = 1; threads <= 2; threads++) {
+			assertEquals(3, new TableJoin(db, csv).on("id")
+					.parallel(threads).execute().size());
+			assertEquals(3, new TableJoin(csv, db).on("id")
+					.parallel(threads).execute().size());
+			assertEquals(2, new TableJoin(db, longs).on("id")
+					.parallel(threads).execute().size());
+			assertEquals(2, new TableJoin(db, doubles).on("id")
+					.parallel(threads).execute().size());
+			assertEquals(1, new TableJoin(longs, doubles).on("id")
+					.parallel(threads).execute().size());
+		}
+		// 没有匹配的行
+		Table anti = new TableJoin(db, csv).on("id")
+				.type(TableJoin.Type.ANTI).execute();
+		assertEquals(1, anti.size());
+		anti.first();
+		assertEquals(null, anti.getValue("id"));
+	}
+
+	@Test
+	public void semiAntiTest() {
+		// 左边的表小，在左边建哈希表，左边有重复的key
+		MemoryTable left = table("id", Long.class, 1L, 1L, 2L, 1L, 3L);
+		List<Object> keys = new ArrayList<Object>();
+		for (int i = 0; i < 1000; i++) {
+			keys.add((long) (i % 3 == 0 ? 2 : 1));
+		}
+		keys.add(4L);
+		MemoryTable right = table("id", Long.class, keys.toArray());
+		for (int threads = 1; threads <= 3; threads++) {
+			Table semi = new TableJoin(left, right).on("id")
+					.type(TableJoin.Type.SEMI).parallel(threads).execute();
+			assertEquals(4, semi.size());
+			Table anti = new TableJoin(left, right).on("id")
+					.type(TableJoin.Type.ANTI).parallel(threads).execute();
+			assertEquals(1, anti.size());
+			anti.first();
+			assertEquals(3L, anti.getValue("id"));
+		}
+	}
+
+}
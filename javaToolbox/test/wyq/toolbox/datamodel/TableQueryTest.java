@@ -0,0 +1,132 @@
+package wyq.toolbox.datamodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TableQueryTest {
+
+	private MemoryTable table;
+
+	@Before
+	public void setUp() {
+		// 一张简单的表：id, name, price
+		List<String> names = Arrays.asList("id", "name", "price");
+		List<Class<?>> types = new ArrayList<Class<?>>();
+		types.add(Integer.class);
+		types.add(String.class);
+		types.add(String.class);
+		table = new MemoryTable(names, types);
+		for (int i = 0; i < 100000; i++) {
+			// price是字符串，就像从csv里读出来的那样
+			table.addRow(Arrays.<Object> asList(i, "name" + (i % 10),
+					String.valueOf(i % 1000)));
+		}
+	}
+
+	@Test
+	public void filterTest() {
+		// 没有聚合函数时，结果是原表的一个视图
+		Table result = new TableQuery(table)
+				.where(RowFilter.eq("name", "name3"))
+				.where(RowFilter.ge("price", 500)).select("id", "price")
+				.execute();
+		assertEquals(5000, result.size());
+		assertEquals(2, result.getColumnCount());
+		result.first();
+		assertEquals(503, result.getInt("id"));
+		assertEquals("503", result.getValue("price"));
+	}
+
+	@Test
+	public void groupByTest() {
+		// 多线程执行的结果和单线程一样
+		for (int threads = 1; threads <= 4; threads++) {
+			Table result = new TableQuery(table)
+					.where(RowFilter.lt("id", 50000))
+					.groupBy("name")
+					.aggregate(Aggregate.count(),
+							Aggregate.sum("price").as("total"),
+							Aggregate.countDistinct("price"),
+							Aggregate.min("price"), Aggregate.max("price"))
+					.parallel(threads).execute();
+			assertEquals(10, result.size());
+			result.absolute(7);
+			assertEquals("name7", result.getValue("name"));
+			assertEquals(5000L, result.getValue("count"));
+			// 7 + 17 + ... + 997，每个价格出现50次
+			assertEquals(2510000L, result.getValue("total"));
+			assertEquals(100L, result.getValue("countDistinct(price)"));
+			// 字符串的价格按照数值比较，"7"比"107"小
+			assertEquals("7", result.getValue("min(price)"));
+			assertEquals("997", result.getValue("max(price)"));
+		}
+	}
+
+	@Test
+	public void minMaxTest() {
+		// 没有类型的列，就像从csv里读出来的那样
+		List<Class<?>> types = new ArrayList<Class<?>>();
+		types.add(null);
+		MemoryTable csv = new MemoryTable(Arrays.asList("value"), types);
+		for (String value : new String[] { "9", "10", "-2.5", null, "9.0" }) {
+			csv.addRow(Arrays.<Object> asList(value));
+		}
+		for (int threads = 1; threads <= 2; threads++) {
+			Table result = new TableQuery(csv)
+					.aggregate(Aggregate.min("value"), Aggregate.max("value"))
+					.parallel(threads).execute();
+			result.first();
+			assertEquals("-2.5", result.getValue(0));
+			assertEquals("10", result.getValue(1));
+		}
+	}
+
+	@Test
+	public void indexTest() {
+		// 有索引和没有索引的结果一样
+		Object[][] operands = { { "id", 3 }, { "id", 3L }, { "id", 3.0 },
+				{ "id", new BigDecimal("3.00") }, { "id", 3.5 },
+				{ "id", "3" }, { "name", "name3" }, { "price", "503" },
+				{ "price", 503 } };
+		int[] expected = new int[operands.length];
+		for (int i = 0; i < operands.length; i++) {
+			expected[i] = new TableQuery(table)
+					.where(RowFilter.eq((String) operands[i][0],
+							operands[i][1])).execute().size();
+		}
+		for (TableIndex.Type type : TableIndex.Type.values()) {
+			table.buildIndex(type, "id");
+			table.buildIndex(type, "name");
+			table.buildIndex(type, "price");
+			for (int i = 0; i < operands.length; i++) {
+				assertEquals(Arrays.toString(operands[i]), expected[i],
+						new TableQuery(table).where(RowFilter.eq(
+								(String) operands[i][0], operands[i][1]))
+								.execute().size());
+			}
+			table.dropIndexes();
+		}
+		assertEquals(1, expected[2]);
+		assertEquals(100, expected[8]);
+	}
+
+	@Test
+	public void emptyTest() {
+		// 没有分组时总会有一行结果
+		Table result = new TableQuery(table).where(RowFilter.isNull("name"))
+				.aggregate(Aggregate.count(), Aggregate.max("id")).execute();
+		assertEquals(1, result.size());
+		result.first();
+		assertEquals(0L, result.getValue(0));
+		assertNull(result.getValue(1));
+	}
+
+}
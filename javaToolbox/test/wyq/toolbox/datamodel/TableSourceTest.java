@@ -0,0 +1,78 @@
+package wyq.toolbox.datamodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TableSourceTest {
+
+	private static final int ROWS = 2500;
+
+	private static MemoryTable table() {
+		List<Class<?>> types = new ArrayList<Class<?>>();
+		types.add(Integer.class);
+		types.add(String.class);
+		MemoryTable table = new MemoryTable(Arrays.asList("id", "name"), types);
+		for (int i = 0; i < ROWS; i++) {
+			table.addRow(Arrays.<Object> asList(i, i % 5 == 0 ? null : "n" + i));
+		}
+		return table;
+	}
+
+	@Test
+	public void rowTest() throws Exception {
+		MemoryTable table = table();
+		table.absolute(10);
+		TableSource source = new TableSource(table);
+		assertTrue(source.nextColumn());
+		assertEquals("id", source.getColumnName());
+		assertEquals(Integer.class, source.getColumnType());
+		assertTrue(source.nextColumn());
+		assertEquals(String.class, source.getColumnType());
+		assertFalse(source.nextColumn());
+		for (int row = 0; row < ROWS; row++) {
+			assertTrue(source.nextRow());
+			assertTrue(source.nextRowValue());
+			assertEquals(row, source.getRowValue());
+			assertTrue(source.nextRowValue());
+			assertEquals(table.getValueAt(row, 1), source.getRowValue());
+			assertFalse(source.nextRowValue());
+		}
+		assertFalse(source.nextRow());
+		// 表的游标没有移动
+		assertEquals(10, table.getInt("id"));
+	}
+
+	@Test
+	public void batchTest() throws Exception {
+		MemoryTable table = table();
+		TableSource source = new TableSource(table);
+		RowBatch batch = new RowBatch(2, 1000);
+		int row = 0;
+		int size;
+		while ((size = source.nextBatch(batch)) > 0) {
+			assertEquals(Math.min(1000, ROWS - row), size);
+			for (int i = 0; i < size; i++, row++) {
+				assertEquals(row, batch.getValueAt(i, 0));
+				assertEquals(table.getValueAt(row, 1), batch.getValueAt(i, 1));
+			}
+		}
+		assertEquals(ROWS, row);
+		assertEquals(0, source.nextBatch(batch));
+
+		// StreamingTable从当前行往后读
+		StreamingTable streaming = new StreamingTable(new TableSource(table));
+		streaming.next();
+		streaming.next();
+		MemoryTable copy = new MemoryTable(new TableSource(streaming));
+		assertEquals(ROWS - 2, copy.size());
+		assertEquals(2, copy.getValueAt(0, 0));
+	}
+
+}
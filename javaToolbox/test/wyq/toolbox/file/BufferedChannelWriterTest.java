@@ -0,0 +1,65 @@
+package wyq.toolbox.file;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+public class BufferedChannelWriterTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// 字符缓冲区最少有1024个字符
+	private static final int CHARS = 1024;
+
+	private static String repeat(char c, int count) {
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			s.append(c);
+		}
+		return s.toString();
+	}
+
+	@Test
+	public void surrogateTest() throws Exception {
+		// 代理对的高位在字符缓冲区的最后一个位置
+		String text = repeat('a', CHARS - 1) + "😀b中"
+				+ repeat('c', CHARS) + "😁";
+		for (int way = 0; way < 3; way++) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			// 字节缓冲区很小，会写很多次
+			BufferedChannelWriter out = new BufferedChannelWriter(
+					Channels.newChannel(bytes), UTF8, 16);
+			if (way == 0) {
+				out.write(text);
+			} else if (way == 1) {
+				out.write(text.toCharArray());
+			} else {
+				for (int i = 0; i < text.length(); i++) {
+					out.write(text.charAt(i));
+				}
+			}
+			out.close();
+			assertEquals(text, new String(bytes.toByteArray(), UTF8));
+		}
+	}
+
+	@Test
+	public void flushTest() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BufferedChannelWriter out = new BufferedChannelWriter(
+				Channels.newChannel(bytes), Charset.forName("ISO-8859-1"), 16);
+		out.append("x\uD83D");
+		out.flush();
+		// 高位的代理等待后面的字符
+		assertEquals(1, bytes.size());
+		out.append("\uDE00é中");
+		out.close();
+		// 不能编码的字符被替换
+		assertEquals("x?é?", new String(bytes.toByteArray(), "ISO-8859-1"));
+	}
+
+}
@@ -0,0 +1,129 @@
+package wyq.toolbox.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CsvByteParserTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final Charset GBK = Charset.forName("GBK");
+
+	private List<String[]> parse(String text, Charset charset, int bufferSize)
+			throws IOException {
+		List<String[]> records = parse(text, charset, bufferSize, false);
+		// 用StructuralIndex的结果也一样
+		List<String[]> indexed = parse(text, charset, bufferSize, true);
+		assertEquals(records.size(), indexed.size());
+		for (int i = 0; i < records.size(); i++) {
+			assertArrayEquals(records.get(i), indexed.get(i));
+		}
+		return records;
+	}
+
+	private List<String[]> parse(String text, Charset charset,
+			int bufferSize, boolean structuralIndex) throws IOException {
+		CsvByteParser parser = new CsvByteParser(new ByteArrayInputStream(
+				text.getBytes(charset)), charset, ',', bufferSize);
+		parser.setStructuralIndex(structuralIndex);
+		List<String[]> records = new ArrayList<String[]>();
+		while (parser.next()) {
+			records.add(parser.toArray());
+		}
+		parser.close();
+		return records;
+	}
+
+	@Test
+	public void quoteTest() throws IOException {
+		String text = "id,name,memo\r\n"
+				+ "1,\"a,b\",\"say \"\"hi\"\"\"\r\n"
+				+ "2,,\"line1\nline2\"\r\n"
+				+ "3,c,\n";
+		// 和CsvParser的结果一样，缓冲区很小的时候记录会被移动到缓冲区的开头或者缓冲区会变大
+		for (int bufferSize = 1; bufferSize <= 64; bufferSize *= 2) {
+			List<String[]> records = parse(text, UTF8, bufferSize);
+			assertEquals(4, records.size());
+			assertArrayEquals(new String[] { "id", "name", "memo" },
+					records.get(0));
+			assertArrayEquals(new String[] { "1", "a,b", "say \"hi\"" },
+					records.get(1));
+			assertArrayEquals(new String[] { "2", "", "line1\nline2" },
+					records.get(2));
+			assertArrayEquals(new String[] { "3", "c", "" }, records.get(3));
+		}
+	}
+
+	@Test
+	public void charsetTest() throws IOException {
+		// GBK的第二个字节可能是0x40以上的ASCII字符，比如“乗”是0x81 0x5C
+		String text = "名字,地址\r\n乗张三,\"北京,朝阳\"\n";
+		for (int bufferSize = 1; bufferSize <= 16; bufferSize *= 2) {
+			List<String[]> records = parse(text, GBK, bufferSize);
+			assertEquals(2, records.size());
+			assertArrayEquals(new String[] { "乗张三", "北京,朝阳" },
+					records.get(1));
+		}
+		// UTF-8的BOM被跳过
+		List<String[]> records = parse("\uFEFFa,b", UTF8, 2);
+		assertArrayEquals(new String[] { "a", "b" }, records.get(0));
+		assertTrue(CsvByteParser.supports(GBK, '\t'));
+		assertFalse(CsvByteParser.supports(GBK, '|'));
+		assertTrue(CsvByteParser.supports(UTF8, '|'));
+		assertFalse(CsvByteParser.supports(Charset.forName("UTF-16"), ','));
+	}
+
+	@Test
+	public void randomTest() throws IOException {
+		// 随机的文本，结果和CsvParser一样
+		Random random = new Random(46);
+		char[] chars = { 'a', 'b', '中', ',', '"', '\r', '\n', ' ' };
+		for (int round = 0; round < 200; round++) {
+			StringBuilder text = new StringBuilder();
+			int length = random.nextInt(300);
+			for (int i = 0; i < length; i++) {
+				text.append(chars[random.nextInt(chars.length)]);
+			}
+			CsvParser parser = new CsvParser(new StringReader(
+					text.toString()));
+			List<String[]> expected = new ArrayList<String[]>();
+			while (parser.next()) {
+				expected.add(parser.toArray());
+			}
+			List<String[]> records = parse(text.toString(), UTF8,
+					1 + random.nextInt(64));
+			assertEquals(expected.size(), records.size());
+			for (int i = 0; i < records.size(); i++) {
+				assertArrayEquals(expected.get(i), records.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void selectTest() throws IOException {
+		CsvByteParser parser = new CsvByteParser(new ByteArrayInputStream(
+				"a,\"b\"\"b\",c\n1".getBytes(UTF8)), UTF8);
+		parser.select(1);
+		assertTrue(parser.next());
+		assertEquals(3, parser.getFieldCount());
+		assertNull(parser.getField(0));
+		assertEquals("b\"b", parser.getField(1));
+		assertTrue(parser.next());
+		assertArrayEquals(new String[] { null }, parser.toArray());
+		assertFalse(parser.next());
+	}
+
+}
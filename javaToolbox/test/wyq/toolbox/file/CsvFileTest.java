@@ -0,0 +1,139 @@
+package wyq.toolbox.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.sql.Date;
+
+import org.junit.Test;
+
+import wyq.toolbox.datamodel.MappedTable;
+import wyq.toolbox.datamodel.Table;
+
+public class CsvFileTest {
+
+	private static void write(File file, String text, Charset charset)
+			throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(text.getBytes(charset));
+		out.close();
+	}
+
+	private static void assertSameRows(Table expected, Table actual) {
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.getColumnCount(), actual.getColumnCount());
+		for (int col = 0; col < expected.getColumnCount(); col++) {
+			assertEquals(expected.getColumnName(col), actual.getColumnName(col));
+		}
+		for (int row = 0; row < expected.size(); row++) {
+			for (int col = 0; col < expected.getColumnCount(); col++) {
+				assertEquals(expected.getValueAt(row, col),
+						actual.getValueAt(row, col));
+			}
+		}
+	}
+
+	@Test
+	public void snapshotTest() throws Exception {
+		Charset utf8 = Charset.forName("UTF-8");
+		CsvFile csvFile = new CsvFile(File.createTempFile("snapshot", ".csv")
+				.getPath());
+		csvFile.deleteOnExit();
+		csvFile.setCharset(utf8);
+		File snapshot = new File(csvFile.getPath() + ".tbl");
+		snapshot.deleteOnExit();
+		write(csvFile, "id,name\n1,\"第一\nline\"\n2,\n3,\"a,\"\"b\"\"\"\n", utf8);
+		long modified = csvFile.lastModified() - 60000;
+		csvFile.setLastModified(modified);
+
+		MappedTable table = csvFile.readAllCsv(snapshot);
+		assertTrue(snapshot.exists());
+		assertSameRows(csvFile.readAllCsv(), table);
+		table.close();
+
+		// 没有改变的时候直接使用快照
+		snapshot.setLastModified(modified - 60000);
+		table = csvFile.readAllCsv(snapshot);
+		assertEquals(modified - 60000, snapshot.lastModified());
+		assertEquals("1", table.getValueAt(0, 0));
+		table.close();
+
+		// 长度相同但是时间更早的文件也会重新读取
+		write(csvFile, "id,name\n4,\"第二\nline\"\n5,\n6,\"c,\"\"d\"\"\"\n", utf8);
+		csvFile.setLastModified(modified - 120000);
+		table = csvFile.readAllCsv(snapshot);
+		assertEquals("4", table.getValueAt(0, 0));
+		assertSameRows(csvFile.readAllCsv(), table);
+		table.close();
+
+		// 文件没有变，字符集改变了也会重新读取
+		csvFile.setCharset(Charset.forName("GBK"));
+		table = csvFile.readAllCsv(snapshot);
+		assertFalse("第二\nline".equals(table.getValueAt(0, 1)));
+		assertSameRows(csvFile.readAllCsv(), table);
+		table.close();
+
+		// 坏掉的快照会重新写
+		write(snapshot, "broken", utf8);
+		table = csvFile.readAllCsv(snapshot);
+		assertSameRows(csvFile.readAllCsv(), table);
+		table.close();
+	}
+
+	@Test
+	public void snapshotSchemaTest() throws Exception {
+		Charset utf8 = Charset.forName("UTF-8");
+		CsvFile csvFile = new CsvFile(File.createTempFile("schema", ".csv")
+				.getPath());
+		csvFile.deleteOnExit();
+		csvFile.setCharset(utf8);
+		File snapshot = new File(csvFile.getPath() + ".tbl");
+		snapshot.deleteOnExit();
+		write(csvFile, "id,price,day\n1,1.5,02/01/2013\n2,,03/01/2013\n", utf8);
+
+		MappedTable table = csvFile.readAllCsv(snapshot);
+		assertNull(table.getColumnType(0));
+		assertEquals("1", table.getValueAt(0, 0));
+		table.close();
+
+		// 设置了schema以后重新读取
+		csvFile.setSchema(new CsvSchema().setType("id", Integer.class)
+				.setType("price", Double.class));
+		table = csvFile.readAllCsv(snapshot);
+		assertEquals(Integer.class, table.getColumnType(0));
+		assertEquals(1, table.getValueAt(0, 0));
+		assertEquals(1.5, table.getValueAt(0, 1));
+		assertSameRows(csvFile.readAllCsv(), table);
+		table.close();
+
+		// 相等的schema直接使用快照
+		long modified = snapshot.lastModified() - 60000;
+		snapshot.setLastModified(modified);
+		csvFile.setSchema(new CsvSchema().setType("price", Double.class)
+				.setType("id", Integer.class));
+		csvFile.readAllCsv(snapshot).close();
+		assertEquals(modified, snapshot.lastModified());
+
+		// 格式改变了也会重新读取
+		csvFile.setSchema(new CsvSchema().setType("id", Integer.class)
+				.setType("day", Date.class).setDateFormat("dd/MM/yyyy"));
+		table = csvFile.readAllCsv(snapshot);
+		assertEquals(Date.class, table.getColumnType(2));
+		assertEquals(Date.valueOf("2013-01-03"), table.getValueAt(1, 2));
+		assertSameRows(csvFile.readAllCsv(), table);
+		table.close();
+
+		// 去掉schema以后又是字符串
+		csvFile.setSchema(null);
+		table = csvFile.readAllCsv(snapshot);
+		assertEquals("1.5", table.getValueAt(0, 1));
+		table.close();
+	}
+
+}
@@ -0,0 +1,69 @@
+package wyq.toolbox.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CsvKeyIndexTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static void write(File file, String text) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(text.getBytes(UTF8));
+		out.close();
+	}
+
+	@Test
+	public void lookupTest() throws IOException {
+		CsvFile csvFile = new CsvFile(File.createTempFile("keys", ".csv")
+				.getPath());
+		csvFile.deleteOnExit();
+		csvFile.setCharset(UTF8);
+		File indexFile = new File(csvFile.getPath() + ".id.idx");
+		indexFile.deleteOnExit();
+		write(csvFile, "\uFEFFid,name\r\n" + "b,\"第一\nline\"\r\n" + "a,x\r\n"
+				+ "\r\n" + "b,\"y,\"\"z\"\"\"\r\n" + "中,w");
+
+		CsvKeyIndex index = csvFile.openKeyIndex("id");
+		assertTrue(indexFile.exists());
+		assertEquals(4, index.size());
+		assertArrayEquals(new String[] { "a", "x" }, index.get("a"));
+		assertArrayEquals(new String[] { "中", "w" }, index.get("中"));
+		// 相同的key按照文件里的顺序返回
+		List<String[]> records = index.getAll("b");
+		assertEquals(2, records.size());
+		assertArrayEquals(new String[] { "b", "第一\nline" }, records.get(0));
+		assertArrayEquals(new String[] { "b", "y,\"z\"" }, records.get(1));
+		assertNull(index.get("c"));
+		assertEquals(-1, index.getOffset("c"));
+		index.close();
+
+		// 文件改变以后索引会重新建立
+		write(csvFile, "id,name\nc,v\n");
+		csvFile.setLastModified(csvFile.lastModified() - 10000);
+		index = csvFile.openKeyIndex("id");
+		assertEquals(1, index.size());
+		assertNull(index.get("a"));
+		assertArrayEquals(new String[] { "c", "v" }, index.get("c"));
+		index.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void columnTest() throws IOException {
+		File file = File.createTempFile("keys", ".csv");
+		file.deleteOnExit();
+		write(file, "id,name\n1,a\n");
+		new CsvKeyIndex(file, UTF8, "none", new File(file.getPath() + ".idx"));
+	}
+
+}
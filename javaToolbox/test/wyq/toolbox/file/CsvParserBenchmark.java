@@ -0,0 +1,108 @@
+package wyq.toolbox.file;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * CsvParser和原来的正则表达式分割方法的性能对比，直接运行main方法。
+ * 测试文件有100万行，每行8列，其中一列带引号和逗号。
+ */
+public class CsvParserBenchmark {
+
+	private static final int ROWS = 1000000;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws IOException {
+		File file = File.createTempFile("bench", ".csv");
+		file.deleteOnExit();
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		writer.write("id,name,city,amount,price,date,memo,flag");
+		writer.newLine();
+		for (int i = 0; i < ROWS; i++) {
+			writer.write(i + ",name" + (i % 1000) + ",city" + (i % 50) + ","
+					+ (i % 997) + "," + (i % 89) + ".25,2013-01-"
+					+ (i % 28 + 1) + ",\"memo, " + i + "\"," + (i % 2 == 0));
+			writer.newLine();
+		}
+		writer.close();
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			long legacy = legacy(file);
+			long legacyTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			long parser = parser(file);
+			long parserTime = System.nanoTime() - start;
+			System.out.println("round " + round + ": lineSpliter "
+					+ legacyTime / 1000000 + "ms, CsvParser " + parserTime
+					/ 1000000 + "ms, fields " + legacy + "/" + parser);
+		}
+	}
+
+	private static long parser(File file) throws IOException {
+		CsvParser parser = new CsvParser(new FileReader(file));
+		long fields = 0;
+		while (parser.next()) {
+			fields += parser.getFieldCount();
+		}
+		parser.close();
+		return fields;
+	}
+
+	private static long legacy(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		long fields = 0;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			fields += lineSpliter(line).length;
+		}
+		reader.close();
+		return fields;
+	}
+
+	// 原来CsvFile.CsvSource里的分割方法
+	private static String[] lineSpliter(String line) {
+		if (line == null || line.length() == 0)
+			return new String[0];
+		line = line.replaceAll("\"\"", "");
+		Pattern pattern = Pattern.compile("(^|,)(\"[^\"]*,+[^\"]*\")(,|$)");
+		Matcher matcher = pattern.matcher(line);
+		List<Integer> spliterRepPosList = new ArrayList<Integer>();
+		StringBuilder sb = new StringBuilder(line);
+		while (matcher.find()) {
+			String tmp = matcher.group(2);
+			for (int i = 0; i < tmp.length(); i++) {
+				if (',' == tmp.charAt(i)) {
+					int pos = matcher.start(2) + i;
+					spliterRepPosList.add(pos);
+					sb.setCharAt(pos, '#');
+				}
+			}
+		}
+		String[] split = sb.toString().split(",");
+		int linepos = 0;
+		for (int i = 0; i < split.length; i++) {
+			String value = split[i];
+			if (value.contains(String.valueOf('#'))) {
+				StringBuilder valueSb = new StringBuilder(value);
+				for (int j = 0; j < value.length(); j++) {
+					if (spliterRepPosList.contains(linepos + j)) {
+						valueSb.setCharAt(j, ',');
+					}
+				}
+				split[i] = valueSb.toString();
+			}
+			linepos += value.length() + 1;
+		}
+		return split;
+	}
+
+}
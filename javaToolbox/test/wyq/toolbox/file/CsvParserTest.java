@@ -0,0 +1,90 @@
+package wyq.toolbox.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CsvParserTest {
+
+	private List<String[]> parse(String text, int bufferSize)
+			throws IOException {
+		CsvParser parser = new CsvParser(new StringReader(text), ',',
+				bufferSize);
+		List<String[]> records = new ArrayList<String[]>();
+		while (parser.next()) {
+			records.add(parser.toArray());
+		}
+		parser.close();
+		return records;
+	}
+
+	@Test
+	public void quoteTest() throws IOException {
+		String text = "id,name,memo\r\n"
+				+ "1,\"a,b\",\"say \"\"hi\"\"\"\r\n"
+				+ "2,,\"line1\nline2\"\r\n"
+				+ "3,c,\n";
+		// 缓冲区很小的时候，字段会跨过缓冲区的边界，结果应该一样
+		for (int bufferSize = 1; bufferSize <= 64; bufferSize *= 2) {
+			List<String[]> records = parse(text, bufferSize);
+			assertEquals(4, records.size());
+			assertArrayEquals(new String[] { "id", "name", "memo" },
+					records.get(0));
+			assertArrayEquals(new String[] { "1", "a,b", "say \"hi\"" },
+					records.get(1));
+			assertArrayEquals(new String[] { "2", "", "line1\nline2" },
+					records.get(2));
+			// 行尾的空字段不会丢掉
+			assertArrayEquals(new String[] { "3", "c", "" }, records.get(3));
+		}
+	}
+
+	@Test
+	public void lineTest() throws IOException {
+		// CR、LF和CRLF都是换行，空行是一个没有字段的记录
+		List<String[]> records = parse("a\rb\n\nc\r\nd", 4);
+		assertEquals(5, records.size());
+		assertArrayEquals(new String[] { "a" }, records.get(0));
+		assertArrayEquals(new String[] { "b" }, records.get(1));
+		assertEquals(0, records.get(2).length);
+		assertArrayEquals(new String[] { "c" }, records.get(3));
+		assertArrayEquals(new String[] { "d" }, records.get(4));
+	}
+
+	@Test
+	public void selectTest() throws IOException {
+		// 没有选中的字段是null，但是字段的个数不变，引号里的逗号和换行也不影响
+		CsvParser parser = new CsvParser(new StringReader(
+				"a,\"b,\nb\",c,d\r\n1,2\n"), ',', 4);
+		parser.select(1, 3);
+		assertTrue(parser.next());
+		assertArrayEquals(new String[] { null, "b,\nb", null, "d" },
+				parser.toArray());
+		assertTrue(parser.next());
+		assertArrayEquals(new String[] { null, "2" }, parser.toArray());
+		assertFalse(parser.next());
+	}
+
+	@Test
+	public void lenientTest() throws IOException {
+		// BOM被跳过，不规范的引号按原样保留，没有关闭的引号到文本末尾为止
+		List<String[]> records = parse("\uFEFFa\"b,\"c\"d,\"e\nf", 64);
+		assertEquals(1, records.size());
+		assertArrayEquals(new String[] { "a\"b", "cd", "e\nf" },
+				records.get(0));
+		CsvParser parser = new CsvParser(new StringReader(""));
+		assertFalse(parser.next());
+		parser = new CsvParser(new StringReader("x;y"), ';');
+		assertTrue(parser.next());
+		assertEquals("y", parser.getField(1));
+	}
+
+}
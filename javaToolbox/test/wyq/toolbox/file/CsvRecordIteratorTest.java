@@ -0,0 +1,136 @@
+package wyq.toolbox.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+public class CsvRecordIteratorTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String TEXT = "id,name,memo,id\r\n" + "1,a,\"x,\ny\",9\n"
+			+ "2,b\n" + "\n" + "3,c,z,8,extra\n";
+
+	@Test
+	public void recordTest() throws Exception {
+		CsvRecordIterator[] iterators = {
+				new CsvRecordIterator(new StringReader(TEXT)),
+				new CsvRecordIterator(new CsvByteParser(
+						new ByteArrayInputStream(TEXT.getBytes(UTF8)), UTF8)) };
+		for (CsvRecordIterator records : iterators) {
+			assertEquals(Arrays.asList("id", "name", "memo", "id"),
+					records.getHeader());
+			assertTrue(records.hasNext());
+			// 多次调用hasNext不会跳过记录
+			assertTrue(records.hasNext());
+			CsvRecord record = records.next();
+			assertEquals(1, record.getRecordNumber());
+			assertEquals("x,\ny", record.get("memo"));
+			// 重复的列名取第一个
+			assertEquals("1", record.get("id"));
+			assertEquals("9", record.get(3));
+			assertEquals("1", record.toMap().get("id"));
+			assertEquals(1, record.indexOf("name"));
+			assertEquals(-1, record.indexOf("none"));
+
+			// 短的记录缺少的字段是null
+			assertSame(record, records.next());
+			assertEquals(2, record.getFieldCount());
+			assertEquals("b", record.get("name"));
+			assertNull(record.get("memo"));
+			assertNull(record.get(3));
+			Map<String, String> map = record.toMap();
+			assertEquals(Arrays.asList("id", "name", "memo"),
+					Arrays.asList(map.keySet().toArray()));
+			assertNull(map.get("memo"));
+			// 重复的列名在map里也取第一个
+			assertEquals("2", map.get("id"));
+
+			// 空行是没有字段的记录
+			record = records.next();
+			assertEquals(0, record.getFieldCount());
+			assertNull(record.get("id"));
+
+			// 长的记录多出来的字段只能按位置取
+			record = records.next();
+			assertEquals(4, record.getRecordNumber());
+			assertEquals(5, record.getFieldCount());
+			assertEquals("extra", record.get(4));
+			assertArrayEquals(new String[] { "3", "c", "z", "8", "extra" },
+					record.toArray());
+			try {
+				record.get("none");
+				fail();
+			} catch (IllegalArgumentException e) {
+				assertEquals("column not found:none", e.getMessage());
+			}
+
+			assertFalse(records.hasNext());
+			try {
+				records.next();
+				fail();
+			} catch (NoSuchElementException e) {
+			}
+			records.close();
+		}
+	}
+
+	@Test
+	public void streamTest() throws Exception {
+		CsvFile csvFile = new CsvFile(File.createTempFile("records", ".csv")
+				.getPath());
+		csvFile.deleteOnExit();
+		csvFile.setCharset(UTF8);
+		csvFile.writeAll(TEXT, false);
+
+		Stream<CsvRecord> stream = csvFile.recordStream();
+		try {
+			// 同一个view，要先取出值再收集
+			List<String> names = stream.filter(new Predicate<CsvRecord>() {
+
+				@Override
+				public boolean test(CsvRecord record) {
+					return record.get("name") != null;
+				}
+			}).map(new Function<CsvRecord, String>() {
+
+				@Override
+				public String apply(CsvRecord record) {
+					return record.getRecordNumber() + ":" + record.get("name")
+							+ ":" + record.get("memo");
+				}
+			}).collect(Collectors.<String> toList());
+			assertEquals(Arrays.asList("1:a:x,\ny", "2:b:null", "4:c:z"),
+					names);
+		} finally {
+			stream.close();
+		}
+
+		// 关闭流以后迭代器也关闭了
+		CsvRecordIterator records = csvFile.records();
+		stream = records.stream();
+		assertEquals(4, stream.limit(4).count());
+		stream.close();
+		assertFalse(records.hasNext());
+	}
+
+}
@@ -0,0 +1,150 @@
+package wyq.toolbox.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.sql.Date;
+import java.sql.Timestamp;
+
+import org.junit.Test;
+
+import wyq.toolbox.datamodel.TableCache;
+
+public class CsvSchemaTest {
+
+	private static final String TEXT = "id,big,price,flag,day,time,name\n"
+			+ "1,3000000000,1.5,true,2013-01-02,2013-01-02 10:20:30,a\n"
+			+ "-2,4,2,FALSE,2013-12-31,2013-12-31 23:59:59,1\n"
+			+ ",,,,,,\n";
+
+	@Test
+	public void inferTest() throws Exception {
+		CsvSchema schema = new CsvSchema().inferTypes(new CsvRecordIterator(
+				new StringReader(TEXT)), 100);
+		assertEquals(Integer.class, schema.getType("id"));
+		assertEquals(Long.class, schema.getType("big"));
+		assertEquals(Double.class, schema.getType("price"));
+		assertEquals(Boolean.class, schema.getType("flag"));
+		assertEquals(Date.class, schema.getType("day"));
+		assertEquals(Timestamp.class, schema.getType("time"));
+		assertEquals(String.class, schema.getType("name"));
+		// 设置过的列不会被推断
+		schema = new CsvSchema().setType("id", String.class).setExactDecimals(
+				true);
+		schema.inferTypes(new CsvRecordIterator(new StringReader(TEXT)), 1);
+		assertEquals(String.class, schema.getType("id"));
+		assertEquals(BigDecimal.class, schema.getType("price"));
+		// 只看第一行的时候name也像是字符串
+		assertEquals(String.class, schema.getType("name"));
+	}
+
+	@Test
+	public void decodeTest() throws Exception {
+		CsvSchema schema = new CsvSchema().inferTypes(new CsvRecordIterator(
+				new StringReader(TEXT)), 100);
+		schema.setType("name", Integer.class);
+		Charset utf8 = Charset.forName("UTF-8");
+		// 字节的解析器和字符的解析器结果一样
+		CsvTokenizer[] parsers = {
+				new CsvByteParser(new ByteArrayInputStream(TEXT.getBytes(utf8)),
+						utf8),
+				new CsvParser(new StringReader(TEXT)) };
+		for (CsvTokenizer parser : parsers) {
+			parser.next();
+			CsvSchema.Decoder decoder = schema.newDecoder(parser.toArray());
+			parser.next();
+			assertEquals(1, decoder.decode(parser, 0, 0));
+			assertEquals(3000000000L, decoder.decode(parser, 1, 1));
+			assertEquals(1.5, decoder.decode(parser, 2, 2));
+			assertEquals(Boolean.TRUE, decoder.decode(parser, 3, 3));
+			assertEquals(Date.valueOf("2013-01-02"),
+					decoder.decode(parser, 4, 4));
+			assertEquals(Timestamp.valueOf("2013-01-02 10:20:30"),
+					decoder.decode(parser, 5, 5));
+			// 解析不了的值不会保留字符串，列的类型不会错
+			try {
+				decoder.decode(parser, 6, 6);
+				fail();
+			} catch (IllegalArgumentException e) {
+				assertEquals("can not parse \"a\" as Integer in column name",
+						e.getMessage());
+			}
+			parser.next();
+			assertEquals(-2, decoder.decode(parser, 0, 0));
+			assertEquals(1, decoder.decode(parser, 6, 6));
+			parser.next();
+			// 空的值是null
+			for (int i = 0; i < 7; i++) {
+				assertNull(decoder.decode(parser, i, i));
+			}
+			parser.close();
+		}
+	}
+
+	@Test
+	public void equalsTest() {
+		CsvSchema a = new CsvSchema().setType("id", Integer.class);
+		CsvSchema b = new CsvSchema().setType("id", Integer.class);
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		assertFalse(a.equals(b.copy().setType("id", Long.class)));
+		assertFalse(a.equals(b.copy().setDateFormat("yyyy/MM/dd")));
+		assertFalse(a.equals(b.copy().setTimestampFormat("yyyyMMddHHmmss")));
+		assertFalse(a.equals(b.copy().setExactDecimals(true)));
+		// 改变复制的schema不影响原来的
+		assertEquals(a, b);
+	}
+
+	@Test
+	public void cacheTest() throws Exception {
+		CsvFile csvFile = new CsvFile(File.createTempFile("schema", ".csv")
+				.getPath());
+		csvFile.deleteOnExit();
+		csvFile.setCharset(Charset.forName("UTF-8"));
+		csvFile.writeAll(TEXT, false);
+		TableCache cache = new TableCache(1000);
+		CsvSchema schema = new CsvSchema().setType("id", Integer.class);
+		csvFile.setSchema(schema);
+		assertEquals(1, csvFile.readAllCsv(cache).getValueAt(0, 0));
+		// 相等的schema使用缓存的表
+		csvFile.setSchema(new CsvSchema().setType("id", Integer.class));
+		csvFile.readAllCsv(cache);
+		assertEquals(1, cache.size());
+		// 修改了schema以后不会拿到以前的表
+		schema.setType("id", String.class);
+		csvFile.setSchema(schema);
+		assertEquals("1", csvFile.readAllCsv(cache).getValueAt(0, 0));
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void rejectTest() throws Exception {
+		CsvFile csvFile = new CsvFile(File.createTempFile("reject", ".csv")
+				.getPath());
+		csvFile.deleteOnExit();
+		csvFile.setCharset(Charset.forName("UTF-8"));
+		csvFile.writeAll("id,name\n1,a\n2,b\nx3,c\n", false);
+		// 只看前两行的时候id像是Integer
+		CsvSchema schema = csvFile.inferSchema(2);
+		assertEquals(Integer.class, schema.getType("id"));
+		csvFile.setSchema(schema);
+		try {
+			csvFile.readAllCsv();
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("can not parse \"x3\" as Integer in column id",
+					e.getMessage());
+		}
+		// 设置成字符串以后保留原来的值
+		schema.setType("id", String.class);
+		assertEquals("x3", csvFile.readAllCsv().getValueAt(2, 0));
+	}
+
+}
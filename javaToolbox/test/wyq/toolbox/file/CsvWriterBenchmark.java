@@ -0,0 +1,80 @@
+package wyq.toolbox.file;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * CsvWriter和用TextFile.writeLine一行行写的性能对比，直接运行main方法。
+ * 每轮写100万行，每行8列，其中一列需要加引号。
+ */
+public class CsvWriterBenchmark {
+
+	private static final int ROWS = 1000000;
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws IOException {
+		File file = File.createTempFile("bench", ".csv");
+		file.deleteOnExit();
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			textFile(file);
+			long textFileTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			csvWriter(file);
+			long csvWriterTime = System.nanoTime() - start;
+			double mb = file.length() / 1024.0 / 1024.0;
+			System.out.println("round " + round + ": writeLine "
+					+ textFileTime / 1000000 + "ms, CsvWriter " + csvWriterTime
+					/ 1000000 + "ms, " + (int) (mb * 1e9 / csvWriterTime)
+					+ "MB/s");
+		}
+	}
+
+	// 两种写法用同样的值
+	private static void fill(Object[] row, int i) {
+		row[0] = i;
+		row[1] = "name" + (i % 1000);
+		row[2] = "city" + (i % 50);
+		row[3] = i % 997;
+		row[4] = (i % 89) + ".25";
+		row[5] = "2013-01-" + (i % 28 + 1);
+		row[6] = "memo, " + i;
+		row[7] = i % 2 == 0;
+	}
+
+	// 原来手工拼接一行再调用writeLine的写法
+	private static void textFile(File file) throws IOException {
+		file.delete();
+		TextFile textFile = new TextFile(file.getPath());
+		Object[] row = new Object[8];
+		for (int i = 0; i < ROWS; i++) {
+			fill(row, i);
+			StringBuilder line = new StringBuilder();
+			for (int c = 0; c < row.length; c++) {
+				if (c > 0) {
+					line.append(',');
+				}
+				String value = row[c].toString();
+				if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0) {
+					line.append('"').append(value.replace("\"", "\"\""))
+							.append('"');
+				} else {
+					line.append(value);
+				}
+			}
+			textFile.writeLine(line.toString());
+		}
+		textFile.close();
+	}
+
+	private static void csvWriter(File file) throws IOException {
+		CsvWriter writer = new CsvWriter(file);
+		Object[] row = new Object[8];
+		for (int i = 0; i < ROWS; i++) {
+			fill(row, i);
+			writer.writeRow(row);
+		}
+		writer.close();
+	}
+
+}
@@ -0,0 +1,115 @@
+package wyq.toolbox.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import wyq.toolbox.datamodel.MemoryTable;
+import wyq.toolbox.datamodel.Table;
+
+public class CsvWriterTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final Object[][] ROWS = {
+			{ "plain", "a,b", "a;b", "a\tb" },
+			{ "\"quoted\"", "say \"\"hi\"\"", "\"", "\"\"" },
+			{ "crlf\r\nline", "lf\nline", "cr\rline", "\r\n" },
+			{ null, "", " space ", "中文,\"引号\"\n" },
+			{ 1, 2.5, true, null } };
+
+	// null写成空的值，读回来是空字符串
+	private static String expected(Object value) {
+		return value == null ? "" : value.toString();
+	}
+
+	private static void check(List<String[]> records, char delimiter,
+			String text) throws Exception {
+		CsvTokenizer[] parsers = {
+				new CsvParser(new InputStreamReader(new ByteArrayInputStream(
+						text.getBytes(UTF8)), UTF8), delimiter),
+				new CsvByteParser(new ByteArrayInputStream(text.getBytes(UTF8)),
+						UTF8, delimiter) };
+		for (CsvTokenizer parser : parsers) {
+			for (String[] record : records) {
+				parser.next();
+				assertArrayEquals(record, parser.toArray());
+			}
+			assertFalse(parser.next());
+			parser.close();
+		}
+	}
+
+	@Test
+	public void roundTripTest() throws Exception {
+		for (char delimiter : new char[] { ',', ';', '\t', '|' }) {
+			for (String lineSeparator : new String[] { "\n", "\r\n" }) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				// 很小的缓冲区，值会跨过缓冲区的边界
+				CsvWriter writer = new CsvWriter(Channels.newChannel(bytes),
+						UTF8, 16);
+				writer.setDelimiter(delimiter);
+				writer.setLineSeparator(lineSeparator);
+				writer.writeHeader("c1", "c2", "c3", "c4");
+				for (Object[] row : ROWS) {
+					writer.writeRow(row);
+				}
+				Map<String, Object> map = new LinkedHashMap<String, Object>();
+				map.put("c3", "map\"" + delimiter + "\r\n");
+				map.put("c1", null);
+				writer.writeRow(map);
+				assertEquals(ROWS.length + 1, writer.getRowCount());
+				writer.close();
+
+				String[][] records = new String[ROWS.length + 2][];
+				records[0] = new String[] { "c1", "c2", "c3", "c4" };
+				for (int i = 0; i < ROWS.length; i++) {
+					records[i + 1] = new String[ROWS[i].length];
+					for (int j = 0; j < ROWS[i].length; j++) {
+						records[i + 1][j] = expected(ROWS[i][j]);
+					}
+				}
+				records[ROWS.length + 1] = new String[] { "", "",
+						"map\"" + delimiter + "\r\n", "" };
+				check(Arrays.asList(records), delimiter,
+						new String(bytes.toByteArray(), UTF8));
+			}
+		}
+	}
+
+	@Test
+	public void tableTest() throws Exception {
+		MemoryTable table = new MemoryTable(Arrays.asList("c1", "c2", "c3",
+				"c4"), Arrays.<Class<?>> asList(null, null, null, null));
+		for (Object[] row : ROWS) {
+			table.addRow(Arrays.asList(row));
+		}
+		CsvFile csvFile = new CsvFile(File.createTempFile("writer", ".csv")
+				.getPath());
+		csvFile.deleteOnExit();
+		csvFile.setCharset(UTF8);
+		assertEquals(ROWS.length, csvFile.writeAllCsv(table));
+
+		Table read = csvFile.readAllCsv();
+		assertEquals(ROWS.length, read.size());
+		for (int row = 0; row < ROWS.length; row++) {
+			for (int col = 0; col < 4; col++) {
+				assertEquals(expected(ROWS[row][col]), read.getValueAt(row, col));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package wyq.toolbox.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import wyq.toolbox.datamodel.Table;
+
+public class ParallelCsvReaderTest {
+
+	private static final int MB = 1024 * 1024;
+
+	/**
+	 * 大约5MB的文件，每个1MB的位置都在一个带换行的引号里面。
+	 */
+	private static String text() {
+		StringBuilder text = new StringBuilder("id,name,memo\r\n");
+		int boundary = MB;
+		for (int i = 0; text.length() < 5 * MB + 1000; i++) {
+			// 都是ASCII字符，所以字符数就是字节数
+			if (text.length() + 400 > boundary) {
+				text.append(i).append(",\"multi");
+				while (text.length() < boundary + 200) {
+					text.append("\nline \"\"q\"\",\r\n");
+				}
+				text.append("\",end\n");
+				boundary += MB;
+			} else if (i % 3 == 0) {
+				text.append(i).append(",name").append(i).append(",\r\n");
+			} else {
+				text.append(i).append(",\"a,\"\"b\"\"\",").append(i % 7)
+						.append('\n');
+			}
+		}
+		return text.toString();
+	}
+
+	@Test
+	public void readTest() throws Exception {
+		CsvFile csvFile = new CsvFile(File.createTempFile("parallel", ".csv")
+				.getPath());
+		csvFile.deleteOnExit();
+		csvFile.setCharset(Charset.forName("UTF-8"));
+		csvFile.writeAll(text(), false);
+		assertTrue(csvFile.length() > 4 * MB);
+
+		// 文件确实被分成了几块
+		RandomAccessFile raf = new RandomAccessFile(csvFile, "r");
+		try {
+			long[] bounds = new ParallelCsvReader(csvFile, 4).split(raf
+					.getChannel());
+			assertTrue(bounds.length > 3);
+		} finally {
+			raf.close();
+		}
+
+		Table expected = csvFile.readAllCsv();
+		for (int threads = 1; threads <= 4; threads++) {
+			Table actual = csvFile.readAllCsvParallel(threads);
+			assertEquals(expected.size(), actual.size());
+			assertEquals(expected.getColumnCount(), actual.getColumnCount());
+			for (int col = 0; col < expected.getColumnCount(); col++) {
+				assertEquals(expected.getColumnName(col),
+						actual.getColumnName(col));
+			}
+			for (int row = 0; row < expected.size(); row++) {
+				for (int col = 0; col < expected.getColumnCount(); col++) {
+					assertEquals(expected.getValueAt(row, col),
+							actual.getValueAt(row, col));
+				}
+			}
+		}
+		// 跨过边界的值是完整的
+		int found = 0;
+		for (int row = 0; row < expected.size(); row++) {
+			Object memo = expected.getValueAt(row, 2);
+			if ("end".equals(memo)) {
+				assertTrue(((String) expected.getValueAt(row, 1))
+						.endsWith("line \"q\",\r\n"));
+				found++;
+			}
+		}
+		assertEquals(5, found);
+	}
+
+}
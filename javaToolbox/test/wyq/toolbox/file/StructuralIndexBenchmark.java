@@ -0,0 +1,80 @@
+package wyq.toolbox.file;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * CsvByteParser逐个字节扫描和用StructuralIndex扫描的性能对比，直接运行main方法。
+ * 窄文件是100万行8个短字段，宽文件是10万行40个字段，其中有几个很长的文本字段。
+ */
+public class StructuralIndexBenchmark {
+
+	private static final int ROUNDS = 8;
+
+	public static void main(String[] args) throws IOException {
+		File narrow = File.createTempFile("narrow", ".csv");
+		narrow.deleteOnExit();
+		BufferedWriter writer = new BufferedWriter(new FileWriter(narrow));
+		for (int i = 0; i < 1000000; i++) {
+			writer.write(i + ",n" + (i % 1000) + ",c" + (i % 50) + ","
+					+ (i % 997) + "," + (i % 89) + ".25,2013-01-"
+					+ (i % 28 + 1) + ",\"m, " + i + "\"," + (i % 2 == 0));
+			writer.newLine();
+		}
+		writer.close();
+
+		File wide = File.createTempFile("wide", ".csv");
+		wide.deleteOnExit();
+		writer = new BufferedWriter(new FileWriter(wide));
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			text.append("some long description text ");
+		}
+		for (int i = 0; i < 100000; i++) {
+			for (int c = 0; c < 40; c++) {
+				if (c > 0) {
+					writer.write(',');
+				}
+				if (c % 10 == 5) {
+					writer.write("\"" + text + i + "\"");
+				} else if (c % 10 == 6) {
+					writer.write(text + "" + c);
+				} else {
+					writer.write(String.valueOf(i * c % 1000));
+				}
+			}
+			writer.newLine();
+		}
+		writer.close();
+
+		for (int round = 0; round < ROUNDS; round++) {
+			System.out.println("round " + round + ": narrow "
+					+ time(narrow, false) + "ms/" + time(narrow, true)
+					+ "ms, wide " + time(wide, false) + "ms/"
+					+ time(wide, true) + "ms (scalar/index)");
+		}
+	}
+
+	private static long time(File file, boolean structuralIndex)
+			throws IOException {
+		long start = System.nanoTime();
+		CsvByteParser parser = new CsvByteParser(new FileInputStream(file),
+				Charset.forName("UTF-8"));
+		parser.setStructuralIndex(structuralIndex);
+		parser.select(0);
+		long fields = 0;
+		while (parser.next()) {
+			fields += parser.getFieldCount() + parser.getField(0).length();
+		}
+		parser.close();
+		if (fields == 0) {
+			throw new IllegalStateException();
+		}
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+}
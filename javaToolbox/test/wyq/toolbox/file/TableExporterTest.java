@@ -0,0 +1,82 @@
+package wyq.toolbox.file;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import wyq.toolbox.datamodel.MemoryTable;
+import wyq.toolbox.datamodel.StreamingTable;
+import wyq.toolbox.datamodel.TableSource;
+
+public class TableExporterTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static MemoryTable table() {
+		List<Class<?>> types = new ArrayList<Class<?>>();
+		types.add(Integer.class);
+		types.add(String.class);
+		types.add(Double.class);
+		MemoryTable table = new MemoryTable(Arrays.asList("id", "te\"xt",
+				"value"), types);
+		table.addRow(Arrays.<Object> asList(1, "a,b", 1.5));
+		table.addRow(Arrays.<Object> asList(2, "say \"hi\"", Double.NaN));
+		table.addRow(Arrays.<Object> asList(3, "crlf\r\nlf\ntab\tback\\",
+				Double.POSITIVE_INFINITY));
+		table.addRow(Arrays.<Object> asList(4, "\u0001ctl\b\f中", null));
+		table.addRow(Arrays.<Object> asList(5, null, -2.0));
+		return table;
+	}
+
+	private static String export(TableExporter.Format format,
+			TableSource source) throws Exception {
+		TableExporter exporter = new TableExporter(format);
+		exporter.setLineSeparator("\n");
+		// 很小的缓冲区
+		exporter.setBufferSize(16);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		assertEquals(5, exporter.export(source, Channels.newChannel(bytes)));
+		return new String(bytes.toByteArray(), UTF8);
+	}
+
+	@Test
+	public void csvTest() throws Exception {
+		assertEquals("id,\"te\"\"xt\",value\n" + "1,\"a,b\",1.5\n"
+				+ "2,\"say \"\"hi\"\"\",NaN\n"
+				+ "3,\"crlf\r\nlf\ntab\tback\\\",Infinity\n"
+				+ "4,\u0001ctl\b\f中,\n" + "5,,-2.0\n",
+				export(TableExporter.Format.CSV, new TableSource(table())));
+	}
+
+	@Test
+	public void tsvTest() throws Exception {
+		assertEquals("id\tte\"xt\tvalue\n" + "1\ta,b\t1.5\n"
+				+ "2\tsay \"hi\"\tNaN\n"
+				+ "3\tcrlf\\r\\nlf\\ntab\\tback\\\\\tInfinity\n"
+				+ "4\t\u0001ctl\b\f中\t\n" + "5\t\t-2.0\n",
+				export(TableExporter.Format.TSV, new TableSource(table())));
+	}
+
+	@Test
+	public void jsonlTest() throws Exception {
+		String expected = "{\"id\":1,\"te\\\"xt\":\"a,b\",\"value\":1.5}\n"
+				+ "{\"id\":2,\"te\\\"xt\":\"say \\\"hi\\\"\",\"value\":\"NaN\"}\n"
+				+ "{\"id\":3,\"te\\\"xt\":\"crlf\\r\\nlf\\ntab\\tback\\\\\",\"value\":\"Infinity\"}\n"
+				+ "{\"id\":4,\"te\\\"xt\":\"\\u0001ctl\\b\\f中\",\"value\":null}\n"
+				+ "{\"id\":5,\"te\\\"xt\":null,\"value\":-2.0}\n";
+		assertEquals(expected,
+				export(TableExporter.Format.JSONL, new TableSource(table())));
+		// StreamingTable从当前行往后读
+		StreamingTable streaming = new StreamingTable(new TableSource(table()));
+		assertEquals(expected, export(TableExporter.Format.JSONL,
+				new TableSource(streaming)));
+	}
+
+}
@@ -0,0 +1,84 @@
+package wyq.toolbox.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * TextFile.readAll和writeAll在各种IOMode下的性能对比，直接运行main方法。
+ * 文件从1KB到1GB，每次大4倍，内容是UTF-8的中英文混合的行。
+ * 参数可以指定最大的文件大小（单位MB），大文件需要用-Xmx给足够的内存，
+ * 内存不够的时候显示OOM。
+ */
+public class TextFileBenchmark {
+
+	private static final int ROUNDS = 3;
+
+	public static void main(String[] args) throws IOException {
+		long maxSize = (args.length > 0 ? Long.parseLong(args[0]) : 1024) 
+				* 1024 * 1024;
+		File file = File.createTempFile("bench", ".txt");
+		file.deleteOnExit();
+		TextFile textFile = new TextFile(file.getPath());
+		textFile.setCharset(Charset.forName("UTF-8"));
+		for (long size = 1024; size <= maxSize; size *= 4) {
+			String content = content(size);
+			System.out.println("size " + size / 1024 + "KB");
+			for (TextFile.IOMode mode : TextFile.IOMode.values()) {
+				textFile.setIOMode(mode);
+				long read = Long.MAX_VALUE;
+				long write = Long.MAX_VALUE;
+				try {
+					// 小文件多读几次取平均
+					int repeat = (int) Math.max(1, (1 << 20) / size);
+					for (int round = 0; round < ROUNDS; round++) {
+						long start = System.nanoTime();
+						for (int i = 0; i < repeat; i++) {
+							textFile.writeAll(content, false);
+						}
+						write = Math.min(write, (System.nanoTime() - start)
+								/ repeat);
+						start = System.nanoTime();
+						for (int i = 0; i < repeat; i++) {
+							if (textFile.readAll().length() == 0) {
+								throw new IllegalStateException();
+							}
+						}
+						read = Math.min(read, (System.nanoTime() - start)
+								/ repeat);
+					}
+					System.out.println("  " + mode + ": read " + time(read)
+							+ " " + speed(size, read) + ", write "
+							+ time(write) + " " + speed(size, write));
+				} catch (OutOfMemoryError e) {
+					System.out.println("  " + mode + ": OOM");
+				}
+			}
+		}
+	}
+
+	private static String content(long size) {
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < 4; i++) {
+			line.append("some text 一些文字 ");
+		}
+		StringBuilder content = new StringBuilder();
+		long bytes = 0;
+		int length = line.toString().getBytes(Charset.forName("UTF-8")).length;
+		for (int i = 0; bytes < size; i++) {
+			content.append(line).append(i).append(TextFile.LINE_SEP);
+			bytes += length + String.valueOf(i).length()
+					+ TextFile.LINE_SEP.length();
+		}
+		return content.toString();
+	}
+
+	private static String time(long nanos) {
+		return nanos < 1000000 ? nanos / 1000 + "us" : nanos / 1000000 + "ms";
+	}
+
+	private static String speed(long size, long nanos) {
+		return "(" + (int) (size * 1e9 / nanos / 1024 / 1024) + "MB/s)";
+	}
+
+}
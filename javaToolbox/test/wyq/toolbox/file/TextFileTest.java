@@ -0,0 +1,47 @@
+package wyq.toolbox.file;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+public class TextFileTest {
+
+	@Test
+	public void ioModeTest() throws IOException {
+		File file = File.createTempFile("text", ".txt");
+		file.deleteOnExit();
+		TextFile textFile = new TextFile(file.getPath());
+		textFile.setCharset(Charset.forName("UTF-8"));
+		// 代理对会被缓冲区切开，也要正确地编码和解码
+		StringBuilder text = new StringBuilder("a\r\n中文\n");
+		for (int i = 0; i < 50000; i++) {
+			text.append("😀x");
+		}
+		String content = text.toString();
+		for (TextFile.IOMode mode : new TextFile.IOMode[] {
+				TextFile.IOMode.BYTES, TextFile.IOMode.CHANNEL,
+				TextFile.IOMode.MAPPED }) {
+			textFile.setIOMode(mode);
+			// 小于阈值的时候不映射
+			for (long threshold : new long[] { 0, Long.MAX_VALUE }) {
+				textFile.setMapThreshold(threshold);
+				textFile.writeAll(content, false);
+				assertEquals(content, textFile.readAll());
+				textFile.writeAll("end", true);
+				assertEquals(content + "end", textFile.readAll());
+				textFile.writeAll("", false);
+				assertEquals("", textFile.readAll());
+			}
+		}
+		// LINES模式换行符会被替换成LINE_SEP
+		textFile.setIOMode(TextFile.IOMode.LINES);
+		textFile.writeAll("a\r\nb", false);
+		assertEquals("a" + TextFile.LINE_SEP + "b" + TextFile.LINE_SEP,
+				textFile.readAll());
+	}
+
+}